@@ -0,0 +1,112 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * BaselineComparison.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Compares two JMH result files written with "-rf json". Every benchmark of
+ * the baseline is printed with its change, and the process exits with 1 if
+ * one of them got slower than the allowed regression.
+ * 
+ * Usage: BaselineComparison baseline.json results.json [max regression %]
+ */
+public class BaselineComparison {
+
+	private static final double DEFAULT_MAX_REGRESSION_PERCENT = 10;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: BaselineComparison baseline.json results.json [max regression %]");
+			System.exit(2);
+		}
+
+		double maxRegression = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_MAX_REGRESSION_PERCENT;
+
+		Map<String, Double> baseline = readScores(args[0]);
+		Map<String, Double> results = readScores(args[1]);
+
+		boolean regressed = false;
+
+		for (Map.Entry<String, Double> entry : baseline.entrySet()) {
+			Double score = results.get(entry.getKey());
+
+			if (score == null) {
+				System.out.println(String.format(Locale.US, "%-100s %12.1f %12s", entry.getKey(), entry.getValue(), "missing"));
+				continue;
+			}
+
+			// The scores are times per operation, so a higher score is slower
+			double change = (score - entry.getValue()) * 100 / entry.getValue();
+			boolean slower = change > maxRegression;
+			regressed |= slower;
+
+			System.out.println(String.format(Locale.US, "%-100s %12.1f %12.1f %+8.1f%%%s", entry.getKey(), entry.getValue(), score, change,
+					slower ? "  REGRESSION" : ""));
+		}
+
+		if (regressed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Reads the primary scores of a JMH result file, by benchmark name and
+	 * parameters
+	 */
+	private static Map<String, Double> readScores(String fileName) throws IOException {
+		Map<String, Double> scores = new LinkedHashMap<String, Double>();
+		Reader reader = new InputStreamReader(new FileInputStream(fileName), MobileServiceClient.UTF8_ENCODING);
+
+		try {
+			JsonArray runs = new JsonParser().parse(reader).getAsJsonArray();
+
+			for (JsonElement element : runs) {
+				JsonObject run = element.getAsJsonObject();
+				String name = run.get("benchmark").getAsString();
+
+				if (run.has("params")) {
+					name += " " + run.get("params").toString();
+				}
+
+				scores.put(name, run.getAsJsonObject("primaryMetric").get("score").getAsDouble());
+			}
+		} finally {
+			reader.close();
+		}
+
+		return scores;
+	}
+}
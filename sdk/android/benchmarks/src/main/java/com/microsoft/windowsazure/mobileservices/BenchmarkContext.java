@@ -0,0 +1,127 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * BenchmarkContext.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Context of the clients created by the benchmarks. It only provides in-memory
+ * shared preferences and a temporary cache directory
+ */
+class BenchmarkContext extends Context {
+
+	/**
+	 * Shared preferences kept in memory
+	 */
+	private static class MemorySharedPreferences implements SharedPreferences {
+		private final Map<String, Object> mValues = new HashMap<String, Object>();
+
+		@Override
+		public synchronized Map<String, ?> getAll() {
+			return new HashMap<String, Object>(mValues);
+		}
+
+		@Override
+		public synchronized String getString(String key, String defValue) {
+			Object value = mValues.get(key);
+			return value != null ? (String) value : defValue;
+		}
+
+		@Override
+		public synchronized long getLong(String key, long defValue) {
+			Object value = mValues.get(key);
+			return value != null ? (Long) value : defValue;
+		}
+
+		@Override
+		public Editor edit() {
+			final Map<String, Object> changes = new HashMap<String, Object>();
+
+			return new Editor() {
+
+				@Override
+				public Editor putString(String key, String value) {
+					changes.put(key, value);
+					return this;
+				}
+
+				@Override
+				public Editor putLong(String key, long value) {
+					changes.put(key, value);
+					return this;
+				}
+
+				@Override
+				public Editor remove(String key) {
+					changes.put(key, null);
+					return this;
+				}
+
+				@Override
+				public boolean commit() {
+					synchronized (MemorySharedPreferences.this) {
+						for (Map.Entry<String, Object> change : changes.entrySet()) {
+							if (change.getValue() == null) {
+								mValues.remove(change.getKey());
+							} else {
+								mValues.put(change.getKey(), change.getValue());
+							}
+						}
+					}
+
+					return true;
+				}
+			};
+		}
+	}
+
+	private final Map<String, SharedPreferences> mSharedPreferences = new HashMap<String, SharedPreferences>();
+
+	@Override
+	public Context getApplicationContext() {
+		return this;
+	}
+
+	@Override
+	public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+		SharedPreferences preferences = mSharedPreferences.get(name);
+
+		if (preferences == null) {
+			preferences = new MemorySharedPreferences();
+			mSharedPreferences.put(name, preferences);
+		}
+
+		return preferences;
+	}
+
+	@Override
+	public File getCacheDir() {
+		return new File(System.getProperty("java.io.tmpdir"));
+	}
+}
@@ -0,0 +1,205 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * CodePathBenchmarks.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * JMH benchmarks of the CPU-bound code paths of the SDK. They live in the SDK
+ * package to reach its package-private classes, and don't use the network
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodePathBenchmarks {
+
+	private static final int ROWS = 100;
+
+	/**
+	 * Entity read and written by the benchmarks
+	 */
+	static class BenchmarkEntity {
+		String id;
+		String name;
+		int age;
+		boolean active;
+		Date created;
+	}
+
+	private MobileServiceJsonTable mTable;
+	private Gson mGson;
+	private MobileServiceQuery<?> mQuery;
+	private String mRowsContent;
+	private DateSerializer mDateSerializer;
+	private LongSerializer mLongSerializer;
+	private Date mDate;
+	private JsonPrimitive mSerializedDate;
+	private JsonObject mEntity;
+	private JsonObject mEntityWithSystemProperties;
+	private String mVersion;
+	private String mEtag;
+	private TypedEntityWriter<BenchmarkEntity> mWriter;
+	private BenchmarkEntity mTypedEntity;
+
+	@Setup
+	public void setUp() throws Exception {
+		MobileServiceClient client = new MobileServiceClient("http://myapp.com/", "qwerty", new BenchmarkContext());
+		mTable = client.getTable("MyTableName");
+		mGson = client.getGson();
+
+		mQuery = mTable.where().field("age").gt(20).and().field("name").eq("John").orderBy("name", QueryOrder.Ascending).top(50).skip(100)
+				.select("id", "name", "age");
+
+		JsonArray rows = new JsonArray();
+
+		for (int i = 0; i < ROWS; i++) {
+			rows.add(createEntity(i));
+		}
+
+		mRowsContent = rows.toString();
+
+		mDateSerializer = new DateSerializer();
+		mLongSerializer = new LongSerializer();
+		mDate = DateSerializer.deserialize("2013-11-01T10:30:00.123Z");
+		mSerializedDate = new JsonPrimitive("2013-11-01T10:30:00.123Z");
+
+		mEntity = createEntity(1);
+		mEntityWithSystemProperties = createEntity(1);
+		mEntityWithSystemProperties.addProperty("__createdAt", "2013-11-01T10:30:00.123Z");
+		mEntityWithSystemProperties.addProperty("__updatedAt", "2013-11-02T10:30:00.123Z");
+		mEntityWithSystemProperties.addProperty("__version", "AAAAAAAAB9E=");
+
+		mVersion = "AAAA\"AAB9E=";
+		mEtag = MobileServiceTableBase.getEtagFromValue(mVersion);
+
+		mWriter = TypedEntityWriter.create(mGson, BenchmarkEntity.class);
+		mTypedEntity = mGson.fromJson(mEntity, BenchmarkEntity.class);
+	}
+
+	private static JsonObject createEntity(int index) {
+		JsonObject entity = new JsonObject();
+		entity.addProperty("id", "id-" + index);
+		entity.addProperty("name", "John " + index);
+		entity.addProperty("age", index % 100);
+		entity.addProperty("active", index % 2 == 0);
+		entity.addProperty("created", "2013-11-01T10:30:00.123Z");
+
+		return entity;
+	}
+
+	@Benchmark
+	public String queryToString() {
+		return mQuery.toString();
+	}
+
+	@Benchmark
+	public String queryGetRowSetModifiers() throws Exception {
+		return mQuery.getRowSetModifiers();
+	}
+
+	@Benchmark
+	public int parseResultsFromJsonElement() {
+		JsonElement results = mGson.fromJson(mRowsContent, JsonElement.class);
+		return JsonEntityParser.parseResults(results, mGson, BenchmarkEntity.class).size();
+	}
+
+	@Benchmark
+	public int parseResultsFromReader() throws Exception {
+		return JsonEntityParser.parseResults(new StringReader(mRowsContent), mGson, BenchmarkEntity.class,
+				new ArrayList<BenchmarkEntity>(ROWS));
+	}
+
+	@Benchmark
+	public JsonElement dateSerializerSerialize() {
+		return mDateSerializer.serialize(mDate, Date.class, null);
+	}
+
+	@Benchmark
+	public Date dateSerializerDeserialize() {
+		return mDateSerializer.deserialize(mSerializedDate, Date.class, null);
+	}
+
+	@Benchmark
+	public JsonElement longSerializerSerialize() {
+		return mLongSerializer.serialize(Long.valueOf(1234567890123L), Long.class, null);
+	}
+
+	@Benchmark
+	public JsonObject removeSystemProperties() {
+		return MobileServiceTableBase.removeSystemProperties(mEntityWithSystemProperties);
+	}
+
+	@Benchmark
+	public JsonObject removeSystemPropertiesWithoutSystemProperties() {
+		return MobileServiceTableBase.removeSystemProperties(mEntity);
+	}
+
+	@Benchmark
+	public JsonObject patchOriginalEntityWithResponseEntity() {
+		return mTable.patchOriginalEntityWithResponseEntity(mEntity, mEntityWithSystemProperties);
+	}
+
+	@Benchmark
+	public String getEtagFromValue() {
+		return MobileServiceTableBase.getEtagFromValue(mVersion);
+	}
+
+	@Benchmark
+	public String getValueFromEtag() {
+		return MobileServiceTableBase.getValueFromEtag(mEtag);
+	}
+
+	@Benchmark
+	public Object validateIdOfJsonObject() {
+		return mTable.validateId(mEntity);
+	}
+
+	@Benchmark
+	public byte[] typedEntityWriterWrite() {
+		return mWriter.write(mTypedEntity, false, true).getBytes();
+	}
+}
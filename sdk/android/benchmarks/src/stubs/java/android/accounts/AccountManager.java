@@ -0,0 +1,49 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * AccountManager.java
+ */
+
+package android.accounts;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+
+/**
+ * Stub of the Android class, for the JVM benchmarks
+ */
+public class AccountManager {
+	public static final String KEY_AUTHTOKEN = "authtoken";
+
+	public static AccountManager get(Context context) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public Account[] getAccountsByType(String type) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public AccountManagerFuture<Bundle> getAuthToken(Account account, String authTokenType, Bundle options, Activity activity,
+			AccountManagerCallback<Bundle> callback, Handler handler) {
+		throw new RuntimeException("Stub!");
+	}
+}
@@ -0,0 +1,62 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * Context.java
+ */
+
+package android.content;
+
+import java.io.File;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Stub of the Android class, for the JVM benchmarks. Benchmarks subclass it
+ * to provide the services the SDK uses
+ */
+public abstract class Context {
+	public static final int MODE_PRIVATE = 0;
+
+	public static final String CONNECTIVITY_SERVICE = "connectivity";
+
+	public Context getApplicationContext() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public SharedPreferences getSharedPreferences(String name, int mode) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public File getCacheDir() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public ContentResolver getContentResolver() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public SQLiteDatabase openOrCreateDatabase(String name, int mode, SQLiteDatabase.CursorFactory factory) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public Object getSystemService(String name) {
+		throw new RuntimeException("Stub!");
+	}
+}
@@ -0,0 +1,49 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * SharedPreferences.java
+ */
+
+package android.content;
+
+import java.util.Map;
+
+/**
+ * Stub of the Android interface, for the JVM benchmarks
+ */
+public interface SharedPreferences {
+	Map<String, ?> getAll();
+
+	String getString(String key, String defValue);
+
+	long getLong(String key, long defValue);
+
+	Editor edit();
+
+	interface Editor {
+		Editor putString(String key, String value);
+
+		Editor putLong(String key, long value);
+
+		Editor remove(String key);
+
+		boolean commit();
+	}
+}
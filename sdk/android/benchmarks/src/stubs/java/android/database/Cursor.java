@@ -0,0 +1,45 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * Cursor.java
+ */
+
+package android.database;
+
+/**
+ * Stub of the Android interface, for the JVM benchmarks
+ */
+public interface Cursor {
+	boolean moveToNext();
+
+	int getCount();
+
+	int getColumnIndex(String columnName);
+
+	String getString(int columnIndex);
+
+	long getLong(int columnIndex);
+
+	int getInt(int columnIndex);
+
+	boolean isNull(int columnIndex);
+
+	void close();
+}
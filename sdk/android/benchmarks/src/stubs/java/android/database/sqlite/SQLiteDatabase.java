@@ -0,0 +1,95 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * SQLiteDatabase.java
+ */
+
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+/**
+ * Stub of the Android class, for the JVM benchmarks
+ */
+public class SQLiteDatabase {
+	public static final int CONFLICT_REPLACE = 5;
+
+	public interface CursorFactory {
+	}
+
+	public void execSQL(String sql) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void execSQL(String sql, Object[] bindArgs) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public long insert(String table, String nullColumnHack, ContentValues values) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public long insertWithOnConflict(String table, String nullColumnHack, ContentValues values, int conflictAlgorithm) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public int delete(String table, String whereClause, String[] whereArgs) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having,
+			String orderBy) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having,
+			String orderBy, String limit) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public Cursor rawQuery(String sql, String[] selectionArgs) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void beginTransaction() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void setTransactionSuccessful() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void endTransaction() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public boolean isOpen() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void close() {
+		throw new RuntimeException("Stub!");
+	}
+}
@@ -0,0 +1,51 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * SQLiteOpenHelper.java
+ */
+
+package android.database.sqlite;
+
+import android.content.Context;
+
+/**
+ * Stub of the Android class, for the JVM benchmarks
+ */
+public abstract class SQLiteOpenHelper {
+	public SQLiteOpenHelper(Context context, String name, SQLiteDatabase.CursorFactory factory, int version) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public abstract void onCreate(SQLiteDatabase db);
+
+	public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+	public SQLiteDatabase getReadableDatabase() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public SQLiteDatabase getWritableDatabase() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void close() {
+		throw new RuntimeException("Stub!");
+	}
+}
@@ -0,0 +1,155 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * Uri.java
+ */
+
+package android.net;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * Stub of the Android class, for the JVM benchmarks. Only hierarchical URIs
+ * without a fragment are supported, which is what the SDK builds
+ */
+public final class Uri {
+	private final String mSchemeAndAuthority;
+
+	private final String mPath;
+
+	private final String mQuery;
+
+	private Uri(String schemeAndAuthority, String path, String query) {
+		mSchemeAndAuthority = schemeAndAuthority;
+		mPath = path;
+		mQuery = query;
+	}
+
+	public static Uri parse(String uriString) {
+		int authorityStart = uriString.indexOf("://");
+		int pathStart = authorityStart < 0 ? 0 : uriString.indexOf('/', authorityStart + 3);
+
+		if (pathStart < 0) {
+			return new Uri(uriString, "", null);
+		}
+
+		int queryStart = uriString.indexOf('?', pathStart);
+		String path = queryStart < 0 ? uriString.substring(pathStart) : uriString.substring(pathStart, queryStart);
+		String query = queryStart < 0 ? null : uriString.substring(queryStart + 1);
+
+		return new Uri(uriString.substring(0, pathStart), path, query);
+	}
+
+	public static String encode(String s) {
+		if (s == null) {
+			return null;
+		}
+
+		try {
+			return URLEncoder.encode(s, "UTF-8").replace("+", "%20").replace("%21", "!").replace("%27", "'").replace("%28", "(")
+					.replace("%29", ")").replace("%7E", "~");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public String getPath() {
+		return mPath;
+	}
+
+	public String getQuery() {
+		return mQuery;
+	}
+
+	public Builder buildUpon() {
+		Builder builder = new Builder(mSchemeAndAuthority);
+		builder.mPath.append(mPath);
+
+		if (mQuery != null) {
+			builder.mQuery.append(mQuery);
+		}
+
+		return builder;
+	}
+
+	@Override
+	public String toString() {
+		return mQuery == null ? mSchemeAndAuthority + mPath : mSchemeAndAuthority + mPath + "?" + mQuery;
+	}
+
+	public static final class Builder {
+		private final String mSchemeAndAuthority;
+
+		private final StringBuilder mPath = new StringBuilder();
+
+		private final StringBuilder mQuery = new StringBuilder();
+
+		private Builder(String schemeAndAuthority) {
+			mSchemeAndAuthority = schemeAndAuthority;
+		}
+
+		public Builder path(String path) {
+			mPath.setLength(0);
+
+			if (!path.startsWith("/")) {
+				mPath.append('/');
+			}
+
+			mPath.append(path);
+
+			return this;
+		}
+
+		public Builder appendPath(String newSegment) {
+			if (mPath.length() == 0 || mPath.charAt(mPath.length() - 1) != '/') {
+				mPath.append('/');
+			}
+
+			mPath.append(encode(newSegment));
+
+			return this;
+		}
+
+		public Builder encodedQuery(String query) {
+			mQuery.setLength(0);
+
+			if (query != null) {
+				mQuery.append(query);
+			}
+
+			return this;
+		}
+
+		public Builder appendQueryParameter(String key, String value) {
+			if (mQuery.length() > 0) {
+				mQuery.append('&');
+			}
+
+			mQuery.append(encode(key)).append('=').append(encode(value));
+
+			return this;
+		}
+
+		public Uri build() {
+			return new Uri(mSchemeAndAuthority, mPath.toString(), mQuery.length() == 0 ? null : mQuery.toString());
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * AndroidHttpClient.java
+ */
+
+package android.net.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import android.content.ContentResolver;
+
+/**
+ * Stub of the Android class, for the JVM benchmarks. Only the content
+ * helpers work
+ */
+public final class AndroidHttpClient implements HttpClient {
+	public static long DEFAULT_SYNC_MIN_GZIP_BYTES = 256;
+
+	private AndroidHttpClient() {
+	}
+
+	public static AndroidHttpClient newInstance(String userAgent) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public static InputStream getUngzippedContent(HttpEntity entity) throws IOException {
+		InputStream responseStream = entity.getContent();
+
+		if (responseStream == null) {
+			return responseStream;
+		}
+
+		Header header = entity.getContentEncoding();
+
+		if (header != null && header.getValue().contains("gzip")) {
+			responseStream = new GZIPInputStream(responseStream);
+		}
+
+		return responseStream;
+	}
+
+	public static AbstractHttpEntity getCompressedEntity(byte[] data, ContentResolver resolver) throws IOException {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void close() {
+		throw new RuntimeException("Stub!");
+	}
+
+	@Override
+	public HttpParams getParams() {
+		throw new RuntimeException("Stub!");
+	}
+
+	@Override
+	public ClientConnectionManager getConnectionManager() {
+		throw new RuntimeException("Stub!");
+	}
+
+	@Override
+	public HttpResponse execute(HttpUriRequest request) throws IOException {
+		throw new RuntimeException("Stub!");
+	}
+
+	@Override
+	public HttpResponse execute(HttpUriRequest request, HttpContext context) throws IOException {
+		throw new RuntimeException("Stub!");
+	}
+
+	@Override
+	public HttpResponse execute(HttpHost target, HttpRequest request) throws IOException {
+		throw new RuntimeException("Stub!");
+	}
+
+	@Override
+	public HttpResponse execute(HttpHost target, HttpRequest request, HttpContext context) throws IOException {
+		throw new RuntimeException("Stub!");
+	}
+
+	@Override
+	public <T> T execute(HttpUriRequest request, ResponseHandler<? extends T> responseHandler) throws IOException {
+		throw new RuntimeException("Stub!");
+	}
+
+	@Override
+	public <T> T execute(HttpUriRequest request, ResponseHandler<? extends T> responseHandler, HttpContext context)
+			throws IOException {
+		throw new RuntimeException("Stub!");
+	}
+
+	@Override
+	public <T> T execute(HttpHost target, HttpRequest request, ResponseHandler<? extends T> responseHandler) throws IOException {
+		throw new RuntimeException("Stub!");
+	}
+
+	@Override
+	public <T> T execute(HttpHost target, HttpRequest request, ResponseHandler<? extends T> responseHandler, HttpContext context)
+			throws IOException {
+		throw new RuntimeException("Stub!");
+	}
+}
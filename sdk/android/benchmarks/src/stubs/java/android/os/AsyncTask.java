@@ -0,0 +1,54 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * AsyncTask.java
+ */
+
+package android.os;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Stub of the Android class, for the JVM benchmarks
+ */
+public abstract class AsyncTask<Params, Progress, Result> {
+	public static final Executor THREAD_POOL_EXECUTOR = null;
+
+	public static final Executor SERIAL_EXECUTOR = null;
+
+	@SuppressWarnings("unchecked")
+	protected abstract Result doInBackground(Params... params);
+
+	protected void onPreExecute() {
+	}
+
+	protected void onPostExecute(Result result) {
+	}
+
+	@SafeVarargs
+	public final AsyncTask<Params, Progress, Result> execute(Params... params) {
+		throw new RuntimeException("Stub!");
+	}
+
+	@SafeVarargs
+	public final AsyncTask<Params, Progress, Result> executeOnExecutor(Executor exec, Params... params) {
+		throw new RuntimeException("Stub!");
+	}
+}
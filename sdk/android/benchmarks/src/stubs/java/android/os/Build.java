@@ -0,0 +1,52 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * Build.java
+ */
+
+package android.os;
+
+/**
+ * Stub of the Android class, for the JVM benchmarks. The values describe the
+ * project target
+ */
+public class Build {
+	public static final String PRODUCT = "jvm";
+
+	public static final String CPU_ABI = System.getProperty("os.arch");
+
+	public static final String MODEL = "jvm";
+
+	public static final String MANUFACTURER = "jvm";
+
+	public static class VERSION {
+		public static final String RELEASE = "4.3";
+
+		public static final int SDK_INT = 18;
+	}
+
+	public static class VERSION_CODES {
+		public static final int FROYO = 8;
+
+		public static final int GINGERBREAD = 9;
+
+		public static final int HONEYCOMB = 11;
+	}
+}
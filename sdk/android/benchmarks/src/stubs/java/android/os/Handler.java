@@ -0,0 +1,44 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * Handler.java
+ */
+
+package android.os;
+
+/**
+ * Stub of the Android class, for the JVM benchmarks. Handlers can be created,
+ * but not used
+ */
+public class Handler {
+	public Handler() {
+	}
+
+	public Handler(Looper looper) {
+	}
+
+	public final boolean post(Runnable r) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public final boolean postDelayed(Runnable r, long delayMillis) {
+		throw new RuntimeException("Stub!");
+	}
+}
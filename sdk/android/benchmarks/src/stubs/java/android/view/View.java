@@ -0,0 +1,67 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * View.java
+ */
+
+package android.view;
+
+import android.content.Context;
+
+/**
+ * Stub of the Android class, for the JVM benchmarks
+ */
+public class View {
+	public static final int GONE = 8;
+
+	public static final int FOCUS_DOWN = 130;
+
+	public interface OnTouchListener {
+		boolean onTouch(View v, MotionEvent event);
+	}
+
+	public View(Context context) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public boolean hasFocus() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public final boolean requestFocus() {
+		throw new RuntimeException("Stub!");
+	}
+
+	public final boolean requestFocus(int direction) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void setVisibility(int visibility) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void setLayoutParams(ViewGroup.LayoutParams params) {
+		throw new RuntimeException("Stub!");
+	}
+
+	public void setOnTouchListener(OnTouchListener l) {
+		throw new RuntimeException("Stub!");
+	}
+}
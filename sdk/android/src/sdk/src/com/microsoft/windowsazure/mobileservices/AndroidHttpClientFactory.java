@@ -23,12 +23,14 @@ package com.microsoft.windowsazure.mobileservices;
 import android.net.http.AndroidHttpClient;
 
 /**
- * Factory for AndroidHttpClient instances
+ * Factory for the AndroidHttpClient shared by the requests of a
+ * MobileServiceClient
  */
 public interface AndroidHttpClientFactory {
 	
 	/**
-	 * Creates a new AndroidHttpClient
+	 * Creates a new AndroidHttpClient. The instance is reused for many requests
+	 * until the MobileServiceClient is closed
 	 * @return A new AndroidHttpClient
 	 */
 	public AndroidHttpClient createAndroidHttpClient();
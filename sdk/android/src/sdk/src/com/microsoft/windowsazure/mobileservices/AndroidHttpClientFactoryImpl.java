@@ -20,16 +20,121 @@ See the Apache Version 2.0 License for specific language governing permissions a
 
 package com.microsoft.windowsazure.mobileservices;
 
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
 import android.net.http.AndroidHttpClient;
 
 /**
- * Default implementation for AndroidHttpClientFactory
+ * Default implementation for AndroidHttpClientFactory. The created
+ * AndroidHttpClient is shared by all the requests of a MobileServiceClient, so
+ * it is configured as a connection pool that keeps connections alive per route
  */
 public class AndroidHttpClientFactoryImpl implements AndroidHttpClientFactory {
 
+	/**
+	 * Default maximum number of pooled connections
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+	/**
+	 * Default maximum number of pooled connections per route
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+
+	/**
+	 * Default time, in milliseconds, an idle connection is kept in the pool
+	 */
+	public static final long DEFAULT_IDLE_CONNECTION_TIMEOUT = 30000;
+
+	/**
+	 * Maximum number of pooled connections
+	 */
+	private int mMaxConnections;
+
+	/**
+	 * Maximum number of pooled connections per route
+	 */
+	private int mMaxConnectionsPerRoute;
+
+	/**
+	 * Time, in milliseconds, an idle connection is kept in the pool
+	 */
+	private long mIdleConnectionTimeout;
+
+	/**
+	 * Creates a factory using the default pool configuration
+	 */
+	public AndroidHttpClientFactoryImpl() {
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_ROUTE,
+				DEFAULT_IDLE_CONNECTION_TIMEOUT);
+	}
+
+	/**
+	 * Creates a factory using the specified pool configuration
+	 * 
+	 * @param maxConnections
+	 *            Maximum number of pooled connections
+	 * @param maxConnectionsPerRoute
+	 *            Maximum number of pooled connections per route
+	 * @param idleConnectionTimeout
+	 *            Time, in milliseconds, an idle connection is kept in the pool
+	 */
+	public AndroidHttpClientFactoryImpl(int maxConnections,
+			int maxConnectionsPerRoute, long idleConnectionTimeout) {
+		if (maxConnections <= 0) {
+			throw new IllegalArgumentException("maxConnections must be greater than zero");
+		}
+
+		if (maxConnectionsPerRoute <= 0 || maxConnectionsPerRoute > maxConnections) {
+			throw new IllegalArgumentException("maxConnectionsPerRoute must be between 1 and maxConnections");
+		}
+
+		if (idleConnectionTimeout <= 0) {
+			throw new IllegalArgumentException("idleConnectionTimeout must be greater than zero");
+		}
+
+		mMaxConnections = maxConnections;
+		mMaxConnectionsPerRoute = maxConnectionsPerRoute;
+		mIdleConnectionTimeout = idleConnectionTimeout;
+	}
+
 	@Override
 	public AndroidHttpClient createAndroidHttpClient() {
-		return AndroidHttpClient.newInstance(MobileServiceConnection.getUserAgent());
+		AndroidHttpClient client = AndroidHttpClient.newInstance(MobileServiceConnection.getUserAgent());
+
+		// The connection manager reads the pool limits from the client
+		// parameters every time a connection is requested
+		HttpParams params = client.getParams();
+		ConnManagerParams.setMaxTotalConnections(params, mMaxConnections);
+		ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(mMaxConnectionsPerRoute));
+
+		// Pooled connections may be closed by the server while idle
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+
+		return client;
 	}
 
+	/**
+	 * Returns the maximum number of pooled connections
+	 */
+	public int getMaxConnections() {
+		return mMaxConnections;
+	}
+
+	/**
+	 * Returns the maximum number of pooled connections per route
+	 */
+	public int getMaxConnectionsPerRoute() {
+		return mMaxConnectionsPerRoute;
+	}
+
+	/**
+	 * Returns the time, in milliseconds, an idle connection is kept in the pool
+	 */
+	public long getIdleConnectionTimeout() {
+		return mIdleConnectionTimeout;
+	}
 }
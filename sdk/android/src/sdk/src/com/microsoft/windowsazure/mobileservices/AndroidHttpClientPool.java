@@ -0,0 +1,116 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * AndroidHttpClientPool.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionManager;
+
+import android.net.http.AndroidHttpClient;
+
+/**
+ * Holds the AndroidHttpClient shared by a MobileServiceClient and the clients
+ * derived from it, so connections are kept alive and reused between requests
+ */
+final class AndroidHttpClientPool {
+
+	/**
+	 * Factory used to create the shared client
+	 */
+	private final AndroidHttpClientFactory mFactory;
+
+	/**
+	 * The shared client, created on first use
+	 */
+	private AndroidHttpClient mClient;
+
+	/**
+	 * Last time, in milliseconds, idle connections were evicted
+	 */
+	private long mLastEviction;
+
+	/**
+	 * Constructor
+	 *
+	 * @param factory
+	 *            The factory used to create the shared client
+	 */
+	AndroidHttpClientPool(AndroidHttpClientFactory factory) {
+		if (factory == null) {
+			throw new IllegalArgumentException("factory cannot be null");
+		}
+
+		mFactory = factory;
+	}
+
+	/**
+	 * Returns the factory used to create the shared client
+	 */
+	AndroidHttpClientFactory getFactory() {
+		return mFactory;
+	}
+
+	/**
+	 * Returns the shared client, creating it if needed. Connections that were
+	 * idle longer than the configured timeout are closed before returning
+	 */
+	synchronized AndroidHttpClient getClient() {
+		long now = System.currentTimeMillis();
+		long idleTimeout = getIdleConnectionTimeout();
+
+		if (mClient == null) {
+			mClient = mFactory.createAndroidHttpClient();
+			mLastEviction = now;
+		} else if (now - mLastEviction >= idleTimeout) {
+			ClientConnectionManager connectionManager = mClient.getConnectionManager();
+			connectionManager.closeExpiredConnections();
+			connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+			mLastEviction = now;
+		}
+
+		return mClient;
+	}
+
+	/**
+	 * Closes the shared client and all its pooled connections. A new client is
+	 * created if the pool is used again
+	 */
+	synchronized void close() {
+		if (mClient != null) {
+			mClient.close();
+			mClient = null;
+		}
+	}
+
+	/**
+	 * Returns the time, in milliseconds, an idle connection is kept in the pool
+	 */
+	private long getIdleConnectionTimeout() {
+		if (mFactory instanceof AndroidHttpClientFactoryImpl) {
+			return ((AndroidHttpClientFactoryImpl) mFactory).getIdleConnectionTimeout();
+		}
+
+		return AndroidHttpClientFactoryImpl.DEFAULT_IDLE_CONNECTION_TIMEOUT;
+	}
+}
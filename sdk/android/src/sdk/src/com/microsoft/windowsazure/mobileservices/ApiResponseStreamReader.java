@@ -0,0 +1,48 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * ApiResponseStreamReader.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.io.InputStream;
+
+/**
+ * Reads the response content of a custom API invocation as it's received, so
+ * it doesn't need to be held in memory
+ */
+public interface ApiResponseStreamReader {
+	/**
+	 * Method to call when a successful response is received. It's called on
+	 * the thread that executed the request, not on the callback thread, and
+	 * the content is closed after it returns
+	 * 
+	 * @param content
+	 *            The ungzipped response content, or null if the response has
+	 *            no content
+	 * @param response
+	 *            The response. Calling getContent or getRawContent reads the
+	 *            whole content into memory, so the stream can't be used then
+	 * @throws Exception
+	 *             An error that's reported to the invocation callback
+	 */
+	public void read(InputStream content, ServiceFilterResponse response) throws Exception;
+}
@@ -0,0 +1,233 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * BatchOperation.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Executes an operation for each item of a list, keeping at most a fixed
+ * number of them in progress, and reports all the results together
+ * 
+ * @param <I>
+ *            The item type
+ * @param <R>
+ *            The result type
+ */
+abstract class BatchOperation<I, R> {
+
+	/**
+	 * The items to process
+	 */
+	private final List<I> mItems;
+
+	/**
+	 * Maximum number of operations in progress
+	 */
+	private final int mMaxConcurrentRequests;
+
+	/**
+	 * The result of each item
+	 */
+	private final List<R> mResults;
+
+	/**
+	 * The exception of each item
+	 */
+	private final List<Exception> mExceptions;
+
+	/**
+	 * The response of each item
+	 */
+	private final List<ServiceFilterResponse> mResponses;
+
+	/**
+	 * Index of the next item to start
+	 */
+	private int mNextItem = 0;
+
+	/**
+	 * Number of items completed
+	 */
+	private int mCompletedItems = 0;
+
+	/**
+	 * Number of items to start as soon as possible
+	 */
+	private int mPendingStarts = 0;
+
+	/**
+	 * Indicates if a thread is starting items
+	 */
+	private boolean mStarting = false;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param items
+	 *            The items to process
+	 * @param maxConcurrentRequests
+	 *            Maximum number of operations in progress
+	 */
+	BatchOperation(List<? extends I> items, int maxConcurrentRequests) {
+		if (items == null) {
+			throw new IllegalArgumentException("The list of items cannot be null");
+		}
+
+		if (maxConcurrentRequests < 1) {
+			throw new IllegalArgumentException("maxConcurrentRequests must be greater than zero");
+		}
+
+		mItems = new ArrayList<I>(items);
+		mMaxConcurrentRequests = maxConcurrentRequests;
+
+		int size = mItems.size();
+		mResults = new ArrayList<R>(size);
+		mExceptions = new ArrayList<Exception>(size);
+		mResponses = new ArrayList<ServiceFilterResponse>(size);
+
+		for (int i = 0; i < size; i++) {
+			mResults.add(null);
+			mExceptions.add(null);
+			mResponses.add(null);
+		}
+	}
+
+	/**
+	 * Starts the operations
+	 */
+	void start() {
+		if (mItems.isEmpty()) {
+			onCompleted(mResults, mExceptions, mResponses);
+		} else {
+			startItems(Math.min(mMaxConcurrentRequests, mItems.size()));
+		}
+	}
+
+	/**
+	 * Starts the operation for an item. It must invoke onItemCompleted when
+	 * the operation finishes
+	 * 
+	 * @param item
+	 *            The item
+	 * @param index
+	 *            The index of the item
+	 */
+	protected abstract void executeItem(I item, int index);
+
+	/**
+	 * Invoked once, after all the operations finish
+	 * 
+	 * @param results
+	 *            The result of each item
+	 * @param exceptions
+	 *            The exception of each item
+	 * @param responses
+	 *            The response of each item
+	 */
+	protected abstract void onCompleted(List<R> results, List<Exception> exceptions, List<ServiceFilterResponse> responses);
+
+	/**
+	 * Stores the result of an item and starts the next one
+	 * 
+	 * @param index
+	 *            The index of the item
+	 * @param result
+	 *            The result of the operation
+	 * @param exception
+	 *            The exception of the operation, if any
+	 * @param response
+	 *            The response of the operation
+	 */
+	protected void onItemCompleted(int index, R result, Exception exception, ServiceFilterResponse response) {
+		boolean completed;
+
+		synchronized (this) {
+			mResults.set(index, result);
+			mExceptions.set(index, exception);
+			mResponses.set(index, response);
+			mCompletedItems++;
+			completed = mCompletedItems == mItems.size();
+		}
+
+		if (completed) {
+			onCompleted(mResults, mExceptions, mResponses);
+		} else {
+			startItems(1);
+		}
+	}
+
+	/**
+	 * Starts items. Operations completed synchronously queue their next item
+	 * instead of starting it recursively
+	 * 
+	 * @param count
+	 *            The number of items to start
+	 */
+	private void startItems(int count) {
+		synchronized (this) {
+			mPendingStarts += count;
+
+			if (mStarting) {
+				return;
+			}
+
+			mStarting = true;
+		}
+
+		boolean finished = false;
+
+		try {
+			while (true) {
+				int index;
+
+				synchronized (this) {
+					if (mPendingStarts == 0 || mNextItem == mItems.size()) {
+						mPendingStarts = 0;
+						mStarting = false;
+						finished = true;
+						return;
+					}
+
+					mPendingStarts--;
+					index = mNextItem++;
+				}
+
+				try {
+					executeItem(mItems.get(index), index);
+				} catch (RuntimeException e) {
+					// The item failed before its operation was started
+					onItemCompleted(index, null, e, null);
+				}
+			}
+		} finally {
+			// Allow later completions to start items if a callback threw
+			if (!finished) {
+				synchronized (this) {
+					mStarting = false;
+				}
+			}
+		}
+	}
+}
@@ -22,7 +22,9 @@ package com.microsoft.windowsazure.mobileservices;
 import java.lang.reflect.Type;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.GregorianCalendar;
 import java.util.Locale;
 import java.util.TimeZone;
 
@@ -37,11 +39,38 @@ import com.google.gson.JsonSerializer;
 
 /**
  * Date Serializer/Deserializer to make Mobile Services and Java dates
- * compatible
+ * compatible.
+ * 
+ * Dates are formatted and parsed by hand, without creating a
+ * SimpleDateFormat per call, and the class keeps no state, so it can be
+ * shared across threads
  */
 @SuppressLint("SimpleDateFormat")
 class DateSerializer implements JsonSerializer<Date>, JsonDeserializer<Date> {
 
+	private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+	/**
+	 * Days from 0000-03-01 to 1970-01-01 in the proleptic Gregorian calendar
+	 */
+	private static final long DAYS_TO_EPOCH = 719468;
+
+	/**
+	 * First year handled by the calendar arithmetic. Earlier dates follow the
+	 * Julian calendar, as in SimpleDateFormat
+	 */
+	private static final int MIN_GREGORIAN_YEAR = 1583;
+
+	/**
+	 * Last year with four digits
+	 */
+	private static final int MAX_YEAR = 9999;
+
+	/**
+	 * Length of a formatted date, as in 2013-11-01T10:30:00.000Z
+	 */
+	private static final int FORMATTED_LENGTH = 24;
+
 	/**
 	 * Deserializes a JsonElement containing an ISO-8601 formatted date
 	 */
@@ -69,41 +98,211 @@ class DateSerializer implements JsonSerializer<Date>, JsonDeserializer<Date> {
 	}
 
 	/**
-	 * Deserializes an ISO-8601 formatted date
+	 * Deserializes an ISO-8601 formatted date, as in 2013-11-01T10:30:00Z.
+	 * The fractional seconds are optional and can have any number of digits,
+	 * of which milliseconds are kept. The time zone can be Z, an offset like
+	 * +01:00 or +0100, or missing for UTC
 	 */
 	public static Date deserialize(String strVal) throws ParseException {
-		// Change Z to +00:00 to adapt the string to a format
-		// that can be parsed in Java
-		String s = strVal.replace("Z", "+00:00");
-		try {
-			// Remove the ":" character to adapt the string to a
-			// format
-			// that can be parsed in Java
-			s = s.substring(0, 26) + s.substring(27);
-		} catch (IndexOutOfBoundsException e) {
-			throw new JsonParseException("Invalid length");
+		if (strVal == null) {
+			throw new ParseException("The date cannot be null", 0);
+		}
+
+		int length = strVal.length();
+
+		int year = parseDigits(strVal, 0, 4);
+		expect(strVal, 4, '-');
+		int month = parseDigits(strVal, 5, 2);
+		expect(strVal, 7, '-');
+		int day = parseDigits(strVal, 8, 2);
+		expect(strVal, 10, 'T');
+		int hour = parseDigits(strVal, 11, 2);
+		expect(strVal, 13, ':');
+		int minute = parseDigits(strVal, 14, 2);
+		expect(strVal, 16, ':');
+		int second = parseDigits(strVal, 17, 2);
+
+		int pos = 19;
+		int millis = 0;
+
+		if (pos < length && strVal.charAt(pos) == '.') {
+			pos++;
+			int start = pos;
+
+			while (pos < length && isDigit(strVal.charAt(pos))) {
+				// Digits after the milliseconds are truncated
+				if (pos - start < 3) {
+					millis = millis * 10 + (strVal.charAt(pos) - '0');
+				}
+
+				pos++;
+			}
+
+			if (pos == start) {
+				throw new ParseException("Invalid fractional seconds in date " + strVal, pos);
+			}
+
+			for (int i = pos - start; i < 3; i++) {
+				millis *= 10;
+			}
+		}
+
+		int offsetMinutes = 0;
+
+		if (pos < length) {
+			char zone = strVal.charAt(pos);
+
+			if (zone == 'Z' || zone == 'z') {
+				pos++;
+			} else if (zone == '+' || zone == '-') {
+				int offsetHours = parseDigits(strVal, pos + 1, 2);
+				pos += 3;
+
+				if (pos < length) {
+					if (strVal.charAt(pos) == ':') {
+						pos++;
+					}
+
+					offsetMinutes = parseDigits(strVal, pos, 2);
+					pos += 2;
+				}
+
+				offsetMinutes += offsetHours * 60;
+
+				if (zone == '-') {
+					offsetMinutes = -offsetMinutes;
+				}
+			}
+
+			if (pos != length) {
+				throw new ParseException("Invalid time zone in date " + strVal, pos);
+			}
+		}
+
+		if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59) {
+			throw new ParseException("Invalid date " + strVal, 0);
 		}
 
-		// Parse the well-formatted date string
-		SimpleDateFormat dateFormat = new SimpleDateFormat(
-				"yyyy-MM-dd'T'HH:mm:ss'.'SSSZ");
-		dateFormat.setTimeZone(TimeZone.getDefault());
-		Date date = dateFormat.parse(s);
+		long time;
+
+		if (year >= MIN_GREGORIAN_YEAR) {
+			time = daysFromCivil(year, month, day) * MILLIS_PER_DAY + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+		} else {
+			Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+			calendar.clear();
+			calendar.set(year, month - 1, day, hour, minute, second);
+			calendar.set(Calendar.MILLISECOND, millis);
+			time = calendar.getTimeInMillis();
+		}
 
-		return date;
+		return new Date(time - offsetMinutes * 60000L);
 	}
 
 	/**
-	 * Serializes a Date object to an ISO-8601 formatted date string
+	 * Serializes a Date object to an ISO-8601 formatted date string, in UTC
+	 * and with milliseconds
 	 */
 	public static String serialize(Date date) {
-		SimpleDateFormat dateFormat = new SimpleDateFormat(
-				"yyyy-MM-dd'T'HH:mm:ss'.'SSS'Z'", Locale.getDefault());
-		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		long time = date.getTime();
+		long days = time / MILLIS_PER_DAY;
+		long millisOfDay = time % MILLIS_PER_DAY;
+
+		if (millisOfDay < 0) {
+			days--;
+			millisOfDay += MILLIS_PER_DAY;
+		}
+
+		// Civil date from the days since the epoch, in the proleptic
+		// Gregorian calendar
+		long z = days + DAYS_TO_EPOCH;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long mp = (5 * dayOfYear + 2) / 153;
+		int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+		int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		if (year < MIN_GREGORIAN_YEAR || year > MAX_YEAR) {
+			SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'.'SSS'Z'", Locale.US);
+			dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+			return dateFormat.format(date);
+		}
+
+		int millisInDay = (int) millisOfDay;
+		char[] chars = new char[FORMATTED_LENGTH];
+
+		writeDigits(chars, 0, (int) year, 4);
+		chars[4] = '-';
+		writeDigits(chars, 5, month, 2);
+		chars[7] = '-';
+		writeDigits(chars, 8, day, 2);
+		chars[10] = 'T';
+		writeDigits(chars, 11, millisInDay / 3600000, 2);
+		chars[13] = ':';
+		writeDigits(chars, 14, millisInDay / 60000 % 60, 2);
+		chars[16] = ':';
+		writeDigits(chars, 17, millisInDay / 1000 % 60, 2);
+		chars[19] = '.';
+		writeDigits(chars, 20, millisInDay % 1000, 3);
+		chars[23] = 'Z';
+
+		return new String(chars);
+	}
+
+	/**
+	 * Returns the days since the epoch of a date in the proleptic Gregorian
+	 * calendar
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		if (month <= 2) {
+			year--;
+		}
 
-		String formatted = dateFormat.format(date);
+		long era = (year >= 0 ? year : year - 399) / 400;
+		long yearOfEra = year - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
 
-		return formatted;
+		return era * 146097 + dayOfEra - DAYS_TO_EPOCH;
 	}
 
+	private static int parseDigits(String s, int start, int count) throws ParseException {
+		if (start + count > s.length()) {
+			throw new ParseException("Invalid length of date " + s, s.length());
+		}
+
+		int value = 0;
+
+		for (int i = start; i < start + count; i++) {
+			char c = s.charAt(i);
+
+			if (!isDigit(c)) {
+				throw new ParseException("Invalid character in date " + s, i);
+			}
+
+			value = value * 10 + (c - '0');
+		}
+
+		return value;
+	}
+
+	private static void expect(String s, int position, char expected) throws ParseException {
+		if (position >= s.length() || s.charAt(position) != expected) {
+			throw new ParseException("Expected '" + expected + "' in date " + s, position);
+		}
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static void writeDigits(char[] chars, int start, int value, int count) {
+		for (int i = start + count - 1; i >= start; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
 }
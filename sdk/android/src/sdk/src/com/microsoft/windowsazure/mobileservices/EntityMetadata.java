@@ -0,0 +1,231 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * EntityMetadata.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.lang.reflect.Field;
+import java.util.EnumSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Reflection information about an entity class. It's resolved once per class
+ * and cached, so the declared fields and their annotations are not scanned
+ * on every operation
+ */
+final class EntityMetadata {
+
+	/**
+	 * Metadata of the classes resolved so far
+	 */
+	private static final ConcurrentHashMap<Class<?>, EntityMetadata> sCache = new ConcurrentHashMap<Class<?>, EntityMetadata>();
+
+	/**
+	 * The id field, or null if the class has no id property
+	 */
+	private final Field mIdField;
+
+	/**
+	 * Number of fields defined or annotated as id
+	 */
+	private final int mIdPropertyCount;
+
+	/**
+	 * The id property name used for JSON serialization, or an empty string if
+	 * the class has no id property
+	 */
+	private final String mIdPropertyName;
+
+	/**
+	 * The system properties defined or annotated in the class
+	 */
+	private final EnumSet<MobileServiceSystemProperty> mSystemProperties;
+
+	/**
+	 * The declared fields
+	 */
+	private final Field[] mFields;
+
+	/**
+	 * Indicates if the declared fields were made accessible
+	 */
+	private volatile boolean mFieldsAccessible = false;
+
+	/**
+	 * Returns the metadata of a class, resolving it on first use
+	 * 
+	 * @param clazz
+	 *            The entity class
+	 */
+	static EntityMetadata get(Class<?> clazz) {
+		EntityMetadata metadata = sCache.get(clazz);
+
+		if (metadata == null) {
+			metadata = new EntityMetadata(clazz);
+			EntityMetadata existing = sCache.putIfAbsent(clazz, metadata);
+
+			if (existing != null) {
+				metadata = existing;
+			}
+		}
+
+		return metadata;
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param clazz
+	 *            The entity class
+	 */
+	private EntityMetadata(Class<?> clazz) {
+		Field[] fields = clazz.getDeclaredFields();
+
+		Field idField = null;
+		int idPropertyCount = 0;
+		String idPropertyName = null;
+
+		for (Field field : fields) {
+			SerializedName serializedName = field.getAnnotation(SerializedName.class);
+			String name = serializedName != null ? serializedName.value() : field.getName();
+
+			// Search for id properties, regardless case
+			if (name.equalsIgnoreCase("id")) {
+				if (idField == null) {
+					idField = field;
+				}
+
+				idPropertyCount++;
+			}
+
+			if (idPropertyName == null) {
+				if (serializedName != null && serializedName.value().equalsIgnoreCase("id")) {
+					idPropertyName = serializedName.value();
+				} else if (field.getName().equalsIgnoreCase("id")) {
+					idPropertyName = field.getName();
+				}
+			}
+		}
+
+		EnumSet<MobileServiceSystemProperty> systemProperties = EnumSet.noneOf(MobileServiceSystemProperty.class);
+
+		// System properties are only supported with string ids
+		if (idField != null && !MobileServiceTableBase.isIntegerClass(idField.getType())) {
+			for (Field field : fields) {
+				SerializedName serializedName = field.getAnnotation(SerializedName.class);
+				String name = serializedName != null ? serializedName.value() : field.getName();
+
+				MobileServiceSystemProperty systemProperty = MobileServiceTableBase.SystemPropertyNameToEnum.get(name);
+
+				if (systemProperty != null) {
+					systemProperties.add(systemProperty);
+				}
+			}
+		}
+
+		mIdField = idField;
+		mIdPropertyCount = idPropertyCount;
+		mIdPropertyName = idPropertyName != null ? idPropertyName : "";
+		mSystemProperties = systemProperties;
+		mFields = fields;
+	}
+
+	/**
+	 * Returns the id field, or null if the class has no id property
+	 */
+	Field getIdField() {
+		return mIdField;
+	}
+
+	/**
+	 * Returns the id property class, or null if the class has no id property
+	 */
+	Class<?> getIdPropertyClass() {
+		return mIdField != null ? mIdField.getType() : null;
+	}
+
+	/**
+	 * Returns the number of fields defined or annotated as id
+	 */
+	int getIdPropertyCount() {
+		return mIdPropertyCount;
+	}
+
+	/**
+	 * Returns the id property name used for JSON serialization, or an empty
+	 * string if the class has no id property
+	 */
+	String getIdPropertyName() {
+		return mIdPropertyName;
+	}
+
+	/**
+	 * Returns a copy of the system properties defined or annotated in the
+	 * class
+	 */
+	EnumSet<MobileServiceSystemProperty> getSystemProperties() {
+		return EnumSet.copyOf(mSystemProperties);
+	}
+
+	/**
+	 * Returns the declared fields, made accessible. The array must not be
+	 * modified
+	 */
+	Field[] getAccessibleFields() {
+		if (!mFieldsAccessible) {
+			for (Field field : mFields) {
+				field.setAccessible(true);
+			}
+
+			mFieldsAccessible = true;
+		}
+
+		return mFields;
+	}
+
+	/**
+	 * Returns the field serialized with the given name, made accessible, or
+	 * null if there isn't one. The id field is found regardless case
+	 * 
+	 * @param name
+	 *            The serialized name
+	 */
+	Field getAccessibleField(String name) {
+		if (name.equalsIgnoreCase("id") && mIdField != null) {
+			getAccessibleFields();
+			return mIdField;
+		}
+
+		for (Field field : getAccessibleFields()) {
+			SerializedName serializedName = field.getAnnotation(SerializedName.class);
+			String fieldName = serializedName != null ? serializedName.value() : field.getName();
+
+			if (fieldName.equals(name)) {
+				return field;
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,223 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * EntitySnapshots.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Serialized snapshots of the entities returned by the service, used to find
+ * the properties changed before an update. Entities are matched by identity,
+ * not by equals, and their snapshots are discarded once they are garbage
+ * collected.
+ * 
+ * WeakHashMap can't be used: it matches its keys with equals and hashCode,
+ * which entities may override, and wrapping the entities in a key compared by
+ * identity doesn't help, since the map would hold the only strong reference
+ * to the wrapper, which would be collected right away. Instead, the entries
+ * themselves are the weak references, indexed by identity hash code
+ */
+final class EntitySnapshots {
+
+	/**
+	 * A snapshot, weakly referencing its entity. Once the entity is collected,
+	 * the entry is enqueued in mQueue
+	 */
+	private static final class Entry extends WeakReference<Object> {
+		/**
+		 * The identity hash code of the entity, kept to find the entry once
+		 * the entity is collected
+		 */
+		final int mHash;
+
+		/**
+		 * The serialized entity
+		 */
+		JsonObject mSnapshot;
+
+		/**
+		 * The next entry whose entity has the same identity hash code, or
+		 * null
+		 */
+		Entry mNext;
+
+		Entry(Object entity, JsonObject snapshot, ReferenceQueue<Object> queue) {
+			super(entity, queue);
+			mHash = System.identityHashCode(entity);
+			mSnapshot = snapshot;
+		}
+	}
+
+	/**
+	 * The entries whose entities were collected, removed by expunge
+	 */
+	private final ReferenceQueue<Object> mQueue = new ReferenceQueue<Object>();
+
+	/**
+	 * The first entry of each chain of entries, by identity hash code. Distinct
+	 * entities may share an identity hash code, so they are told apart by
+	 * comparing the referents
+	 */
+	private final Map<Integer, Entry> mEntries = new HashMap<Integer, Entry>();
+
+	/**
+	 * Sets the snapshot of an entity
+	 */
+	synchronized void put(Object entity, JsonObject snapshot) {
+		expunge();
+
+		Entry entry = find(entity);
+
+		if (entry != null) {
+			entry.mSnapshot = snapshot;
+		} else {
+			entry = new Entry(entity, snapshot, mQueue);
+			entry.mNext = mEntries.get(entry.mHash);
+			mEntries.put(entry.mHash, entry);
+		}
+	}
+
+	/**
+	 * Serializes an entity and sets it as its snapshot. Entities that aren't
+	 * serialized as objects are ignored
+	 * 
+	 * @param entity
+	 *            The entity, which may be null
+	 * @param gson
+	 *            The Gson instance used to serialize it
+	 */
+	void take(Object entity, Gson gson) {
+		JsonObject snapshot = serialize(entity, gson);
+
+		if (snapshot != null) {
+			put(entity, snapshot);
+		}
+	}
+
+	/**
+	 * Serializes the snapshot of an entity
+	 * 
+	 * @param entity
+	 *            The entity, which may be null
+	 * @param gson
+	 *            The Gson instance used to serialize it
+	 * @return The snapshot, or null if the entity is null or isn't serialized
+	 *         as an object
+	 */
+	static JsonObject serialize(Object entity, Gson gson) {
+		if (entity == null) {
+			return null;
+		}
+
+		JsonElement snapshot = gson.toJsonTree(entity);
+
+		return snapshot.isJsonObject() ? snapshot.getAsJsonObject() : null;
+	}
+
+	/**
+	 * Returns the snapshot of an entity, or null if there isn't one
+	 */
+	synchronized JsonObject get(Object entity) {
+		expunge();
+
+		Entry entry = find(entity);
+
+		return entry != null ? entry.mSnapshot : null;
+	}
+
+	/**
+	 * Discards the snapshot of an entity, if there is one
+	 */
+	synchronized void remove(Object entity) {
+		expunge();
+
+		Entry entry = find(entity);
+
+		if (entry != null) {
+			unlink(entry);
+		}
+	}
+
+	/**
+	 * Discards every snapshot
+	 */
+	synchronized void clear() {
+		mEntries.clear();
+
+		while (mQueue.poll() != null) {
+		}
+	}
+
+	private Entry find(Object entity) {
+		for (Entry entry = mEntries.get(System.identityHashCode(entity)); entry != null; entry = entry.mNext) {
+			if (entry.get() == entity) {
+				return entry;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Removes the entries of the collected entities
+	 */
+	private void expunge() {
+		Object reference;
+
+		while ((reference = mQueue.poll()) != null) {
+			unlink((Entry) reference);
+		}
+	}
+
+	/**
+	 * Removes an entry from its chain, if it's still there
+	 */
+	private void unlink(Entry removed) {
+		Entry entry = mEntries.get(removed.mHash);
+		Entry previous = null;
+
+		while (entry != null && entry != removed) {
+			previous = entry;
+			entry = entry.mNext;
+		}
+
+		if (entry == null) {
+			return;
+		}
+
+		if (previous != null) {
+			previous.mNext = entry.mNext;
+		} else if (entry.mNext != null) {
+			mEntries.put(entry.mHash, entry.mNext);
+		} else {
+			mEntries.remove(entry.mHash);
+		}
+	}
+}
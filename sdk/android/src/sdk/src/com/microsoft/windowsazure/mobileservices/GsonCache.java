@@ -0,0 +1,221 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * GsonCache.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import android.util.Pair;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+
+/**
+ * Holds the Gson instance created from a GsonBuilder, so it is only rebuilt
+ * when the builder's configuration changes. It's shared by a
+ * MobileServiceClient and the clients derived from it.
+ * 
+ * The entity adapters and writers bind the fields of a class directly. They
+ * are only used when the fields are known to be bound by their names: the
+ * builder was never handed out, or the caller declared it, and no adapter
+ * was registered for the class
+ */
+final class GsonCache {
+
+	/**
+	 * The GsonBuilder used to create the Gson instance
+	 */
+	private final GsonBuilder mGsonBuilder;
+
+	/**
+	 * The cached Gson instance
+	 */
+	private Gson mGson;
+
+	/**
+	 * Indicates if the builder binds the fields of the entity classes by
+	 * their names. It's not known once the builder is handed out, as it may
+	 * get a naming policy, exclusion strategies or adapters for the classes
+	 */
+	private boolean mPlainFieldBinding;
+
+	/**
+	 * Types with an adapter registered through registerTypeAdapter
+	 */
+	private final Set<Type> mAdaptedTypes = new HashSet<Type>();
+
+	/**
+	 * The entity adapters created for queries with a projection, by class and
+	 * projection
+	 */
+	private final Map<Pair<Class<?>, List<String>>, TypeAdapter<?>> mEntityAdapters = new HashMap<Pair<Class<?>, List<String>>, TypeAdapter<?>>();
+
+	/**
+	 * The writers of typed entities, by class. The value is null for classes
+	 * serialized through a JsonObject tree
+	 */
+	private final Map<Class<?>, TypedEntityWriter<?>> mEntityWriters = new HashMap<Class<?>, TypedEntityWriter<?>>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param gsonBuilder
+	 *            The GsonBuilder used to create the Gson instance
+	 * @param plainFieldBinding
+	 *            True if the builder binds the fields of the entity classes
+	 *            by their names
+	 */
+	GsonCache(GsonBuilder gsonBuilder, boolean plainFieldBinding) {
+		mGsonBuilder = gsonBuilder;
+		mPlainFieldBinding = plainFieldBinding;
+	}
+
+	/**
+	 * Returns the GsonBuilder used to create the Gson instance, to hand it
+	 * out. From then on, its configuration is not known
+	 */
+	synchronized GsonBuilder getGsonBuilder() {
+		mPlainFieldBinding = false;
+		invalidate();
+
+		return mGsonBuilder;
+	}
+
+	/**
+	 * Registers an adapter in the GsonBuilder
+	 * 
+	 * @param type
+	 *            The adapted type
+	 * @param typeAdapter
+	 *            The serializer, deserializer or adapter
+	 */
+	synchronized void registerTypeAdapter(Type type, Object typeAdapter) {
+		mGsonBuilder.registerTypeAdapter(type, typeAdapter);
+		mAdaptedTypes.add(type);
+		invalidate();
+	}
+
+	/**
+	 * Declares whether the GsonBuilder binds the fields of the entity
+	 * classes by their names
+	 */
+	synchronized void setPlainFieldBinding(boolean plainFieldBinding) {
+		mPlainFieldBinding = plainFieldBinding;
+		invalidate();
+	}
+
+	/**
+	 * Indicates if the fields of the entity classes are known to be bound by
+	 * their names
+	 */
+	synchronized boolean hasPlainFieldBinding() {
+		return mPlainFieldBinding;
+	}
+
+	/**
+	 * Returns the Gson instance, creating it if the configuration changed
+	 */
+	synchronized Gson getGson() {
+		if (mGson == null) {
+			mGson = mGsonBuilder.create();
+		}
+
+		return mGson;
+	}
+
+	/**
+	 * Discards the Gson instance, so it's created again with the current
+	 * configuration
+	 */
+	synchronized void invalidate() {
+		mGson = null;
+		mEntityAdapters.clear();
+		mEntityWriters.clear();
+	}
+
+	/**
+	 * Returns the adapter used to deserialize the entities returned by a
+	 * query, creating it on first use
+	 * 
+	 * @param clazz
+	 *            The entity class
+	 * @param projection
+	 *            The selected fields, or null if all of them are returned
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized <E> TypeAdapter<E> getEntityAdapter(Class<E> clazz, List<String> projection) {
+		if (projection == null || projection.isEmpty()) {
+			return getGson().getAdapter(clazz);
+		}
+
+		if (!canBindFields(clazz)) {
+			return getGson().getAdapter(clazz);
+		}
+
+		Pair<Class<?>, List<String>> key = new Pair<Class<?>, List<String>>(clazz, projection);
+		TypeAdapter<E> adapter = (TypeAdapter<E>) mEntityAdapters.get(key);
+
+		if (adapter == null) {
+			adapter = ProjectionTypeAdapter.create(getGson(), clazz, projection);
+			mEntityAdapters.put(new Pair<Class<?>, List<String>>(clazz, new ArrayList<String>(projection)), adapter);
+		}
+
+		return adapter;
+	}
+
+	/**
+	 * Returns the writer used to serialize the entities of a class in insert
+	 * and update requests, creating it on first use
+	 * 
+	 * @param clazz
+	 *            The entity class
+	 * @return The writer, or null if the entities must be serialized through
+	 *         a JsonObject tree
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized <E> TypedEntityWriter<E> getEntityWriter(Class<E> clazz) {
+		if (mEntityWriters.containsKey(clazz)) {
+			return (TypedEntityWriter<E>) mEntityWriters.get(clazz);
+		}
+
+		TypedEntityWriter<E> writer = canBindFields(clazz) ? TypedEntityWriter.create(getGson(), clazz) : null;
+		mEntityWriters.put(clazz, writer);
+
+		return writer;
+	}
+
+	/**
+	 * Indicates if the fields of a class can be bound directly, instead of
+	 * using the adapter of Gson
+	 */
+	private boolean canBindFields(Class<?> clazz) {
+		return hasPlainFieldBinding() && !mAdaptedTypes.contains(clazz);
+	}
+}
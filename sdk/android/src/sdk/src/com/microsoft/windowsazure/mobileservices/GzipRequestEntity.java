@@ -0,0 +1,121 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * GzipRequestEntity.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * Request entity that compresses the content of another entity with gzip
+ * while it's written to the connection, so the compressed content is never
+ * buffered. It's sent with chunked transfer encoding, since the compressed
+ * length is not known in advance
+ */
+class GzipRequestEntity extends HttpEntityWrapper {
+
+	/**
+	 * Content-Encoding value of the entity
+	 */
+	static final String GZIP_CONTENT_ENCODING = "gzip";
+
+	/**
+	 * Size of the compressor buffer
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param entity
+	 *            The entity with the uncompressed content
+	 */
+	GzipRequestEntity(HttpEntity entity) {
+		super(entity);
+	}
+
+	@Override
+	public Header getContentEncoding() {
+		return new BasicHeader("Content-Encoding", GZIP_CONTENT_ENCODING);
+	}
+
+	@Override
+	public boolean isChunked() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		// Only used if the entity is consumed instead of written
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeTo(out);
+
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		if (outstream == null) {
+			throw new IllegalArgumentException("Output stream cannot be null");
+		}
+
+		// Closing the gzip stream ends its Deflater, but the connection
+		// stream must stay open
+		OutputStream unclosable = new FilterOutputStream(outstream) {
+
+			@Override
+			public void write(byte[] buffer, int offset, int length) throws IOException {
+				out.write(buffer, offset, length);
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		};
+
+		GZIPOutputStream gzip = new GZIPOutputStream(unclosable, BUFFER_SIZE);
+
+		try {
+			wrappedEntity.writeTo(gzip);
+			gzip.finish();
+		} finally {
+			gzip.close();
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * IncrementalPullSink.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import com.google.gson.JsonArray;
+
+/**
+ * Destination of the rows retrieved by an incremental pull
+ */
+public interface IncrementalPullSink {
+	/**
+	 * Merges a page of changed rows, ordered by their __updatedAt value. It's
+	 * invoked on a background thread, one page at a time, and the same row
+	 * can be delivered again by later pulls, so merging must be idempotent
+	 * 
+	 * @param rows
+	 *            The rows of the page
+	 * @throws Exception
+	 *             If the rows can't be merged. The pull stops, and the next
+	 *             one starts again from the same page
+	 */
+	public void merge(JsonArray rows) throws Exception;
+}
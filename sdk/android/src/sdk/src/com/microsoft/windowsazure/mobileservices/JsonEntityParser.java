@@ -19,7 +19,8 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices;
 
-import java.lang.reflect.Field;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,7 +28,10 @@ import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.annotations.SerializedName;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 class JsonEntityParser {
 	/**
@@ -43,7 +47,7 @@ class JsonEntityParser {
 	 */
 	public static <E> List<E> parseResults(JsonElement results, Gson gson, Class<E> clazz) {
 		List<E> result = new ArrayList<E>();
-		String idPropertyName = getIdPropertyName(clazz);
+		String idPropertyName = EntityMetadata.get(clazz).getIdPropertyName();
 
 		// Parse results
 		if (results.isJsonArray()) // Query result
@@ -66,26 +70,112 @@ class JsonEntityParser {
 	}
 
 	/**
-	 * Get's the class' id property name
+	 * Parses query results read from a JSON stream to a typed list. The
+	 * entities are deserialized one at a time, without building a JSON tree
+	 * for the whole content, and their id property is renamed as it is read
+	 * 
+	 * @param reader
+	 *            Reader for the JSON content. It is closed after parsing
+	 * @param gson
+	 *            Gson object used for parsing
 	 * @param clazz
-	 * @return Id Property name
+	 *            Target entity class
+	 * @param result
+	 *            List where the entities are added
+	 * @return The count of the inlinecount results, 0 if the content is an
+	 *         array, or -1 if the content is not a query result and must be
+	 *         parsed as a single entity
+	 * @throws IOException
+	 */
+	public static <E> int parseResults(Reader reader, Gson gson, Class<E> clazz, List<E> result) throws IOException {
+		return parseResults(reader, gson.getAdapter(clazz), clazz, result);
+	}
+
+	/**
+	 * Parses the JSON content of a query result into a list of entities, using
+	 * the given adapter to read each entity
+	 * 
+	 * @param reader
+	 *            The JSON content
+	 * @param adapter
+	 *            Adapter used to read the entities
+	 * @param clazz
+	 *            Target entity class
+	 * @param result
+	 *            List where the entities are added
+	 * @return The count of the inlinecount results, 0 if the content is an
+	 *         array, or -1 if the content is not a query result and must be
+	 *         parsed as a single entity
+	 * @throws IOException
+	 */
+	static <E> int parseResults(Reader reader, TypeAdapter<E> adapter, Class<E> clazz, List<E> result) throws IOException {
+		IdPropertyRenamingJsonReader jsonReader = new IdPropertyRenamingJsonReader(reader, EntityMetadata.get(clazz).getIdPropertyName());
+		jsonReader.setLenient(true);
+
+		try {
+			JsonToken token = jsonReader.peek();
+
+			if (token == JsonToken.BEGIN_ARRAY) { // Query result
+				readEntities(jsonReader, adapter, result);
+				return 0;
+			} else if (token == JsonToken.BEGIN_OBJECT) {
+				boolean hasResults = false;
+				boolean hasCount = false;
+				int count = 0;
+
+				jsonReader.beginObject();
+
+				while (jsonReader.hasNext()) {
+					String name = jsonReader.nextName();
+
+					if (!hasResults && name.equals("results") && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+						readEntities(jsonReader, adapter, result);
+						hasResults = true;
+					} else if (!hasCount && name.equals("count")) {
+						count = jsonReader.nextInt();
+						hasCount = true;
+					} else {
+						jsonReader.skipValue();
+					}
+				}
+
+				jsonReader.endObject();
+
+				// inlinecount result
+				if (hasResults && hasCount) {
+					return count;
+				}
+			}
+
+			result.clear();
+			return -1;
+		} finally {
+			jsonReader.close();
+		}
+	}
+
+	/**
+	 * Reads a JSON array of entities
 	 */
-	@SuppressWarnings("rawtypes")
-	private static String getIdPropertyName(Class clazz)
-	{
-		// Search for annotation called id, regardless case
-		for (Field field : clazz.getDeclaredFields()) {
-
-			SerializedName serializedName = field.getAnnotation(SerializedName.class);
-			if(serializedName != null && serializedName.value().equalsIgnoreCase("id")) {
-				return serializedName.value();
-			} else if(field.getName().equalsIgnoreCase("id")) {
-				return field.getName();
+	private static <E> void readEntities(IdPropertyRenamingJsonReader jsonReader, TypeAdapter<E> adapter, List<E> result)
+			throws IOException {
+		jsonReader.beginArray();
+
+		while (jsonReader.hasNext()) {
+			jsonReader.startEntity();
+			E typedElement;
+
+			try {
+				typedElement = adapter.read(jsonReader);
+			} catch (IllegalStateException e) {
+				throw new JsonSyntaxException(e);
 			}
+
+			jsonReader.endEntity();
+			result.add(typedElement);
 		}
 
-		// Otherwise, return empty
-		return "";
+		jsonReader.endArray();
 	}
 
 	/**
@@ -109,4 +199,104 @@ class JsonEntityParser {
 			element.addProperty(propertyName, value);
 		}
 	}
+
+	/**
+	 * JsonReader that renames the id property of the entity being read to
+	 * match with the type's id property name
+	 */
+	private static class IdPropertyRenamingJsonReader extends JsonReader {
+		/**
+		 * The type's id property name
+		 */
+		private String mIdPropertyName;
+
+		/**
+		 * Current nesting level
+		 */
+		private int mDepth = 0;
+
+		/**
+		 * Nesting level of the entity being read, or -1
+		 */
+		private int mEntityDepth = -1;
+
+		/**
+		 * Indicates if the next object is an entity
+		 */
+		private boolean mEntityStarted = false;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param reader
+		 *            Reader for the JSON content
+		 * @param idPropertyName
+		 *            The type's id property name
+		 */
+		public IdPropertyRenamingJsonReader(Reader reader, String idPropertyName) {
+			super(reader);
+
+			// If the property name is id or if there's no id defined, then
+			// there's nothing to rename
+			if (!idPropertyName.equals("id") && idPropertyName.length() > 0) {
+				mIdPropertyName = idPropertyName;
+			}
+		}
+
+		/**
+		 * Marks the next value as an entity
+		 */
+		public void startEntity() {
+			mEntityStarted = true;
+		}
+
+		/**
+		 * Marks the end of the entity
+		 */
+		public void endEntity() {
+			mEntityStarted = false;
+			mEntityDepth = -1;
+		}
+
+		@Override
+		public void beginObject() throws IOException {
+			super.beginObject();
+			mDepth++;
+
+			if (mEntityStarted) {
+				mEntityDepth = mDepth;
+				mEntityStarted = false;
+			}
+		}
+
+		@Override
+		public void endObject() throws IOException {
+			super.endObject();
+			mDepth--;
+		}
+
+		@Override
+		public void beginArray() throws IOException {
+			super.beginArray();
+			mDepth++;
+			mEntityStarted = false;
+		}
+
+		@Override
+		public void endArray() throws IOException {
+			super.endArray();
+			mDepth--;
+		}
+
+		@Override
+		public String nextName() throws IOException {
+			String name = super.nextName();
+
+			if (mIdPropertyName != null && mDepth == mEntityDepth && name.equals("id")) {
+				return mIdPropertyName;
+			}
+
+			return name;
+		}
+	}
 }
@@ -442,7 +442,7 @@ class LoginManager {
 
 		// Create a request
 		final ServiceFilterRequest request = new ServiceFilterRequestImpl(
-				new HttpPost(url), mClient.getAndroidHttpClientFactory());
+				new HttpPost(url), mClient.getAndroidHttpClientPool());
 		request.addHeader(HTTP.CONTENT_TYPE, MobileServiceConnection.JSON_CONTENTTYPE);
 		
 		try {
@@ -455,31 +455,48 @@ class LoginManager {
 
 		// Create the AsyncTask that will execute the request
 		new RequestAsyncTask(request, connection) {
+			/**
+			 * The authenticated user
+			 */
+			private MobileServiceUser mUser;
+
+			/**
+			 * Error while reading the user from the response
+			 */
+			private Exception mUserException;
+
+			@Override
+			protected void processResponse(ServiceFilterResponse response) {
+				if (callback != null) {
+					try {
+						// Get the user from the response and create a
+						// MobileServiceUser object from the JSON
+						String content = response.getContent();
+						mUser = createUserFromJSON((JsonObject) new JsonParser()
+								.parse((content.trim())));
+					} catch (Exception e) {
+						mUserException = e;
+					}
+				}
+			}
+
 			@Override
 			protected void onPostExecute(ServiceFilterResponse response) {
 				if (callback != null) {
 
 					if (mTaskException == null && response != null) {
-						MobileServiceUser user = null;
-						try {
-							// Get the user from the response and create a
-							// MobileServiceUser object from the JSON
-							String content = response.getContent();
-							user = createUserFromJSON((JsonObject) new JsonParser()
-									.parse((content.trim())));
-
-						} catch (Exception e) {
+						if (mUserException != null) {
 							// Something went wrong, call onCompleted method
 							// with exception
 							callback.onCompleted(null,
 									new MobileServiceException(
 											"Error while authenticating user.",
-											e), response);
+											mUserException), response);
 							return;
 						}
 
 						// Call onCompleted method
-						callback.onCompleted(user, null, response);
+						callback.onCompleted(mUser, null, response);
 					} else {
 						// Something went wrong, call onCompleted method with
 						// exception
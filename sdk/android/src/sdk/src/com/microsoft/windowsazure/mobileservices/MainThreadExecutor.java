@@ -0,0 +1,48 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * MainThreadExecutor.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Executor that runs the commands on the application's main thread
+ */
+final class MainThreadExecutor implements Executor {
+
+	/**
+	 * Handler bound to the main looper
+	 */
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	@Override
+	public void execute(Runnable command) {
+		if (!mHandler.post(command)) {
+			throw new RejectedExecutionException("The main looper is exiting");
+		}
+	}
+}
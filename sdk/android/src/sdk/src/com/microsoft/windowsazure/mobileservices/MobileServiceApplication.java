@@ -41,7 +41,12 @@ public final class MobileServiceApplication {
 	 * telemetry data. It will either be retrieved from local settings or
 	 * generated fresh.
 	 */
-	private static String mInstallationId = null;
+	private static volatile String mInstallationId = null;
+
+	/**
+	 * The installation ID used in emulators
+	 */
+	private static final String EMULATOR_INSTALLATION_ID = "00000000-0000-0000-0000-000000000000";
 
 	/**
 	 * Gets the ID used to identify this installation of the application to
@@ -53,32 +58,49 @@ public final class MobileServiceApplication {
 	 * @return The Installation ID
 	 */
 	public static String getInstallationId(Context context) {
-		
+		// The ID is only looked up once
+		String installationId = mInstallationId;
+
+		if (installationId == null) {
+			installationId = loadInstallationId(context);
+		}
+
+		return installationId;
+	}
+
+	/**
+	 * Retrieves the installation ID from the application preferences, or
+	 * generates it
+	 */
+	private static synchronized String loadInstallationId(Context context) {
+		if (mInstallationId != null) {
+			return mInstallationId;
+		}
+
 		//if the device is an emulator, return a fixed installation id
 		if (isEmulator()) {
-			return "00000000-0000-0000-0000-000000000000";
+			mInstallationId = EMULATOR_INSTALLATION_ID;
+			return mInstallationId;
 		}
 		
 		SharedPreferences preferences = PreferenceManager
 				.getDefaultSharedPreferences(context.getApplicationContext());
 
-		if (mInstallationId == null) {
-			String val = preferences.getString(INSTALLATION_ID_KEY, null);
-			mInstallationId = val;
+		String installationId = preferences.getString(INSTALLATION_ID_KEY, null);
 
-			// Generate a new AppInstallationId if we failed to find one
-			if (mInstallationId == null) {
-				mInstallationId = UUID.randomUUID().toString();
+		// Generate a new AppInstallationId if we failed to find one
+		if (installationId == null) {
+			installationId = UUID.randomUUID().toString();
 
-				Editor preferencesEditor = preferences.edit();
-				preferencesEditor.putString(INSTALLATION_ID_KEY,
-						mInstallationId);
-				preferencesEditor.commit();
-			}
+			Editor preferencesEditor = preferences.edit();
+			preferencesEditor.putString(INSTALLATION_ID_KEY,
+					installationId);
+			preferencesEditor.commit();
 		}
 
-		return mInstallationId;
+		mInstallationId = installationId;
 
+		return installationId;
 	}
 
 	private static boolean isEmulator() {
@@ -22,9 +22,10 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Array;
-import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.net.MalformedURLException;
@@ -32,11 +33,19 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.protocol.HTTP;
 
 import android.accounts.Account;
@@ -45,17 +54,20 @@ import android.accounts.AccountManagerCallback;
 import android.accounts.AccountManagerFuture;
 import android.app.Activity;
 import android.content.Context;
+import android.annotation.SuppressLint;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.util.Pair;
 
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonSerializer;
-import com.google.gson.annotations.SerializedName;
+import com.google.gson.TypeAdapter;
 
 /**
  * Entry-point for Microsoft Azure Mobile Services interactions
@@ -92,9 +104,10 @@ public class MobileServiceClient {
 	private ServiceFilter mServiceFilter;
 
 	/**
-	 * GsonBuilder used to in JSON Serialization/Deserialization
+	 * GsonBuilder used to in JSON Serialization/Deserialization, and the Gson
+	 * instance created from it
 	 */
-	private GsonBuilder mGsonBuilder;
+	private GsonCache mGsonCache;
 
 	/**
 	 * Context where the MobileServiceClient is created
@@ -102,9 +115,53 @@ public class MobileServiceClient {
 	private Context mContext;
 	
 	/**
-	 * AndroidHttpClientFactory used for request execution
+	 * AndroidHttpClientPool that provides the AndroidHttpClient shared by the
+	 * requests of this client and the clients derived from it
+	 */
+	private AndroidHttpClientPool mAndroidHttpClientPool;
+
+	/**
+	 * Executor used to run the requests and process their responses
+	 */
+	private Executor mExecutor;
+
+	/**
+	 * Executor used to invoke the callbacks
+	 */
+	private Executor mCallbackExecutor;
+	
+	/**
+	 * Cache of the GET responses, or null
+	 */
+	private MobileServiceResponseCache mResponseCache;
+	
+	/**
+	 * Tracks the GET requests in progress so identical ones are coalesced, or
+	 * null if coalescing is disabled
+	 */
+	private RequestCoalescer mRequestCoalescer;
+
+	/**
+	 * Budget of the retries done by the RetryServiceFilters attached to the
+	 * client and the clients derived from it
+	 */
+	private RetryBudget mRetryBudget = new RetryBudget();
+
+	/**
+	 * Minimum size of the request contents compressed with gzip, or -1 if
+	 * they are not compressed
+	 */
+	private int mRequestCompressionThreshold = -1;
+
+	/**
+	 * Listener of the request metrics, or null
+	 */
+	private MobileServiceRequestMetricsListener mRequestMetricsListener;
+
+	/**
+	 * Headers sent in every request, created on first use
 	 */
-	private AndroidHttpClientFactory mAndroidHttpClientFactory;
+	private volatile Header[] mStaticHeaders;
 	
 	/**
 	 * MobileServicePush used for push notifications
@@ -120,6 +177,31 @@ public class MobileServiceClient {
 	 * Custom API Url
 	 */
 	private static final String CUSTOM_API_URL = "api/";
+
+	/**
+	 * Default maximum number of threads used to run requests
+	 */
+	public static final int DEFAULT_MAX_REQUEST_THREADS = AndroidHttpClientFactoryImpl.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+	/**
+	 * Default maximum number of requests waiting for a thread
+	 */
+	public static final int DEFAULT_MAX_QUEUED_REQUESTS = 256;
+
+	/**
+	 * Time, in seconds, an idle request thread is kept alive
+	 */
+	private static final int REQUEST_THREAD_KEEP_ALIVE = 30;
+
+	/**
+	 * Request executor shared by the clients that don't set their own
+	 */
+	private static Executor sDefaultExecutor;
+
+	/**
+	 * Local store of the sync tables, shared by all the clients
+	 */
+	private static MobileServiceLocalStore sLocalStore;
 	
 	/**
 	 * PNS API Url
@@ -154,6 +236,68 @@ public class MobileServiceClient {
 		return gsonBuilder;
 	}
 
+	/**
+	 * Creates a bounded executor to run Mobile Service requests, using the
+	 * default limits
+	 * 
+	 * @return
+	 */
+	public static ThreadPoolExecutor createRequestExecutor() {
+		return createRequestExecutor(DEFAULT_MAX_REQUEST_THREADS, DEFAULT_MAX_QUEUED_REQUESTS, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Creates a bounded executor to run Mobile Service requests. Requests
+	 * rejected by the executor are reported to their callbacks as a
+	 * MobileServiceException
+	 * 
+	 * @param maxThreads
+	 *            The maximum number of requests running at the same time
+	 * @param maxQueuedRequests
+	 *            The maximum number of requests waiting for a thread
+	 * @param rejectedExecutionHandler
+	 *            The handler used when both the threads and the queue are
+	 *            exhausted
+	 * @return
+	 */
+	@SuppressLint("NewApi")
+	public static ThreadPoolExecutor createRequestExecutor(int maxThreads, int maxQueuedRequests,
+			RejectedExecutionHandler rejectedExecutionHandler) {
+		if (maxThreads < 1) {
+			throw new IllegalArgumentException("maxThreads must be greater than zero");
+		}
+
+		if (maxQueuedRequests < 1) {
+			throw new IllegalArgumentException("maxQueuedRequests must be greater than zero");
+		}
+
+		if (rejectedExecutionHandler == null) {
+			throw new IllegalArgumentException("rejectedExecutionHandler cannot be null");
+		}
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, REQUEST_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(maxQueuedRequests), new RequestThreadFactory(), rejectedExecutionHandler);
+
+		// Idle threads can only be released with Gingerbread or greater
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+			executor.allowCoreThreadTimeOut(true);
+		}
+
+		return executor;
+	}
+
+	/**
+	 * Returns the request executor shared by the clients that don't set their
+	 * own
+	 */
+	static synchronized Executor getDefaultExecutor() {
+		if (sDefaultExecutor == null) {
+			sDefaultExecutor = createRequestExecutor();
+		}
+
+		return sDefaultExecutor;
+	}
+
 	/**
 	 * Constructor for the MobileServiceClient
 	 * 
@@ -179,8 +323,15 @@ public class MobileServiceClient {
 	 */
 	public MobileServiceClient(MobileServiceClient client) {
 		initialize(client.getAppUrl(), client.getAppKey(),
-				client.getCurrentUser(), client.getGsonBuilder(),
-				client.getContext(), client.getAndroidHttpClientFactory());
+				client.getCurrentUser(), client.mGsonCache,
+				client.getContext(), client.getAndroidHttpClientPool(),
+				client.getExecutor(), client.getCallbackExecutor());
+		mResponseCache = client.getResponseCache();
+		mRequestCoalescer = client.mRequestCoalescer;
+		mRetryBudget = client.mRetryBudget;
+		mRequestCompressionThreshold = client.mRequestCompressionThreshold;
+		mRequestMetricsListener = client.mRequestMetricsListener;
+		mStaticHeaders = client.mStaticHeaders;
 	}
 
 	/**
@@ -197,7 +348,8 @@ public class MobileServiceClient {
 		GsonBuilder gsonBuilder = createMobileServiceGsonBuilder();
 		gsonBuilder.serializeNulls(); // by default, add null serialization
 
-		initialize(appUrl, appKey, null, gsonBuilder, context, new AndroidHttpClientFactoryImpl());
+		initialize(appUrl, appKey, null, new GsonCache(gsonBuilder, true), context, new AndroidHttpClientPool(new AndroidHttpClientFactoryImpl()),
+				getDefaultExecutor(), new MainThreadExecutor());
 	}
 
 	/**
@@ -526,6 +678,59 @@ public class MobileServiceClient {
 		return new MobileServiceTable<E>(clazz.getSimpleName(), this, clazz);
 	}
 	
+	/**
+	 * Creates a MobileServiceJsonSyncTable, which works offline
+	 * 
+	 * @param name
+	 *            Table name
+	 * @return MobileServiceJsonSyncTable with the given name
+	 */
+	public MobileServiceJsonSyncTable getSyncTable(String name) {
+		return new MobileServiceJsonSyncTable(name, this);
+	}
+
+	/**
+	 * Creates a MobileServiceSyncTable, which works offline
+	 * 
+	 * @param name
+	 *            Table name
+	 * @param clazz
+	 *            The class used for data serialization
+	 * 
+	 * @return MobileServiceSyncTable with the given name
+	 */
+	public <E> MobileServiceSyncTable<E> getSyncTable(String name, Class<E> clazz) {
+		validateClass(clazz);
+		return new MobileServiceSyncTable<E>(name, this, clazz);
+	}
+
+	/**
+	 * Creates a MobileServiceSyncTable, which works offline
+	 * 
+	 * @param clazz
+	 *            The class used for table name and data serialization
+	 * 
+	 * @return MobileServiceSyncTable with the given name
+	 */
+	public <E> MobileServiceSyncTable<E> getSyncTable(Class<E> clazz) {
+		validateClass(clazz);
+		return new MobileServiceSyncTable<E>(clazz.getSimpleName(), this, clazz);
+	}
+
+	/**
+	 * Gets the local store of the sync tables, creating it on first use. All
+	 * the clients share the same store
+	 */
+	MobileServiceLocalStore getLocalStore() {
+		synchronized (MobileServiceClient.class) {
+			if (sLocalStore == null) {
+				sLocalStore = new MobileServiceLocalStore(mContext.getApplicationContext(), MobileServiceLocalStore.DATABASE_NAME);
+			}
+
+			return sLocalStore;
+		}
+	}
+	
 	/**
 	 * Invokes a custom API using POST HTTP method
 	 * @param apiName The API name
@@ -599,7 +804,7 @@ public class MobileServiceClient {
 			if (body instanceof JsonElement) {
 				json = (JsonElement)body;
 			} else {
-				json = getGsonBuilder().create().toJsonTree(body);
+				json = getGson().toJsonTree(body);
 			}
 		}
 		
@@ -616,7 +821,7 @@ public class MobileServiceClient {
 							concreteClass = clazz.getComponentType();
 						}
 
-						List<?> entities = JsonEntityParser.parseResults(jsonElement, getGsonBuilder().create(), concreteClass);
+						List<?> entities = JsonEntityParser.parseResults(jsonElement, getGson(), concreteClass);
 
 						if (clazz.isArray()) {
 							E array = (E) Array.newInstance(concreteClass, entities.size());
@@ -739,6 +944,143 @@ public class MobileServiceClient {
 	
 		invokeApiInternal(apiName, content, httpMethod, requestHeaders, parameters, CUSTOM_API_URL, callback);
 	}
+
+	/**
+	 * Invokes a custom API and streams its response content to a reader,
+	 * instead of reading it into memory. ServiceFilters can still read the
+	 * content, but that reads it into memory
+	 * 
+	 * @param apiName The API name
+	 * @param content The byte array to send as the request body, or null
+	 * @param httpMethod The HTTP Method used to invoke the API
+	 * @param requestHeaders The extra headers to send in the request
+	 * @param parameters The query string parameters sent in the request
+	 * @param reader The reader of the response content, invoked on the thread that executes the request
+	 * @param callback The callback to invoke after the response is read
+	 */
+	public void invokeApi(
+			String apiName, 
+			byte[] content, 
+			String httpMethod, 
+			List<Pair<String, String>> requestHeaders, 
+			List<Pair<String, String>> parameters, 
+			final ApiResponseStreamReader reader,
+			final ServiceFilterResponseCallback callback) {
+		
+		if (reader == null) {
+			if (callback != null) {
+				callback.onResponse(null, new IllegalArgumentException("reader cannot be null"));
+			}
+			return;
+		}
+		
+		ServiceFilterRequestImpl request = createApiRequest(apiName, httpMethod, requestHeaders, parameters, CUSTOM_API_URL, callback);
+		if (request == null) {
+			return;
+		}
+		
+		if (content != null) {
+			try {
+				request.setContent(content);
+			} catch (Exception e) {
+				if (callback != null) {
+					callback.onResponse(null, e);
+				}
+				return;
+			}
+		}
+		
+		request.setStreamingResponse(true);
+		
+		new RequestAsyncTask(request, createConnection()) {
+			@Override
+			protected void processResponse(ServiceFilterResponse response) throws Exception {
+				if (response instanceof ServiceFilterResponseImpl) {
+					ServiceFilterResponseImpl streamedResponse = (ServiceFilterResponseImpl) response;
+
+					try {
+						reader.read(streamedResponse.getContentStream(), response);
+					} finally {
+						streamedResponse.close();
+					}
+				} else {
+					// A filter returned its own response
+					byte[] responseContent = response.getRawContent();
+					reader.read(responseContent != null ? new ByteArrayInputStream(responseContent) : null, response);
+				}
+			}
+
+			@Override
+			protected void onPostExecute(ServiceFilterResponse response) {
+				if (callback != null) {
+					callback.onResponse(response, mTaskException);
+				}
+			}
+		}.executeTask();
+	}
+	
+	/**
+	 * Invokes a custom API with a content read from a stream while it's sent,
+	 * so it's not held in memory. The stream can only be sent once, and is not
+	 * closed
+	 * 
+	 * @param apiName The API name
+	 * @param content The stream to send as the request body
+	 * @param contentLength The content length, or -1 if unknown. Content of unknown length is sent with chunked transfer encoding
+	 * @param httpMethod The HTTP Method used to invoke the API
+	 * @param requestHeaders The extra headers to send in the request
+	 * @param parameters The query string parameters sent in the request
+	 * @param callback The callback to invoke after the API execution
+	 */
+	public void invokeApi(
+			String apiName, 
+			InputStream content, 
+			long contentLength,
+			String httpMethod, 
+			List<Pair<String, String>> requestHeaders, 
+			List<Pair<String, String>> parameters, 
+			final ServiceFilterResponseCallback callback) {
+		
+		if (content == null) {
+			if (callback != null) {
+				callback.onResponse(null, new IllegalArgumentException("content cannot be null"));
+			}
+			return;
+		}
+	
+		invokeApiInternal(apiName, new InputStreamEntity(content, contentLength), httpMethod, requestHeaders, parameters, callback);
+	}
+	
+	/**
+	 * Invokes a custom API with a content written directly to the connection,
+	 * so it's not held in memory
+	 * 
+	 * @param apiName The API name
+	 * @param content The writer of the request body
+	 * @param contentLength The content length, or -1 if unknown. Content of unknown length is sent with chunked transfer encoding
+	 * @param httpMethod The HTTP Method used to invoke the API
+	 * @param requestHeaders The extra headers to send in the request
+	 * @param parameters The query string parameters sent in the request
+	 * @param callback The callback to invoke after the API execution
+	 */
+	public void invokeApi(
+			String apiName, 
+			RequestContentWriter content, 
+			long contentLength,
+			String httpMethod, 
+			List<Pair<String, String>> requestHeaders, 
+			List<Pair<String, String>> parameters, 
+			final ServiceFilterResponseCallback callback) {
+		
+		if (content == null) {
+			if (callback != null) {
+				callback.onResponse(null, new IllegalArgumentException("content cannot be null"));
+			}
+			return;
+		}
+	
+		invokeApiInternal(apiName, new WriterRequestEntity(content, contentLength), httpMethod, requestHeaders, parameters, callback);
+	}
 	
 	/**
 	 * 
@@ -759,18 +1101,86 @@ public class MobileServiceClient {
 			String apiBaseURL,
 			final ServiceFilterResponseCallback callback) {
 		
+		ServiceFilterRequest request = createApiRequest(apiName, httpMethod, requestHeaders, parameters, apiBaseURL, callback);
+		if (request == null) {
+			return;
+		}
+		
+		if (content != null) {
+			try {
+				request.setContent(content);
+			} catch (Exception e) {
+				if (callback != null) {
+					callback.onResponse(null, e);
+				}
+				return;
+			}
+		}
+		
+		executeApiRequest(request, callback);
+	}
+
+	/**
+	 * Invokes a custom API with a content streamed to the connection
+	 * 
+	 * @param apiName The API name
+	 * @param content The entity of the content
+	 * @param httpMethod The HTTP Method used to invoke the API
+	 * @param requestHeaders The extra headers to send in the request
+	 * @param parameters The query string parameters sent in the request
+	 * @param callback The callback to invoke after the API execution
+	 */
+	private void invokeApiInternal(
+			String apiName, 
+			HttpEntity content, 
+			String httpMethod, 
+			List<Pair<String, String>> requestHeaders, 
+			List<Pair<String, String>> parameters,
+			final ServiceFilterResponseCallback callback) {
+		
+		ServiceFilterRequestImpl request = createApiRequest(apiName, httpMethod, requestHeaders, parameters, CUSTOM_API_URL, callback);
+		if (request == null) {
+			return;
+		}
+		
+		if (!request.canHaveContent()) {
+			if (callback != null) {
+				callback.onResponse(null, new IllegalArgumentException("httpMethod does not support a content"));
+			}
+			return;
+		}
+		
+		request.setContent(content);
+		
+		executeApiRequest(request, callback);
+	}
+
+	/**
+	 * Creates the request to invoke an API
+	 * 
+	 * @return The request, or null if the arguments are not valid. In that
+	 *         case the callback is invoked with the error
+	 */
+	private ServiceFilterRequestImpl createApiRequest(
+			String apiName, 
+			String httpMethod, 
+			List<Pair<String, String>> requestHeaders, 
+			List<Pair<String, String>> parameters,
+			String apiBaseURL,
+			final ServiceFilterResponseCallback callback) {
+		
 		if (apiName == null || apiName.trim().equals("")) {
 			if (callback != null) {
 				callback.onResponse(null, new IllegalArgumentException("apiName cannot be null"));
 			}
-			return;
+			return null;
 		}
 		
 		if (httpMethod == null || httpMethod.trim().equals("")) {
 			if (callback != null) {
 				callback.onResponse(null, new IllegalArgumentException("httpMethod cannot be null"));
 			}
-			return;
+			return null;
 		}
 		
 		Uri.Builder uriBuilder = Uri.parse(getAppUrl().toString()).buildUpon();
@@ -782,24 +1192,24 @@ public class MobileServiceClient {
 			}
 		}
 		
-		ServiceFilterRequest request;
+		ServiceFilterRequestImpl request;
 		String url = uriBuilder.build().toString();
 		
 		if (httpMethod.equalsIgnoreCase(HttpGet.METHOD_NAME)) {
-			request = new ServiceFilterRequestImpl(new HttpGet(url), getAndroidHttpClientFactory());
+			request = new ServiceFilterRequestImpl(new HttpGet(url), getAndroidHttpClientPool());
 		} else if (httpMethod.equalsIgnoreCase(HttpPost.METHOD_NAME)) {
-			request = new ServiceFilterRequestImpl(new HttpPost(url), getAndroidHttpClientFactory());
+			request = new ServiceFilterRequestImpl(new HttpPost(url), getAndroidHttpClientPool());
 		} else if (httpMethod.equalsIgnoreCase(HttpPut.METHOD_NAME)) {
-			request = new ServiceFilterRequestImpl(new HttpPut(url), getAndroidHttpClientFactory());
+			request = new ServiceFilterRequestImpl(new HttpPut(url), getAndroidHttpClientPool());
 		} else if (httpMethod.equalsIgnoreCase(HttpPatch.METHOD_NAME)) {
-			request = new ServiceFilterRequestImpl(new HttpPatch(url), getAndroidHttpClientFactory());
+			request = new ServiceFilterRequestImpl(new HttpPatch(url), getAndroidHttpClientPool());
 		} else if (httpMethod.equalsIgnoreCase(HttpDelete.METHOD_NAME)) {
-			request = new ServiceFilterRequestImpl(new HttpDelete(url), getAndroidHttpClientFactory());
+			request = new ServiceFilterRequestImpl(new HttpDelete(url), getAndroidHttpClientPool());
 		} else {
 			if (callback != null) {
 				callback.onResponse(null, new IllegalArgumentException("httpMethod not supported"));
 			}
-			return;
+			return null;
 		}
 		
 		if (requestHeaders != null && requestHeaders.size() > 0) {
@@ -808,17 +1218,13 @@ public class MobileServiceClient {
 			}
 		}
 		
-		if (content != null) {
-			try {
-				request.setContent(content);
-			} catch (Exception e) {
-				if (callback != null) {
-					callback.onResponse(null, e);
-				}
-				return;
-			}
-		}
-		
+		return request;
+	}
+
+	/**
+	 * Executes the request of an API invocation
+	 */
+	private void executeApiRequest(ServiceFilterRequest request, final ServiceFilterResponseCallback callback) {
 		MobileServiceConnection conn = createConnection();
 		
 		// Create AsyncTask to execute the request and parse the results
@@ -842,21 +1248,7 @@ public class MobileServiceClient {
 			throw new IllegalArgumentException("The class type used for creating a MobileServiceTable must be a concrete class");
 		}
 		
-		int idPropertyCount = 0;
-		for (Field field : clazz.getDeclaredFields()) {
-			SerializedName serializedName = field.getAnnotation(SerializedName.class);
-			if (serializedName != null) {
-				if (serializedName.value().equalsIgnoreCase("id")) {
-					idPropertyCount++;
-				}
-			} else {
-				if (field.getName().equalsIgnoreCase("id")) {
-					idPropertyCount++;
-				}
-			}
-		}
-		
-		if (idPropertyCount != 1) {
+		if (EntityMetadata.get(clazz).getIdPropertyCount() != 1) {
 			throw new IllegalArgumentException("The class representing the MobileServiceTable must have a single id property defined");
 		}
 	}
@@ -958,14 +1350,22 @@ public class MobileServiceClient {
 	 *            Mobile Service application key
 	 * @param currentUser
 	 *            The Mobile Service user used to authenticate requests
-	 * @param gsonBuilder
-	 *            the GsonBuilder used to in JSON Serialization/Deserialization
+	 * @param gsonCache
+	 *            the GsonBuilder used to in JSON Serialization/Deserialization,
+	 *            and the Gson instance created from it
 	 * @param context
 	 *            The Context where the MobileServiceClient is created
+	 * @param androidHttpClientPool
+	 *            The AndroidHttpClientPool used for request execution
+	 * @param executor
+	 *            The Executor used to run the requests
+	 * @param callbackExecutor
+	 *            The Executor used to invoke the callbacks
 	 */
 	private void initialize(URL appUrl, String appKey,
-			MobileServiceUser currentUser, GsonBuilder gsonBuiler,
-			Context context, AndroidHttpClientFactory androidHttpClientFactory) {
+			MobileServiceUser currentUser, GsonCache gsonCache,
+			Context context, AndroidHttpClientPool androidHttpClientPool,
+			Executor executor, Executor callbackExecutor) {
 		if (appUrl == null || appUrl.toString().trim().length() == 0) {
 			throw new IllegalArgumentException("Invalid Application URL");
 		}
@@ -991,16 +1391,62 @@ public class MobileServiceClient {
 		mLoginInProgress = false;
 		mCurrentUser = currentUser;
 		mContext = context;
-		mGsonBuilder = gsonBuiler;
-		mAndroidHttpClientFactory = androidHttpClientFactory;
+		mGsonCache = gsonCache;
+		mAndroidHttpClientPool = androidHttpClientPool;
+		mExecutor = executor;
+		mCallbackExecutor = callbackExecutor;
 		mPush = new MobileServicePush(this, context);
 	}
 
 	/**
-	 * Gets the GsonBuilder used to in JSON Serialization/Deserialization
+	 * Gets the GsonBuilder used to in JSON Serialization/Deserialization. As
+	 * the returned builder can be modified, the Gson instance used by the
+	 * client is created again on its next use. A builder that is kept and
+	 * modified later only takes effect after invalidateGson is called
 	 */
 	public GsonBuilder getGsonBuilder() {
-		return mGsonBuilder;
+		return mGsonCache.getGsonBuilder();
+	}
+
+	/**
+	 * Discards the Gson instance used by the client, so the next operations
+	 * use the current configuration of the GsonBuilder. Call it after
+	 * modifying a builder returned by an earlier getGsonBuilder call
+	 */
+	public void invalidateGson() {
+		mGsonCache.invalidate();
+	}
+
+	/**
+	 * Gets the Gson instance used in JSON Serialization/Deserialization. It's
+	 * only created again when the GsonBuilder configuration changes
+	 */
+	public Gson getGson() {
+		return mGsonCache.getGson();
+	}
+
+	/**
+	 * Gets the adapter used to deserialize the entities returned by a query
+	 * 
+	 * @param clazz
+	 *            The entity class
+	 * @param projection
+	 *            The selected fields, or null if all of them are returned
+	 */
+	<E> TypeAdapter<E> getEntityAdapter(Class<E> clazz, List<String> projection) {
+		return mGsonCache.getEntityAdapter(clazz, projection);
+	}
+
+	/**
+	 * Gets the writer used to serialize the entities of a class in insert and
+	 * update requests, or null if they must be serialized through a
+	 * JsonObject tree
+	 * 
+	 * @param clazz
+	 *            The entity class
+	 */
+	<E> TypedEntityWriter<E> getEntityWriter(Class<E> clazz) {
+		return mGsonCache.getEntityWriter(clazz);
 	}
 
 	/**
@@ -1012,7 +1458,7 @@ public class MobileServiceClient {
 	 *            The serializer to use in the registration
 	 */
 	public <T> void registerSerializer(Type type, JsonSerializer<T> serializer) {
-		mGsonBuilder.registerTypeAdapter(type, serializer);
+		mGsonCache.registerTypeAdapter(type, serializer);
 	}
 
 	/**
@@ -1025,7 +1471,31 @@ public class MobileServiceClient {
 	 */
 	public <T> void registerDeserializer(Type type,
 			JsonDeserializer<T> deserializer) {
-		mGsonBuilder.registerTypeAdapter(type, deserializer);
+		mGsonCache.registerTypeAdapter(type, deserializer);
+	}
+
+	/**
+	 * Indicates if the client binds the fields of the entity classes
+	 * directly, to read the results of projections and to write inserts and
+	 * updates without building JsonObject trees
+	 */
+	public boolean isPlainFieldBindingEnabled() {
+		return mGsonCache.hasPlainFieldBinding();
+	}
+
+	/**
+	 * Declares that the GsonBuilder binds the fields of the entity classes
+	 * by their names, or by their SerializedName annotations. It's enabled
+	 * until getGsonBuilder or setGsonBuilder is called. Enable it again if
+	 * the builder has no naming policy, exclusion strategy nor adapters for
+	 * the entity classes. Classes with a serializer or deserializer
+	 * registered through the client are always handled by Gson
+	 * 
+	 * @param enabled
+	 *            True if the fields are bound by their names
+	 */
+	public void setPlainFieldBindingEnabled(boolean enabled) {
+		mGsonCache.setPlainFieldBinding(enabled);
 	}
 
 	/**
@@ -1035,7 +1505,7 @@ public class MobileServiceClient {
 	 *            The GsonBuilder to set
 	 */
 	public void setGsonBuilder(GsonBuilder gsonBuilder) {
-		mGsonBuilder = gsonBuilder;
+		mGsonCache = new GsonCache(gsonBuilder, false);
 	}
 
 	/**
@@ -1058,14 +1528,221 @@ public class MobileServiceClient {
 	 *  @return
 	 */
 	public AndroidHttpClientFactory getAndroidHttpClientFactory() {
-		return mAndroidHttpClientFactory;
+		return mAndroidHttpClientPool.getFactory();
 	}
 
 	/**
-	 * Sets the AndroidHttpClientFactory
+	 * Sets the AndroidHttpClientFactory. This client, and the clients derived
+	 * from it afterwards, stop sharing connections with the clients that used
+	 * the previous factory
 	 */
 	public void setAndroidHttpClientFactory(AndroidHttpClientFactory mAndroidHttpClientFactory) {
-		this.mAndroidHttpClientFactory = mAndroidHttpClientFactory;
+		this.mAndroidHttpClientPool = new AndroidHttpClientPool(mAndroidHttpClientFactory);
+	}
+
+	/**
+	 * Gets the AndroidHttpClientPool used for request execution
+	 */
+	AndroidHttpClientPool getAndroidHttpClientPool() {
+		return mAndroidHttpClientPool;
+	}
+
+	/**
+	 * Closes the pooled connections used by this client and the clients
+	 * derived from it. New connections are opened if the client is used again
+	 */
+	public void close() {
+		mAndroidHttpClientPool.close();
+	}
+
+	/**
+	 * Gets the Executor used to run the requests and process their responses
+	 */
+	public Executor getExecutor() {
+		return mExecutor;
+	}
+
+	/**
+	 * Sets the Executor used to run the requests and process their responses.
+	 * By default, the requests of all the clients run on a bounded pool
+	 * dedicated to Mobile Services
+	 * 
+	 * @param executor
+	 *            The Executor to set
+	 */
+	public void setExecutor(Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("executor cannot be null");
+		}
+
+		mExecutor = executor;
+	}
+
+	/**
+	 * Gets the Executor used to invoke the callbacks
+	 */
+	public Executor getCallbackExecutor() {
+		return mCallbackExecutor;
+	}
+
+	/**
+	 * Sets the Executor used to invoke the callbacks. By default, callbacks
+	 * are invoked on the main thread
+	 * 
+	 * @param callbackExecutor
+	 *            The Executor to set
+	 */
+	public void setCallbackExecutor(Executor callbackExecutor) {
+		if (callbackExecutor == null) {
+			throw new IllegalArgumentException("callbackExecutor cannot be null");
+		}
+
+		mCallbackExecutor = callbackExecutor;
+	}
+
+	/**
+	 * Gets the cache of the GET responses, or null if responses are not
+	 * cached
+	 */
+	public MobileServiceResponseCache getResponseCache() {
+		return mResponseCache;
+	}
+
+	/**
+	 * Sets the cache of the GET responses. Responses that include an ETag are
+	 * cached, and revalidated with the server on every request. The cache is
+	 * shared with the clients derived from this one afterwards
+	 * 
+	 * @param responseCache
+	 *            The cache to use, or null to disable caching
+	 */
+	public void setResponseCache(MobileServiceResponseCache responseCache) {
+		mResponseCache = responseCache;
+	}
+
+	/**
+	 * Indicates if identical GET requests in progress at the same time share a
+	 * single network call
+	 */
+	public boolean isRequestCoalescingEnabled() {
+		return mRequestCoalescer != null;
+	}
+
+	/**
+	 * Enables or disables the coalescing of identical GET requests. Requests
+	 * are identical if they have the same URL and headers, including the
+	 * user authentication token. Coalescing is disabled by default
+	 * 
+	 * @param enabled
+	 *            True to coalesce identical requests
+	 */
+	public void setRequestCoalescingEnabled(boolean enabled) {
+		if (!enabled) {
+			mRequestCoalescer = null;
+		} else if (mRequestCoalescer == null) {
+			mRequestCoalescer = new RequestCoalescer();
+		}
+	}
+
+	/**
+	 * Gets the number of requests that shared the network call of an
+	 * identical request in progress
+	 */
+	public int getCoalescedRequestCount() {
+		return mRequestCoalescer != null ? mRequestCoalescer.getCoalescedCount() : 0;
+	}
+
+	/**
+	 * Gets the minimum size of the request contents compressed with gzip, or
+	 * -1 if they are not compressed
+	 */
+	public int getRequestCompressionThreshold() {
+		return mRequestCompressionThreshold;
+	}
+
+	/**
+	 * Enables the gzip compression of the request contents of the given size
+	 * or larger. They are sent with a "Content-Encoding: gzip" header, so the
+	 * service must accept compressed requests. Compression is disabled by
+	 * default
+	 * 
+	 * @param threshold
+	 *            Minimum size of the contents to compress, in bytes, or -1 to
+	 *            disable compression
+	 */
+	public void setRequestCompressionThreshold(int threshold) {
+		if (threshold < -1) {
+			throw new IllegalArgumentException("threshold must be -1 or greater");
+		}
+
+		mRequestCompressionThreshold = threshold;
+	}
+
+	/**
+	 * Creates a MobileServiceClient that compresses the request contents of
+	 * the given size or larger, to use it for some calls only
+	 * 
+	 * @param threshold
+	 *            Minimum size of the contents to compress, in bytes, or -1 to
+	 *            disable compression
+	 * @return MobileServiceClient with the same filters and the given
+	 *         compression threshold
+	 */
+	public MobileServiceClient withRequestCompression(int threshold) {
+		MobileServiceClient newClient = new MobileServiceClient(this);
+		newClient.mServiceFilter = mServiceFilter;
+		newClient.setRequestCompressionThreshold(threshold);
+
+		return newClient;
+	}
+
+	/**
+	 * Gets the listener of the request metrics, or null
+	 */
+	public MobileServiceRequestMetricsListener getRequestMetricsListener() {
+		return mRequestMetricsListener;
+	}
+
+	/**
+	 * Sets the listener of the request metrics. The listener is shared with
+	 * the clients derived from this one afterwards. A
+	 * MobileServiceMetricsHistogram can be used to aggregate them
+	 * 
+	 * @param listener
+	 *            The listener, or null to stop measuring the requests
+	 */
+	public void setRequestMetricsListener(MobileServiceRequestMetricsListener listener) {
+		mRequestMetricsListener = listener;
+	}
+
+	/**
+	 * Gets the headers sent in every request: the User-Agent, the application
+	 * key and the installation ID. They are created once, and must not be
+	 * modified
+	 */
+	Header[] getStaticHeaders() {
+		Header[] headers = mStaticHeaders;
+
+		if (headers == null) {
+			headers = MobileServiceConnection.createStaticHeaders(mAppKey, mContext);
+			mStaticHeaders = headers;
+		}
+
+		return headers;
+	}
+
+	/**
+	 * Gets the RequestCoalescer used for the requests, or null
+	 */
+	RequestCoalescer getRequestCoalescer() {
+		return mRequestCoalescer;
+	}
+
+	/**
+	 * Gets the RetryBudget shared by the retries of the requests
+	 */
+	RetryBudget getRetryBudget() {
+		return mRetryBudget;
 	}
 	
 	/**
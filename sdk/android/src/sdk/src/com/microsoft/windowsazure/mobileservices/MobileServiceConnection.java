@@ -23,9 +23,16 @@ See the Apache Version 2.0 License for specific language governing permissions a
 
 package com.microsoft.windowsazure.mobileservices;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
 import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.protocol.HTTP;
 
+import android.content.Context;
 import android.os.Build;
 
 /**
@@ -61,13 +68,28 @@ class MobileServiceConnection {
 	/**
 	 * Header value to represent GZIP content-encoding
 	 */
-	private static final String GZIP_CONTENTENCODING = "gzip";
+	private static final String GZIP_CONTENTENCODING = GzipRequestEntity.GZIP_CONTENT_ENCODING;
 
 	/**
 	 * Current SDK version
 	 */
 	private static final String SDK_VERSION = "1.0.10814.0";
 
+	/**
+	 * Accept header added to the requests that don't set it
+	 */
+	private static final Header ACCEPT_HEADER = new BasicHeader("Accept", JSON_CONTENTTYPE);
+
+	/**
+	 * Accept-Encoding header added to the requests that don't set it
+	 */
+	private static final Header ACCEPT_ENCODING_HEADER = new BasicHeader("Accept-Encoding", GZIP_CONTENTENCODING);
+
+	/**
+	 * The User-Agent, created on first use
+	 */
+	private static volatile String sUserAgent;
+
 	/**
 	 * Constructor for the MobileServiceConnection
 	 * 
@@ -78,6 +100,13 @@ class MobileServiceConnection {
 		mClient = client;
 	}
 
+	/**
+	 * Returns the client used for communication with the Mobile Service
+	 */
+	MobileServiceClient getClient() {
+		return mClient;
+	}
+
 	/**
 	 * Execute a request-response operation with a Mobile Service
 	 * 
@@ -95,16 +124,52 @@ class MobileServiceConnection {
 		ServiceFilter filter = mClient.getServiceFilter();
 		// Set the request's headers
 		configureHeadersOnRequest(request);
+
+		// Let the filters use the executor and the budgets of the client
+		if (request instanceof ServiceFilterRequestImpl) {
+			((ServiceFilterRequestImpl) request).setClient(mClient);
+		}
 		filter.handleRequest(request, new NextServiceFilterCallback() {
 
 			@Override
 			public void onNext(ServiceFilterRequest request,
 					ServiceFilterResponseCallback responseCallback) {
 
+				// Streamed responses can't be shared nor cached
+				boolean streamingResponse = request instanceof ServiceFilterRequestImpl
+						&& ((ServiceFilterRequestImpl) request).isStreamingResponse();
+
+				RequestCoalescer coalescer = mClient.getRequestCoalescer();
+				String coalescingKey = null;
+
+				// Identical GET requests in progress share the same call
+				if (coalescer != null && !streamingResponse && "GET".equalsIgnoreCase(request.getMethod())) {
+					coalescingKey = createCoalescingKey(request);
+
+					if (coalescer.join(coalescingKey, responseCallback)) {
+						return;
+					}
+				}
+
 				ServiceFilterResponse response = null;
+				Exception exception = null;
+
+				// Large contents are compressed if the client enables it
+				int compressionThreshold = mClient.getRequestCompressionThreshold();
+
+				if (compressionThreshold >= 0 && request instanceof ServiceFilterRequestImpl) {
+					((ServiceFilterRequestImpl) request).compressContent(compressionThreshold);
+				}
 
 				try {
-					response = request.execute();
+					MobileServiceResponseCache responseCache = mClient.getResponseCache();
+
+					if (responseCache != null && !streamingResponse) {
+						response = responseCache.execute(request, mClient.getCurrentUser());
+					} else {
+						response = request.execute();
+					}
+
 					int statusCode = response.getStatus().getStatusCode();
 
 					// If the response has error throw exception
@@ -122,22 +187,49 @@ class MobileServiceConnection {
 				} catch (Exception e) {
 					// Something went wrong, call onResponse with exception
 					// method
-					if (responseCallback != null) {
-						responseCallback.onResponse(response,
-								new MobileServiceException(
-										"Error while processing request.", e));
-						return;
-					}
+					exception = new MobileServiceException(
+							"Error while processing request.", e);
+				}
+
+				if (coalescingKey != null) {
+					coalescer.complete(coalescingKey, response, exception);
 				}
 
 				// Call onResponse method
 				if (responseCallback != null) {
-					responseCallback.onResponse(response, null);
+					responseCallback.onResponse(response, exception);
 				}
 			}
 		}, responseCallback);
 	}
 
+	/**
+	 * Creates the key used to coalesce a request, from its method, URL and
+	 * headers. The headers include the user authentication token
+	 * 
+	 * @param request
+	 *            The request
+	 */
+	private static String createCoalescingKey(ServiceFilterRequest request) {
+		Header[] headers = request.getHeaders();
+		String[] headerLines = new String[headers.length];
+
+		for (int i = 0; i < headers.length; i++) {
+			headerLines[i] = headers[i].getName().toLowerCase(Locale.US) + ":" + headers[i].getValue();
+		}
+
+		Arrays.sort(headerLines);
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(request.getMethod()).append(' ').append(request.getUrl());
+
+		for (String headerLine : headerLines) {
+			sb.append('\n').append(headerLine);
+		}
+
+		return sb.toString();
+	}
+
 	/**
 	 * Configures the HttpRequestBase to execute a request with a Mobile Service
 	 * 
@@ -151,53 +243,87 @@ class MobileServiceConnection {
 			request.addHeader(X_ZUMO_AUTH_HEADER, user.getAuthenticationToken());
 		}
 
-		// Set the User Agent header
-		request.addHeader(HTTP.USER_AGENT, getUserAgent());
+		// Set the User Agent, application key and installation ID headers
+		Header[] staticHeaders = mClient.getStaticHeaders();
 
-		// Set the special Application key header, if present
-		String appKey = mClient.getAppKey();
-		if (appKey != null && appKey.trim().length() > 0) {
-			request.addHeader(X_ZUMO_APPLICATION_HEADER, mClient.getAppKey());
-		}
+		if (request instanceof ServiceFilterRequestImpl) {
+			ServiceFilterRequestImpl requestImpl = (ServiceFilterRequestImpl) request;
 
-		// Set the special Installation ID header
-		request.addHeader(
-				X_ZUMO_INSTALLATION_ID_HEADER,
-				MobileServiceApplication.getInstallationId(mClient.getContext()));
+			for (Header header : staticHeaders) {
+				requestImpl.addHeader(header);
+			}
 
-		if (!requestContainsHeader(request, "Accept")) {
-			request.addHeader("Accept", JSON_CONTENTTYPE);
-		}
-		
-		if (!requestContainsHeader(request, "Accept-Encoding")) {
-			request.addHeader("Accept-Encoding", GZIP_CONTENTENCODING);
+			if (!requestImpl.containsHeader(ACCEPT_HEADER.getName())) {
+				requestImpl.addHeader(ACCEPT_HEADER);
+			}
+
+			if (!requestImpl.containsHeader(ACCEPT_ENCODING_HEADER.getName())) {
+				requestImpl.addHeader(ACCEPT_ENCODING_HEADER);
+			}
+		} else {
+			for (Header header : staticHeaders) {
+				request.addHeader(header.getName(), header.getValue());
+			}
+
+			// Header names are case insensitive
+			boolean hasAccept = false;
+			boolean hasAcceptEncoding = false;
+
+			for (Header header : request.getHeaders()) {
+				if (header.getName().equalsIgnoreCase(ACCEPT_HEADER.getName())) {
+					hasAccept = true;
+				} else if (header.getName().equalsIgnoreCase(ACCEPT_ENCODING_HEADER.getName())) {
+					hasAcceptEncoding = true;
+				}
+			}
+
+			if (!hasAccept) {
+				request.addHeader(ACCEPT_HEADER.getName(), ACCEPT_HEADER.getValue());
+			}
+
+			if (!hasAcceptEncoding) {
+				request.addHeader(ACCEPT_ENCODING_HEADER.getName(), ACCEPT_ENCODING_HEADER.getValue());
+			}
 		}
 	}
-	
+
 	/**
-	 * Verifies if the request contains the specified header
-	 * @param request	The request to verify
-	 * @param headerName	The header name to find
-	 * @return	True if the header is present, false otherwise
+	 * Creates the headers sent in every request of a client
+	 * 
+	 * @param appKey
+	 *            The application key, or null
+	 * @param context
+	 *            The context of the client
+	 * @return The headers
 	 */
-	private boolean requestContainsHeader(ServiceFilterRequest request, String headerName) {
-		for (Header header : request.getHeaders()) {
-			if (header.getName().equals(headerName)) {
-				return true;
-			}
+	static Header[] createStaticHeaders(String appKey, Context context) {
+		List<Header> headers = new ArrayList<Header>(3);
+		headers.add(new BasicHeader(HTTP.USER_AGENT, getUserAgent()));
+
+		// Set the special Application key header, if present
+		if (appKey != null && appKey.trim().length() > 0) {
+			headers.add(new BasicHeader(X_ZUMO_APPLICATION_HEADER, appKey));
 		}
-		
-		return false;
-	}
 
+		headers.add(new BasicHeader(X_ZUMO_INSTALLATION_ID_HEADER, MobileServiceApplication.getInstallationId(context)));
+
+		return headers.toArray(new Header[headers.size()]);
+	}
+	
 	/**
 	 * Generates the User-Agent
 	 */
 	static String getUserAgent() {
-		String userAgent = String.format(
-				"ZUMO/1.0 (lang=%s; os=%s; os_version=%s; arch=%s; version=%s)",
-				"Java", "Android", Build.VERSION.RELEASE,
-				Build.CPU_ABI, SDK_VERSION);
+		// The values don't change while the process runs
+		String userAgent = sUserAgent;
+
+		if (userAgent == null) {
+			userAgent = String.format(
+					"ZUMO/1.0 (lang=%s; os=%s; os_version=%s; arch=%s; version=%s)",
+					"Java", "Android", Build.VERSION.RELEASE,
+					Build.CPU_ABI, SDK_VERSION);
+			sUserAgent = userAgent;
+		}
 
 		return userAgent;
 	}
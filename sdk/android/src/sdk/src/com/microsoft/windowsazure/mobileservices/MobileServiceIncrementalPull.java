@@ -0,0 +1,269 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * MobileServiceIncrementalPull.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.util.Date;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+
+/**
+ * Retrieves the rows of a query that changed since its previous pull, and
+ * merges them into a sink.
+ * 
+ * The __updatedAt value of the last row merged is stored in the local store
+ * as the watermark of the query, and later pulls only request the rows
+ * updated at or after it. Rows are paged in __updatedAt order. When a page
+ * moves the watermark, the next page is requested from the new watermark,
+ * skipping the rows already seen with that exact value
+ */
+final class MobileServiceIncrementalPull {
+
+	/**
+	 * The table to pull from
+	 */
+	private final MobileServiceJsonTable mTable;
+
+	/**
+	 * The local store that keeps the watermark
+	 */
+	private final MobileServiceLocalStore mStore;
+
+	/**
+	 * The query id
+	 */
+	private final String mQueryId;
+
+	/**
+	 * The query
+	 */
+	private final MobileServiceQuery<TableJsonQueryCallback> mQuery;
+
+	/**
+	 * Filter of the query
+	 */
+	private final String mFilter;
+
+	/**
+	 * Destination of the rows
+	 */
+	private final IncrementalPullSink mSink;
+
+	/**
+	 * Callback to invoke when the pull ends
+	 */
+	private final TableSyncCallback mCallback;
+
+	/**
+	 * Number of rows per page
+	 */
+	private final int mPageSize;
+
+	/**
+	 * The current watermark, or null if the query was never pulled
+	 */
+	private Date mWatermark;
+
+	/**
+	 * Number of rows with the watermark value already merged
+	 */
+	private int mSkip = 0;
+
+	/**
+	 * Number of rows merged so far
+	 */
+	private int mCount = 0;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param table
+	 *            The table to pull from
+	 * @param queryId
+	 *            Identifies the watermark of the query
+	 * @param query
+	 *            The query. Its ordering, top and skip values are ignored
+	 * @param pageSize
+	 *            Number of rows per page
+	 * @param sink
+	 *            Destination of the rows
+	 * @param callback
+	 *            Callback to invoke with the number of rows merged
+	 */
+	MobileServiceIncrementalPull(MobileServiceJsonTable table, String queryId, MobileServiceQuery<TableJsonQueryCallback> query,
+			int pageSize, IncrementalPullSink sink, TableSyncCallback callback) {
+		if (queryId == null || queryId.trim().length() == 0) {
+			throw new IllegalArgumentException("queryId cannot be null or empty");
+		}
+
+		if (query == null) {
+			throw new IllegalArgumentException("query cannot be null");
+		}
+
+		if (sink == null) {
+			throw new IllegalArgumentException("sink cannot be null");
+		}
+
+		mTable = table;
+		mStore = table.getClient().getLocalStore();
+		mQueryId = queryId;
+		mQuery = query;
+		mFilter = query.toString().trim();
+		mPageSize = pageSize;
+		mSink = sink;
+		mCallback = callback;
+	}
+
+	/**
+	 * Starts the pull
+	 */
+	void start() {
+		runOnStore(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					mWatermark = mStore.getPullWatermark(mTable.getTableName(), mQueryId);
+					requestPage();
+				} catch (Exception e) {
+					// Errors on the store executor would be lost otherwise
+					end(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Requests the next page of changed rows
+	 */
+	private void requestPage() {
+		String filter = mFilter;
+
+		if (mWatermark != null) {
+			String watermarkFilter = MobileServiceQueryOperations.field(MobileServiceTableBase.UpdatedAtSystemPropertyName)
+					.ge(mWatermark).toString();
+
+			filter = filter.length() > 0 ? "(" + filter + ") and (" + watermarkFilter + ")" : watermarkFilter;
+		}
+
+		mQuery.createIncrementalPageQuery(filter, mPageSize, mSkip).execute(new TableJsonQueryCallback() {
+
+			@Override
+			public void onCompleted(final JsonElement result, int count, Exception exception, ServiceFilterResponse response) {
+				if (exception != null) {
+					end(exception);
+				} else {
+					runOnStore(new Runnable() {
+
+						@Override
+						public void run() {
+							mergePage(result);
+						}
+					});
+				}
+			}
+		});
+	}
+
+	/**
+	 * Merges a page into the sink, moves the watermark and continues with
+	 * the next page. Runs on the store executor
+	 */
+	private void mergePage(JsonElement result) {
+		JsonArray rows = result != null && result.isJsonArray() ? result.getAsJsonArray() : new JsonArray();
+		Date pageWatermark = mWatermark;
+		int rowsAtPageWatermark = 0;
+
+		try {
+			for (JsonElement row : rows) {
+				Date updatedAt = getUpdatedAt(row);
+
+				if (pageWatermark == null || updatedAt.after(pageWatermark)) {
+					pageWatermark = updatedAt;
+					rowsAtPageWatermark = 1;
+				} else if (updatedAt.equals(pageWatermark)) {
+					rowsAtPageWatermark++;
+				}
+			}
+
+			if (rows.size() > 0) {
+				mSink.merge(rows);
+			}
+
+			if (pageWatermark != null && (mWatermark == null || pageWatermark.after(mWatermark))) {
+				mStore.setPullWatermark(mTable.getTableName(), mQueryId, pageWatermark);
+				mWatermark = pageWatermark;
+				mSkip = rowsAtPageWatermark;
+			} else {
+				// Every row had the watermark value
+				mSkip += rows.size();
+			}
+		} catch (Exception e) {
+			end(e);
+			return;
+		}
+
+		mCount += rows.size();
+
+		if (rows.size() < mPageSize) {
+			end(null);
+		} else {
+			requestPage();
+		}
+	}
+
+	/**
+	 * Invokes the callback
+	 */
+	private void end(final Exception exception) {
+		if (mCallback != null) {
+			mTable.getClient().getCallbackExecutor().execute(new Runnable() {
+
+				@Override
+				public void run() {
+					mCallback.onCompleted(mCount, exception);
+				}
+			});
+		}
+	}
+
+	private void runOnStore(Runnable runnable) {
+		mStore.getExecutor().execute(runnable);
+	}
+
+	/**
+	 * Returns the __updatedAt value of a row
+	 */
+	private static Date getUpdatedAt(JsonElement row) throws Exception {
+		JsonElement updatedAt = row.isJsonObject() ? row.getAsJsonObject().get(MobileServiceTableBase.UpdatedAtSystemPropertyName)
+				: null;
+
+		if (updatedAt == null || !updatedAt.isJsonPrimitive()) {
+			throw new MobileServiceException("The " + MobileServiceTableBase.UpdatedAtSystemPropertyName
+					+ " property was not found in the results");
+		}
+
+		return DateSerializer.deserialize(updatedAt.getAsString());
+	}
+}
@@ -0,0 +1,758 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * MobileServiceJsonSyncTable.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Represents a Mobile Service table that works offline. Rows are read from and
+ * written to a local SQLite store, and the writes are queued until they are
+ * pushed to the Mobile Service.
+ * 
+ * Pending operations on the same row are collapsed, so an insert followed by
+ * an update is pushed as a single insert. Pushed updates send the row
+ * version, so changes made by others on the server are reported as
+ * MobileServicePreconditionFailedExceptionBase errors. Rows need string ids,
+ * which are generated for the inserted rows that don't have one
+ */
+public final class MobileServiceJsonSyncTable {
+
+	/**
+	 * Number of rows retrieved per request when pulling
+	 */
+	public static final int PULL_PAGE_SIZE = 50;
+
+	/**
+	 * The table name
+	 */
+	private final String mTableName;
+
+	/**
+	 * The MobileServiceClient used to invoke table operations
+	 */
+	private final MobileServiceClient mClient;
+
+	/**
+	 * The table used to push and pull the rows
+	 */
+	private final MobileServiceJsonTable mRemoteTable;
+
+	/**
+	 * The local store
+	 */
+	private final MobileServiceLocalStore mStore;
+
+	/**
+	 * Indicates if a push is in progress
+	 */
+	private boolean mPushing = false;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param name
+	 *            The name of the represented table
+	 * @param client
+	 *            The MobileServiceClient used to invoke table operations
+	 */
+	MobileServiceJsonSyncTable(String name, MobileServiceClient client) {
+		if (name == null || name.trim().length() == 0) {
+			throw new IllegalArgumentException("Invalid Table Name");
+		}
+
+		mTableName = name;
+		mClient = client;
+		mRemoteTable = client.getTable(name);
+		mStore = client.getLocalStore();
+	}
+
+	/**
+	 * Returns the name of the represented table
+	 */
+	public String getName() {
+		return mTableName;
+	}
+
+	/**
+	 * Returns the table used to push and pull the rows
+	 */
+	MobileServiceJsonTable getRemoteTable() {
+		return mRemoteTable;
+	}
+
+	/**
+	 * Starts a query used to pull rows from the Mobile Service table
+	 */
+	public MobileServiceQuery<TableJsonQueryCallback> where() {
+		return mRemoteTable.where();
+	}
+
+	/**
+	 * Reads all the rows of the local table
+	 * 
+	 * @param callback
+	 *            Callback to invoke with the rows
+	 */
+	public void read(final TableJsonQueryCallback callback) {
+		runOnStore(new StoreTask() {
+
+			@Override
+			void execute() throws Exception {
+				final JsonArray result = new JsonArray();
+
+				for (JsonObject item : mStore.getItems(mTableName)) {
+					result.add(item);
+				}
+
+				deliver(new Runnable() {
+
+					@Override
+					public void run() {
+						callback.onCompleted(result, 0, null, null);
+					}
+				});
+			}
+
+			@Override
+			void onError(Exception exception) {
+				callback.onCompleted(null, 0, exception, null);
+			}
+		});
+	}
+
+	/**
+	 * Looks up a row in the local table
+	 * 
+	 * @param id
+	 *            The id of the row
+	 * @param callback
+	 *            Callback to invoke with the row, or null if it's not found
+	 */
+	public void lookUp(final Object id, final TableJsonOperationCallback callback) {
+		runOnStore(new StoreTask() {
+
+			@Override
+			void execute() throws Exception {
+				final JsonObject item = mStore.getItem(mTableName, getId(id));
+
+				deliver(new Runnable() {
+
+					@Override
+					public void run() {
+						callback.onCompleted(item, null, null);
+					}
+				});
+			}
+
+			@Override
+			void onError(Exception exception) {
+				callback.onCompleted(null, exception, null);
+			}
+		});
+	}
+
+	/**
+	 * Inserts a row in the local table, and queues its insertion in the
+	 * Mobile Service table. A string id is generated if the row has none
+	 * 
+	 * @param element
+	 *            The JsonObject to insert
+	 * @param callback
+	 *            Callback to invoke with the inserted row
+	 */
+	public void insert(JsonObject element, final TableJsonOperationCallback callback) {
+		final JsonObject item = copy(element);
+
+		runOnStore(new StoreTask() {
+
+			@Override
+			void execute() throws Exception {
+				String id = getOrCreateId(item);
+
+				if (mStore.getItem(mTableName, id) != null) {
+					throw new IllegalArgumentException("The local table already contains a row with id " + id);
+				}
+
+				mStore.applyOperation(mTableName, id, MobileServiceSyncOperation.Kind.Insert, item);
+				deliverItem(item, callback);
+			}
+
+			@Override
+			void onError(Exception exception) {
+				if (callback != null) {
+					callback.onCompleted(null, exception, null);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Updates a row in the local table, and queues its update in the Mobile
+	 * Service table. The properties of the element are merged into the local
+	 * copy of the row
+	 * 
+	 * @param element
+	 *            The JsonObject to update
+	 * @param callback
+	 *            Callback to invoke with the updated row
+	 */
+	public void update(JsonObject element, final TableJsonOperationCallback callback) {
+		final JsonObject changes = copy(element);
+
+		runOnStore(new StoreTask() {
+
+			@Override
+			void execute() throws Exception {
+				String id = getId(changes);
+				JsonObject item = mStore.getItem(mTableName, id);
+
+				if (item == null) {
+					item = changes;
+				} else {
+					for (Map.Entry<String, JsonElement> property : changes.entrySet()) {
+						item.add(property.getKey(), property.getValue());
+					}
+				}
+
+				mStore.applyOperation(mTableName, id, MobileServiceSyncOperation.Kind.Update, item);
+				deliverItem(item, callback);
+			}
+
+			@Override
+			void onError(Exception exception) {
+				if (callback != null) {
+					callback.onCompleted(null, exception, null);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Deletes a row from the local table, and queues its deletion from the
+	 * Mobile Service table
+	 * 
+	 * @param elementOrId
+	 *            The JsonObject to delete, or its id
+	 * @param callback
+	 *            Callback to invoke when the operation is completed
+	 */
+	public void delete(Object elementOrId, final TableDeleteCallback callback) {
+		final Object id = elementOrId instanceof JsonObject ? copy((JsonObject) elementOrId) : elementOrId;
+
+		runOnStore(new StoreTask() {
+
+			@Override
+			void execute() throws Exception {
+				mStore.applyOperation(mTableName, getId(id), MobileServiceSyncOperation.Kind.Delete, null);
+
+				if (callback != null) {
+					deliver(new Runnable() {
+
+						@Override
+						public void run() {
+							callback.onCompleted(null, null);
+						}
+					});
+				}
+			}
+
+			@Override
+			void onError(Exception exception) {
+				if (callback != null) {
+					callback.onCompleted(exception, null);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Pushes the pending operations of the table to the Mobile Service, in
+	 * the order they were done. The push stops at the first operation that
+	 * fails, which stays in the queue
+	 * 
+	 * @param callback
+	 *            Callback to invoke with the number of operations pushed
+	 */
+	public void push(final TableSyncCallback callback) {
+		synchronized (this) {
+			if (mPushing) {
+				if (callback != null) {
+					callback.onCompleted(0, new IllegalStateException("A push is already in progress"));
+				}
+
+				return;
+			}
+
+			mPushing = true;
+		}
+
+		runOnStore(new StoreTask() {
+
+			@Override
+			void execute() throws Exception {
+				pushNextOperation(0, callback);
+			}
+
+			@Override
+			void onError(Exception exception) {
+				endPush(0, exception, callback);
+			}
+		});
+	}
+
+	/**
+	 * Pushes the pending operations of the table, and then stores locally
+	 * all the rows of the Mobile Service table
+	 * 
+	 * @param callback
+	 *            Callback to invoke with the number of rows stored
+	 */
+	public void pull(TableSyncCallback callback) {
+		pull(where(), callback);
+	}
+
+	/**
+	 * Pushes the pending operations of the table, and then stores locally
+	 * the rows returned by a query. The rows are retrieved in pages of
+	 * PULL_PAGE_SIZE rows
+	 * 
+	 * @param query
+	 *            The query, started with where()
+	 * @param callback
+	 *            Callback to invoke with the number of rows stored
+	 */
+	public void pull(final MobileServiceQuery<TableJsonQueryCallback> query, final TableSyncCallback callback) {
+		push(new TableSyncCallback() {
+
+			@Override
+			public void onCompleted(int count, Exception exception) {
+				if (exception != null) {
+					if (callback != null) {
+						callback.onCompleted(0, exception);
+					}
+				} else {
+					pullPages(query.pages(PULL_PAGE_SIZE), callback);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Pushes the pending operations of the table, and then stores locally
+	 * the rows of a query that were updated since the previous pull with the
+	 * same query id. The __updatedAt value of the last row stored is kept as
+	 * the watermark of the query
+	 * 
+	 * @param queryId
+	 *            Identifies the watermark of the query
+	 * @param query
+	 *            The query, started with where(). Its ordering, top and skip
+	 *            values are ignored
+	 * @param callback
+	 *            Callback to invoke with the number of rows retrieved
+	 */
+	public void pull(final String queryId, final MobileServiceQuery<TableJsonQueryCallback> query, final TableSyncCallback callback) {
+		final IncrementalPullSink sink = new IncrementalPullSink() {
+
+			@Override
+			public void merge(JsonArray rows) throws Exception {
+				storeServerItems(rows);
+			}
+		};
+
+		push(new TableSyncCallback() {
+
+			@Override
+			public void onCompleted(int count, Exception exception) {
+				if (exception != null) {
+					if (callback != null) {
+						callback.onCompleted(0, exception);
+					}
+				} else {
+					mRemoteTable.pullIncremental(queryId, query, sink, callback);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Deletes the local rows of the table, discarding its pending operations
+	 * and the watermarks of its incremental pulls. The Mobile Service table
+	 * is not changed
+	 * 
+	 * @param callback
+	 *            Callback to invoke with the number of rows deleted
+	 */
+	public void purge(final TableSyncCallback callback) {
+		synchronized (this) {
+			if (mPushing) {
+				if (callback != null) {
+					callback.onCompleted(0, new IllegalStateException("A push is in progress"));
+				}
+
+				return;
+			}
+		}
+
+		runOnStore(new StoreTask() {
+
+			@Override
+			void execute() throws Exception {
+				final int count = mStore.purgeTable(mTableName);
+
+				if (callback != null) {
+					deliver(new Runnable() {
+
+						@Override
+						public void run() {
+							callback.onCompleted(count, null);
+						}
+					});
+				}
+			}
+
+			@Override
+			void onError(Exception exception) {
+				if (callback != null) {
+					callback.onCompleted(0, exception);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of operations waiting to be pushed. It reads the
+	 * local store, so it shouldn't be called from the main thread
+	 */
+	public int getPendingOperationCount() {
+		return mStore.getOperationCount(mTableName);
+	}
+
+	/**
+	 * Pushes the next pending operation. Runs on the store executor
+	 * 
+	 * @param count
+	 *            Number of operations pushed so far
+	 * @param callback
+	 *            Callback to invoke when the push ends
+	 */
+	private void pushNextOperation(final int count, final TableSyncCallback callback) {
+		final MobileServiceSyncOperation operation = mStore.getNextOperation(mTableName);
+
+		if (operation == null) {
+			endPush(count, null, callback);
+			return;
+		}
+
+		mStore.startPushingOperation(operation);
+
+		TableJsonOperationCallback itemCallback = new TableJsonOperationCallback() {
+
+			@Override
+			public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+				onOperationPushed(operation, jsonObject, exception, count, callback);
+			}
+		};
+
+		switch (operation.getKind()) {
+		case Insert:
+			mRemoteTable.insert(operation.getItem(), itemCallback);
+			break;
+		case Update:
+			mRemoteTable.update(operation.getItem(), itemCallback);
+			break;
+		default:
+			mRemoteTable.delete(operation.getItemId(), new TableDeleteCallback() {
+
+				@Override
+				public void onCompleted(Exception exception, ServiceFilterResponse response) {
+					// The row was already deleted from the server
+					if (response != null && response.getStatus() != null && response.getStatus().getStatusCode() == 404) {
+						exception = null;
+					}
+
+					onOperationPushed(operation, null, exception, count, callback);
+				}
+			});
+			break;
+		}
+	}
+
+	/**
+	 * Completes a pushed operation, and continues with the next one
+	 */
+	private void onOperationPushed(final MobileServiceSyncOperation operation, final JsonObject serverItem,
+			final Exception exception, final int count, final TableSyncCallback callback) {
+		runOnStore(new StoreTask() {
+
+			@Override
+			void execute() throws Exception {
+				if (exception != null) {
+					mStore.cancelPushingOperation(operation);
+					endPush(count, exception, callback);
+				} else {
+					mStore.completeOperation(operation, serverItem);
+					pushNextOperation(count + 1, callback);
+				}
+			}
+
+			@Override
+			void onError(Exception e) {
+				mStore.cancelPushingOperation(operation);
+				endPush(count, e, callback);
+			}
+		});
+	}
+
+	/**
+	 * Ends a push and invokes its callback
+	 */
+	private void endPush(final int count, final Exception exception, final TableSyncCallback callback) {
+		synchronized (this) {
+			mPushing = false;
+		}
+
+		if (callback != null) {
+			deliver(new Runnable() {
+
+				@Override
+				public void run() {
+					callback.onCompleted(count, exception);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Retrieves the pages of a pull and stores their rows
+	 */
+	private void pullPages(final MobileServiceQueryPager<TableJsonQueryCallback> pager, final TableSyncCallback callback) {
+		pager.nextPage(new TableJsonQueryCallback() {
+
+			/**
+			 * Number of rows stored so far
+			 */
+			private int mCount = 0;
+
+			@Override
+			public void onCompleted(final JsonElement result, int count, Exception exception, ServiceFilterResponse response) {
+				if (exception != null) {
+					if (callback != null) {
+						callback.onCompleted(mCount, exception);
+					}
+
+					return;
+				}
+
+				final TableJsonQueryCallback pageCallback = this;
+
+				runOnStore(new StoreTask() {
+
+					@Override
+					void execute() throws Exception {
+						if (result != null && result.isJsonArray()) {
+							mCount += storeServerItems(result.getAsJsonArray());
+						}
+
+						if (pager.hasMorePages()) {
+							pager.nextPage(pageCallback);
+						} else if (callback != null) {
+							deliver(new Runnable() {
+
+								@Override
+								public void run() {
+									callback.onCompleted(mCount, null);
+								}
+							});
+						}
+					}
+
+					@Override
+					void onError(Exception e) {
+						if (callback != null) {
+							callback.onCompleted(mCount, e);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Stores rows retrieved from the server. Runs on the store executor
+	 * 
+	 * @return The number of rows stored
+	 */
+	private int storeServerItems(JsonArray rows) {
+		List<JsonObject> items = new ArrayList<JsonObject>();
+		List<String> ids = new ArrayList<String>();
+
+		for (JsonElement row : rows) {
+			if (row.isJsonObject()) {
+				JsonElement id = row.getAsJsonObject().get("id");
+
+				if (id != null && id.isJsonPrimitive()) {
+					items.add(row.getAsJsonObject());
+					ids.add(id.getAsString());
+				}
+			}
+		}
+
+		return mStore.putServerItems(mTableName, items, ids);
+	}
+
+	/**
+	 * Work done on the store executor. Errors are delivered on the callback
+	 * executor
+	 */
+	private abstract class StoreTask implements Runnable {
+
+		/**
+		 * Does the work
+		 */
+		abstract void execute() throws Exception;
+
+		/**
+		 * Invoked on the callback executor if the work fails
+		 */
+		abstract void onError(Exception exception);
+
+		@Override
+		public final void run() {
+			try {
+				execute();
+			} catch (final Exception e) {
+				deliver(new Runnable() {
+
+					@Override
+					public void run() {
+						onError(e);
+					}
+				});
+			}
+		}
+	}
+
+	private void runOnStore(StoreTask task) {
+		mStore.getExecutor().execute(task);
+	}
+
+	private void deliver(Runnable runnable) {
+		mClient.getCallbackExecutor().execute(runnable);
+	}
+
+	private void deliverItem(final JsonObject item, final TableJsonOperationCallback callback) {
+		if (callback != null) {
+			deliver(new Runnable() {
+
+				@Override
+				public void run() {
+					callback.onCompleted(item, null, null);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Copies a JsonObject, so later changes made by the caller don't affect
+	 * the queued operation
+	 */
+	private static JsonObject copy(JsonObject element) {
+		if (element == null) {
+			throw new IllegalArgumentException("Element cannot be null");
+		}
+
+		return new JsonParser().parse(element.toString()).getAsJsonObject();
+	}
+
+	/**
+	 * Returns the id of a row or of an id value
+	 */
+	private static String getId(Object elementOrId) {
+		if (elementOrId instanceof JsonObject) {
+			JsonObject element = (JsonObject) elementOrId;
+			normalizeIdProperty(element);
+
+			JsonElement id = element.get("id");
+
+			if (id == null || !id.isJsonPrimitive()) {
+				throw new IllegalArgumentException("Element must contain id property");
+			}
+
+			return id.getAsString();
+		} else if (elementOrId instanceof String || elementOrId instanceof Number) {
+			return elementOrId.toString();
+		} else {
+			throw new IllegalArgumentException("The id must be numeric or string");
+		}
+	}
+
+	/**
+	 * Returns the string id of a row to insert, generating it if needed
+	 */
+	private static String getOrCreateId(JsonObject element) {
+		normalizeIdProperty(element);
+
+		JsonElement id = element.get("id");
+
+		if (id == null || id.isJsonNull() || (id.isJsonPrimitive() && id.getAsString().length() == 0)) {
+			String newId = UUID.randomUUID().toString();
+			element.addProperty("id", newId);
+			return newId;
+		}
+
+		if (!id.isJsonPrimitive() || !((JsonPrimitive) id).isString()) {
+			throw new IllegalArgumentException("The rows of a sync table must have string ids");
+		}
+
+		return id.getAsString();
+	}
+
+	/**
+	 * Renames the id property of a row to "id", regardless its casing
+	 */
+	private static void normalizeIdProperty(JsonObject element) {
+		String idName = null;
+
+		for (Map.Entry<String, JsonElement> property : element.entrySet()) {
+			if (property.getKey().equalsIgnoreCase("id")) {
+				idName = property.getKey();
+				break;
+			}
+		}
+
+		if (idName != null && !idName.equals("id")) {
+			element.add("id", element.remove(idName));
+		}
+	}
+}
@@ -19,8 +19,14 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.http.Header;
@@ -31,9 +37,12 @@ import org.apache.http.protocol.HTTP;
 import android.net.Uri;
 import android.util.Pair;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
 
 /**
  * Represents a Mobile Service Table
@@ -41,6 +50,25 @@ import com.google.gson.JsonParser;
 public final class MobileServiceJsonTable extends
 MobileServiceTableBase<TableJsonQueryCallback> {
 
+	/**
+	 * Processes the entity returned by an operation on the request executor
+	 * thread, before the callback of the operation is invoked
+	 */
+	interface EntityProcessor {
+		/**
+		 * Processes an entity returned by the service
+		 * 
+		 * @param jsonEntity
+		 *            The entity, as it will be passed to the callback
+		 * @param response
+		 *            The response of the operation
+		 * @return The entity to pass to the callback
+		 * @throws Exception
+		 *             reported to the callback as the error of the operation
+		 */
+		JsonObject process(JsonObject jsonEntity, ServiceFilterResponse response) throws Exception;
+	}
+
 	/**
 	 * Constructor for MobileServiceJsonTable
 	 * 
@@ -63,33 +91,256 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 	 */
 	public void execute(final MobileServiceQuery<?> query,
 			final TableJsonQueryCallback callback) {
+		executeTemplate(query.compile(), callback);
+	}
+
+	@Override
+	void execute(MobileServiceQueryTemplate<TableJsonQueryCallback> template, TableJsonQueryCallback callback) {
+		executeTemplate(template, callback);
+	}
+
+	/**
+	 * Retrieves a set of rows from the table using a compiled query
+	 * 
+	 * @param template
+	 *            The compiled query
+	 * @param callback
+	 *            Callback to invoke when the operation is completed
+	 */
+	private void executeTemplate(MobileServiceQueryTemplate<?> template, TableJsonQueryCallback callback) {
 		String url = null;
 		try {
-			String filtersUrl = URLEncoder.encode(query.toString().trim(),
-					MobileServiceClient.UTF8_ENCODING);
-			url = mClient.getAppUrl().toString()
-					+ TABLES_URL
-					+ URLEncoder.encode(mTableName,
-							MobileServiceClient.UTF8_ENCODING);
-
-			if (filtersUrl.length() > 0) {
-				url += "?$filter=" + filtersUrl + query.getRowSetModifiers();
-			} else {
-				String rowSetModifiers = query.getRowSetModifiers();
-				
-				if (rowSetModifiers.length() > 0) {
-					url += "?" + query.getRowSetModifiers().substring(1);
-				}
+			url = createQueryUrl(template);
+		} catch (UnsupportedEncodingException e) {
+			if (callback != null) {
+				callback.onCompleted(null, 0, e, null);
 			}
+			return;
+		} catch (IllegalStateException e) {
+			if (callback != null) {
+				callback.onCompleted(null, 0, e, null);
+			}
+			return;
+		}
 
+		executeGetRecords(url, null, callback);
+	}
+
+	/**
+	 * Retrieves the rows of a query that were updated since the previous
+	 * pull with the same query id, and merges them into a sink. The first
+	 * pull retrieves all the rows. The __updatedAt value of the last row
+	 * merged is kept in the local store as the watermark of the query
+	 * 
+	 * @param queryId
+	 *            Identifies the watermark. Use a different id for each query
+	 *            and sink
+	 * @param query
+	 *            The query, started with where(). Its ordering, top and skip
+	 *            values are ignored
+	 * @param sink
+	 *            Destination of the rows
+	 * @param callback
+	 *            Callback to invoke with the number of rows merged
+	 */
+	public void pullIncremental(String queryId, MobileServiceQuery<TableJsonQueryCallback> query, IncrementalPullSink sink,
+			TableSyncCallback callback) {
+		new MobileServiceIncrementalPull(this, queryId, query, MobileServiceJsonSyncTable.PULL_PAGE_SIZE, sink, callback).start();
+	}
+
+	/**
+	 * Retrieves a set of rows from the table using a query, deserializing
+	 * the typed entities as they are read from the response
+	 * 
+	 * @param query
+	 *            The query used to retrieve the rows
+	 * @param clazz
+	 *            The class of the entities
+	 * @param snapshots
+	 *            The snapshots to take of the entities, or null
+	 * @param callback
+	 *            Callback to invoke when the operation is completed
+	 */
+	<E> void execute(final MobileServiceQuery<?> query, final Class<E> clazz, final EntitySnapshots snapshots,
+			final TableQueryCallback<E> callback) {
+		execute(query.compile(), clazz, snapshots, callback);
+	}
+
+	/**
+	 * Retrieves a set of rows from the table using a compiled query,
+	 * deserializing the typed entities as they are read from the response
+	 * 
+	 * @param template
+	 *            The compiled query
+	 * @param clazz
+	 *            The class of the entities
+	 * @param snapshots
+	 *            The snapshots to take of the entities, or null. They are
+	 *            taken on the request thread, with the entities
+	 * @param callback
+	 *            Callback to invoke when the operation is completed
+	 */
+	<E> void execute(final MobileServiceQueryTemplate<?> template, final Class<E> clazz, final EntitySnapshots snapshots,
+			final TableQueryCallback<E> callback) {
+		String url = null;
+		try {
+			url = createQueryUrl(template);
 		} catch (UnsupportedEncodingException e) {
 			if (callback != null) {
 				callback.onCompleted(null, 0, e, null);
 			}
 			return;
+		} catch (IllegalStateException e) {
+			if (callback != null) {
+				callback.onCompleted(null, 0, e, null);
+			}
+			return;
 		}
 
-		executeGetRecords(url, callback);
+		ServiceFilterRequest request = new ServiceFilterRequestImpl(
+				new HttpGet(url), mClient.getAndroidHttpClientPool());
+
+		// Create AsyncTask to execute the request and parse the results
+		new RequestAsyncTask(request, mClient.createConnection()) {
+			/**
+			 * The typed results
+			 */
+			private List<E> mResults;
+
+			/**
+			 * The total count of rows, if requested
+			 */
+			private int mCount;
+
+			@Override
+			protected void processResponse(ServiceFilterResponse response) throws Exception {
+				if (callback != null) {
+					Gson gson = mClient.getGson();
+					List<E> results = new ArrayList<E>();
+					Reader reader;
+
+					if (response.getRawContent() != null) {
+						reader = new InputStreamReader(new ByteArrayInputStream(response.getRawContent()),
+								MobileServiceClient.UTF8_ENCODING);
+					} else {
+						reader = new StringReader(response.getContent());
+					}
+
+					// Only the selected fields are bound when the query has a
+					// projection
+					TypeAdapter<E> adapter = mClient.getEntityAdapter(clazz, template.getProjection());
+
+					int count;
+					try {
+						count = JsonEntityParser.parseResults(reader, adapter, clazz, results);
+					} catch (IOException e) {
+						throw new MobileServiceException(
+								"Error while retrieving data from response.",
+								e);
+					}
+
+					if (count < 0) {
+						// The content is not a list of rows, parse it as a
+						// single entity
+						JsonElement json;
+						try {
+							json = new JsonParser().parse(response.getContent());
+						} catch (Exception e) {
+							throw new MobileServiceException(
+									"Error while retrieving data from response.",
+									e);
+						}
+
+						results = JsonEntityParser.parseResults(json, gson, clazz);
+						count = 0;
+					}
+
+					if (snapshots != null) {
+						for (E entity : results) {
+							snapshots.take(entity, gson);
+						}
+					}
+
+					mResults = results;
+					mCount = count;
+				}
+			}
+
+			@Override
+			protected void onPostExecute(ServiceFilterResponse response) {
+				if (callback != null) {
+					if (mTaskException == null && response != null) {
+						callback.onCompleted(mResults, mCount, null, response);
+					} else {
+						callback.onCompleted(null, 0, mTaskException, response);
+					}
+				}
+			}
+		}.executeTask();
+	}
+
+	@Override
+	void executePage(MobileServiceQuery<?> query, final String keysetField,
+			final MobileServiceQueryPager.PageCallback<TableJsonQueryCallback> callback) {
+		execute(query, new TableJsonQueryCallback() {
+
+			@Override
+			public void onCompleted(final JsonElement result, final int count, final Exception exception,
+					final ServiceFilterResponse response) {
+				int rowCount = 0;
+				JsonElement lastKeyValue = null;
+
+				if (result != null && result.isJsonArray()) {
+					JsonArray rows = result.getAsJsonArray();
+					rowCount = rows.size();
+
+					if (keysetField != null && rowCount > 0 && rows.get(rowCount - 1).isJsonObject()) {
+						lastKeyValue = rows.get(rowCount - 1).getAsJsonObject().get(keysetField);
+
+						if (lastKeyValue != null && lastKeyValue.isJsonNull()) {
+							lastKeyValue = null;
+						}
+					}
+				} else if (result != null) {
+					rowCount = 1;
+				}
+
+				callback.onPage(new MobileServiceQueryPager.Page<TableJsonQueryCallback>(rowCount, count, lastKeyValue, response, exception) {
+
+					@Override
+					void deliver(TableJsonQueryCallback pageCallback) {
+						pageCallback.onCompleted(result, count, exception, response);
+					}
+				});
+			}
+		});
+	}
+
+	@Override
+	MobileServiceQueryPager.Page<TableJsonQueryCallback> createErrorPage(final Exception exception) {
+		return new MobileServiceQueryPager.Page<TableJsonQueryCallback>(0, 0, null, null, exception) {
+
+			@Override
+			void deliver(TableJsonQueryCallback pageCallback) {
+				pageCallback.onCompleted(null, 0, exception, null);
+			}
+		};
+	}
+
+	/**
+	 * Creates the URL used to execute a query against the table
+	 * 
+	 * @param template
+	 *            The compiled query to execute
+	 * @return The query URL
+	 * @throws UnsupportedEncodingException
+	 */
+	private String createQueryUrl(MobileServiceQueryTemplate<?> template) throws UnsupportedEncodingException {
+		return mClient.getAppUrl().toString()
+				+ TABLES_URL
+				+ URLEncoder.encode(mTableName,
+						MobileServiceClient.UTF8_ENCODING)
+				+ template.getQueryString();
 	}
 	
 	/**
@@ -115,6 +366,23 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 	 *            Callback to invoke after the operation is completed
 	 */
 	public void lookUp(Object id, List<Pair<String, String>> parameters, final TableJsonOperationCallback callback) {
+		lookUp(id, parameters, null, callback);
+	}
+
+	/**
+	 * Looks up a row in the table and retrieves its JSON value
+	 * 
+	 * @param id
+	 *            The id of the row
+	 * @param parameters
+	 *            A list of user-defined parameters and values to include in the request URI query string
+	 * @param processor
+	 *            Processor of the row on the request thread, or null
+	 * @param callback
+	 *            Callback to invoke after the operation is completed
+	 */
+	void lookUp(Object id, List<Pair<String, String>> parameters, final EntityProcessor processor,
+			final TableJsonOperationCallback callback) {
 		// Create request URL
 		try {	
 			validateId(id);
@@ -143,7 +411,21 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 		
 		url = uriBuilder.build().toString();
 
-		executeGetRecords(url, new TableJsonQueryCallback() {
+		EntityProcessor lookUpProcessor = null;
+
+		if (processor != null) {
+			lookUpProcessor = new EntityProcessor() {
+
+				@Override
+				public JsonObject process(JsonObject jsonEntity, ServiceFilterResponse response) throws Exception {
+					updateVersionFromETag(response, jsonEntity);
+
+					return processor.process(jsonEntity, response);
+				}
+			};
+		}
+
+		executeGetRecords(url, lookUpProcessor, new TableJsonQueryCallback() {
 
 			@Override
 			public void onCompleted(JsonElement results, int count,
@@ -157,7 +439,9 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 						} else { // Lookup result
 							JsonObject patchedJson = results.getAsJsonObject();
 							
-							updateVersionFromETag(response, patchedJson);
+							if (processor == null) {
+								updateVersionFromETag(response, patchedJson);
+							}
 							
 							callback.onCompleted(patchedJson, exception, response);
 						}
@@ -197,6 +481,25 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 	 */
 	public void insert(final JsonObject element, List<Pair<String, String>> parameters,
 			final TableJsonOperationCallback callback) {
+		insert(element, parameters, null, callback);
+	}
+
+	/**
+	 * Inserts a JsonObject into a Mobile Service Table
+	 * 
+	 * @param element
+	 *            The JsonObject to insert
+	 * @param parameters
+	 *            A list of user-defined parameters and values to include in the request URI query string
+	 * @param processor
+	 *            Processor of the inserted entity on the request thread, or
+	 *            null. The element must not be changed until the callback is
+	 *            invoked
+	 * @param callback
+	 *            Callback to invoke when the operation is completed
+	 */
+	void insert(final JsonObject element, List<Pair<String, String>> parameters, EntityProcessor processor,
+			final TableJsonOperationCallback callback) {
 
 		try {
 			validateIdOnInsert(element);
@@ -207,40 +510,26 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 			return;
 		}
 
-		String content = element.toString();
-
-		ServiceFilterRequest post;
-		
-		Uri.Builder uriBuilder = Uri.parse(mClient.getAppUrl().toString()).buildUpon();
-		uriBuilder.path(TABLES_URL);
-		uriBuilder.appendPath(mTableName);
-		
-		parameters = addSystemProperties(mSystemProperties, parameters);
-
-		if (parameters != null && parameters.size() > 0) {
-			for (Pair<String, String> parameter : parameters) {
-				uriBuilder.appendQueryParameter(parameter.first, parameter.second);
-			}
-		}
-		post = new ServiceFilterRequestImpl(new HttpPost(uriBuilder.build().toString()), mClient.getAndroidHttpClientFactory());
-		post.addHeader(HTTP.CONTENT_TYPE, MobileServiceConnection.JSON_CONTENTTYPE);
+		byte[] content;
 
 		try {
-			post.setContent(content);
-		} catch (Exception e) {
+			content = element.toString().getBytes(MobileServiceClient.UTF8_ENCODING);
+		} catch (UnsupportedEncodingException e) {
 			if (callback != null) {
 				callback.onCompleted(null, e, null);
 			}
 			return;
 		}
 
-		executeTableOperation(post, new TableJsonOperationCallback() {
+		final EntityProcessor patchProcessor = createPatchProcessor(element, processor);
+
+		insertContent(content, parameters, patchProcessor, new TableJsonOperationCallback() {
 
 			@Override
 			public void onCompleted(JsonObject jsonEntity, Exception exception,
 					ServiceFilterResponse response) {
 				if (callback != null) {
-					if (exception == null && jsonEntity != null) {
+					if (exception == null && jsonEntity != null && patchProcessor == null) {
 						JsonObject patchedJson = patchOriginalEntityWithResponseEntity(
 								element, jsonEntity);
 						
@@ -254,6 +543,49 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 			}
 		});
 	}
+
+	/**
+	 * Inserts an entity already serialized into a Mobile Service Table
+	 * 
+	 * @param content
+	 *            The UTF-8 encoded JSON entity
+	 * @param parameters
+	 * 			  A list of user-defined parameters and values to include in the request URI query string
+	 * @param processor
+	 *            Processor of the returned entity on the request thread, or
+	 *            null
+	 * @param callback
+	 *            Callback to invoke with the entity returned by the service
+	 */
+	void insertContent(byte[] content, List<Pair<String, String>> parameters, EntityProcessor processor,
+			final TableJsonOperationCallback callback) {
+		ServiceFilterRequest post;
+		
+		Uri.Builder uriBuilder = Uri.parse(mClient.getAppUrl().toString()).buildUpon();
+		uriBuilder.path(TABLES_URL);
+		uriBuilder.appendPath(mTableName);
+		
+		parameters = addSystemProperties(mSystemProperties, parameters);
+
+		if (parameters != null && parameters.size() > 0) {
+			for (Pair<String, String> parameter : parameters) {
+				uriBuilder.appendQueryParameter(parameter.first, parameter.second);
+			}
+		}
+		post = new ServiceFilterRequestImpl(new HttpPost(uriBuilder.build().toString()), mClient.getAndroidHttpClientPool());
+		post.addHeader(HTTP.CONTENT_TYPE, MobileServiceConnection.JSON_CONTENTTYPE);
+
+		try {
+			post.setContent(content);
+		} catch (Exception e) {
+			if (callback != null) {
+				callback.onCompleted(null, e, null);
+			}
+			return;
+		}
+
+		executeTableOperation(post, processor, callback);
+	}
 	
 	/**
 	 * Updates an element from a Mobile Service Table
@@ -279,9 +611,28 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 	 *            Callback to invoke when the operation is completed
 	 */
 	public void update(final JsonObject element, List<Pair<String, String>> parameters, final TableJsonOperationCallback callback) {
+		update(element, parameters, null, callback);
+	}
+
+	/**
+	 * Updates an element from a Mobile Service Table
+	 * 
+	 * @param element
+	 *            The JsonObject to update
+	 * @param parameters
+	 *            A list of user-defined parameters and values to include in the request URI query string
+	 * @param processor
+	 *            Processor of the updated entity on the request thread, or
+	 *            null. The element must not be changed until the callback is
+	 *            invoked
+	 * @param callback
+	 *            Callback to invoke when the operation is completed
+	 */
+	void update(final JsonObject element, List<Pair<String, String>> parameters, EntityProcessor processor,
+			final TableJsonOperationCallback callback) {
 		Object id = null;		
 		String version = null;
-		String content = null;
+		byte[] content = null;
 		
 		try {			
 			id = validateId(element);
@@ -293,13 +644,66 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 			return;
 		}
 		
-		if (!isNumericType(id)) {
-			version = getVersionSystemProperty(element);
-			content = removeSystemProperties(element).toString();
-		} else {
-			content = element.toString();
+		try {
+			if (!isNumericType(id)) {
+				version = getVersionSystemProperty(element);
+				content = removeSystemProperties(element).toString().getBytes(MobileServiceClient.UTF8_ENCODING);
+			} else {
+				content = element.toString().getBytes(MobileServiceClient.UTF8_ENCODING);
+			}
+		} catch (UnsupportedEncodingException e) {
+			if (callback != null) {
+				callback.onCompleted(null, e, null);
+			}
+			
+			return;
 		}
 
+		final EntityProcessor patchProcessor = createPatchProcessor(element, processor);
+
+		updateContent(id, version, content, parameters, patchProcessor, new TableJsonOperationCallback() {
+
+			@Override
+			public void onCompleted(JsonObject jsonEntity, Exception exception,
+					ServiceFilterResponse response) {
+				if (callback != null) {
+					if (exception == null && jsonEntity != null && patchProcessor == null) {
+						JsonObject patchedJson = patchOriginalEntityWithResponseEntity(
+								element, jsonEntity);
+						
+						updateVersionFromETag(response, patchedJson);
+						
+						callback.onCompleted(patchedJson, exception, response);
+					} else {
+						callback.onCompleted(jsonEntity, exception, response);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Updates an entity already serialized in a Mobile Service Table
+	 * 
+	 * @param id
+	 *            The id of the entity
+	 * @param version
+	 *            The version of the entity, sent as If-Match, or null
+	 * @param content
+	 *            The UTF-8 encoded JSON entity
+	 * @param parameters
+	 * 			  A list of user-defined parameters and values to include in the request URI query string
+	 * @param processor
+	 *            Processor of the returned entity on the request thread, or
+	 *            null
+	 * @param callback
+	 *            Callback to invoke with the entity returned by the service.
+	 *            If the version doesn't match, the exception is a
+	 *            MobileServicePreconditionFailedExceptionBase with the
+	 *            entity in the service
+	 */
+	void updateContent(Object id, String version, byte[] content, List<Pair<String, String>> parameters,
+			EntityProcessor processor, final TableJsonOperationCallback callback) {
 		ServiceFilterRequest patch;
 		
 		Uri.Builder uriBuilder = Uri.parse(mClient.getAppUrl().toString()).buildUpon();
@@ -315,7 +719,7 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 			}
 		}
 		
-		patch = new ServiceFilterRequestImpl(new HttpPatch(uriBuilder.build().toString()), mClient.getAndroidHttpClientFactory());
+		patch = new ServiceFilterRequestImpl(new HttpPatch(uriBuilder.build().toString()), mClient.getAndroidHttpClientPool());
 		patch.addHeader(HTTP.CONTENT_TYPE, MobileServiceConnection.JSON_CONTENTTYPE);	
 		
 		if (version != null) {
@@ -332,20 +736,13 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 			return;
 		}
 
-		executeTableOperation(patch, new TableJsonOperationCallback() {
+		executeTableOperation(patch, processor, new TableJsonOperationCallback() {
 
 			@Override
 			public void onCompleted(JsonObject jsonEntity, Exception exception,
 					ServiceFilterResponse response) {
 				if (callback != null) {
-					if (exception == null && jsonEntity != null) {
-						JsonObject patchedJson = patchOriginalEntityWithResponseEntity(
-								element, jsonEntity);
-						
-						updateVersionFromETag(response, patchedJson);
-						
-						callback.onCompleted(patchedJson, exception, response);
-					} else if (exception != null && response != null && response.getStatus() != null && response.getStatus().getStatusCode() == 412) {
+					if (exception != null && response != null && response.getStatus() != null && response.getStatus().getStatusCode() == 412) {
 						String content = response.getContent();
 						
 						JsonObject serverEntity = null;
@@ -363,31 +760,192 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 		});
 	}
 
+	/**
+	 * Inserts a list of JsonObjects into a Mobile Service table, using
+	 * DEFAULT_MAX_CONCURRENT_REQUESTS requests in parallel
+	 * 
+	 * @param elements
+	 *            The JsonObjects to insert
+	 * @param callback
+	 *            Callback to invoke when all the operations are completed
+	 */
+	public void insertAll(List<JsonObject> elements, TableJsonBatchOperationCallback callback) {
+		this.insertAll(elements, DEFAULT_MAX_CONCURRENT_REQUESTS, callback);
+	}
+
+	/**
+	 * Inserts a list of JsonObjects into a Mobile Service table
+	 * 
+	 * @param elements
+	 *            The JsonObjects to insert
+	 * @param maxConcurrentRequests
+	 *            Maximum number of requests in progress at the same time
+	 * @param callback
+	 *            Callback to invoke when all the operations are completed
+	 */
+	public void insertAll(List<JsonObject> elements, int maxConcurrentRequests, final TableJsonBatchOperationCallback callback) {
+		new JsonBatchOperation(elements, maxConcurrentRequests, callback) {
+
+			@Override
+			protected void executeItem(JsonObject element, int index) {
+				insert(element, createItemCallback(index));
+			}
+		}.start();
+	}
+
+	/**
+	 * Updates a list of JsonObjects in a Mobile Service table, using
+	 * DEFAULT_MAX_CONCURRENT_REQUESTS requests in parallel
+	 * 
+	 * @param elements
+	 *            The JsonObjects to update
+	 * @param callback
+	 *            Callback to invoke when all the operations are completed
+	 */
+	public void updateAll(List<JsonObject> elements, TableJsonBatchOperationCallback callback) {
+		this.updateAll(elements, DEFAULT_MAX_CONCURRENT_REQUESTS, callback);
+	}
+
+	/**
+	 * Updates a list of JsonObjects in a Mobile Service table
+	 * 
+	 * @param elements
+	 *            The JsonObjects to update
+	 * @param maxConcurrentRequests
+	 *            Maximum number of requests in progress at the same time
+	 * @param callback
+	 *            Callback to invoke when all the operations are completed
+	 */
+	public void updateAll(List<JsonObject> elements, int maxConcurrentRequests, final TableJsonBatchOperationCallback callback) {
+		new JsonBatchOperation(elements, maxConcurrentRequests, callback) {
+
+			@Override
+			protected void executeItem(JsonObject element, int index) {
+				update(element, createItemCallback(index));
+			}
+		}.start();
+	}
+
+	/**
+	 * Batch of JSON operations that reports its results to a
+	 * TableJsonBatchOperationCallback
+	 */
+	private static abstract class JsonBatchOperation extends BatchOperation<JsonObject, JsonObject> {
+
+		/**
+		 * Callback to invoke when all the operations are completed
+		 */
+		private TableJsonBatchOperationCallback mCallback;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param elements
+		 *            The JsonObjects to process
+		 * @param maxConcurrentRequests
+		 *            Maximum number of requests in progress at the same time
+		 * @param callback
+		 *            Callback to invoke when all the operations are completed
+		 */
+		JsonBatchOperation(List<JsonObject> elements, int maxConcurrentRequests, TableJsonBatchOperationCallback callback) {
+			super(elements, maxConcurrentRequests);
+			mCallback = callback;
+		}
+
+		/**
+		 * Creates the callback for the operation of an item
+		 * 
+		 * @param index
+		 *            The index of the item
+		 */
+		protected TableJsonOperationCallback createItemCallback(final int index) {
+			return new TableJsonOperationCallback() {
+
+				@Override
+				public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+					onItemCompleted(index, jsonObject, exception, response);
+				}
+			};
+		}
+
+		@Override
+		protected void onCompleted(List<JsonObject> results, List<Exception> exceptions, List<ServiceFilterResponse> responses) {
+			if (mCallback != null) {
+				mCallback.onCompleted(results, exceptions, responses);
+			}
+		}
+	}
+
+	/**
+	 * Creates the processor that patches the entity returned by an insert or
+	 * an update into the sent element on the request thread, before the given
+	 * processor is invoked
+	 * 
+	 * @param element
+	 *            The sent element
+	 * @param processor
+	 *            The processor of the patched entity, or null
+	 * @return The processor, or null if the entity is not processed, and is
+	 *         patched when the callback is invoked
+	 */
+	private EntityProcessor createPatchProcessor(final JsonObject element, final EntityProcessor processor) {
+		if (processor == null) {
+			return null;
+		}
+
+		return new EntityProcessor() {
+
+			@Override
+			public JsonObject process(JsonObject jsonEntity, ServiceFilterResponse response) throws Exception {
+				JsonObject patchedJson = patchOriginalEntityWithResponseEntity(element, jsonEntity);
+
+				updateVersionFromETag(response, patchedJson);
+
+				return processor.process(patchedJson, response);
+			}
+		};
+	}
+
 	/**
 	 * Executes the query against the table
 	 * 
 	 * @param request
 	 *            Request to execute
+	 * @param processor
+	 *            Processor of the returned entity on the request thread, or
+	 *            null
 	 * @param callback
 	 *            Callback to invoke when the operation is completed
 	 */
-	private void executeTableOperation(ServiceFilterRequest request,
+	private void executeTableOperation(ServiceFilterRequest request, final EntityProcessor processor,
 			final TableJsonOperationCallback callback) {
 		// Create AsyncTask to execute the operation
 		new RequestAsyncTask(request, mClient.createConnection()) {
+			/**
+			 * The entity returned by the service
+			 */
+			private JsonObject mNewEntityJson;
+
 			@Override
-			protected void onPostExecute(ServiceFilterResponse result) {
+			protected void processResponse(ServiceFilterResponse result) throws Exception {
 				if (callback != null) {
-					JsonObject newEntityJson = null;
-					if (mTaskException == null && result != null) {
-						String content = null;
-						content = result.getContent();
+					String content = null;
+					content = result.getContent();
 
-						newEntityJson = new JsonParser().parse(content)
-								.getAsJsonObject();
+					mNewEntityJson = new JsonParser().parse(content)
+							.getAsJsonObject();
 
-						callback.onCompleted(newEntityJson, null, result);
+					if (processor != null) {
+						mNewEntityJson = processor.process(mNewEntityJson, result);
+					}
+				}
+			}
 
+			@Override
+			protected void onPostExecute(ServiceFilterResponse result) {
+				if (callback != null) {
+					if (mTaskException == null && result != null) {
+						callback.onCompleted(mNewEntityJson, null, result);
 					} else {
 						callback.onCompleted(null, mTaskException, result);
 					}
@@ -401,57 +959,70 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 	 * 
 	 * @param query
 	 *            The URL used to retrieve the rows
+	 * @param processor
+	 *            Processor of the row on the request thread if a single one
+	 *            is returned, or null
 	 * @param callback
 	 *            Callback to invoke when the operation is completed
 	 */
-	private void executeGetRecords(final String url,
+	private void executeGetRecords(final String url, final EntityProcessor processor,
 			final TableJsonQueryCallback callback) {
 		ServiceFilterRequest request = new ServiceFilterRequestImpl(
-				new HttpGet(url), mClient.getAndroidHttpClientFactory());
+				new HttpGet(url), mClient.getAndroidHttpClientPool());
 
 		MobileServiceConnection conn = mClient.createConnection();
 		// Create AsyncTask to execute the request and parse the results
 		new RequestAsyncTask(request, conn) {
+			/**
+			 * The parsed results
+			 */
+			private JsonElement mResults;
+
+			/**
+			 * The total count of rows, if requested
+			 */
+			private int mCount;
+
 			@Override
-			protected void onPostExecute(ServiceFilterResponse response) {
+			protected void processResponse(ServiceFilterResponse response) throws Exception {
 				if (callback != null) {
-					if (mTaskException == null && response != null) {
-						JsonElement results = null;
-
-						int count = 0;
+					try {
+						// Parse the results using the given Entity class
+						String content = response.getContent();
+						JsonElement json = new JsonParser().parse(content);
 
-						try {
-							// Parse the results using the given Entity class
-							String content = response.getContent();
-							JsonElement json = new JsonParser().parse(content);
-
-							if (json.isJsonObject()) {
-								JsonObject jsonObject = json.getAsJsonObject();
-								// If the response has count property, store its
-								// value
-								if (jsonObject.has("results")
-										&& jsonObject.has("count")) { // inlinecount
-									// result
-									count = jsonObject.get("count").getAsInt();
-									results = jsonObject.get("results");
-								} else {
-									results = json;
-								}
+						if (json.isJsonObject()) {
+							JsonObject jsonObject = json.getAsJsonObject();
+							// If the response has count property, store its
+							// value
+							if (jsonObject.has("results")
+									&& jsonObject.has("count")) { // inlinecount
+								// result
+								mCount = jsonObject.get("count").getAsInt();
+								mResults = jsonObject.get("results");
 							} else {
-								results = json;
+								mResults = json;
 							}
-						} catch (Exception e) {
-							callback.onCompleted(
-									null,
-									0,
-									new MobileServiceException(
-											"Error while retrieving data from response.",
-											e), response);
-							return;
+						} else {
+							mResults = json;
 						}
+					} catch (Exception e) {
+						throw new MobileServiceException(
+								"Error while retrieving data from response.",
+								e);
+					}
 
-						callback.onCompleted(results, count, null, response);
+					if (processor != null && mResults.isJsonObject()) {
+						mResults = processor.process(mResults.getAsJsonObject(), response);
+					}
+				}
+			}
 
+			@Override
+			protected void onPostExecute(ServiceFilterResponse response) {
+				if (callback != null) {
+					if (mTaskException == null && response != null) {
+						callback.onCompleted(mResults, mCount, null, response);
 					} else {
 						callback.onCompleted(null, 0, mTaskException, response);
 					}
@@ -466,7 +1037,7 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 	 * @param json
 	 *            The JsonObject to modify
 	 */
-	private void validateIdOnInsert(final JsonObject json) {
+	void validateIdOnInsert(final JsonObject json) {
 		// Remove id property if exists
 		String[] idPropertyNames = new String[] { "id", "Id", "iD", "ID" };
 		
@@ -508,7 +1079,7 @@ MobileServiceTableBase<TableJsonQueryCallback> {
 	 * @param json
 	 *            The JsonObject to modify
 	 */
-	private static void updateVersionFromETag(ServiceFilterResponse response, JsonObject json) {
+	static void updateVersionFromETag(ServiceFilterResponse response, JsonObject json) {
 		if (response != null && response.getHeaders() != null) {
 			for (Header header : response.getHeaders()) {
 				if (header.getName().equalsIgnoreCase("ETag")) {
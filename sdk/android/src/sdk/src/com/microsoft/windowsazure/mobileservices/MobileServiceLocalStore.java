@@ -0,0 +1,501 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * MobileServiceLocalStore.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * SQLite store that keeps the local copy of the rows of the sync tables, and
+ * the queue of operations to push to the Mobile Service. It's shared by a
+ * MobileServiceClient and the clients derived from it.
+ * 
+ * All the methods access the database, so they must run on the store
+ * executor
+ */
+final class MobileServiceLocalStore extends SQLiteOpenHelper {
+
+	/**
+	 * Name of the database file
+	 */
+	static final String DATABASE_NAME = "mobileservices_sync.db";
+
+	/**
+	 * Version of the database schema
+	 */
+	private static final int DATABASE_VERSION = 2;
+
+	/**
+	 * Table with the local copy of the rows
+	 */
+	private static final String ITEMS_TABLE = "items";
+
+	/**
+	 * Table with the queue of operations
+	 */
+	private static final String OPERATIONS_TABLE = "operations";
+
+	/**
+	 * Table with the watermarks of the incremental pulls
+	 */
+	private static final String PULL_STATE_TABLE = "pull_state";
+
+	/**
+	 * Executor that runs the store work, one task at a time, so local
+	 * operations are applied in order
+	 */
+	private final ThreadPoolExecutor mExecutor;
+
+	/**
+	 * Sequence numbers of the operations being pushed. New operations on the
+	 * same rows are not collapsed into them
+	 */
+	private final Set<Long> mPushingSequences = new HashSet<Long>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param context
+	 *            The Context used to open the database
+	 * @param name
+	 *            Name of the database file
+	 */
+	MobileServiceLocalStore(Context context, String name) {
+		super(context, name, null, DATABASE_VERSION);
+
+		mExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new RequestThreadFactory("MobileServiceLocalStore #"));
+	}
+
+	@Override
+	public void onCreate(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE " + ITEMS_TABLE + " (table_name TEXT NOT NULL, id TEXT NOT NULL, item TEXT NOT NULL, "
+				+ "PRIMARY KEY (table_name, id))");
+		db.execSQL("CREATE TABLE " + OPERATIONS_TABLE + " (sequence INTEGER PRIMARY KEY AUTOINCREMENT, "
+				+ "table_name TEXT NOT NULL, item_id TEXT NOT NULL, kind INTEGER NOT NULL, item TEXT)");
+		db.execSQL("CREATE INDEX operations_item ON " + OPERATIONS_TABLE + " (table_name, item_id)");
+		createPullStateTable(db);
+	}
+
+	@Override
+	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+		if (oldVersion < 2) {
+			createPullStateTable(db);
+		}
+	}
+
+	private static void createPullStateTable(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE " + PULL_STATE_TABLE + " (table_name TEXT NOT NULL, query_id TEXT NOT NULL, "
+				+ "updated_at INTEGER NOT NULL, PRIMARY KEY (table_name, query_id))");
+	}
+
+	/**
+	 * Returns the executor that runs the store work
+	 */
+	Executor getExecutor() {
+		return mExecutor;
+	}
+
+	/**
+	 * Returns the local copy of a row, or null
+	 * 
+	 * @param tableName
+	 *            The table name
+	 * @param id
+	 *            The row id
+	 */
+	JsonObject getItem(String tableName, String id) {
+		Cursor cursor = getReadableDatabase().query(ITEMS_TABLE, new String[] { "item" }, "table_name = ? AND id = ?",
+				new String[] { tableName, id }, null, null, null);
+
+		try {
+			return cursor.moveToNext() ? parse(cursor.getString(0)) : null;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Returns the local copy of all the rows of a table
+	 * 
+	 * @param tableName
+	 *            The table name
+	 */
+	List<JsonObject> getItems(String tableName) {
+		Cursor cursor = getReadableDatabase().query(ITEMS_TABLE, new String[] { "item" }, "table_name = ?",
+				new String[] { tableName }, null, null, "id");
+
+		try {
+			List<JsonObject> items = new ArrayList<JsonObject>(cursor.getCount());
+
+			while (cursor.moveToNext()) {
+				items.add(parse(cursor.getString(0)));
+			}
+
+			return items;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Applies a local operation to a row, and adds it to the queue. If the
+	 * row already has a pending operation, both are collapsed into one
+	 * 
+	 * @param tableName
+	 *            The table name
+	 * @param id
+	 *            The row id
+	 * @param kind
+	 *            The operation kind
+	 * @param item
+	 *            The row, or null for a delete
+	 */
+	void applyOperation(String tableName, String id, MobileServiceSyncOperation.Kind kind, JsonObject item) {
+		SQLiteDatabase db = getWritableDatabase();
+		db.beginTransaction();
+
+		try {
+			if (item != null) {
+				putItem(db, tableName, id, item);
+			} else {
+				db.delete(ITEMS_TABLE, "table_name = ? AND id = ?", new String[] { tableName, id });
+			}
+
+			MobileServiceSyncOperation pending = getLastOperation(db, tableName, id);
+
+			if (pending == null || mPushingSequences.contains(pending.getSequence())) {
+				insertOperation(db, tableName, id, kind, item);
+			} else {
+				MobileServiceSyncOperation.Kind collapsedKind = collapse(pending.getKind(), kind);
+
+				if (collapsedKind == null) {
+					deleteOperation(db, pending.getSequence());
+				} else {
+					ContentValues values = new ContentValues();
+					values.put("kind", collapsedKind.ordinal());
+					values.put("item", item != null ? item.toString() : null);
+					db.update(OPERATIONS_TABLE, values, "sequence = ?", new String[] { String.valueOf(pending.getSequence()) });
+				}
+			}
+
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Returns the first pending operation of a table, or null
+	 * 
+	 * @param tableName
+	 *            The table name
+	 */
+	MobileServiceSyncOperation getNextOperation(String tableName) {
+		Cursor cursor = getReadableDatabase().query(OPERATIONS_TABLE, new String[] { "sequence", "item_id", "kind", "item" },
+				"table_name = ?", new String[] { tableName }, null, null, "sequence", "1");
+
+		try {
+			return cursor.moveToNext() ? readOperation(tableName, cursor) : null;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Returns the number of pending operations of a table
+	 * 
+	 * @param tableName
+	 *            The table name
+	 */
+	int getOperationCount(String tableName) {
+		Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM " + OPERATIONS_TABLE + " WHERE table_name = ?",
+				new String[] { tableName });
+
+		try {
+			return cursor.moveToNext() ? cursor.getInt(0) : 0;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Marks an operation as being pushed, so new operations on the same row
+	 * are queued after it
+	 * 
+	 * @param operation
+	 *            The operation
+	 */
+	void startPushingOperation(MobileServiceSyncOperation operation) {
+		mPushingSequences.add(operation.getSequence());
+	}
+
+	/**
+	 * Marks an operation that failed to be pushed as pending again
+	 * 
+	 * @param operation
+	 *            The operation
+	 */
+	void cancelPushingOperation(MobileServiceSyncOperation operation) {
+		mPushingSequences.remove(operation.getSequence());
+	}
+
+	/**
+	 * Removes a pushed operation from the queue, and stores the row returned
+	 * by the server. If the row changed locally during the push, only its
+	 * version is updated, so the next push sends the right If-Match value
+	 * 
+	 * @param operation
+	 *            The pushed operation
+	 * @param serverItem
+	 *            The row returned by the server, or null
+	 */
+	void completeOperation(MobileServiceSyncOperation operation, JsonObject serverItem) {
+		SQLiteDatabase db = getWritableDatabase();
+		db.beginTransaction();
+
+		try {
+			String tableName = operation.getTableName();
+			String id = operation.getItemId();
+
+			deleteOperation(db, operation.getSequence());
+			mPushingSequences.remove(operation.getSequence());
+
+			if (serverItem != null) {
+				MobileServiceSyncOperation pending = getLastOperation(db, tableName, id);
+
+				if (pending == null) {
+					putItem(db, tableName, id, serverItem);
+				} else {
+					JsonElement version = serverItem.get(MobileServiceTableBase.VersionSystemPropertyName);
+
+					if (version != null && pending.getItem() != null) {
+						JsonObject pendingItem = pending.getItem();
+						pendingItem.add(MobileServiceTableBase.VersionSystemPropertyName, version);
+
+						ContentValues values = new ContentValues();
+						values.put("item", pendingItem.toString());
+						db.update(OPERATIONS_TABLE, values, "sequence = ?", new String[] { String.valueOf(pending.getSequence()) });
+
+						JsonObject localItem = getItem(tableName, id);
+
+						if (localItem != null) {
+							localItem.add(MobileServiceTableBase.VersionSystemPropertyName, version);
+							putItem(db, tableName, id, localItem);
+						}
+					}
+				}
+			}
+
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Stores rows retrieved from the server. Rows with pending operations
+	 * keep their local value
+	 * 
+	 * @param tableName
+	 *            The table name
+	 * @param items
+	 *            The rows and their ids
+	 * @return The number of rows stored
+	 */
+	int putServerItems(String tableName, List<JsonObject> items, List<String> ids) {
+		SQLiteDatabase db = getWritableDatabase();
+		db.beginTransaction();
+
+		try {
+			int count = 0;
+
+			for (int i = 0; i < items.size(); i++) {
+				if (getLastOperation(db, tableName, ids.get(i)) == null) {
+					putItem(db, tableName, ids.get(i), items.get(i));
+					count++;
+				}
+			}
+
+			db.setTransactionSuccessful();
+
+			return count;
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Returns the updatedAt value of the last row retrieved by an incremental
+	 * pull, or null if the query was never pulled
+	 * 
+	 * @param tableName
+	 *            The table name
+	 * @param queryId
+	 *            The query id
+	 */
+	Date getPullWatermark(String tableName, String queryId) {
+		Cursor cursor = getReadableDatabase().query(PULL_STATE_TABLE, new String[] { "updated_at" },
+				"table_name = ? AND query_id = ?", new String[] { tableName, queryId }, null, null, null);
+
+		try {
+			return cursor.moveToNext() ? new Date(cursor.getLong(0)) : null;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Stores the updatedAt value of the last row retrieved by an incremental
+	 * pull
+	 * 
+	 * @param tableName
+	 *            The table name
+	 * @param queryId
+	 *            The query id
+	 * @param watermark
+	 *            The updatedAt value, or null to pull the query from the
+	 *            beginning
+	 */
+	void setPullWatermark(String tableName, String queryId, Date watermark) {
+		SQLiteDatabase db = getWritableDatabase();
+
+		if (watermark == null) {
+			db.delete(PULL_STATE_TABLE, "table_name = ? AND query_id = ?", new String[] { tableName, queryId });
+		} else {
+			ContentValues values = new ContentValues();
+			values.put("table_name", tableName);
+			values.put("query_id", queryId);
+			values.put("updated_at", watermark.getTime());
+			db.insertWithOnConflict(PULL_STATE_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+		}
+	}
+
+	/**
+	 * Deletes the local rows, the pending operations and the pull watermarks
+	 * of a table
+	 * 
+	 * @param tableName
+	 *            The table name
+	 * @return The number of rows deleted
+	 */
+	int purgeTable(String tableName) {
+		SQLiteDatabase db = getWritableDatabase();
+		String[] args = new String[] { tableName };
+		db.beginTransaction();
+
+		try {
+			int count = db.delete(ITEMS_TABLE, "table_name = ?", args);
+			db.delete(OPERATIONS_TABLE, "table_name = ?", args);
+			db.delete(PULL_STATE_TABLE, "table_name = ?", args);
+
+			db.setTransactionSuccessful();
+			return count;
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Returns the kind of the operation that results of collapsing two
+	 * operations on the same row, or null if they cancel each other
+	 */
+	private static MobileServiceSyncOperation.Kind collapse(MobileServiceSyncOperation.Kind pending,
+			MobileServiceSyncOperation.Kind next) {
+		switch (pending) {
+		case Insert:
+			// The row was never pushed
+			return next == MobileServiceSyncOperation.Kind.Delete ? null : MobileServiceSyncOperation.Kind.Insert;
+		case Update:
+			return next == MobileServiceSyncOperation.Kind.Delete ? MobileServiceSyncOperation.Kind.Delete
+					: MobileServiceSyncOperation.Kind.Update;
+		default:
+			// The row is created again after a delete
+			return next == MobileServiceSyncOperation.Kind.Delete ? MobileServiceSyncOperation.Kind.Delete
+					: MobileServiceSyncOperation.Kind.Update;
+		}
+	}
+
+	private static void putItem(SQLiteDatabase db, String tableName, String id, JsonObject item) {
+		ContentValues values = new ContentValues();
+		values.put("table_name", tableName);
+		values.put("id", id);
+		values.put("item", item.toString());
+		db.insertWithOnConflict(ITEMS_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+	}
+
+	private static void insertOperation(SQLiteDatabase db, String tableName, String id, MobileServiceSyncOperation.Kind kind,
+			JsonObject item) {
+		ContentValues values = new ContentValues();
+		values.put("table_name", tableName);
+		values.put("item_id", id);
+		values.put("kind", kind.ordinal());
+		values.put("item", item != null ? item.toString() : null);
+		db.insert(OPERATIONS_TABLE, null, values);
+	}
+
+	private static void deleteOperation(SQLiteDatabase db, long sequence) {
+		db.delete(OPERATIONS_TABLE, "sequence = ?", new String[] { String.valueOf(sequence) });
+	}
+
+	/**
+	 * Returns the last pending operation on a row, or null
+	 */
+	private static MobileServiceSyncOperation getLastOperation(SQLiteDatabase db, String tableName, String id) {
+		Cursor cursor = db.query(OPERATIONS_TABLE, new String[] { "sequence", "item_id", "kind", "item" },
+				"table_name = ? AND item_id = ?", new String[] { tableName, id }, null, null, "sequence DESC", "1");
+
+		try {
+			return cursor.moveToNext() ? readOperation(tableName, cursor) : null;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private static MobileServiceSyncOperation readOperation(String tableName, Cursor cursor) {
+		return new MobileServiceSyncOperation(cursor.getLong(0), tableName, cursor.getString(1),
+				MobileServiceSyncOperation.Kind.values()[cursor.getInt(2)], cursor.isNull(3) ? null : parse(cursor.getString(3)));
+	}
+
+	private static JsonObject parse(String json) {
+		return new JsonParser().parse(json).getAsJsonObject();
+	}
+}
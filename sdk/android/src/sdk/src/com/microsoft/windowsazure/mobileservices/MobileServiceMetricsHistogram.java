@@ -0,0 +1,227 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * MobileServiceMetricsHistogram.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates the request metrics in memory, per method and endpoint, such as
+ * "GET tables/TodoItem". The total times are kept in logarithmic buckets,
+ * so the memory used doesn't grow with the number of requests, and the
+ * percentiles are accurate to about 10%
+ */
+public class MobileServiceMetricsHistogram implements MobileServiceRequestMetricsListener {
+
+	/**
+	 * Number of buckets per power of two
+	 */
+	private static final int BUCKETS_PER_OCTAVE = 8;
+
+	/**
+	 * Number of powers of two covered, starting at 1 microsecond. Longer
+	 * times go in the last bucket
+	 */
+	private static final int OCTAVES = 30;
+
+	/**
+	 * Upper bounds of the buckets, in microseconds
+	 */
+	private static final double[] BUCKET_BOUNDS;
+
+	static {
+		BUCKET_BOUNDS = new double[BUCKETS_PER_OCTAVE * OCTAVES + 1];
+
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			BUCKET_BOUNDS[i] = Math.pow(2, (double) i / BUCKETS_PER_OCTAVE);
+		}
+	}
+
+	/**
+	 * Aggregated metrics of an endpoint
+	 */
+	private static class EndpointStats {
+		long[] mBuckets = new long[BUCKET_BOUNDS.length + 1];
+		long mCount;
+		long mErrorCount;
+		long mTotalTime;
+		long mMaxTime;
+		long mResponseBytes;
+		long mResponseWireBytes;
+
+		void add(MobileServiceRequestMetrics metrics) {
+			long time = Math.max(metrics.getTotalTime(), 0);
+
+			mBuckets[getBucket(time / 1000.0)]++;
+			mCount++;
+			mTotalTime += time;
+			mMaxTime = Math.max(mMaxTime, time);
+
+			if (!metrics.isSuccessful()) {
+				mErrorCount++;
+			}
+
+			if (metrics.getResponseBytes() > 0) {
+				mResponseBytes += metrics.getResponseBytes();
+			}
+
+			if (metrics.getResponseWireBytes() > 0) {
+				mResponseWireBytes += metrics.getResponseWireBytes();
+			}
+		}
+
+		double getPercentile(double percentile) {
+			if (mCount == 0) {
+				return -1;
+			}
+
+			long rank = (long) Math.ceil(percentile / 100 * mCount);
+			long cumulative = 0;
+
+			for (int i = 0; i < mBuckets.length; i++) {
+				cumulative += mBuckets[i];
+
+				if (cumulative >= Math.max(rank, 1)) {
+					// The upper bound of the bucket, but never more than the
+					// maximum time
+					double bound = i < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[i] / 1000 : Double.MAX_VALUE;
+					return Math.min(bound, mMaxTime / 1000000.0);
+				}
+			}
+
+			return mMaxTime / 1000000.0;
+		}
+	}
+
+	/**
+	 * The metrics by method and endpoint
+	 */
+	private final Map<String, EndpointStats> mStats = new TreeMap<String, EndpointStats>();
+
+	@Override
+	public synchronized void onRequestCompleted(MobileServiceRequestMetrics metrics) {
+		String key = metrics.getMethod() + " " + metrics.getEndpoint();
+		EndpointStats stats = mStats.get(key);
+
+		if (stats == null) {
+			stats = new EndpointStats();
+			mStats.put(key, stats);
+		}
+
+		stats.add(metrics);
+	}
+
+	/**
+	 * Returns the endpoints with requests, as "METHOD endpoint"
+	 */
+	public synchronized List<String> getEndpoints() {
+		return Collections.unmodifiableList(new ArrayList<String>(mStats.keySet()));
+	}
+
+	/**
+	 * Returns the number of requests to an endpoint
+	 * 
+	 * @param endpoint
+	 *            The endpoint, as "METHOD endpoint"
+	 */
+	public synchronized long getCount(String endpoint) {
+		EndpointStats stats = mStats.get(endpoint);
+		return stats != null ? stats.mCount : 0;
+	}
+
+	/**
+	 * Returns a percentile of the total time of the requests to an endpoint,
+	 * in milliseconds, or -1 if there are no requests
+	 * 
+	 * @param endpoint
+	 *            The endpoint, as "METHOD endpoint"
+	 * @param percentile
+	 *            The percentile, between 0 and 100
+	 */
+	public synchronized double getPercentile(String endpoint, double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100");
+		}
+
+		EndpointStats stats = mStats.get(endpoint);
+		return stats != null ? stats.getPercentile(percentile) : -1;
+	}
+
+	/**
+	 * Discards the aggregated metrics
+	 */
+	public synchronized void reset() {
+		mStats.clear();
+	}
+
+	/**
+	 * Returns the aggregated metrics as text, one line per endpoint
+	 */
+	public synchronized String dump() {
+		StringBuilder sb = new StringBuilder();
+
+		for (Map.Entry<String, EndpointStats> entry : mStats.entrySet()) {
+			EndpointStats stats = entry.getValue();
+
+			sb.append(String.format(Locale.US,
+					"%s count=%d errors=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms avg=%.1fms response=%dB wire=%dB%n",
+					entry.getKey(), stats.mCount, stats.mErrorCount, stats.getPercentile(50), stats.getPercentile(95),
+					stats.getPercentile(99), stats.mMaxTime / 1000000.0, stats.mTotalTime / 1000000.0 / stats.mCount,
+					stats.mResponseBytes, stats.mResponseWireBytes));
+		}
+
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return dump();
+	}
+
+	/**
+	 * Returns the bucket of a time in microseconds
+	 */
+	private static int getBucket(double micros) {
+		if (micros <= 1) {
+			return 0;
+		}
+
+		int bucket = (int) Math.ceil(Math.log(micros) / Math.log(2) * BUCKETS_PER_OCTAVE);
+
+		// Rounding errors may place the time one bucket off
+		while (bucket < BUCKET_BOUNDS.length && BUCKET_BOUNDS[bucket] < micros) {
+			bucket++;
+		}
+
+		while (bucket > 0 && bucket <= BUCKET_BOUNDS.length && BUCKET_BOUNDS[bucket - 1] >= micros) {
+			bucket--;
+		}
+
+		return Math.min(bucket, BUCKET_BOUNDS.length);
+	}
+}
@@ -34,8 +34,6 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import org.apache.http.Header;
 import org.apache.http.protocol.HTTP;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
@@ -682,13 +680,8 @@ public class MobileServicePush {
 	 */
 	private void upsertRegistrationInternal(final Registration registration, final UpsertRegistrationInternalCallback callback) {
 
-		GsonBuilder gsonBuilder = new GsonBuilder();
-		gsonBuilder = gsonBuilder.excludeFieldsWithoutExposeAnnotation();
-
-		Gson gson = gsonBuilder.create();
-
 		String resource = registration.getURI();
-		JsonElement json = gson.toJsonTree(registration);
+		JsonElement json = PnsSpecificRegistrationFactory.REGISTRATION_GSON.toJsonTree(registration);
 		String body = json.toString();
 		byte[] content = null;
 
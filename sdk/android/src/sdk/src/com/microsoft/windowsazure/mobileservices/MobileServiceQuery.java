@@ -23,6 +23,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
 
 import android.util.Pair;
@@ -83,6 +84,11 @@ public final class MobileServiceQuery<E> {
 	 */
 	private List<MobileServiceQuery<?>> querySteps = new ArrayList<MobileServiceQuery<?>>();
 
+	/**
+	 * Name of the parameter represented by the query, if any
+	 */
+	private String mParameterName = null;
+
 	/**
 	 * Returns the main text of the query
 	 */
@@ -146,11 +152,70 @@ public final class MobileServiceQuery<E> {
 	}
 
 	/**
-	 * Returns the string representation of the query
+	 * Sets the name of the parameter represented by the query
+	 * 
+	 * @param parameterName
+	 *            The parameter name
+	 */
+	void setParameterName(String parameterName) {
+		mParameterName = parameterName;
+	}
+
+	/**
+	 * Indicates if the query contains parameters, which must be bound to
+	 * values with compile() before executing it
+	 */
+	boolean hasParameters() {
+		if (mParameterName != null) {
+			return true;
+		}
+
+		for (MobileServiceQuery<?> val : internalValues) {
+			if (val.hasParameters()) {
+				return true;
+			}
+		}
+
+		for (MobileServiceQuery<?> step : querySteps) {
+			if (step.hasParameters()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the string representation of the query. Parameters are written
+	 * as @name
 	 */
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
+		appendTo(sb, null);
+
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the string representation of the query to a buffer
+	 * 
+	 * @param sb
+	 *            The buffer
+	 * @param parameters
+	 *            List where the names and positions of the parameters are
+	 *            added, or null
+	 */
+	void appendTo(StringBuilder sb, List<Pair<String, Integer>> parameters) {
+		int start = sb.length();
+
+		if (mParameterName != null) {
+			if (parameters != null) {
+				parameters.add(new Pair<String, Integer>(mParameterName, start));
+			}
+
+			sb.append('@').append(mParameterName);
+		}
 
 		if (getQueryText() != null) {
 			sb.append(getQueryText());
@@ -167,24 +232,21 @@ public final class MobileServiceQuery<E> {
 					sb.append(",");
 				}
 
-				sb.append(val.toString());
+				val.appendTo(sb, parameters);
 			}
 
 			sb.append(")");
 		}
 
 		for (MobileServiceQuery<?> step : querySteps) {
-			// If the string is not empty and it doesn't end with space or
-			// if it ends with ")", then add a space
-			if ((!sb.toString().endsWith(" ") && sb.toString().length() > 0)
-					|| sb.toString().endsWith(")")) {
+			// If the text of this query is not empty and it doesn't end with
+			// space, then add a space
+			if (sb.length() > start && sb.charAt(sb.length() - 1) != ' ') {
 				sb.append(" ");
 			}
 
-			sb.append(step.toString());
+			step.appendTo(sb, parameters);
 		}
-
-		return sb.toString();
 	}
 
 	/**
@@ -279,6 +341,141 @@ public final class MobileServiceQuery<E> {
 		mTable.execute(this, callback);
 	}
 
+	/**
+	 * Compiles the query into an immutable template, with its URL already
+	 * encoded. The template can be executed many times, binding different
+	 * values to the parameters of the query, without building the query again
+	 * 
+	 * @return MobileServiceQueryTemplate<E>
+	 */
+	public MobileServiceQueryTemplate<E> compile() {
+		return new MobileServiceQueryTemplate<E>(this);
+	}
+
+	/**
+	 * Creates a pager that reads all the results of the query page by page.
+	 * The top and skip values of the query limit the rows read by the pager
+	 * 
+	 * @param pageSize
+	 *            Number of rows per page, from 1 to
+	 *            MobileServiceQueryPager.MAX_PAGE_SIZE
+	 * @return MobileServiceQueryPager<E>
+	 */
+	public MobileServiceQueryPager<E> pages(int pageSize) {
+		checkNoParameters();
+		return new MobileServiceQueryPager<E>(this, pageSize);
+	}
+
+	/**
+	 * Returns the selected fields, or null if all of them are returned
+	 */
+	List<String> getProjection() {
+		return mProjection;
+	}
+
+	/**
+	 * Returns the number of records to return, or -1 if not set
+	 */
+	int getTop() {
+		return mTop;
+	}
+
+	/**
+	 * Returns the number of records to skip, or -1 if not set
+	 */
+	int getSkip() {
+		return mSkip;
+	}
+
+	/**
+	 * Creates a query for a page of the results of this query, with the same
+	 * rowset modifiers
+	 * 
+	 * @param filter
+	 *            The filter of the page
+	 * @param top
+	 *            Number of records to return
+	 * @param skip
+	 *            Number of records to skip
+	 * @param orderBy
+	 *            Ordering that replaces the query ordering, or null
+	 * @return MobileServiceQuery<E>
+	 */
+	MobileServiceQuery<E> createPageQuery(String filter, int top, int skip, Pair<String, QueryOrder> orderBy) {
+		return createPageQuery(mTable, filter, top, skip, orderBy);
+	}
+
+	/**
+	 * Creates a query for a page of an incremental pull. The rows are ordered
+	 * by their updatedAt system property, which is requested, and by id
+	 * 
+	 * @param filter
+	 *            The filter of the page
+	 * @param top
+	 *            Number of records to return
+	 * @param skip
+	 *            Number of records to skip
+	 * @return MobileServiceQuery<E>
+	 */
+	MobileServiceQuery<E> createIncrementalPageQuery(String filter, int top, int skip) {
+		MobileServiceQuery<E> query = createPageQuery(filter, top, skip, new Pair<String, QueryOrder>(
+				MobileServiceTableBase.UpdatedAtSystemPropertyName, QueryOrder.Ascending));
+		query.mOrderBy.add(new Pair<String, QueryOrder>("id", QueryOrder.Ascending));
+
+		EnumSet<MobileServiceSystemProperty> systemProperties = EnumSet.copyOf(mTable.getSystemProperties());
+		systemProperties.add(MobileServiceSystemProperty.UpdatedAt);
+		query.mUserDefinedParameters = mTable.addSystemProperties(systemProperties, mUserDefinedParameters);
+
+		return query;
+	}
+
+	/**
+	 * Creates a copy of this query that targets another table
+	 * 
+	 * @param table
+	 *            The table of the copy
+	 * @return MobileServiceQuery<F>
+	 */
+	<F> MobileServiceQuery<F> copyForTable(MobileServiceTableBase<F> table) {
+		checkNoParameters();
+		return createPageQuery(table, toString().trim(), mTop, mSkip, null);
+	}
+
+	/**
+	 * Throws an exception if the query contains parameters
+	 */
+	private void checkNoParameters() {
+		if (hasParameters()) {
+			throw new IllegalStateException("The query has parameters. Use compile() to bind their values");
+		}
+	}
+
+	/**
+	 * Creates a query for a page of the results of this query against a
+	 * table, with the same rowset modifiers
+	 */
+	private <F> MobileServiceQuery<F> createPageQuery(MobileServiceTableBase<F> table, String filter, int top, int skip,
+			Pair<String, QueryOrder> orderBy) {
+		MobileServiceQuery<F> query = new MobileServiceQuery<F>();
+
+		query.setTable(table);
+		query.setQueryText(filter);
+		query.mHasInlineCount = mHasInlineCount;
+		query.mProjection = mProjection;
+		query.mUserDefinedParameters = mUserDefinedParameters;
+
+		if (orderBy != null) {
+			query.mOrderBy.add(orderBy);
+		} else {
+			query.mOrderBy.addAll(mOrderBy);
+		}
+
+		query.top(top);
+		query.skip(skip);
+
+		return query;
+	}
+
 	/**** Row Operations ****/
 
 	/**
@@ -430,6 +627,18 @@ public final class MobileServiceQuery<E> {
 		return this;
 	}
 
+	/**
+	 * Specifies a parameter, whose value is bound after compiling the query
+	 * 
+	 * @param name
+	 *            The parameter name
+	 * @return MobileServiceQuery<E>
+	 */
+	public MobileServiceQuery<E> param(String name) {
+		this.querySteps.add(MobileServiceQueryOperations.param(name));
+		return this;
+	}
+
 	/****** Logical Operators ******/
 
 	/**
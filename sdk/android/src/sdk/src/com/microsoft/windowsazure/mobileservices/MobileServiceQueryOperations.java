@@ -198,6 +198,34 @@ public class MobileServiceQueryOperations {
 		return query;
 	}
 
+	/**
+	 * Creates a MobileServiceQuery<?> representing a parameter, whose value is
+	 * bound after compiling the query
+	 * 
+	 * @param name
+	 *            the parameter name, made of letters, digits and underscores
+	 * @return the MobileServiceQuery
+	 */
+	public static MobileServiceQuery<?> param(String name) {
+		if (name == null || name.length() == 0) {
+			throw new IllegalArgumentException("name cannot be null or empty");
+		}
+
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+
+			if (!Character.isLetterOrDigit(c) && c != '_') {
+				throw new IllegalArgumentException("Invalid parameter name " + name);
+			}
+		}
+
+		MobileServiceQuery<?> query = new MobileServiceQuery<Object>();
+
+		query.setParameterName(name);
+
+		return query;
+	}
+
 	/****** Logical Operators ******/
 
 	/**
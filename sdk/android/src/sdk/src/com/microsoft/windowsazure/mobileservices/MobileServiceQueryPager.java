@@ -0,0 +1,535 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * MobileServiceQueryPager.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.util.Date;
+import java.util.LinkedList;
+
+import android.util.Pair;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Reads all the results of a query page by page, where E is the callback
+ * class used to deliver each page. While the caller processes a page, the
+ * following ones are fetched in the background.
+ * 
+ * Pages are retrieved with $top and $skip by default. With keyset paging,
+ * each page is filtered by the last value of a unique ordered field in the
+ * previous page, which keeps the cost of deep pages low on the server
+ */
+public final class MobileServiceQueryPager<E> {
+
+	/**
+	 * Maximum number of rows the service returns for a request
+	 */
+	public static final int MAX_PAGE_SIZE = 1000;
+
+	/**
+	 * Default number of pages fetched ahead of the caller
+	 */
+	public static final int DEFAULT_PREFETCH_DEPTH = 1;
+
+	/**
+	 * Default maximum size, in bytes, of the pages fetched and not delivered
+	 * yet
+	 */
+	public static final long DEFAULT_MAX_PREFETCH_BYTES = 4 * 1024 * 1024;
+
+	/**
+	 * A page of results, ready to be delivered to a callback
+	 */
+	static abstract class Page<E> {
+		/**
+		 * Number of rows in the page
+		 */
+		private int mRowCount;
+
+		/**
+		 * The inlinecount value, or 0
+		 */
+		private int mTotalCount;
+
+		/**
+		 * Value of the keyset field in the last row of the page, if requested
+		 */
+		private Object mLastKeyValue;
+
+		/**
+		 * Size of the response content, in bytes
+		 */
+		private long mContentLength;
+
+		/**
+		 * The error returned for the page, if any
+		 */
+		private Exception mException;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param rowCount
+		 *            Number of rows in the page
+		 * @param totalCount
+		 *            The inlinecount value, or 0
+		 * @param lastKeyValue
+		 *            Value of the keyset field in the last row of the page
+		 * @param response
+		 *            The response of the page request, if any
+		 * @param exception
+		 *            The error returned for the page, if any
+		 */
+		Page(int rowCount, int totalCount, Object lastKeyValue, ServiceFilterResponse response, Exception exception) {
+			mRowCount = rowCount;
+			mTotalCount = totalCount;
+			mLastKeyValue = lastKeyValue;
+			mException = exception;
+
+			if (response != null && response.getRawContent() != null) {
+				mContentLength = response.getRawContent().length;
+			}
+		}
+
+		/**
+		 * Invokes the callback with the page results
+		 * 
+		 * @param callback
+		 *            The callback to invoke
+		 */
+		abstract void deliver(E callback);
+	}
+
+	/**
+	 * Callback invoked when a page is retrieved
+	 */
+	interface PageCallback<E> {
+		void onPage(Page<E> page);
+	}
+
+	/**
+	 * A page requested to the table
+	 */
+	private static class Slot<E> {
+		/**
+		 * Number of rows up to the end of the page, including the skipped ones
+		 */
+		int mEndRow;
+
+		/**
+		 * Number of rows requested for the page
+		 */
+		int mTop;
+
+		/**
+		 * The page, once retrieved
+		 */
+		Page<E> mPage;
+	}
+
+	/**
+	 * The query to page
+	 */
+	private MobileServiceQuery<E> mQuery;
+
+	/**
+	 * Filter of the query to page
+	 */
+	private String mFilter;
+
+	/**
+	 * Number of rows per page
+	 */
+	private int mPageSize;
+
+	/**
+	 * Maximum number of pages fetched ahead of the caller
+	 */
+	private int mPrefetchDepth = DEFAULT_PREFETCH_DEPTH;
+
+	/**
+	 * Maximum size of the pages fetched and not delivered yet
+	 */
+	private long mMaxPrefetchBytes = DEFAULT_MAX_PREFETCH_BYTES;
+
+	/**
+	 * Field and order used for keyset paging, or null to use $skip
+	 */
+	private Pair<String, QueryOrder> mKeyset;
+
+	/**
+	 * Indicates if paging started
+	 */
+	private boolean mStarted = false;
+
+	/**
+	 * Pages requested and not delivered yet, in order
+	 */
+	private LinkedList<Slot<E>> mSlots = new LinkedList<Slot<E>>();
+
+	/**
+	 * Number of rows requested so far
+	 */
+	private int mRequestedRows = 0;
+
+	/**
+	 * Number of pages requested and not retrieved yet
+	 */
+	private int mPagesInProgress = 0;
+
+	/**
+	 * Size of the pages retrieved and not delivered yet
+	 */
+	private long mBufferedBytes = 0;
+
+	/**
+	 * Keyset value of the last row requested, or null for the first page
+	 */
+	private Object mLastKeyValue = null;
+
+	/**
+	 * Indicates if the last page was already requested
+	 */
+	private boolean mEnded = false;
+
+	/**
+	 * Callback waiting for the next page
+	 */
+	private E mPendingCallback = null;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param query
+	 *            The query to page
+	 * @param pageSize
+	 *            Number of rows per page
+	 */
+	MobileServiceQueryPager(MobileServiceQuery<E> query, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be greater than zero");
+		}
+
+		if (pageSize > MAX_PAGE_SIZE) {
+			throw new IllegalArgumentException("pageSize cannot be greater than " + MAX_PAGE_SIZE);
+		}
+
+		mQuery = query;
+		mPageSize = pageSize;
+		mFilter = query.toString().trim();
+	}
+
+	/**
+	 * Sets the maximum number of pages fetched ahead of the caller. Zero
+	 * disables prefetching
+	 * 
+	 * @param prefetchDepth
+	 *            The number of pages
+	 * @return MobileServiceQueryPager<E>
+	 */
+	public MobileServiceQueryPager<E> prefetchDepth(int prefetchDepth) {
+		if (prefetchDepth < 0) {
+			throw new IllegalArgumentException("prefetchDepth cannot be negative");
+		}
+
+		checkNotStarted();
+		mPrefetchDepth = prefetchDepth;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum size, in bytes, of the pages fetched ahead of the
+	 * caller. No more pages are prefetched while the budget is exceeded
+	 * 
+	 * @param maxPrefetchBytes
+	 *            The size in bytes
+	 * @return MobileServiceQueryPager<E>
+	 */
+	public MobileServiceQueryPager<E> maxPrefetchBytes(long maxPrefetchBytes) {
+		if (maxPrefetchBytes < 0) {
+			throw new IllegalArgumentException("maxPrefetchBytes cannot be negative");
+		}
+
+		checkNotStarted();
+		mMaxPrefetchBytes = maxPrefetchBytes;
+		return this;
+	}
+
+	/**
+	 * Uses keyset paging instead of $skip. The field must be unique, and
+	 * replaces the ordering of the query
+	 * 
+	 * @param field
+	 *            The field to order by and filter on
+	 * @param order
+	 *            Sorting order
+	 * @return MobileServiceQueryPager<E>
+	 */
+	public MobileServiceQueryPager<E> keyset(String field, QueryOrder order) {
+		if (field == null || field.trim().length() == 0) {
+			throw new IllegalArgumentException("field cannot be null or empty");
+		}
+
+		if (order == null) {
+			throw new IllegalArgumentException("order cannot be null");
+		}
+
+		checkNotStarted();
+		mKeyset = new Pair<String, QueryOrder>(field, order);
+		return this;
+	}
+
+	/**
+	 * Indicates if there are pages that were not delivered yet. The last page
+	 * delivered can be empty
+	 */
+	public synchronized boolean hasMorePages() {
+		return !mEnded || !mSlots.isEmpty();
+	}
+
+	/**
+	 * Retrieves the next page and delivers it to the callback. Only one page
+	 * can be requested at a time
+	 * 
+	 * @param callback
+	 *            Callback to invoke with the page results
+	 */
+	public void nextPage(E callback) {
+		if (callback == null) {
+			throw new IllegalArgumentException("callback cannot be null");
+		}
+
+		synchronized (this) {
+			if (mPendingCallback != null) {
+				throw new IllegalStateException("The previous page was not delivered yet");
+			}
+
+			if (!hasMorePages()) {
+				throw new IllegalStateException("There are no more pages");
+			}
+
+			mStarted = true;
+			mPendingCallback = callback;
+		}
+
+		fetchPages();
+		deliverPage();
+	}
+
+	/**
+	 * Throws an exception if paging started
+	 */
+	private synchronized void checkNotStarted() {
+		if (mStarted) {
+			throw new IllegalStateException("The pager configuration cannot change after paging started");
+		}
+	}
+
+	/**
+	 * Requests pages until the prefetch depth or memory budget is reached
+	 */
+	private void fetchPages() {
+		while (true) {
+			MobileServiceQuery<E> pageQuery;
+			final Slot<E> slot;
+
+			synchronized (this) {
+				int maxSlots = mPendingCallback != null ? Math.max(mPrefetchDepth, 1) : mPrefetchDepth;
+
+				if (mEnded || mSlots.size() >= maxSlots) {
+					return;
+				}
+
+				// The page the caller is waiting for is always requested
+				if (!(mPendingCallback != null && mSlots.isEmpty()) && mBufferedBytes >= mMaxPrefetchBytes) {
+					return;
+				}
+
+				// With keyset paging, each page depends on the previous one
+				if (mKeyset != null && mPagesInProgress > 0) {
+					return;
+				}
+
+				slot = new Slot<E>();
+				pageQuery = createPageQuery(slot);
+				mSlots.add(slot);
+				mPagesInProgress++;
+			}
+
+			mQuery.getTable().executePage(pageQuery, mKeyset != null ? mKeyset.first : null, new PageCallback<E>() {
+
+				@Override
+				public void onPage(Page<E> page) {
+					onPageRetrieved(slot, page);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Creates the query for the next page, and updates the paging state
+	 * 
+	 * @param slot
+	 *            The slot of the page
+	 */
+	private MobileServiceQuery<E> createPageQuery(Slot<E> slot) {
+		int limit = mQuery.getTop();
+		int top = mPageSize;
+
+		if (limit > 0 && limit - mRequestedRows <= mPageSize) {
+			top = limit - mRequestedRows;
+			mEnded = true;
+		}
+
+		String filter = mFilter;
+		int skip;
+
+		if (mKeyset != null) {
+			skip = mRequestedRows == 0 ? mQuery.getSkip() : 0;
+
+			if (mLastKeyValue != null) {
+				String keysetFilter = mKeyset.first + (mKeyset.second == QueryOrder.Ascending ? " gt " : " lt ")
+						+ toQueryValue(mLastKeyValue).toString();
+
+				filter = filter.length() > 0 ? "(" + filter + ") and (" + keysetFilter + ")" : keysetFilter;
+			}
+		} else {
+			skip = Math.max(mQuery.getSkip(), 0) + mRequestedRows;
+		}
+
+		mRequestedRows += top;
+		slot.mEndRow = Math.max(mQuery.getSkip(), 0) + mRequestedRows;
+		slot.mTop = top;
+
+		return mQuery.createPageQuery(filter, top, skip, mKeyset);
+	}
+
+	/**
+	 * Stores a retrieved page and delivers it if the caller is waiting for it
+	 */
+	private void onPageRetrieved(Slot<E> slot, Page<E> page) {
+		synchronized (this) {
+			mPagesInProgress--;
+
+			if (!mSlots.contains(slot)) {
+				// The page was requested after the last one
+				return;
+			}
+
+			slot.mPage = page;
+			mBufferedBytes += page.mContentLength;
+
+			boolean lastPage;
+
+			if (page.mException != null) {
+				lastPage = true;
+			} else if (mKeyset == null && page.mTotalCount > 0) {
+				// The total count wins over a page the service cut short
+				lastPage = slot.mEndRow >= page.mTotalCount;
+			} else {
+				lastPage = page.mRowCount < slot.mTop;
+			}
+
+			if (lastPage) {
+				mEnded = true;
+
+				// Discard the pages requested after the last one
+				while (mSlots.getLast() != slot) {
+					mSlots.removeLast();
+				}
+			} else if (mKeyset != null) {
+				if (page.mLastKeyValue == null) {
+					mEnded = true;
+					mSlots.add(createErrorSlot(new MobileServiceException("The keyset field " + mKeyset.first
+							+ " was not found in the results")));
+				} else {
+					mLastKeyValue = page.mLastKeyValue;
+				}
+			}
+		}
+
+		deliverPage();
+		fetchPages();
+	}
+
+	/**
+	 * Delivers the next page to the waiting callback, if it was retrieved
+	 */
+	private void deliverPage() {
+		E callback;
+		Page<E> page;
+
+		synchronized (this) {
+			if (mPendingCallback == null || mSlots.isEmpty() || mSlots.getFirst().mPage == null) {
+				return;
+			}
+
+			page = mSlots.removeFirst().mPage;
+			mBufferedBytes -= page.mContentLength;
+			callback = mPendingCallback;
+			mPendingCallback = null;
+		}
+
+		fetchPages();
+		page.deliver(callback);
+	}
+
+	/**
+	 * Creates a slot that delivers an error
+	 */
+	private Slot<E> createErrorSlot(final Exception exception) {
+		Slot<E> slot = new Slot<E>();
+		slot.mPage = mQuery.getTable().createErrorPage(exception);
+		return slot;
+	}
+
+	/**
+	 * Converts a keyset value to a query value
+	 */
+	private static MobileServiceQuery<?> toQueryValue(Object value) {
+		if (value instanceof JsonElement) {
+			JsonElement json = (JsonElement) value;
+
+			if (json.isJsonPrimitive()) {
+				JsonPrimitive primitive = json.getAsJsonPrimitive();
+
+				if (primitive.isNumber()) {
+					return MobileServiceQueryOperations.val(primitive.getAsNumber());
+				} else if (primitive.isBoolean()) {
+					return MobileServiceQueryOperations.val(primitive.getAsBoolean());
+				}
+			}
+
+			return MobileServiceQueryOperations.val(json.getAsString());
+		} else if (value instanceof Number) {
+			return MobileServiceQueryOperations.val((Number) value);
+		} else if (value instanceof Boolean) {
+			return MobileServiceQueryOperations.val(((Boolean) value).booleanValue());
+		} else if (value instanceof Date) {
+			return MobileServiceQueryOperations.val((Date) value);
+		} else {
+			return MobileServiceQueryOperations.val(value.toString());
+		}
+	}
+}
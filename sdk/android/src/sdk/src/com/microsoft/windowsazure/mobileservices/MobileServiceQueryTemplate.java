@@ -0,0 +1,237 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * MobileServiceQueryTemplate.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import android.util.Pair;
+
+/**
+ * A compiled query, where E is the callback class to use when executing it.
+ * Its $filter and rowset modifiers are encoded once, when the query is
+ * compiled, and only the values bound to its parameters are encoded later.
+ * 
+ * Templates are immutable, so they can be kept and shared across threads.
+ * Binding a value returns a new template
+ */
+public final class MobileServiceQueryTemplate<E> {
+
+	/**
+	 * The table to query
+	 */
+	private final MobileServiceTableBase<E> mTable;
+
+	/**
+	 * Encoded text of the filter between the parameters
+	 */
+	private final String[] mSegments;
+
+	/**
+	 * Names of the parameters, in the order they appear in the filter
+	 */
+	private final String[] mParameterNames;
+
+	/**
+	 * Encoded values bound to the parameters, or null if not bound
+	 */
+	private final String[] mValues;
+
+	/**
+	 * The encoded rowset modifiers
+	 */
+	private final String mRowSetModifiers;
+
+	/**
+	 * The selected fields, or null if all of them are returned
+	 */
+	private final List<String> mProjection;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param query
+	 *            The query to compile
+	 */
+	MobileServiceQueryTemplate(MobileServiceQuery<E> query) {
+		StringBuilder sb = new StringBuilder();
+		List<Pair<String, Integer>> parameters = new ArrayList<Pair<String, Integer>>();
+		query.appendTo(sb, parameters);
+
+		// Leading and trailing spaces are trimmed from the filter
+		int start = 0;
+		int end = sb.length();
+
+		while (start < end && sb.charAt(start) <= ' ') {
+			start++;
+		}
+
+		while (end > start && sb.charAt(end - 1) <= ' ') {
+			end--;
+		}
+
+		mTable = query.getTable();
+		mSegments = new String[parameters.size() + 1];
+		mParameterNames = new String[parameters.size()];
+		mValues = new String[parameters.size()];
+
+		int position = start;
+
+		for (int i = 0; i < parameters.size(); i++) {
+			Pair<String, Integer> parameter = parameters.get(i);
+
+			mSegments[i] = encode(sb.substring(position, parameter.second));
+			mParameterNames[i] = parameter.first;
+
+			// Skip the @name placeholder
+			position = parameter.second + parameter.first.length() + 1;
+		}
+
+		mSegments[parameters.size()] = encode(sb.substring(position, end));
+
+		List<String> projection = query.getProjection();
+		mProjection = projection != null ? new ArrayList<String>(projection) : null;
+
+		try {
+			mRowSetModifiers = query.getRowSetModifiers();
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Copy constructor, with other parameter values
+	 */
+	private MobileServiceQueryTemplate(MobileServiceQueryTemplate<E> template, String[] values) {
+		mTable = template.mTable;
+		mSegments = template.mSegments;
+		mParameterNames = template.mParameterNames;
+		mRowSetModifiers = template.mRowSetModifiers;
+		mProjection = template.mProjection;
+		mValues = values;
+	}
+
+	/**
+	 * Binds a value to a parameter of the query
+	 * 
+	 * @param name
+	 *            The parameter name
+	 * @param value
+	 *            A Number, Boolean, String or Date, or null
+	 * @return A new MobileServiceQueryTemplate<E> with the value bound
+	 */
+	public MobileServiceQueryTemplate<E> bind(String name, Object value) {
+		String encodedValue = encode(toQueryText(value));
+		String[] values = mValues.clone();
+		boolean found = false;
+
+		for (int i = 0; i < mParameterNames.length; i++) {
+			if (mParameterNames[i].equals(name)) {
+				values[i] = encodedValue;
+				found = true;
+			}
+		}
+
+		if (!found) {
+			throw new IllegalArgumentException("The query has no parameter named " + name);
+		}
+
+		return new MobileServiceQueryTemplate<E>(this, values);
+	}
+
+	/**
+	 * Executes the query
+	 * 
+	 * @param callback
+	 *            Callback to invoke when the operation is completed
+	 */
+	public void execute(E callback) {
+		mTable.execute(this, callback);
+	}
+
+	/**
+	 * Returns the selected fields, or null if all of them are returned. The
+	 * list must not be modified
+	 */
+	List<String> getProjection() {
+		return mProjection;
+	}
+
+	/**
+	 * Returns the query string of the request URL, starting with "?", or an
+	 * empty string if the query has no filter nor rowset modifiers
+	 * 
+	 * @throws IllegalStateException
+	 *             If a parameter was not bound
+	 */
+	String getQueryString() {
+		StringBuilder filter = new StringBuilder(mSegments[0]);
+
+		for (int i = 0; i < mParameterNames.length; i++) {
+			if (mValues[i] == null) {
+				throw new IllegalStateException("No value was bound to the parameter " + mParameterNames[i]);
+			}
+
+			filter.append(mValues[i]).append(mSegments[i + 1]);
+		}
+
+		if (filter.length() > 0) {
+			return "?$filter=" + filter + mRowSetModifiers;
+		} else if (mRowSetModifiers.length() > 0) {
+			return "?" + mRowSetModifiers.substring(1);
+		} else {
+			return "";
+		}
+	}
+
+	/**
+	 * Returns the query text of a parameter value
+	 */
+	private static String toQueryText(Object value) {
+		if (value == null) {
+			return "null";
+		} else if (value instanceof Number) {
+			return MobileServiceQueryOperations.val((Number) value).getQueryText();
+		} else if (value instanceof Boolean) {
+			return MobileServiceQueryOperations.val(((Boolean) value).booleanValue()).getQueryText();
+		} else if (value instanceof String) {
+			return MobileServiceQueryOperations.val((String) value).getQueryText();
+		} else if (value instanceof Date) {
+			return MobileServiceQueryOperations.val((Date) value).getQueryText();
+		} else {
+			throw new IllegalArgumentException("Parameter values must be numbers, booleans, strings or dates");
+		}
+	}
+
+	private static String encode(String s) {
+		try {
+			return URLEncoder.encode(s, MobileServiceClient.UTF8_ENCODING);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,298 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * MobileServiceRequestMetrics.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.Locale;
+
+/**
+ * Timings and sizes of a request to a Mobile Service, reported to the
+ * client's MobileServiceRequestMetricsListener. Times are in nanoseconds, and
+ * sizes in bytes. Values that were not measured are -1
+ */
+public final class MobileServiceRequestMetrics {
+
+	/**
+	 * The endpoint, such as "tables/TodoItem" or "api/export"
+	 */
+	private final String mEndpoint;
+
+	/**
+	 * The HTTP method
+	 */
+	private final String mMethod;
+
+	private int mStatusCode = -1;
+	private boolean mSuccessful;
+	private int mAttemptCount;
+	private long mQueueTime = -1;
+	private long mFilterTime = -1;
+	private long mTimeToHeaders = -1;
+	private long mBodyTime = -1;
+	private long mParseTime = -1;
+	private long mTotalTime = -1;
+	private long mRequestBytes = -1;
+	private long mResponseBytes = -1;
+	private long mResponseWireBytes = -1;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param method
+	 *            The HTTP method
+	 * @param endpoint
+	 *            The endpoint
+	 */
+	MobileServiceRequestMetrics(String method, String endpoint) {
+		mMethod = method;
+		mEndpoint = endpoint;
+	}
+
+	/**
+	 * Returns the endpoint of a request URL: the first two segments of its
+	 * path relative to the application URL, such as "tables/TodoItem"
+	 * 
+	 * @param url
+	 *            The request URL
+	 * @param appUrl
+	 *            The application URL
+	 */
+	static String getEndpoint(String url, URL appUrl) {
+		String path = URI.create(url).getRawPath();
+		String appPath = appUrl.getPath();
+
+		if (path == null) {
+			return "";
+		}
+
+		if (appPath != null && path.startsWith(appPath)) {
+			path = path.substring(appPath.length());
+		}
+
+		while (path.startsWith("/")) {
+			path = path.substring(1);
+		}
+
+		int separator = path.indexOf('/');
+
+		if (separator >= 0) {
+			int end = path.indexOf('/', separator + 1);
+
+			if (end >= 0) {
+				path = path.substring(0, end);
+			}
+		}
+
+		return path;
+	}
+
+	/**
+	 * Returns the endpoint, such as "tables/TodoItem" or "api/export"
+	 */
+	public String getEndpoint() {
+		return mEndpoint;
+	}
+
+	/**
+	 * Returns the HTTP method
+	 */
+	public String getMethod() {
+		return mMethod;
+	}
+
+	/**
+	 * Returns the status code of the response, or -1 if there's no response
+	 */
+	public int getStatusCode() {
+		return mStatusCode;
+	}
+
+	/**
+	 * Indicates if the request completed without errors
+	 */
+	public boolean isSuccessful() {
+		return mSuccessful;
+	}
+
+	/**
+	 * Returns the number of times the request was sent. It can be more than
+	 * one if a filter retried it
+	 */
+	public int getAttemptCount() {
+		return mAttemptCount;
+	}
+
+	/**
+	 * Returns the time the request waited for the client's executor
+	 */
+	public long getQueueTime() {
+		return mQueueTime;
+	}
+
+	/**
+	 * Returns the time spent in the ServiceFilters, out of the network time
+	 */
+	public long getFilterTime() {
+		return mFilterTime;
+	}
+
+	/**
+	 * Returns the time until the response headers were received, including
+	 * DNS resolution, connection and TLS handshake when the connection is not
+	 * reused
+	 */
+	public long getTimeToHeaders() {
+		return mTimeToHeaders;
+	}
+
+	/**
+	 * Returns the time spent reading the response content
+	 */
+	public long getBodyTime() {
+		return mBodyTime;
+	}
+
+	/**
+	 * Returns the time spent parsing the response content
+	 */
+	public long getParseTime() {
+		return mParseTime;
+	}
+
+	/**
+	 * Returns the time since the request was scheduled until its result was
+	 * ready to deliver to the callback
+	 */
+	public long getTotalTime() {
+		return mTotalTime;
+	}
+
+	/**
+	 * Returns the size of the request content, before compression
+	 */
+	public long getRequestBytes() {
+		return mRequestBytes;
+	}
+
+	/**
+	 * Returns the size of the response content, after decompression
+	 */
+	public long getResponseBytes() {
+		return mResponseBytes;
+	}
+
+	/**
+	 * Returns the size of the response content received
+	 */
+	public long getResponseWireBytes() {
+		return mResponseWireBytes;
+	}
+
+	/**
+	 * Returns the ratio between the response content size and the size
+	 * received, or -1 if unknown
+	 */
+	public double getResponseCompressionRatio() {
+		if (mResponseBytes < 0 || mResponseWireBytes <= 0) {
+			return -1;
+		}
+
+		return (double) mResponseBytes / mResponseWireBytes;
+	}
+
+	void setStatusCode(int statusCode) {
+		mStatusCode = statusCode;
+	}
+
+	void setSuccessful(boolean successful) {
+		mSuccessful = successful;
+	}
+
+	void setQueueTime(long queueTime) {
+		mQueueTime = queueTime;
+	}
+
+	void setFilterTime(long filterTime) {
+		mFilterTime = filterTime;
+	}
+
+	void setParseTime(long parseTime) {
+		mParseTime = parseTime;
+	}
+
+	void setTotalTime(long totalTime) {
+		mTotalTime = totalTime;
+	}
+
+	void setRequestBytes(long requestBytes) {
+		mRequestBytes = requestBytes;
+	}
+
+	/**
+	 * Adds a network attempt. Times of retried requests are added up
+	 * 
+	 * @param timeToHeaders
+	 *            Time until the response headers were received
+	 * @param bodyTime
+	 *            Time spent reading the response content, or -1 if it was not
+	 *            read
+	 * @param responseBytes
+	 *            Size of the response content, or -1 if it was not read
+	 * @param responseWireBytes
+	 *            Size of the response content received, or -1 if it was not
+	 *            read
+	 */
+	synchronized void addAttempt(long timeToHeaders, long bodyTime, long responseBytes, long responseWireBytes) {
+		mAttemptCount++;
+		mTimeToHeaders = Math.max(mTimeToHeaders, 0) + timeToHeaders;
+
+		if (bodyTime >= 0) {
+			mBodyTime = Math.max(mBodyTime, 0) + bodyTime;
+		}
+
+		// Only the last response is delivered
+		mResponseBytes = responseBytes;
+		mResponseWireBytes = responseWireBytes;
+	}
+
+	/**
+	 * Returns the network time of all the attempts
+	 */
+	synchronized long getNetworkTime() {
+		return Math.max(mTimeToHeaders, 0) + Math.max(mBodyTime, 0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.US,
+				"%s %s status=%d attempts=%d queue=%.1fms filters=%.1fms headers=%.1fms body=%.1fms parse=%.1fms total=%.1fms request=%dB response=%dB wire=%dB",
+				mMethod, mEndpoint, mStatusCode, mAttemptCount, toMillis(mQueueTime), toMillis(mFilterTime), toMillis(mTimeToHeaders),
+				toMillis(mBodyTime), toMillis(mParseTime), toMillis(mTotalTime), mRequestBytes, mResponseBytes, mResponseWireBytes);
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos < 0 ? -1 : nanos / 1000000.0;
+	}
+}
@@ -0,0 +1,792 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * MobileServiceResponseCache.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+
+import android.content.Context;
+
+/**
+ * Client-side cache of the GET responses that include an ETag. Cached
+ * responses are revalidated with If-None-Match on every request, and served
+ * from the cache when the server answers 304 Not Modified.
+ * 
+ * Entries are kept in memory up to a maximum size, evicting the least
+ * recently used ones, and optionally on disk. Entries for a row are discarded
+ * when the row is updated or deleted through the client
+ */
+public final class MobileServiceResponseCache {
+
+	/**
+	 * Name of the directory created under the application cache directory
+	 */
+	public static final String DEFAULT_DIRECTORY_NAME = "mobileservices-responses";
+
+	/**
+	 * Response header that contains the entity tag
+	 */
+	private static final String ETAG_HEADER = "ETag";
+
+	/**
+	 * Request header used to revalidate a cached response
+	 */
+	private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+	/**
+	 * Response header that can forbid caching
+	 */
+	private static final String CACHE_CONTROL_HEADER = "Cache-Control";
+
+	/**
+	 * Version of the format of the files on disk
+	 */
+	private static final int DISK_FORMAT_VERSION = 1;
+
+	/**
+	 * A cached response
+	 */
+	private static class Entry {
+		/**
+		 * The request key
+		 */
+		String mKey;
+
+		/**
+		 * The request URL without query string
+		 */
+		String mPath;
+
+		/**
+		 * The entity tag of the response
+		 */
+		String mETag;
+
+		/**
+		 * The response status
+		 */
+		int mStatusCode;
+
+		/**
+		 * The response status reason
+		 */
+		String mReasonPhrase;
+
+		/**
+		 * The response headers
+		 */
+		Header[] mHeaders;
+
+		/**
+		 * The response content
+		 */
+		byte[] mContent;
+
+		/**
+		 * Returns the approximate size of the entry, in bytes
+		 */
+		long size() {
+			long size = mKey.length() + mETag.length();
+
+			for (Header header : mHeaders) {
+				size += header.getName().length() + header.getValue().length();
+			}
+
+			return size + (mContent != null ? mContent.length : 0);
+		}
+	}
+
+	/**
+	 * A response served from the cache
+	 */
+	private static class CachedResponse implements ServiceFilterResponse {
+		private Entry mEntry;
+
+		CachedResponse(Entry entry) {
+			mEntry = entry;
+		}
+
+		@Override
+		public Header[] getHeaders() {
+			return mEntry.mHeaders.clone();
+		}
+
+		@Override
+		public String getContent() {
+			if (mEntry.mContent == null) {
+				return null;
+			}
+
+			try {
+				return new String(mEntry.mContent, MobileServiceClient.UTF8_ENCODING);
+			} catch (UnsupportedEncodingException e) {
+				return null;
+			}
+		}
+
+		@Override
+		public byte[] getRawContent() {
+			return mEntry.mContent;
+		}
+
+		@Override
+		public StatusLine getStatus() {
+			return new BasicStatusLine(HttpVersion.HTTP_1_1, mEntry.mStatusCode, mEntry.mReasonPhrase);
+		}
+	}
+
+	/**
+	 * Maximum size of the entries kept in memory
+	 */
+	private final long mMaxMemoryBytes;
+
+	/**
+	 * Entries kept in memory, in access order
+	 */
+	private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	/**
+	 * Size of the entries kept in memory
+	 */
+	private long mMemoryBytes = 0;
+
+	/**
+	 * Directory of the entries kept on disk, or null
+	 */
+	private final File mDirectory;
+
+	/**
+	 * Maximum size of the entries kept on disk
+	 */
+	private final long mMaxDiskBytes;
+
+	/**
+	 * Sizes of the files on disk, in access order. Loaded on first use
+	 */
+	private LinkedHashMap<String, Long> mFiles;
+
+	/**
+	 * Size of the files on disk
+	 */
+	private long mDiskBytes = 0;
+
+	/**
+	 * Lock for the files on disk
+	 */
+	private final Object mDiskLock = new Object();
+
+	/**
+	 * Number of responses served from the cache
+	 */
+	private int mHitCount = 0;
+
+	/**
+	 * Number of responses retrieved from the server
+	 */
+	private int mMissCount = 0;
+
+	/**
+	 * Constructor for a cache kept in memory only
+	 * 
+	 * @param maxMemoryBytes
+	 *            Maximum size, in bytes, of the cached responses
+	 */
+	public MobileServiceResponseCache(long maxMemoryBytes) {
+		this(maxMemoryBytes, null, 0);
+	}
+
+	/**
+	 * Constructor for a cache that also keeps the responses in a directory
+	 * under the application cache directory
+	 * 
+	 * @param context
+	 *            The application Context
+	 * @param maxMemoryBytes
+	 *            Maximum size, in bytes, of the responses kept in memory
+	 * @param maxDiskBytes
+	 *            Maximum size, in bytes, of the responses kept on disk
+	 */
+	public MobileServiceResponseCache(Context context, long maxMemoryBytes, long maxDiskBytes) {
+		this(maxMemoryBytes, new File(context.getCacheDir(), DEFAULT_DIRECTORY_NAME), maxDiskBytes);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param maxMemoryBytes
+	 *            Maximum size, in bytes, of the responses kept in memory
+	 * @param directory
+	 *            Directory where responses are kept, or null to keep them in
+	 *            memory only
+	 * @param maxDiskBytes
+	 *            Maximum size, in bytes, of the responses kept on disk
+	 */
+	public MobileServiceResponseCache(long maxMemoryBytes, File directory, long maxDiskBytes) {
+		if (maxMemoryBytes < 0) {
+			throw new IllegalArgumentException("maxMemoryBytes cannot be negative");
+		}
+
+		if (directory != null && maxDiskBytes <= 0) {
+			throw new IllegalArgumentException("maxDiskBytes must be greater than zero");
+		}
+
+		mMaxMemoryBytes = maxMemoryBytes;
+		mDirectory = directory;
+		mMaxDiskBytes = maxDiskBytes;
+	}
+
+	/**
+	 * Returns the number of responses served from the cache
+	 */
+	public synchronized int getHitCount() {
+		return mHitCount;
+	}
+
+	/**
+	 * Returns the number of cacheable requests answered by the server with a
+	 * new response
+	 */
+	public synchronized int getMissCount() {
+		return mMissCount;
+	}
+
+	/**
+	 * Returns the size, in bytes, of the responses kept in memory
+	 */
+	public synchronized long getMemorySize() {
+		return mMemoryBytes;
+	}
+
+	/**
+	 * Removes all the cached responses
+	 */
+	public void clear() {
+		synchronized (this) {
+			mEntries.clear();
+			mMemoryBytes = 0;
+		}
+
+		if (mDirectory != null) {
+			synchronized (mDiskLock) {
+				loadFiles();
+
+				for (String fileName : mFiles.keySet()) {
+					new File(mDirectory, fileName).delete();
+				}
+
+				mFiles.clear();
+				mDiskBytes = 0;
+			}
+		}
+	}
+
+	/**
+	 * Executes a request, revalidating the cached response for GET requests,
+	 * and discarding the cached responses for the row if it's updated or
+	 * deleted
+	 * 
+	 * @param request
+	 *            The request to execute
+	 * @param user
+	 *            The user that executes the request, or null
+	 * @return The response
+	 * @throws Exception
+	 */
+	ServiceFilterResponse execute(ServiceFilterRequest request, MobileServiceUser user) throws Exception {
+		String method = request.getMethod();
+
+		if (!"GET".equalsIgnoreCase(method)) {
+			ServiceFilterResponse response = request.execute();
+
+			if (("PATCH".equalsIgnoreCase(method) || "DELETE".equalsIgnoreCase(method)) && isSuccessful(response)) {
+				invalidate(getPath(request.getUrl()));
+			}
+
+			return response;
+		}
+
+		// Conditional requests built by the caller are not cached
+		if (getHeader(request.getHeaders(), IF_NONE_MATCH_HEADER) != null) {
+			return request.execute();
+		}
+
+		String key = createKey(request.getUrl(), user);
+		String path = getPath(request.getUrl());
+		Entry entry = get(key, path);
+
+		ServiceFilterResponse response;
+
+		if (entry != null) {
+			request.addHeader(IF_NONE_MATCH_HEADER, entry.mETag);
+
+			// Remove the header, so a retry of the request is revalidated
+			// with the entry cached at that time
+			try {
+				response = request.execute();
+			} finally {
+				request.removeHeader(IF_NONE_MATCH_HEADER);
+			}
+		} else {
+			response = request.execute();
+		}
+
+		int statusCode = response.getStatus().getStatusCode();
+
+		if (entry != null && statusCode == HttpStatus.SC_NOT_MODIFIED) {
+			synchronized (this) {
+				mHitCount++;
+			}
+
+			return new CachedResponse(entry);
+		}
+
+		synchronized (this) {
+			mMissCount++;
+		}
+
+		Header[] headers = response.getHeaders();
+		String etag = getHeader(headers, ETAG_HEADER);
+		String cacheControl = getHeader(headers, CACHE_CONTROL_HEADER);
+
+		if (statusCode == HttpStatus.SC_OK && etag != null && (cacheControl == null || !cacheControl.contains("no-store"))) {
+			Entry newEntry = new Entry();
+			newEntry.mKey = key;
+			newEntry.mPath = path;
+			newEntry.mETag = etag;
+			newEntry.mStatusCode = statusCode;
+			newEntry.mReasonPhrase = response.getStatus().getReasonPhrase();
+			newEntry.mHeaders = getCacheableHeaders(headers);
+			newEntry.mContent = response.getRawContent();
+
+			put(newEntry);
+		} else if (entry != null) {
+			remove(entry);
+		}
+
+		return response;
+	}
+
+	/**
+	 * Returns the cached response for a key, from memory or disk
+	 */
+	private Entry get(String key, String path) {
+		synchronized (this) {
+			Entry entry = mEntries.get(key);
+
+			if (entry != null || mDirectory == null) {
+				return entry;
+			}
+		}
+
+		Entry entry = readFromDisk(key, path);
+
+		if (entry != null) {
+			putInMemory(entry);
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Stores a response in memory and on disk
+	 */
+	private void put(Entry entry) {
+		putInMemory(entry);
+
+		if (mDirectory != null) {
+			writeToDisk(entry);
+		}
+	}
+
+	/**
+	 * Removes a cached response from memory and disk
+	 */
+	private void remove(Entry entry) {
+		synchronized (this) {
+			Entry removed = mEntries.remove(entry.mKey);
+
+			if (removed != null) {
+				mMemoryBytes -= removed.size();
+			}
+		}
+
+		if (mDirectory != null) {
+			synchronized (mDiskLock) {
+				loadFiles();
+				deleteFile(getFileName(entry.mPath, entry.mKey));
+			}
+		}
+	}
+
+	/**
+	 * Removes the cached responses of every request to a path, regardless of
+	 * the query string and user
+	 * 
+	 * @param path
+	 *            The request URL without query string
+	 */
+	private void invalidate(String path) {
+		synchronized (this) {
+			Iterator<Entry> iterator = mEntries.values().iterator();
+
+			while (iterator.hasNext()) {
+				Entry entry = iterator.next();
+
+				if (entry.mPath.equals(path)) {
+					mMemoryBytes -= entry.size();
+					iterator.remove();
+				}
+			}
+		}
+
+		if (mDirectory != null) {
+			String prefix = hash(path) + "_";
+
+			synchronized (mDiskLock) {
+				loadFiles();
+
+				for (String fileName : new ArrayList<String>(mFiles.keySet())) {
+					if (fileName.startsWith(prefix)) {
+						deleteFile(fileName);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores a response in memory, evicting the least recently used ones if
+	 * needed
+	 */
+	private synchronized void putInMemory(Entry entry) {
+		Entry previous = mEntries.remove(entry.mKey);
+
+		if (previous != null) {
+			mMemoryBytes -= previous.size();
+		}
+
+		long size = entry.size();
+
+		if (size > mMaxMemoryBytes) {
+			return;
+		}
+
+		mEntries.put(entry.mKey, entry);
+		mMemoryBytes += size;
+
+		Iterator<Entry> iterator = mEntries.values().iterator();
+
+		while (mMemoryBytes > mMaxMemoryBytes && iterator.hasNext()) {
+			mMemoryBytes -= iterator.next().size();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Reads a cached response from disk
+	 */
+	private Entry readFromDisk(String key, String path) {
+		synchronized (mDiskLock) {
+			loadFiles();
+
+			String fileName = getFileName(path, key);
+
+			// Looking the file up also updates the access order
+			if (mFiles.get(fileName) == null) {
+				return null;
+			}
+
+			File file = new File(mDirectory, fileName);
+			DataInputStream in = null;
+
+			try {
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+				if (in.readInt() != DISK_FORMAT_VERSION || !in.readUTF().equals(key)) {
+					return null;
+				}
+
+				Entry entry = new Entry();
+				entry.mKey = key;
+				entry.mPath = in.readUTF();
+				entry.mETag = in.readUTF();
+				entry.mStatusCode = in.readInt();
+				entry.mReasonPhrase = in.readUTF();
+				entry.mHeaders = new Header[in.readInt()];
+
+				for (int i = 0; i < entry.mHeaders.length; i++) {
+					entry.mHeaders[i] = new BasicHeader(in.readUTF(), in.readUTF());
+				}
+
+				int contentLength = in.readInt();
+
+				if (contentLength >= 0) {
+					entry.mContent = new byte[contentLength];
+					in.readFully(entry.mContent);
+				}
+
+				// Keep the access order across sessions
+				file.setLastModified(System.currentTimeMillis());
+
+				return entry;
+			} catch (IOException e) {
+				deleteFile(fileName);
+				return null;
+			} finally {
+				closeQuietly(in);
+			}
+		}
+	}
+
+	/**
+	 * Writes a cached response to disk, evicting the least recently used ones
+	 * if needed
+	 */
+	private void writeToDisk(Entry entry) {
+		synchronized (mDiskLock) {
+			loadFiles();
+
+			String fileName = getFileName(entry.mPath, entry.mKey);
+			deleteFile(fileName);
+
+			if (entry.size() > mMaxDiskBytes || (!mDirectory.isDirectory() && !mDirectory.mkdirs())) {
+				return;
+			}
+
+			File file = new File(mDirectory, fileName);
+			DataOutputStream out = null;
+
+			try {
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+				out.writeInt(DISK_FORMAT_VERSION);
+				out.writeUTF(entry.mKey);
+				out.writeUTF(entry.mPath);
+				out.writeUTF(entry.mETag);
+				out.writeInt(entry.mStatusCode);
+				out.writeUTF(entry.mReasonPhrase != null ? entry.mReasonPhrase : "");
+				out.writeInt(entry.mHeaders.length);
+
+				for (Header header : entry.mHeaders) {
+					out.writeUTF(header.getName());
+					out.writeUTF(header.getValue());
+				}
+
+				if (entry.mContent != null) {
+					out.writeInt(entry.mContent.length);
+					out.write(entry.mContent);
+				} else {
+					out.writeInt(-1);
+				}
+
+				out.close();
+				out = null;
+			} catch (IOException e) {
+				closeQuietly(out);
+				file.delete();
+				return;
+			}
+
+			mFiles.put(fileName, file.length());
+			mDiskBytes += file.length();
+
+			Iterator<Map.Entry<String, Long>> iterator = mFiles.entrySet().iterator();
+
+			while (mDiskBytes > mMaxDiskBytes && iterator.hasNext()) {
+				Map.Entry<String, Long> eldest = iterator.next();
+				new File(mDirectory, eldest.getKey()).delete();
+				mDiskBytes -= eldest.getValue();
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Loads the list of files on disk, from the least to the most recently
+	 * used. Must be called holding the disk lock
+	 */
+	private void loadFiles() {
+		if (mFiles != null) {
+			return;
+		}
+
+		mFiles = new LinkedHashMap<String, Long>(16, 0.75f, true);
+		mDiskBytes = 0;
+
+		File[] files = mDirectory.listFiles();
+
+		if (files == null) {
+			return;
+		}
+
+		Arrays.sort(files, new Comparator<File>() {
+
+			@Override
+			public int compare(File lhs, File rhs) {
+				long lhsModified = lhs.lastModified();
+				long rhsModified = rhs.lastModified();
+				return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+			}
+		});
+
+		for (File file : files) {
+			mFiles.put(file.getName(), file.length());
+			mDiskBytes += file.length();
+		}
+	}
+
+	/**
+	 * Deletes a file on disk. Must be called holding the disk lock
+	 */
+	private void deleteFile(String fileName) {
+		Long size = mFiles.remove(fileName);
+
+		if (size != null) {
+			new File(mDirectory, fileName).delete();
+			mDiskBytes -= size;
+		}
+	}
+
+	/**
+	 * Creates the key of a request
+	 */
+	private static String createKey(String url, MobileServiceUser user) {
+		String userId = user != null && user.getUserId() != null ? user.getUserId() : "";
+		return userId + " " + url;
+	}
+
+	/**
+	 * Returns the name of the file of a cached response. The name starts
+	 * with the hash of the path, so all the responses for a row can be found
+	 */
+	private static String getFileName(String path, String key) {
+		return hash(path) + "_" + hash(key);
+	}
+
+	/**
+	 * Returns the URL without query string
+	 */
+	private static String getPath(String url) {
+		int index = url.indexOf('?');
+		return index >= 0 ? url.substring(0, index) : url;
+	}
+
+	/**
+	 * Returns the hexadecimal MD5 hash of a value
+	 */
+	private static String hash(String value) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(MobileServiceClient.UTF8_ENCODING));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return Integer.toHexString(value.hashCode());
+		} catch (UnsupportedEncodingException e) {
+			return Integer.toHexString(value.hashCode());
+		}
+	}
+
+	/**
+	 * Returns the headers to store with a cached response. The content is
+	 * stored decoded, so its encoding and length headers are dropped
+	 */
+	private static Header[] getCacheableHeaders(Header[] headers) {
+		List<Header> cacheableHeaders = new ArrayList<Header>();
+
+		for (Header header : headers) {
+			String name = header.getName();
+
+			if (!name.equalsIgnoreCase("Content-Encoding") && !name.equalsIgnoreCase("Content-Length")
+					&& !name.equalsIgnoreCase("Transfer-Encoding")) {
+				cacheableHeaders.add(new BasicHeader(name, header.getValue()));
+			}
+		}
+
+		return cacheableHeaders.toArray(new Header[cacheableHeaders.size()]);
+	}
+
+	/**
+	 * Returns the value of a header, or null
+	 */
+	private static String getHeader(Header[] headers, String name) {
+		if (headers != null) {
+			for (Header header : headers) {
+				if (header.getName().equalsIgnoreCase(name)) {
+					return header.getValue();
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Indicates if a response has a success status
+	 */
+	private static boolean isSuccessful(ServiceFilterResponse response) {
+		int statusCode = response.getStatus().getStatusCode();
+		return statusCode >= 200 && statusCode < 300;
+	}
+
+	/**
+	 * Closes a stream, ignoring errors
+	 */
+	private static void closeQuietly(Closeable stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+}
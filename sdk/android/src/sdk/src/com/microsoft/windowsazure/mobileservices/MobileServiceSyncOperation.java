@@ -0,0 +1,108 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * MobileServiceSyncOperation.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import com.google.gson.JsonObject;
+
+/**
+ * An operation on a row of a sync table, waiting in the queue to be pushed to
+ * the Mobile Service
+ */
+final class MobileServiceSyncOperation {
+
+	/**
+	 * Kinds of operations. The ordinal is stored in the queue, so new kinds
+	 * must be added at the end
+	 */
+	enum Kind {
+		Insert, Update, Delete
+	}
+
+	/**
+	 * Position of the operation in the queue
+	 */
+	private final long mSequence;
+
+	/**
+	 * The table name
+	 */
+	private final String mTableName;
+
+	/**
+	 * The row id
+	 */
+	private final String mItemId;
+
+	/**
+	 * The operation kind
+	 */
+	private final Kind mKind;
+
+	/**
+	 * The row to send, or null for a delete
+	 */
+	private final JsonObject mItem;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param sequence
+	 *            Position of the operation in the queue
+	 * @param tableName
+	 *            The table name
+	 * @param itemId
+	 *            The row id
+	 * @param kind
+	 *            The operation kind
+	 * @param item
+	 *            The row to send, or null for a delete
+	 */
+	MobileServiceSyncOperation(long sequence, String tableName, String itemId, Kind kind, JsonObject item) {
+		mSequence = sequence;
+		mTableName = tableName;
+		mItemId = itemId;
+		mKind = kind;
+		mItem = item;
+	}
+
+	long getSequence() {
+		return mSequence;
+	}
+
+	String getTableName() {
+		return mTableName;
+	}
+
+	String getItemId() {
+		return mItemId;
+	}
+
+	Kind getKind() {
+		return mKind;
+	}
+
+	JsonObject getItem() {
+		return mItem;
+	}
+}
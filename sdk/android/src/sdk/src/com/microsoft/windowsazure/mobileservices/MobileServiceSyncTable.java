@@ -0,0 +1,304 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * MobileServiceSyncTable.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Represents a Mobile Service table that works offline, where E is the class
+ * of the rows. It works like MobileServiceJsonSyncTable, serializing the
+ * entities with the client's Gson configuration
+ */
+public final class MobileServiceSyncTable<E> {
+
+	/**
+	 * The JSON table that stores and pushes the rows
+	 */
+	private final MobileServiceJsonSyncTable mInternalTable;
+
+	/**
+	 * The table used to build pull queries
+	 */
+	private final MobileServiceTable<E> mRemoteTable;
+
+	/**
+	 * The MobileServiceClient used to serialize the rows
+	 */
+	private final MobileServiceClient mClient;
+
+	/**
+	 * The class of the rows
+	 */
+	private final Class<E> mClazz;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param name
+	 *            The name of the represented table
+	 * @param client
+	 *            The MobileServiceClient used to invoke table operations
+	 * @param clazz
+	 *            The class of the rows
+	 */
+	MobileServiceSyncTable(String name, MobileServiceClient client, Class<E> clazz) {
+		mInternalTable = new MobileServiceJsonSyncTable(name, client);
+		mRemoteTable = new MobileServiceTable<E>(name, client, clazz);
+		mClient = client;
+		mClazz = clazz;
+	}
+
+	/**
+	 * Returns the name of the represented table
+	 */
+	public String getName() {
+		return mInternalTable.getName();
+	}
+
+	/**
+	 * Starts a query used to pull rows from the Mobile Service table
+	 */
+	public MobileServiceQuery<TableQueryCallback<E>> where() {
+		return mRemoteTable.where();
+	}
+
+	/**
+	 * Reads all the rows of the local table
+	 * 
+	 * @param callback
+	 *            Callback to invoke with the rows
+	 */
+	public void read(final TableQueryCallback<E> callback) {
+		mInternalTable.read(new TableJsonQueryCallback() {
+
+			@Override
+			public void onCompleted(JsonElement result, int count, Exception exception, ServiceFilterResponse response) {
+				List<E> entities = null;
+
+				if (exception == null) {
+					try {
+						entities = JsonEntityParser.parseResults(result, mClient.getGson(), mClazz);
+					} catch (Exception e) {
+						exception = e;
+					}
+				}
+
+				callback.onCompleted(entities, count, exception, response);
+			}
+		});
+	}
+
+	/**
+	 * Looks up a row in the local table
+	 * 
+	 * @param id
+	 *            The id of the row
+	 * @param callback
+	 *            Callback to invoke with the row, or null if it's not found
+	 */
+	public void lookUp(Object id, TableOperationCallback<E> callback) {
+		mInternalTable.lookUp(id, new ParseResultOperationCallback(callback, null));
+	}
+
+	/**
+	 * Inserts an entity in the local table, and queues its insertion in the
+	 * Mobile Service table. A string id is generated if the entity has none
+	 * 
+	 * @param element
+	 *            The entity to insert
+	 * @param callback
+	 *            Callback to invoke with the inserted entity
+	 */
+	public void insert(E element, TableOperationCallback<E> callback) {
+		JsonObject json;
+
+		try {
+			json = mClient.getGson().toJsonTree(element).getAsJsonObject();
+		} catch (IllegalArgumentException e) {
+			if (callback != null) {
+				callback.onCompleted(null, e, null);
+			}
+
+			return;
+		}
+
+		mInternalTable.insert(json, new ParseResultOperationCallback(callback, element));
+	}
+
+	/**
+	 * Updates an entity in the local table, and queues its update in the
+	 * Mobile Service table
+	 * 
+	 * @param element
+	 *            The entity to update
+	 * @param callback
+	 *            Callback to invoke with the updated entity
+	 */
+	public void update(E element, TableOperationCallback<E> callback) {
+		JsonObject json;
+
+		try {
+			json = mClient.getGson().toJsonTree(element).getAsJsonObject();
+		} catch (IllegalArgumentException e) {
+			if (callback != null) {
+				callback.onCompleted(null, e, null);
+			}
+
+			return;
+		}
+
+		mInternalTable.update(json, new ParseResultOperationCallback(callback, element));
+	}
+
+	/**
+	 * Deletes an entity from the local table, and queues its deletion from
+	 * the Mobile Service table
+	 * 
+	 * @param elementOrId
+	 *            The entity to delete, or its id
+	 * @param callback
+	 *            Callback to invoke when the operation is completed
+	 */
+	public void delete(Object elementOrId, TableDeleteCallback callback) {
+		if (elementOrId != null && mClazz.isInstance(elementOrId)) {
+			elementOrId = mClient.getGson().toJsonTree(elementOrId).getAsJsonObject();
+		}
+
+		mInternalTable.delete(elementOrId, callback);
+	}
+
+	/**
+	 * Pushes the pending operations of the table to the Mobile Service
+	 * 
+	 * @param callback
+	 *            Callback to invoke with the number of operations pushed
+	 */
+	public void push(TableSyncCallback callback) {
+		mInternalTable.push(callback);
+	}
+
+	/**
+	 * Pushes the pending operations of the table, and then stores locally
+	 * all the rows of the Mobile Service table
+	 * 
+	 * @param callback
+	 *            Callback to invoke with the number of rows stored
+	 */
+	public void pull(TableSyncCallback callback) {
+		mInternalTable.pull(callback);
+	}
+
+	/**
+	 * Pushes the pending operations of the table, and then stores locally
+	 * the rows returned by a query
+	 * 
+	 * @param query
+	 *            The query, started with where()
+	 * @param callback
+	 *            Callback to invoke with the number of rows stored
+	 */
+	public void pull(MobileServiceQuery<TableQueryCallback<E>> query, TableSyncCallback callback) {
+		mInternalTable.pull(query.copyForTable(mInternalTable.getRemoteTable()), callback);
+	}
+
+	/**
+	 * Pushes the pending operations of the table, and then stores locally
+	 * the rows of a query that were updated since the previous pull with the
+	 * same query id
+	 * 
+	 * @param queryId
+	 *            Identifies the watermark of the query
+	 * @param query
+	 *            The query, started with where(). Its ordering, top and skip
+	 *            values are ignored
+	 * @param callback
+	 *            Callback to invoke with the number of rows retrieved
+	 */
+	public void pull(String queryId, MobileServiceQuery<TableQueryCallback<E>> query, TableSyncCallback callback) {
+		mInternalTable.pull(queryId, query.copyForTable(mInternalTable.getRemoteTable()), callback);
+	}
+
+	/**
+	 * Deletes the local rows of the table, discarding its pending operations
+	 * and the watermarks of its incremental pulls. The Mobile Service table
+	 * is not changed
+	 * 
+	 * @param callback
+	 *            Callback to invoke with the number of rows deleted
+	 */
+	public void purge(TableSyncCallback callback) {
+		mInternalTable.purge(callback);
+	}
+
+	/**
+	 * Returns the number of operations waiting to be pushed. It reads the
+	 * local store, so it shouldn't be called from the main thread
+	 */
+	public int getPendingOperationCount() {
+		return mInternalTable.getPendingOperationCount();
+	}
+
+	/**
+	 * Parses the row returned by the JSON table, and copies its values to
+	 * the original entity
+	 */
+	private class ParseResultOperationCallback implements TableJsonOperationCallback {
+		private TableOperationCallback<E> mCallback;
+		private E mOriginalEntity;
+
+		ParseResultOperationCallback(TableOperationCallback<E> callback, E originalEntity) {
+			mCallback = callback;
+			mOriginalEntity = originalEntity;
+		}
+
+		@Override
+		public void onCompleted(JsonObject jsonEntity, Exception exception, ServiceFilterResponse response) {
+			E entity = null;
+
+			if (exception == null && jsonEntity != null) {
+				try {
+					entity = JsonEntityParser.parseResults(jsonEntity, mClient.getGson(), mClazz).get(0);
+
+					if (entity != null && mOriginalEntity != null) {
+						for (Field field : EntityMetadata.get(entity.getClass()).getAccessibleFields()) {
+							field.set(mOriginalEntity, field.get(entity));
+						}
+
+						entity = mOriginalEntity;
+					}
+				} catch (Exception e) {
+					exception = e;
+				}
+			}
+
+			if (mCallback != null) {
+				mCallback.onCompleted(entity, exception, response);
+			}
+		}
+	}
+}
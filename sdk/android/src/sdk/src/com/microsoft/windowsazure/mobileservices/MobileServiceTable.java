@@ -24,13 +24,16 @@ See the Apache Version 2.0 License for specific language governing permissions a
 package com.microsoft.windowsazure.mobileservices;
 
 import java.lang.reflect.Field;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 
 import android.util.Pair;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 
 /**
@@ -43,37 +46,41 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 
 	private Class<E> mClazz;
 
-	class ParseResultTableQueryCallback implements TableJsonQueryCallback {
-		TableQueryCallback<E> mCallback;
-
-		public ParseResultTableQueryCallback(TableQueryCallback<E> callback) {
-			mCallback = callback;
-		}
+	/**
+	 * Indicates if the entities returned by the service are tracked, so their
+	 * updates only send the changed properties
+	 */
+	private volatile boolean mChangeTrackingEnabled = false;
 
-		@Override
-		public void onCompleted(JsonElement result, int count,
-				Exception exception, ServiceFilterResponse response) {
-			if (mCallback != null) {
-				if (exception == null && result != null) {
-					Exception ex = null;
-					List<E> list = null;
-					try {
-						list = parseResults(result);
-					} catch (Exception e) {
-						ex = e;
-					}
-					mCallback.onCompleted(list, count, ex, response);
-				} else {
-					mCallback.onCompleted(null, count, exception, response);
-				}
-			}
-		}
-	}
+	/**
+	 * Snapshots of the tracked entities
+	 */
+	private final EntitySnapshots mSnapshots = new EntitySnapshots();
 
-	class ParseResultOperationCallback implements TableJsonOperationCallback {
+	/**
+	 * Callback used by the operations whose entities are parsed from the
+	 * entity returned by the service. The parsed entity and its snapshot are
+	 * built on the request thread
+	 */
+	class ParseResultOperationCallback implements TableJsonOperationCallback, MobileServiceJsonTable.EntityProcessor {
 		private TableOperationCallback<E> mCallback;
 		private E mOriginalEntity;
 
+		/**
+		 * Indicates if the returned entity was processed
+		 */
+		private boolean mProcessed;
+
+		/**
+		 * The entity parsed from the returned entity
+		 */
+		private E mParsedEntity;
+
+		/**
+		 * The snapshot of the parsed entity, or null if it's not tracked
+		 */
+		private JsonObject mSnapshot;
+
 		public ParseResultOperationCallback(TableOperationCallback<E> callback) {
 			this(callback, null);
 		}
@@ -84,17 +91,36 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 			mOriginalEntity = originalEntity;
 		}
 
+		@Override
+		public JsonObject process(JsonObject jsonEntity, ServiceFilterResponse response) {
+			mParsedEntity = parseResults(jsonEntity).get(0);
+
+			if (mChangeTrackingEnabled) {
+				mSnapshot = EntitySnapshots.serialize(mParsedEntity, mClient.getGson());
+			}
+
+			mProcessed = true;
+
+			return jsonEntity;
+		}
+
 		@Override
 		public void onCompleted(JsonObject jsonEntity, Exception exception, ServiceFilterResponse response) {
 			if (exception == null && jsonEntity != null) {
 				E entity = null;
 				Exception ex = null;
 				try {
-					entity = parseResults(jsonEntity).get(0);
+					if (!mProcessed) {
+						process(jsonEntity, response);
+					}
+
+					entity = mParsedEntity;
 					if (entity != null && mOriginalEntity != null) {
 						copyFields(entity, mOriginalEntity);
 						entity = mOriginalEntity;
 					}
+
+					putSnapshot(entity, mSnapshot);
 				} catch (Exception e) {
 					ex = e;
 				}
@@ -113,6 +139,13 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 						copyFields(entity, mOriginalEntity);
 						entity = mOriginalEntity;
 					}
+
+					// The entity now has the values in the service, and isn't
+					// tracked until it's returned again, so the next update
+					// sends it whole
+					if (entity != null) {
+						mSnapshots.remove(entity);
+					}
 				} catch (Exception e) {
 				}
 				
@@ -126,6 +159,80 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 		}
 	}
 
+	/**
+	 * Callback used by the operations that write typed entities directly. The
+	 * entity returned by the service is patched into the original one, and
+	 * its snapshot is built on the request thread from the sent entity
+	 */
+	class PatchResultOperationCallback implements TableJsonOperationCallback, MobileServiceJsonTable.EntityProcessor {
+		private TableOperationCallback<E> mCallback;
+		private E mOriginalEntity;
+		private TypedEntityWriter<E> mWriter;
+
+		/**
+		 * The content the original entity was written to, or null
+		 */
+		private TypedEntityWriter.Content mContent;
+
+		/**
+		 * The original entity serialized before it was sent, or null
+		 */
+		private JsonObject mEntityJson;
+
+		/**
+		 * The snapshot of the patched entity, or null if it's not tracked
+		 */
+		private JsonObject mSnapshot;
+
+		public PatchResultOperationCallback(TableOperationCallback<E> callback, E originalEntity, TypedEntityWriter<E> writer,
+				TypedEntityWriter.Content content) {
+			mCallback = callback;
+			mOriginalEntity = originalEntity;
+			mWriter = writer;
+			mContent = content;
+		}
+
+		public PatchResultOperationCallback(TableOperationCallback<E> callback, E originalEntity, TypedEntityWriter<E> writer,
+				JsonObject entityJson) {
+			mCallback = callback;
+			mOriginalEntity = originalEntity;
+			mWriter = writer;
+			mEntityJson = entityJson;
+		}
+
+		@Override
+		public JsonObject process(JsonObject jsonEntity, ServiceFilterResponse response) {
+			if (mChangeTrackingEnabled) {
+				JsonObject json = mEntityJson != null ? mEntityJson : mWriter.toJson(mContent);
+				mSnapshot = mWriter.snapshot(json, jsonEntity, response);
+			}
+
+			return jsonEntity;
+		}
+
+		@Override
+		public void onCompleted(JsonObject jsonEntity, Exception exception, ServiceFilterResponse response) {
+			if (exception == null && jsonEntity != null) {
+				E entity = null;
+				Exception ex = null;
+				try {
+					mWriter.patch(mOriginalEntity, jsonEntity, response);
+					entity = mOriginalEntity;
+					putSnapshot(entity, mSnapshot);
+				} catch (Exception e) {
+					ex = e;
+				}
+
+				if (mCallback != null)
+					mCallback.onCompleted(entity, ex, response);
+			} else {
+				// Errors and version conflicts are reported as in the other
+				// operations
+				new ParseResultOperationCallback(mCallback, mOriginalEntity).onCompleted(jsonEntity, exception, response);
+			}
+		}
+	}
+
 	/**
 	 * Constructor for MobileServiceTable
 	 * 
@@ -153,6 +260,30 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 		this.mInternalTable.setSystemProperties(systemProperties);
 	}
 
+	/**
+	 * Indicates if the entities returned by the service are tracked
+	 */
+	public boolean isChangeTrackingEnabled() {
+		return mChangeTrackingEnabled;
+	}
+
+	/**
+	 * Enables or disables the tracking of the entities returned by lookUp,
+	 * execute, insert and update. Updating a tracked entity only sends its id
+	 * and the properties changed since it was returned. Entities are tracked
+	 * by this table instance, and disabling the tracking discards them
+	 * 
+	 * @param enabled
+	 *            True to track the entities
+	 */
+	public void setChangeTrackingEnabled(boolean enabled) {
+		mChangeTrackingEnabled = enabled;
+
+		if (!enabled) {
+			mSnapshots.clear();
+		}
+	}
+
 	/**
 	 * Executes a query to retrieve all the table rows
 	 * 
@@ -160,7 +291,7 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 	 *            Callback to invoke when the operation is completed
 	 */
 	public void execute(TableQueryCallback<E> callback) {
-		mInternalTable.execute(new ParseResultTableQueryCallback(callback));
+		this.where().execute(callback);
 	}
 
 	/**
@@ -173,8 +304,89 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 	 */
 	public void execute(MobileServiceQuery<?> query,
 			final TableQueryCallback<E> callback) {
-		mInternalTable.execute(query, new ParseResultTableQueryCallback(
-				callback));
+		mInternalTable.execute(query, mClazz, getQuerySnapshots(), callback);
+	}
+
+	@Override
+	void execute(MobileServiceQueryTemplate<TableQueryCallback<E>> template, TableQueryCallback<E> callback) {
+		mInternalTable.execute(template, mClazz, getQuerySnapshots(), callback);
+	}
+
+	/**
+	 * Returns the snapshots to take of the entities returned by a query, or
+	 * null if change tracking is disabled
+	 */
+	private EntitySnapshots getQuerySnapshots() {
+		return mChangeTrackingEnabled ? mSnapshots : null;
+	}
+
+	@Override
+	void executePage(MobileServiceQuery<?> query, final String keysetField,
+			final MobileServiceQueryPager.PageCallback<TableQueryCallback<E>> callback) {
+		execute(query, new TableQueryCallback<E>() {
+
+			@Override
+			public void onCompleted(final List<E> result, final int count, final Exception exception,
+					final ServiceFilterResponse response) {
+				int rowCount = result != null ? result.size() : 0;
+				Object lastKeyValue = null;
+				Exception pageException = exception;
+
+				if (keysetField != null && rowCount > 0) {
+					try {
+						lastKeyValue = getFieldValue(result.get(rowCount - 1), keysetField);
+					} catch (IllegalAccessException e) {
+						pageException = e;
+					}
+				}
+
+				final Exception deliveredException = pageException;
+
+				callback.onPage(new MobileServiceQueryPager.Page<TableQueryCallback<E>>(rowCount, count, lastKeyValue, response,
+						deliveredException) {
+
+					@Override
+					void deliver(TableQueryCallback<E> pageCallback) {
+						if (deliveredException != null) {
+							pageCallback.onCompleted(null, 0, deliveredException, response);
+						} else {
+							pageCallback.onCompleted(result, count, null, response);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	@Override
+	MobileServiceQueryPager.Page<TableQueryCallback<E>> createErrorPage(final Exception exception) {
+		return new MobileServiceQueryPager.Page<TableQueryCallback<E>>(0, 0, null, null, exception) {
+
+			@Override
+			void deliver(TableQueryCallback<E> pageCallback) {
+				pageCallback.onCompleted(null, 0, exception, null);
+			}
+		};
+	}
+
+	/**
+	 * Returns the value of the field serialized with the given name
+	 * 
+	 * @param entity
+	 *            The entity
+	 * @param name
+	 *            The serialized name of the field
+	 * @return The field value, or null if the entity has no such field
+	 * @throws IllegalAccessException
+	 */
+	private Object getFieldValue(E entity, String name) throws IllegalAccessException {
+		if (entity == null) {
+			return null;
+		}
+
+		Field field = EntityMetadata.get(entity.getClass()).getAccessibleField(name);
+
+		return field != null ? field.get(entity) : null;
 	}
 
 	/**
@@ -189,7 +401,8 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 	 */
 	public void lookUp(Object id, final TableOperationCallback<E> callback) {
 
-		mInternalTable.lookUp(id, null, new ParseResultOperationCallback(callback));
+		ParseResultOperationCallback resultCallback = new ParseResultOperationCallback(callback);
+		mInternalTable.lookUp(id, null, resultCallback, resultCallback);
 	}
 	
 	/**
@@ -206,7 +419,8 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 	 */
 	public void lookUp(Object id, List<Pair<String, String>> parameters, final TableOperationCallback<E> callback) {
 
-		mInternalTable.lookUp(id, parameters, new ParseResultOperationCallback(callback));
+		ParseResultOperationCallback resultCallback = new ParseResultOperationCallback(callback);
+		mInternalTable.lookUp(id, parameters, resultCallback, resultCallback);
 	}
 
 	/**
@@ -232,9 +446,34 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 	 *            Callback to invoke when the operation is completed
 	 */
 	public void insert(final E element, List<Pair<String, String>> parameters, final TableOperationCallback<E> callback) {
+		Class<?> idClazz = element != null ? getIdPropertyClass(element.getClass()) : null;
+		TypedEntityWriter<E> writer;
+		TypedEntityWriter.Content content = null;
+
+		try {
+			writer = getEntityWriter(element);
+
+			if (writer != null) {
+				content = writer.write(element, true, idClazz != null && !isIntegerClass(idClazz));
+				mInternalTable.validateIdOnInsert(content.getIdJson());
+			}
+		} catch (IllegalArgumentException e) {
+			if (callback != null) {
+				callback.onCompleted(null, e, null);
+			}
+
+			return;
+		}
+
+		if (writer != null) {
+			PatchResultOperationCallback resultCallback = new PatchResultOperationCallback(callback, element, writer, content);
+			mInternalTable.insertContent(content.getBytes(), parameters, resultCallback, resultCallback);
+			return;
+		}
+
 		JsonObject json = null;
 		try {
-			json = mClient.getGsonBuilder().create().toJsonTree(element).getAsJsonObject();
+			json = mClient.getGson().toJsonTree(element).getAsJsonObject();
 		} catch (IllegalArgumentException e) {
 			if (callback != null) {
 				callback.onCompleted(null, e, null);
@@ -243,14 +482,12 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 			return;
 		}
 		
-		Class<?> idClazz = getIdPropertyClass(element.getClass());
-		
 		if (idClazz != null && !isIntegerClass(idClazz)) {
 				json = removeSystemProperties(json);
 		}
 
-		mInternalTable.insert(json, parameters, new ParseResultOperationCallback(callback,
-				element));
+		ParseResultOperationCallback resultCallback = new ParseResultOperationCallback(callback, element);
+		mInternalTable.insert(json, parameters, resultCallback, resultCallback);
 	}
 
 	/**
@@ -279,10 +516,45 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 	public void update(final E element, 
 			final List<Pair<String, String>> parameters,
 			final TableOperationCallback<E> callback) {
+		if (mChangeTrackingEnabled && element != null) {
+			JsonObject snapshot = mSnapshots.get(element);
+
+			if (snapshot != null) {
+				updateChanges(element, snapshot, null, parameters, callback);
+				return;
+			}
+		}
+
+		TypedEntityWriter<E> writer;
+		TypedEntityWriter.Content content = null;
+		Object id = null;
+
+		try {
+			writer = getEntityWriter(element);
+
+			if (writer != null) {
+				Class<?> idClazz = getIdPropertyClass(element.getClass());
+				content = writer.write(element, false, idClazz != null && !isIntegerClass(idClazz));
+				id = mInternalTable.validateId(content.getIdJson());
+			}
+		} catch (IllegalArgumentException e) {
+			if (callback != null) {
+				callback.onCompleted(null, e, null);
+			}
+
+			return;
+		}
+
+		if (writer != null) {
+			PatchResultOperationCallback resultCallback = new PatchResultOperationCallback(callback, element, writer, content);
+			mInternalTable.updateContent(id, content.getVersion(), content.getBytes(), parameters, resultCallback, resultCallback);
+			return;
+		}
+
 		JsonObject json = null;
 		
 		try {
-			json = mClient.getGsonBuilder().create().toJsonTree(element).getAsJsonObject();
+			json = mClient.getGson().toJsonTree(element).getAsJsonObject();
 		} catch (IllegalArgumentException e) {
 			if (callback != null) {
 				callback.onCompleted(null, e, null);
@@ -291,8 +563,267 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 			return;
 		}
 		
-		mInternalTable.update(json, parameters, new ParseResultOperationCallback(callback,
-				element));
+		ParseResultOperationCallback resultCallback = new ParseResultOperationCallback(callback, element);
+		mInternalTable.update(json, parameters, resultCallback, resultCallback);
+	}
+
+	/**
+	 * Updates the given properties of an entity from a Mobile Service Table.
+	 * Only those properties and the id are sent
+	 * 
+	 * @param element
+	 *            The entity to update
+	 * @param changedFields
+	 *            The serialized names of the changed properties
+	 * @param callback
+	 *            Callback to invoke when the operation is completed
+	 */
+	public void updateFields(final E element, Collection<String> changedFields,
+			final TableOperationCallback<E> callback) {
+		this.updateFields(element, changedFields, null, callback);
+	}
+
+	/**
+	 * Updates the given properties of an entity from a Mobile Service Table.
+	 * Only those properties and the id are sent
+	 * 
+	 * @param element
+	 *            The entity to update
+	 * @param changedFields
+	 *            The serialized names of the changed properties
+	 * @param parameters
+	 *            A list of user-defined parameters and values to include in the request URI query string
+	 * @param callback
+	 *            Callback to invoke when the operation is completed
+	 */
+	public void updateFields(final E element, Collection<String> changedFields,
+			final List<Pair<String, String>> parameters,
+			final TableOperationCallback<E> callback) {
+		if (changedFields == null) {
+			throw new IllegalArgumentException("changedFields cannot be null");
+		}
+
+		updateChanges(element, null, changedFields, parameters, callback);
+	}
+
+	/**
+	 * Sends the changed properties of an entity. The entity returned by the
+	 * service is patched into the original one
+	 * 
+	 * @param element
+	 *            The entity to update
+	 * @param snapshot
+	 *            The serialized entity as it was returned by the service, used
+	 *            to find the changed properties if changedFields is null
+	 * @param changedFields
+	 *            The serialized names of the changed properties, or null
+	 * @param parameters
+	 *            A list of user-defined parameters and values to include in the request URI query string
+	 * @param callback
+	 *            Callback to invoke when the operation is completed
+	 */
+	private void updateChanges(final E element, JsonObject snapshot, Collection<String> changedFields,
+			List<Pair<String, String>> parameters, final TableOperationCallback<E> callback) {
+		final JsonObject json;
+		final TypedEntityWriter<E> writer;
+		Object id;
+		String version = null;
+		byte[] content;
+
+		try {
+			writer = getEntityWriter(element);
+			json = mClient.getGson().toJsonTree(element).getAsJsonObject();
+			id = mInternalTable.validateId(json);
+
+			boolean removeSystemProperties = !isNumericType(id);
+
+			if (removeSystemProperties) {
+				version = getVersionSystemProperty(json);
+			}
+
+			JsonObject delta = new JsonObject();
+			delta.add("id", json.get("id"));
+
+			for (Map.Entry<String, JsonElement> property : json.entrySet()) {
+				String name = property.getKey();
+
+				if (name.equals("id") || (removeSystemProperties && SystemPropertyNameToEnum.containsKey(name))) {
+					continue;
+				}
+
+				if (changedFields != null ? changedFields.contains(name) : !property.getValue().equals(snapshot.get(name))) {
+					delta.add(name, property.getValue());
+				}
+			}
+
+			// Null values are not serialized, so the properties set to null
+			// must be sent explicitly
+			if (changedFields != null) {
+				for (String name : changedFields) {
+					if (!json.has(name)) {
+						if (EntityMetadata.get(element.getClass()).getAccessibleField(name) == null) {
+							throw new IllegalArgumentException("The entity has no property named " + name);
+						}
+
+						delta.add(name, JsonNull.INSTANCE);
+					}
+				}
+			} else {
+				for (Map.Entry<String, JsonElement> property : snapshot.entrySet()) {
+					String name = property.getKey();
+
+					if (!json.has(name) && !property.getValue().isJsonNull() && !name.equalsIgnoreCase("id")
+							&& !(removeSystemProperties && SystemPropertyNameToEnum.containsKey(name))) {
+						delta.add(name, JsonNull.INSTANCE);
+					}
+				}
+			}
+
+			content = delta.toString().getBytes(MobileServiceClient.UTF8_ENCODING);
+		} catch (Exception e) {
+			if (callback != null) {
+				callback.onCompleted(null, e, null);
+			}
+
+			return;
+		}
+
+		if (writer != null) {
+			PatchResultOperationCallback resultCallback = new PatchResultOperationCallback(callback, element, writer, json);
+			mInternalTable.updateContent(id, version, content, parameters, resultCallback, resultCallback);
+			return;
+		}
+
+		final ParseResultOperationCallback resultCallback = new ParseResultOperationCallback(callback, element);
+
+		mInternalTable.updateContent(id, version, content, parameters, new MobileServiceJsonTable.EntityProcessor() {
+
+			@Override
+			public JsonObject process(JsonObject jsonEntity, ServiceFilterResponse response) {
+				// The service may return only the sent properties, so the
+				// response is patched into the whole entity
+				JsonObject patchedJson = patchOriginalEntityWithResponseEntity(json, jsonEntity);
+				MobileServiceJsonTable.updateVersionFromETag(response, patchedJson);
+
+				return resultCallback.process(patchedJson, response);
+			}
+		}, resultCallback);
+	}
+
+	/**
+	 * Inserts a list of entities into a Mobile Service Table, using
+	 * DEFAULT_MAX_CONCURRENT_REQUESTS requests in parallel
+	 * 
+	 * @param elements
+	 *            The entities to insert
+	 * @param callback
+	 *            Callback to invoke when all the operations are completed
+	 */
+	public void insertAll(List<E> elements, TableBatchOperationCallback<E> callback) {
+		this.insertAll(elements, DEFAULT_MAX_CONCURRENT_REQUESTS, callback);
+	}
+
+	/**
+	 * Inserts a list of entities into a Mobile Service Table
+	 * 
+	 * @param elements
+	 *            The entities to insert
+	 * @param maxConcurrentRequests
+	 *            Maximum number of requests in progress at the same time
+	 * @param callback
+	 *            Callback to invoke when all the operations are completed
+	 */
+	public void insertAll(List<E> elements, int maxConcurrentRequests, final TableBatchOperationCallback<E> callback) {
+		new TypedBatchOperation(elements, maxConcurrentRequests, callback) {
+
+			@Override
+			protected void executeItem(E element, int index) {
+				insert(element, createItemCallback(index));
+			}
+		}.start();
+	}
+
+	/**
+	 * Updates a list of entities in a Mobile Service Table, using
+	 * DEFAULT_MAX_CONCURRENT_REQUESTS requests in parallel
+	 * 
+	 * @param elements
+	 *            The entities to update
+	 * @param callback
+	 *            Callback to invoke when all the operations are completed
+	 */
+	public void updateAll(List<E> elements, TableBatchOperationCallback<E> callback) {
+		this.updateAll(elements, DEFAULT_MAX_CONCURRENT_REQUESTS, callback);
+	}
+
+	/**
+	 * Updates a list of entities in a Mobile Service Table
+	 * 
+	 * @param elements
+	 *            The entities to update
+	 * @param maxConcurrentRequests
+	 *            Maximum number of requests in progress at the same time
+	 * @param callback
+	 *            Callback to invoke when all the operations are completed
+	 */
+	public void updateAll(List<E> elements, int maxConcurrentRequests, final TableBatchOperationCallback<E> callback) {
+		new TypedBatchOperation(elements, maxConcurrentRequests, callback) {
+
+			@Override
+			protected void executeItem(E element, int index) {
+				update(element, createItemCallback(index));
+			}
+		}.start();
+	}
+
+	/**
+	 * Batch of typed operations that reports its results to a
+	 * TableBatchOperationCallback
+	 */
+	private abstract class TypedBatchOperation extends BatchOperation<E, E> {
+
+		/**
+		 * Callback to invoke when all the operations are completed
+		 */
+		private TableBatchOperationCallback<E> mCallback;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param elements
+		 *            The entities to process
+		 * @param maxConcurrentRequests
+		 *            Maximum number of requests in progress at the same time
+		 * @param callback
+		 *            Callback to invoke when all the operations are completed
+		 */
+		TypedBatchOperation(List<E> elements, int maxConcurrentRequests, TableBatchOperationCallback<E> callback) {
+			super(elements, maxConcurrentRequests);
+			mCallback = callback;
+		}
+
+		/**
+		 * Creates the callback for the operation of an item
+		 * 
+		 * @param index
+		 *            The index of the item
+		 */
+		protected TableOperationCallback<E> createItemCallback(final int index) {
+			return new TableOperationCallback<E>() {
+
+				@Override
+				public void onCompleted(E entity, Exception exception, ServiceFilterResponse response) {
+					onItemCompleted(index, entity, exception, response);
+				}
+			};
+		}
+
+		@Override
+		protected void onCompleted(List<E> results, List<Exception> exceptions, List<ServiceFilterResponse> responses) {
+			if (mCallback != null) {
+				mCallback.onCompleted(results, exceptions, responses);
+			}
+		}
 	}
 
 	/**
@@ -303,10 +834,41 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 	 * @return List of entities
 	 */
 	private List<E> parseResults(JsonElement results) {
-		Gson gson = mClient.getGsonBuilder().create();
+		Gson gson = mClient.getGson();
 		return JsonEntityParser.parseResults(results, gson, mClazz);
 	}
 
+	/**
+	 * Stores the snapshot of an entity returned by the service, serialized on
+	 * the request thread, if change tracking is still enabled
+	 * 
+	 * @param entity
+	 *            The entity to track
+	 * @param snapshot
+	 *            The snapshot, or null if it wasn't taken
+	 */
+	private void putSnapshot(E entity, JsonObject snapshot) {
+		if (mChangeTrackingEnabled && entity != null && snapshot != null) {
+			mSnapshots.put(entity, snapshot);
+		}
+	}
+
+	/**
+	 * Returns the writer used to serialize an entity directly into a request,
+	 * or null if it must be serialized through a JsonObject tree
+	 * 
+	 * @param element
+	 *            The entity to serialize
+	 */
+	@SuppressWarnings("unchecked")
+	private TypedEntityWriter<E> getEntityWriter(E element) {
+		if (element == null) {
+			return null;
+		}
+
+		return mClient.getEntityWriter((Class<E>) element.getClass());
+	}
+
 	/**
 	 * Copy object field values from source to target object
 	 * 
@@ -320,8 +882,7 @@ MobileServiceTableBase<TableQueryCallback<E>> {
 	private void copyFields(Object source, Object target)
 			throws IllegalArgumentException, IllegalAccessException {
 		if (source != null && target != null) {
-			for (Field field : source.getClass().getDeclaredFields()) {
-				field.setAccessible(true);
+			for (Field field : EntityMetadata.get(source.getClass()).getAccessibleFields()) {
 				field.set(target, field.get(source));
 			}
 		}
@@ -19,7 +19,6 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
@@ -36,9 +35,7 @@ import android.util.Pair;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
-import com.google.gson.annotations.SerializedName;
 
 abstract class MobileServiceTableBase<E> {
 
@@ -73,6 +70,11 @@ abstract class MobileServiceTableBase<E> {
 	 */
     protected static final String VersionSystemPropertyName = getSystemPropertyString(MobileServiceSystemProperty.Version);
 
+    /**
+	 * The updatedAt system property as a string with the prefix.
+	 */
+    protected static final String UpdatedAtSystemPropertyName = getSystemPropertyString(MobileServiceSystemProperty.UpdatedAt);
+
     protected static final List<String> IdProperties;
     static { 
     	IdProperties = new ArrayList<String>();
@@ -97,6 +99,11 @@ abstract class MobileServiceTableBase<E> {
 	 */ 
 	protected EnumSet<MobileServiceSystemProperty> mSystemProperties = EnumSet.noneOf(MobileServiceSystemProperty.class);
 
+	/**
+	 * Default maximum number of requests in progress for batch operations
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
 	protected void initialize(String name, MobileServiceClient client) {
 		if (name == null || name.toString().trim().length() == 0) {
 			throw new IllegalArgumentException("Invalid Table Name");
@@ -111,6 +118,36 @@ abstract class MobileServiceTableBase<E> {
 	}
 	
 	public abstract void execute(MobileServiceQuery<?> query, E callback);
+
+	/**
+	 * Executes a compiled query
+	 * 
+	 * @param template
+	 *            The compiled query
+	 * @param callback
+	 *            Callback to invoke when the operation is completed
+	 */
+	abstract void execute(MobileServiceQueryTemplate<E> template, E callback);
+
+	/**
+	 * Executes the query for a page of a MobileServiceQueryPager
+	 * 
+	 * @param query
+	 *            The query for the page
+	 * @param keysetField
+	 *            Field whose value in the last row is reported, or null
+	 * @param callback
+	 *            Callback to invoke when the page is retrieved
+	 */
+	abstract void executePage(MobileServiceQuery<?> query, String keysetField, MobileServiceQueryPager.PageCallback<E> callback);
+
+	/**
+	 * Creates a page of a MobileServiceQueryPager that delivers an error
+	 * 
+	 * @param exception
+	 *            The error to deliver
+	 */
+	abstract MobileServiceQueryPager.Page<E> createErrorPage(Exception exception);
 	
 	/**
 	 * Executes a query to retrieve all the table rows
@@ -289,7 +326,7 @@ abstract class MobileServiceTableBase<E> {
 			}
 		}
 		
-		delete = new ServiceFilterRequestImpl(new HttpDelete(uriBuilder.build().toString()), mClient.getAndroidHttpClientFactory());			
+		delete = new ServiceFilterRequestImpl(new HttpDelete(uriBuilder.build().toString()), mClient.getAndroidHttpClientPool());			
 
 		// Create AsyncTask to execute the request
 		new RequestAsyncTask(delete, mClient.createConnection()) {
@@ -302,6 +339,52 @@ abstract class MobileServiceTableBase<E> {
 		}.executeTask();
 	}
 
+	/**
+	 * Deletes a list of entities from a Mobile Service Table, using
+	 * DEFAULT_MAX_CONCURRENT_REQUESTS requests in parallel
+	 * 
+	 * @param elementsOrIds
+	 *            The entities, or ids of the entities, to delete
+	 * @param callback
+	 *            Callback to invoke when all the operations are completed
+	 */
+	public void deleteAll(List<?> elementsOrIds, TableBatchDeleteCallback callback) {
+		this.deleteAll(elementsOrIds, DEFAULT_MAX_CONCURRENT_REQUESTS, callback);
+	}
+
+	/**
+	 * Deletes a list of entities from a Mobile Service Table
+	 * 
+	 * @param elementsOrIds
+	 *            The entities, or ids of the entities, to delete
+	 * @param maxConcurrentRequests
+	 *            Maximum number of requests in progress at the same time
+	 * @param callback
+	 *            Callback to invoke when all the operations are completed
+	 */
+	public void deleteAll(List<?> elementsOrIds, int maxConcurrentRequests, final TableBatchDeleteCallback callback) {
+		new BatchOperation<Object, Object>(elementsOrIds, maxConcurrentRequests) {
+
+			@Override
+			protected void executeItem(Object elementOrId, final int index) {
+				delete(elementOrId, new TableDeleteCallback() {
+
+					@Override
+					public void onCompleted(Exception exception, ServiceFilterResponse response) {
+						onItemCompleted(index, null, exception, response);
+					}
+				});
+			}
+
+			@Override
+			protected void onCompleted(List<Object> results, List<Exception> exceptions, List<ServiceFilterResponse> responses) {
+				if (callback != null) {
+					callback.onCompleted(exceptions, responses);
+				}
+			}
+		}.start();
+	}
+
 	/**
 	 * Patches the original entity with the one returned in the response after
 	 * executing the operation
@@ -310,16 +393,24 @@ abstract class MobileServiceTableBase<E> {
 	 *            The original entity
 	 * @param newEntity
 	 *            The entity obtained after executing the operation
-	 * @return
+	 * @return A new object with the properties of both entities. The property
+	 *         values are shared with them, not copied
 	 */
 	protected JsonObject patchOriginalEntityWithResponseEntity(
 			JsonObject originalEntity, JsonObject newEntity) {
-		// Patch the object to return with the new values
-		JsonObject patchedEntityJson = (JsonObject) new JsonParser()
-				.parse(originalEntity.toString());
+		// Patch the object to return with the new values, without
+		// serializing and parsing the original entity again
+		JsonObject patchedEntityJson = new JsonObject();
+
+		for (Map.Entry<String, JsonElement> entry : originalEntity.entrySet()) {
+			JsonElement newValue = newEntity.get(entry.getKey());
+			patchedEntityJson.add(entry.getKey(), newValue != null ? newValue : entry.getValue());
+		}
 
 		for (Map.Entry<String, JsonElement> entry : newEntity.entrySet()) {
-			patchedEntityJson.add(entry.getKey(), entry.getValue());
+			if (!patchedEntityJson.has(entry.getKey())) {
+				patchedEntityJson.add(entry.getKey(), entry.getValue());
+			}
 		}
 
 		return patchedEntityJson;
@@ -345,7 +436,7 @@ abstract class MobileServiceTableBase<E> {
 			if (element instanceof JsonObject) {
 				jsonObject = (JsonObject)element;
 			} else {
-				jsonObject = mClient.getGsonBuilder().create().toJsonTree(element).getAsJsonObject();
+				jsonObject = mClient.getGson().toJsonTree(element).getAsJsonObject();
 			}
 			
 			updateIdProperty(jsonObject);
@@ -436,7 +527,7 @@ abstract class MobileServiceTableBase<E> {
 		} else if (elementOrId instanceof JsonObject) {
 			validateId((JsonObject)elementOrId);
 		} else {
-			validateId(mClient.getGsonBuilder().create().toJsonTree(elementOrId).getAsJsonObject());
+			validateId(mClient.getGson().toJsonTree(elementOrId).getAsJsonObject());
 		}
 	}
 	
@@ -729,18 +820,20 @@ abstract class MobileServiceTableBase<E> {
 	 */
     protected static JsonObject removeSystemProperties(JsonObject instance)
     {
-        boolean haveCloned = false;
-        
         for (Entry<String,JsonElement> property : instance.entrySet()) {
         	if (SystemPropertyNameToEnum.containsKey(property.getKey())) {
         		// We don't want to alter the original JsonObject passed in by the caller
-                // so if we find a system property to remove, we have to clone first
-                if (!haveCloned) {
-                    instance = (JsonObject) new JsonParser().parse(instance.toString());
-                    haveCloned = true;
+                // so if we find a system property to remove, the other properties are
+                // copied to a new object. Their values are shared, not cloned
+                JsonObject result = new JsonObject();
+                
+                for (Entry<String,JsonElement> other : instance.entrySet()) {
+                	if (!SystemPropertyNameToEnum.containsKey(other.getKey())) {
+                		result.add(other.getKey(), other.getValue());
+                	}
                 }
-
-                instance.remove(property.getKey());
+                
+                return result;
         	}
         }
 
@@ -851,29 +944,7 @@ abstract class MobileServiceTableBase<E> {
 	 * @return 			List of entities
 	 */
 	protected static <F> EnumSet<MobileServiceSystemProperty> getSystemProperties(Class<F> clazz) {
-		EnumSet<MobileServiceSystemProperty> result = EnumSet.noneOf(MobileServiceSystemProperty.class);
-
-		Class<?> idClazz = getIdPropertyClass(clazz);
-		
-		if (idClazz != null && !isIntegerClass(idClazz)) {
-			// Search for system properties annotations, regardless case
-			for (Field field : clazz.getDeclaredFields()) {
-				SerializedName serializedName = field.getAnnotation(SerializedName.class);
-				
-				if(serializedName != null) {
-					if (SystemPropertyNameToEnum.containsKey(serializedName.value())) {
-						result.add(SystemPropertyNameToEnum.get(serializedName.value()));
-					}
-				} else {
-					if (SystemPropertyNameToEnum.containsKey(field.getName())) {
-						result.add(SystemPropertyNameToEnum.get(field.getName()));
-					}
-				}
-			}
-		}
-
-		// Otherwise, return empty
-		return result;
+		return EntityMetadata.get(clazz).getSystemProperties();
 	}
 	
     /**
@@ -882,22 +953,7 @@ abstract class MobileServiceTableBase<E> {
 	 * @return 			Property class
 	 */
 	protected static <F> Class<?> getIdPropertyClass(Class<F> clazz) {
-		// Search for id properties annotations, regardless case
-		for (Field field : clazz.getDeclaredFields()) {
-			SerializedName serializedName = field.getAnnotation(SerializedName.class);
-			
-			if(serializedName != null) {
-				if (IdProperties.contains(serializedName.value())) {
-					return field.getType();
-				}
-			} else {
-				if (IdProperties.contains(field.getName())) {
-					return field.getType();
-				}
-			}
-		}
-		
-		return null;
+		return EntityMetadata.get(clazz).getIdPropertyClass();
 	}
 	
     /**
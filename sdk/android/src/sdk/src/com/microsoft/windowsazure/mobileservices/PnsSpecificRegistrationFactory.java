@@ -33,6 +33,11 @@ import com.google.gson.JsonObject;
  */
 final class PnsSpecificRegistrationFactory {
 
+	/**
+	 * Gson instance used to serialize and deserialize registrations
+	 */
+	static final Gson REGISTRATION_GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+
 	/**
 	 * Creates a new instance of PnsSpecificRegistrationFactory
 	 */
@@ -66,11 +71,8 @@ final class PnsSpecificRegistrationFactory {
 	 *            The Json representation of the registration
 	 */
 	public Registration parseNativeRegistration(JsonObject registrationJson) {
-		GsonBuilder builder = new GsonBuilder();
-		builder = builder.excludeFieldsWithoutExposeAnnotation();
-		Gson gson = builder.create();
 		Class<? extends Registration> clazz = GcmNativeRegistration.class;
-		Registration registration = gson.fromJson(registrationJson, clazz);
+		Registration registration = REGISTRATION_GSON.fromJson(registrationJson, clazz);
 
 		registration.setName(Registration.DEFAULT_REGISTRATION_NAME);
 		
@@ -84,11 +86,8 @@ final class PnsSpecificRegistrationFactory {
 	 *            The Json representation of the registration
 	 */
 	public TemplateRegistration parseTemplateRegistration(JsonObject registrationJson) {
-		GsonBuilder builder = new GsonBuilder();
-		builder = builder.excludeFieldsWithoutExposeAnnotation();
-		Gson gson = builder.create();
 		Class<? extends TemplateRegistration> clazz = GcmTemplateRegistration.class;
-		return gson.fromJson(registrationJson, clazz);
+		return REGISTRATION_GSON.fromJson(registrationJson, clazz);
 	}
 
 	/**
@@ -0,0 +1,236 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * ProjectionTypeAdapter.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.Until;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Deserializes the entities returned by a query with a projection. Only the
+ * selected fields, the id and the system properties are bound, using type
+ * adapters resolved once, and the other properties are skipped.
+ * 
+ * It's only used when the GsonCache knows that Gson binds the fields of the
+ * class by their names. Otherwise, Gson's own adapter for the class is used
+ */
+final class ProjectionTypeAdapter<E> extends TypeAdapter<E> {
+
+	/**
+	 * Empty JSON object, read by Gson's adapter to create the entities
+	 */
+	private static final JsonObject EMPTY_OBJECT = new JsonObject();
+
+	/**
+	 * A field bound to a JSON property
+	 */
+	static final class BoundField {
+		/**
+		 * The field, made accessible
+		 */
+		final Field mField;
+
+		/**
+		 * Gson's adapter for the declared type of the field
+		 */
+		final TypeAdapter<?> mAdapter;
+
+		BoundField(Field field, TypeAdapter<?> adapter) {
+			mField = field;
+			mAdapter = adapter;
+		}
+
+		/**
+		 * Sets the field to a value read by its adapter. Primitive fields keep
+		 * their value for nulls, as in Gson
+		 */
+		void set(Object instance, Object value) throws IllegalAccessException {
+			if (value != null || !mField.getType().isPrimitive()) {
+				mField.set(instance, value);
+			}
+		}
+	}
+
+	/**
+	 * Gson's adapter for the class, used to serialize
+	 */
+	private final TypeAdapter<E> mDelegate;
+
+	/**
+	 * The bound fields, by property name
+	 */
+	private final Map<String, BoundField> mFields;
+
+	private ProjectionTypeAdapter(TypeAdapter<E> delegate, Map<String, BoundField> fields) {
+		mDelegate = delegate;
+		mFields = fields;
+	}
+
+	/**
+	 * Creates the adapter used to deserialize the entities of a query with a
+	 * projection
+	 * 
+	 * @param gson
+	 *            The Gson instance
+	 * @param clazz
+	 *            The entity class
+	 * @param projection
+	 *            The selected fields
+	 * @return A ProjectionTypeAdapter, or Gson's adapter for the class if the
+	 *         fields can't be bound as Gson would
+	 */
+	static <E> TypeAdapter<E> create(Gson gson, Class<E> clazz, List<String> projection) {
+		TypeAdapter<E> delegate = gson.getAdapter(clazz);
+		Map<String, BoundField> fields = bindFields(gson, clazz);
+
+		if (fields == null) {
+			return delegate;
+		}
+
+		EntityMetadata metadata = EntityMetadata.get(clazz);
+		Map<String, BoundField> boundFields = new HashMap<String, BoundField>();
+
+		for (Map.Entry<String, BoundField> entry : fields.entrySet()) {
+			String name = entry.getKey();
+			BoundField field = entry.getValue();
+
+			if (projection.contains(name) || field.mField == metadata.getIdField()
+					|| MobileServiceTableBase.SystemPropertyNameToEnum.containsKey(name)) {
+				boundFields.put(name, field);
+			}
+		}
+
+		return new ProjectionTypeAdapter<E>(delegate, boundFields);
+	}
+
+	/**
+	 * Binds the serialized fields of a class to their JSON properties. The
+	 * caller must know that Gson binds the fields by their names
+	 * 
+	 * @param gson
+	 *            The Gson instance
+	 * @param clazz
+	 *            The entity class
+	 * @return The bound fields by property name, or null if the fields can't
+	 *         be bound as Gson would
+	 */
+	static Map<String, BoundField> bindFields(Gson gson, Class<?> clazz) {
+		// Gson validates the class, rejecting duplicate property names
+		gson.getAdapter(clazz);
+
+		// Inherited fields are not in the entity metadata
+		Class<?> superclass = clazz.getSuperclass();
+		if (superclass != null && superclass != Object.class) {
+			return null;
+		}
+
+		// Gson doesn't bind the fields of anonymous and local classes
+		if (clazz.isAnonymousClass() || clazz.isLocalClass()) {
+			return null;
+		}
+
+		Map<String, BoundField> boundFields = new HashMap<String, BoundField>();
+
+		for (Field field : EntityMetadata.get(clazz).getAccessibleFields()) {
+			int modifiers = field.getModifiers();
+
+			if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+				continue;
+			}
+
+			// Fields may be excluded depending on the Gson configuration
+			if (field.getAnnotation(Expose.class) != null || field.getAnnotation(Since.class) != null
+					|| field.getAnnotation(Until.class) != null) {
+				return null;
+			}
+
+			// Nor the fields whose type is an anonymous or local class
+			Class<?> type = field.getType();
+			if (type.isAnonymousClass() || type.isLocalClass()) {
+				return null;
+			}
+
+			boundFields.put(getSerializedName(field), new BoundField(field, gson.getAdapter(TypeToken.get(field.getGenericType()))));
+		}
+
+		return boundFields;
+	}
+
+	@Override
+	public E read(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+
+		E instance = mDelegate.fromJsonTree(EMPTY_OBJECT);
+
+		in.beginObject();
+
+		while (in.hasNext()) {
+			BoundField boundField = mFields.get(in.nextName());
+
+			if (boundField == null) {
+				in.skipValue();
+				continue;
+			}
+
+			try {
+				boundField.set(instance, boundField.mAdapter.read(in));
+			} catch (IllegalAccessException e) {
+				throw new JsonSyntaxException(e);
+			}
+		}
+
+		in.endObject();
+
+		return instance;
+	}
+
+	@Override
+	public void write(JsonWriter out, E value) throws IOException {
+		mDelegate.write(out, value);
+	}
+
+	private static String getSerializedName(Field field) {
+		SerializedName serializedName = field.getAnnotation(SerializedName.class);
+		return serializedName != null ? serializedName.value() : field.getName();
+	}
+}
@@ -18,29 +18,24 @@ Apache 2.0 License
 See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
  */
 /*
- w * RequestAsyncTask.java
+ * RequestAsyncTask.java
  */
 
 package com.microsoft.windowsazure.mobileservices;
 
-import android.annotation.SuppressLint;
-import android.os.AsyncTask;
-import android.os.Build;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
- * Default implementation for performing requests using AsyncTask
+ * Default implementation for performing requests. The request and the
+ * processing of its response run on the client's request executor, and the
+ * result is delivered on the client's callback executor
  */
-abstract class RequestAsyncTask extends AsyncTask<Void, Void, ServiceFilterResponse> {
+abstract class RequestAsyncTask {
 	/**
 	 * Error message
 	 */
 	protected Exception mTaskException = null;
 
-	/**
-	 * Task response
-	 */
-	private ServiceFilterResponse mTaskResponse = null;
-
 	/**
 	 * Connection to use for the request
 	 */
@@ -52,11 +47,19 @@ abstract class RequestAsyncTask extends AsyncTask<Void, Void, ServiceFilterRespo
 	private ServiceFilterRequest mRequest;
 
 	/**
-	 * Default constructor
+	 * Metrics of the request, or null if they are not measured
 	 */
-	public RequestAsyncTask() {
+	private MobileServiceRequestMetrics mMetrics;
 
-	}
+	/**
+	 * Time the request was scheduled, in nanoseconds
+	 */
+	private long mScheduledTime;
+
+	/**
+	 * Time the request started, in nanoseconds
+	 */
+	private long mStartTime;
 
 	/**
 	 * Constructor that specifies request and connection
@@ -71,30 +74,155 @@ abstract class RequestAsyncTask extends AsyncTask<Void, Void, ServiceFilterRespo
 		mConnection = connection;
 	}
 
-	@SuppressLint("NewApi")
+	/**
+	 * Schedules the request on the client's request executor
+	 */
 	public void executeTask() {
-		// If it's running with Honeycomb or greater, it must execute each
-		// request in a different thread
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-			this.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-		} else {
-			this.execute();
+		if (mConnection.getClient().getRequestMetricsListener() != null) {
+			createMetrics();
+		}
+
+		mScheduledTime = System.nanoTime();
+		mStartTime = mScheduledTime;
+
+		try {
+			mConnection.getClient().getExecutor().execute(new Runnable() {
+
+				@Override
+				public void run() {
+					startRequest();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			onRequestCompleted(null, new MobileServiceException("The request could not be scheduled.", e));
+		}
+	}
+
+	/**
+	 * Processes the response on the request executor thread, before
+	 * onPostExecute is called. Exceptions thrown are reported as the task
+	 * exception
+	 * 
+	 * @param response
+	 *            The successful response of the request
+	 */
+	protected void processResponse(ServiceFilterResponse response) throws Exception {
+	}
+
+	/**
+	 * Invoked on the client's callback executor after the request completes
+	 * 
+	 * @param response
+	 *            The response of the request, if any
+	 */
+	protected void onPostExecute(ServiceFilterResponse response) {
+	}
+
+	/**
+	 * Starts the request. The filters may complete it on a different thread
+	 */
+	private void startRequest() {
+		mStartTime = System.nanoTime();
+
+		if (mMetrics != null) {
+			mMetrics.setQueueTime(mStartTime - mScheduledTime);
+		}
+
+		try {
+			// Call start method that executes the request
+			mConnection.start(mRequest, new ServiceFilterResponseCallback() {
+
+				@Override
+				public void onResponse(ServiceFilterResponse response, Exception exception) {
+					onRequestCompleted(response, exception);
+				}
+			});
+		} catch (RuntimeException e) {
+			onRequestCompleted(null, e);
 		}
 	}
 
-	@Override
-	protected ServiceFilterResponse doInBackground(Void... params) {
-		// Call start method that executes the request
-		mConnection.start(mRequest, new ServiceFilterResponseCallback() {
+	/**
+	 * Creates the metrics of the request
+	 */
+	private void createMetrics() {
+		MobileServiceClient client = mConnection.getClient();
+
+		try {
+			mMetrics = new MobileServiceRequestMetrics(mRequest.getMethod(),
+					MobileServiceRequestMetrics.getEndpoint(mRequest.getUrl(), client.getAppUrl()));
+		} catch (IllegalArgumentException e) {
+			// The URL is not valid, and the request will fail
+			return;
+		}
+
+		if (mRequest instanceof ServiceFilterRequestImpl) {
+			((ServiceFilterRequestImpl) mRequest).setMetrics(mMetrics);
+		}
+	}
+
+	/**
+	 * Completes the metrics and reports them to the client's listener
+	 * 
+	 * @param response
+	 *            The response of the request, if any
+	 * @param completedTime
+	 *            Time the response was received, in nanoseconds
+	 */
+	private void reportMetrics(ServiceFilterResponse response, long completedTime) {
+		long now = System.nanoTime();
+
+		if (response != null && response.getStatus() != null) {
+			mMetrics.setStatusCode(response.getStatus().getStatusCode());
+		}
+
+		mMetrics.setSuccessful(mTaskException == null);
+		mMetrics.setFilterTime(Math.max(completedTime - mStartTime - mMetrics.getNetworkTime(), 0));
+		mMetrics.setParseTime(now - completedTime);
+		mMetrics.setTotalTime(now - mScheduledTime);
+
+		MobileServiceRequestMetricsListener listener = mConnection.getClient().getRequestMetricsListener();
+
+		if (listener != null) {
+			try {
+				listener.onRequestCompleted(mMetrics);
+			} catch (RuntimeException e) {
+				// A failing listener must not change the result of the request
+			}
+		}
+	}
+
+	/**
+	 * Processes the response and dispatches the result to the callback executor
+	 */
+	private void onRequestCompleted(final ServiceFilterResponse response, Exception exception) {
+		mTaskException = exception;
+		long completedTime = System.nanoTime();
+
+		if (mTaskException == null && response != null) {
+			try {
+				processResponse(response);
+			} catch (Exception e) {
+				mTaskException = e;
+			}
+		}
+
+		// Filters may drop or replace a streamed response, which would keep
+		// its connection leased
+		if (mRequest instanceof ServiceFilterRequestImpl) {
+			((ServiceFilterRequestImpl) mRequest).closeStreamedResponse();
+		}
+
+		if (mMetrics != null) {
+			reportMetrics(response, completedTime);
+		}
+
+		mConnection.getClient().getCallbackExecutor().execute(new Runnable() {
 
 			@Override
-			public void onResponse(ServiceFilterResponse response, Exception exception) {
-				mTaskResponse = response;
-				mTaskException = exception;
+			public void run() {
+				onPostExecute(response);
 			}
 		});
-
-		return mTaskResponse;
 	}
-
 }
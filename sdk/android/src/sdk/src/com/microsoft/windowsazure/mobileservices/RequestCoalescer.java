@@ -0,0 +1,114 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * RequestCoalescer.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the requests in progress, so identical concurrent requests share a
+ * single network call. It's shared by a MobileServiceClient and the clients
+ * derived from it
+ */
+final class RequestCoalescer {
+
+	/**
+	 * Callbacks waiting for each request in progress, by request key
+	 */
+	private final Map<String, List<ServiceFilterResponseCallback>> mRequestsInProgress = new HashMap<String, List<ServiceFilterResponseCallback>>();
+
+	/**
+	 * Number of requests that shared the call of an identical request
+	 */
+	private final AtomicInteger mCoalescedCount = new AtomicInteger();
+
+	/**
+	 * Attaches a callback to an identical request in progress. If there is
+	 * none, the request is registered as in progress, and the caller must
+	 * execute it and call complete
+	 * 
+	 * @param key
+	 *            The request key
+	 * @param callback
+	 *            Callback to invoke with the shared response
+	 * @return true if the callback was attached to a request in progress
+	 */
+	synchronized boolean join(String key, ServiceFilterResponseCallback callback) {
+		List<ServiceFilterResponseCallback> callbacks = mRequestsInProgress.get(key);
+
+		if (callbacks == null) {
+			mRequestsInProgress.put(key, new ArrayList<ServiceFilterResponseCallback>());
+			return false;
+		}
+
+		callbacks.add(callback);
+		mCoalescedCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Completes a request in progress, invoking the callbacks attached to it.
+	 * Errors thrown by the callbacks are not propagated
+	 * 
+	 * @param key
+	 *            The request key
+	 * @param response
+	 *            The response of the request, if any
+	 * @param exception
+	 *            The error of the request, if any
+	 */
+	void complete(String key, ServiceFilterResponse response, Exception exception) {
+		List<ServiceFilterResponseCallback> callbacks;
+
+		synchronized (this) {
+			callbacks = mRequestsInProgress.remove(key);
+		}
+
+		if (callbacks == null) {
+			return;
+		}
+
+		for (ServiceFilterResponseCallback callback : callbacks) {
+			if (callback != null) {
+				try {
+					callback.onResponse(response, exception);
+				} catch (RuntimeException e) {
+					// A failing callback must not keep the others from
+					// getting the response
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of requests that shared the call of an identical
+	 * request
+	 */
+	int getCoalescedCount() {
+		return mCoalescedCount.get();
+	}
+}
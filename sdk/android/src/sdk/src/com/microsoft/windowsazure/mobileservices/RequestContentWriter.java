@@ -0,0 +1,45 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * RequestContentWriter.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the content of a request directly to the connection, so it doesn't
+ * need to be held in memory
+ */
+public interface RequestContentWriter {
+	/**
+	 * Writes the request content. It may be called more than once, if the
+	 * request is sent again or a ServiceFilter reads its content, and must
+	 * write the same content every time
+	 * 
+	 * @param out
+	 *            The stream where the content is written. It must not be
+	 *            closed
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out) throws IOException;
+}
@@ -0,0 +1,79 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * RequestThreadFactory.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Process;
+
+/**
+ * Creates the background threads used to execute Mobile Service requests and
+ * schedule their retries
+ */
+final class RequestThreadFactory implements ThreadFactory {
+
+	/**
+	 * Number of threads created, used to name them
+	 */
+	private final AtomicInteger mCount = new AtomicInteger(1);
+
+	/**
+	 * Prefix of the thread names
+	 */
+	private final String mNamePrefix;
+
+	/**
+	 * Constructor for the factory of request threads
+	 */
+	RequestThreadFactory() {
+		this("MobileServiceRequest #");
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param namePrefix
+	 *            Prefix of the thread names
+	 */
+	RequestThreadFactory(String namePrefix) {
+		mNamePrefix = namePrefix;
+	}
+
+	@Override
+	public Thread newThread(final Runnable runnable) {
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				runnable.run();
+			}
+		}, mNamePrefix + mCount.getAndIncrement());
+
+		thread.setDaemon(true);
+
+		return thread;
+	}
+}
@@ -0,0 +1,68 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * RetryBudget.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+/**
+ * Tokens that limit the retries of the requests. It's shared by a
+ * MobileServiceClient and the clients derived from it, so all the retry
+ * filters attached to them draw from the same budget
+ */
+final class RetryBudget {
+
+	/**
+	 * Available retry tokens. Each retry uses one. The budget starts full,
+	 * and it's capped by the maximum of the filter that uses it
+	 */
+	private double mTokens = Double.MAX_VALUE;
+
+	/**
+	 * Adds the tokens earned by a request
+	 * 
+	 * @param tokenRatio
+	 *            Number of tokens earned
+	 * @param maxTokens
+	 *            Maximum number of tokens
+	 */
+	synchronized void earn(double tokenRatio, int maxTokens) {
+		mTokens = Math.min(maxTokens, mTokens + tokenRatio);
+	}
+
+	/**
+	 * Uses a token for a retry
+	 * 
+	 * @param maxTokens
+	 *            Maximum number of tokens
+	 * @return true if a token was available
+	 */
+	synchronized boolean tryAcquire(int maxTokens) {
+		mTokens = Math.min(maxTokens, mTokens);
+
+		if (mTokens < 1) {
+			return false;
+		}
+
+		mTokens--;
+		return true;
+	}
+}
@@ -0,0 +1,475 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * RetryServiceFilter.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+
+/**
+ * ServiceFilter that retries failed requests with exponential backoff and
+ * jitter, honoring the Retry-After header sent by the server.
+ * 
+ * Only idempotent requests are retried by default: GET, PUT and DELETE, and
+ * PATCH when the request has an If-Match header. Retries are limited by a
+ * budget that grows with the requests executed, so they cannot multiply the
+ * load on a service that is already failing. The budget belongs to the client
+ * the filter is attached to, and it's shared with the clients derived from it.
+ * 
+ * Retries are scheduled instead of waiting on the request thread, and
+ * executed on the executor of the client, or the one given to the filter
+ */
+public class RetryServiceFilter implements ServiceFilter {
+
+	/**
+	 * Default maximum number of retries of a request
+	 */
+	public static final int DEFAULT_MAX_RETRIES = 3;
+
+	/**
+	 * Default delay, in milliseconds, before the first retry
+	 */
+	public static final long DEFAULT_INITIAL_DELAY = 500;
+
+	/**
+	 * Default maximum delay, in milliseconds, before a retry
+	 */
+	public static final long DEFAULT_MAX_DELAY = 30000;
+
+	/**
+	 * Default maximum number of retries that can be done in a burst
+	 */
+	public static final int DEFAULT_MAX_RETRY_TOKENS = 10;
+
+	/**
+	 * Default number of retries earned by each request
+	 */
+	public static final double DEFAULT_RETRY_TOKEN_RATIO = 0.1;
+
+	/**
+	 * Response header with the time the client should wait before retrying
+	 */
+	private static final String RETRY_AFTER_HEADER = "Retry-After";
+
+	/**
+	 * Request header that makes a PATCH request idempotent
+	 */
+	private static final String IF_MATCH_HEADER = "If-Match";
+
+	/**
+	 * Scheduler shared by all the filters, used to wait before the retries
+	 */
+	private static ScheduledExecutorService sScheduler;
+
+	/**
+	 * Random numbers used for the jitter
+	 */
+	private static final Random sRandom = new Random();
+
+	/**
+	 * Maximum number of retries of a request
+	 */
+	private final int mMaxRetries;
+
+	/**
+	 * Delay before the first retry
+	 */
+	private final long mInitialDelay;
+
+	/**
+	 * Maximum delay before a retry
+	 */
+	private final long mMaxDelay;
+
+	/**
+	 * Executor used to execute the retries, or null to use the executor of
+	 * the client
+	 */
+	private Executor mExecutor = null;
+
+	/**
+	 * Maximum number of retry tokens
+	 */
+	private int mMaxRetryTokens = DEFAULT_MAX_RETRY_TOKENS;
+
+	/**
+	 * Retry tokens earned by each request
+	 */
+	private double mRetryTokenRatio = DEFAULT_RETRY_TOKEN_RATIO;
+
+	/**
+	 * Budget of the requests executed without a client, like the ones of
+	 * other filters
+	 */
+	private final RetryBudget mRetryBudget = new RetryBudget();
+
+	/**
+	 * Number of retries done
+	 */
+	private int mRetryCount = 0;
+
+	/**
+	 * Constructor with the default backoff settings
+	 */
+	public RetryServiceFilter() {
+		this(DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param maxRetries
+	 *            Maximum number of retries of a request
+	 * @param initialDelay
+	 *            Delay, in milliseconds, before the first retry. It doubles
+	 *            with each retry
+	 * @param maxDelay
+	 *            Maximum delay, in milliseconds, before a retry. Requests are
+	 *            not retried if the server asks to wait longer
+	 */
+	public RetryServiceFilter(int maxRetries, long initialDelay, long maxDelay) {
+		if (maxRetries < 0) {
+			throw new IllegalArgumentException("maxRetries cannot be negative");
+		}
+
+		if (initialDelay < 0 || maxDelay < initialDelay) {
+			throw new IllegalArgumentException("Invalid retry delays");
+		}
+
+		mMaxRetries = maxRetries;
+		mInitialDelay = initialDelay;
+		mMaxDelay = maxDelay;
+	}
+
+	/**
+	 * Sets the limits of the retry budget of the client. Up to maxRetryTokens
+	 * retries can be done in a burst, and then each request lets the filter
+	 * do tokenRatio retries
+	 * 
+	 * @param maxRetryTokens
+	 *            Maximum number of retries that can be done in a burst
+	 * @param tokenRatio
+	 *            Number of retries earned by each request
+	 * @return RetryServiceFilter
+	 */
+	public synchronized RetryServiceFilter setRetryBudget(int maxRetryTokens, double tokenRatio) {
+		if (maxRetryTokens < 0 || tokenRatio < 0) {
+			throw new IllegalArgumentException("The retry budget cannot be negative");
+		}
+
+		mMaxRetryTokens = maxRetryTokens;
+		mRetryTokenRatio = tokenRatio;
+		return this;
+	}
+
+	/**
+	 * Sets the Executor used to execute the retries, instead of the executor
+	 * of the client that sent the request
+	 * 
+	 * @param executor
+	 *            The Executor to set
+	 * @return RetryServiceFilter
+	 */
+	public synchronized RetryServiceFilter setExecutor(Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("executor cannot be null");
+		}
+
+		mExecutor = executor;
+		return this;
+	}
+
+	/**
+	 * Returns the number of retries done by the filter
+	 */
+	public synchronized int getRetryCount() {
+		return mRetryCount;
+	}
+
+	@Override
+	public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+			ServiceFilterResponseCallback responseCallback) {
+		int maxRetryTokens;
+		double retryTokenRatio;
+
+		synchronized (this) {
+			maxRetryTokens = mMaxRetryTokens;
+			retryTokenRatio = mRetryTokenRatio;
+		}
+
+		getRetryBudget(request).earn(retryTokenRatio, maxRetryTokens);
+
+		executeAttempt(request, nextServiceFilterCallback, responseCallback, 0);
+	}
+
+	/**
+	 * Indicates if a request can be retried. By default, only idempotent
+	 * requests whose content can be sent again are retried
+	 * 
+	 * @param request
+	 *            The request
+	 */
+	protected boolean isRetryableRequest(ServiceFilterRequest request) {
+		// A streamed content is exhausted by the first attempt
+		if (request instanceof ServiceFilterRequestImpl && !((ServiceFilterRequestImpl) request).isContentRepeatable()) {
+			return false;
+		}
+
+		String method = request.getMethod();
+
+		if ("GET".equalsIgnoreCase(method) || "PUT".equalsIgnoreCase(method) || "DELETE".equalsIgnoreCase(method)) {
+			return true;
+		}
+
+		if ("PATCH".equalsIgnoreCase(method)) {
+			return getHeader(request.getHeaders(), IF_MATCH_HEADER) != null;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Indicates if the result of a request is a transient error. By default,
+	 * network errors and the 408, 429, 500, 502, 503 and 504 status codes are
+	 * retried
+	 * 
+	 * @param response
+	 *            The response, if any
+	 * @param exception
+	 *            The error, if any
+	 */
+	protected boolean isTransientError(ServiceFilterResponse response, Exception exception) {
+		if (response == null || response.getStatus() == null) {
+			return exception != null;
+		}
+
+		int statusCode = response.getStatus().getStatusCode();
+
+		return statusCode == 408 || statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503
+				|| statusCode == 504;
+	}
+
+	/**
+	 * Executes an attempt of the request, and schedules a retry if it fails
+	 */
+	private void executeAttempt(final ServiceFilterRequest request, final NextServiceFilterCallback nextServiceFilterCallback,
+			final ServiceFilterResponseCallback responseCallback, final int retry) {
+		nextServiceFilterCallback.onNext(request, new ServiceFilterResponseCallback() {
+
+			@Override
+			public void onResponse(ServiceFilterResponse response, Exception exception) {
+				long delay = getRetryDelay(request, response, exception, retry);
+
+				if (delay < 0 || !scheduleRetry(request, nextServiceFilterCallback, responseCallback, retry + 1, delay)) {
+					if (responseCallback != null) {
+						responseCallback.onResponse(response, exception);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Schedules a retry of the request on the executor
+	 * 
+	 * @return true if the retry was scheduled
+	 */
+	private boolean scheduleRetry(final ServiceFilterRequest request, final NextServiceFilterCallback nextServiceFilterCallback,
+			final ServiceFilterResponseCallback responseCallback, final int retry, long delay) {
+		final Executor executor = getExecutor(request);
+
+		final Runnable attempt = new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					executeAttempt(request, nextServiceFilterCallback, responseCallback, retry);
+				} catch (RuntimeException e) {
+					if (responseCallback != null) {
+						responseCallback.onResponse(null, e);
+					}
+				}
+			}
+		};
+
+		try {
+			getScheduler().schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						executor.execute(attempt);
+					} catch (RejectedExecutionException e) {
+						if (responseCallback != null) {
+							responseCallback.onResponse(null, new MobileServiceException("The request could not be scheduled.", e));
+						}
+					}
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the delay, in milliseconds, before retrying a request, or -1 if
+	 * it must not be retried. A retry uses a token of the budget
+	 */
+	private long getRetryDelay(ServiceFilterRequest request, ServiceFilterResponse response, Exception exception, int retry) {
+		if (retry >= mMaxRetries || (response == null && exception == null) || !isTransientError(response, exception)
+				|| !isRetryableRequest(request)) {
+			return -1;
+		}
+
+		long delay;
+		long retryAfter = response != null ? getRetryAfter(response) : -1;
+
+		if (retryAfter >= 0) {
+			if (retryAfter > mMaxDelay) {
+				return -1;
+			}
+
+			delay = retryAfter;
+		} else {
+			// Exponential backoff with full jitter
+			long maxDelay = mInitialDelay << Math.min(retry, 30);
+			maxDelay = maxDelay <= 0 || maxDelay > mMaxDelay ? mMaxDelay : maxDelay;
+
+			synchronized (sRandom) {
+				delay = (long) (sRandom.nextDouble() * maxDelay);
+			}
+		}
+
+		int maxRetryTokens;
+
+		synchronized (this) {
+			maxRetryTokens = mMaxRetryTokens;
+		}
+
+		if (!getRetryBudget(request).tryAcquire(maxRetryTokens)) {
+			return -1;
+		}
+
+		synchronized (this) {
+			mRetryCount++;
+		}
+
+		return delay;
+	}
+
+	/**
+	 * Returns the client that sent a request, or null if it's unknown
+	 */
+	private static MobileServiceClient getClient(ServiceFilterRequest request) {
+		return request instanceof ServiceFilterRequestImpl ? ((ServiceFilterRequestImpl) request).getClient() : null;
+	}
+
+	/**
+	 * Returns the budget of the client that sent a request
+	 */
+	private RetryBudget getRetryBudget(ServiceFilterRequest request) {
+		MobileServiceClient client = getClient(request);
+
+		return client != null ? client.getRetryBudget() : mRetryBudget;
+	}
+
+	/**
+	 * Returns the executor used to retry a request: the one given to the
+	 * filter, or else the executor of the client that sent it
+	 */
+	private Executor getExecutor(ServiceFilterRequest request) {
+		synchronized (this) {
+			if (mExecutor != null) {
+				return mExecutor;
+			}
+		}
+
+		MobileServiceClient client = getClient(request);
+
+		return client != null ? client.getExecutor() : MobileServiceClient.getDefaultExecutor();
+	}
+
+	/**
+	 * Returns the delay, in milliseconds, requested by the Retry-After header
+	 * of a response, or -1 if it has none
+	 */
+	private static long getRetryAfter(ServiceFilterResponse response) {
+		String value = getHeader(response.getHeaders(), RETRY_AFTER_HEADER);
+
+		if (value == null) {
+			return -1;
+		}
+
+		value = value.trim();
+
+		try {
+			return Math.max(Long.parseLong(value), 0) * 1000;
+		} catch (NumberFormatException e) {
+			// The value is an HTTP date
+		}
+
+		try {
+			Date date = DateUtils.parseDate(value);
+			return Math.max(date.getTime() - System.currentTimeMillis(), 0);
+		} catch (DateParseException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns the value of a header, or null
+	 */
+	private static String getHeader(Header[] headers, String name) {
+		if (headers != null) {
+			for (Header header : headers) {
+				if (header.getName().equalsIgnoreCase(name)) {
+					return header.getValue();
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the scheduler used to wait before the retries
+	 */
+	private static synchronized ScheduledExecutorService getScheduler() {
+		if (sScheduler == null) {
+			sScheduler = new ScheduledThreadPoolExecutor(1, new RequestThreadFactory("MobileServiceRetryScheduler #"));
+		}
+
+		return sScheduler;
+	}
+}
@@ -23,19 +23,19 @@ See the Apache Version 2.0 License for specific language governing permissions a
 
 package com.microsoft.windowsazure.mobileservices;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectionReleaseTrigger;
 import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.protocol.HTTP;
-
-import android.net.http.AndroidHttpClient;
 
 /**
  * 
@@ -50,42 +50,209 @@ class ServiceFilterRequestImpl implements ServiceFilterRequest {
 	private HttpRequestBase mRequest;
 
 	/**
-	 * The request content
+	 * Content-Type of the entities created from strings
+	 */
+	private static final String STRING_CONTENT_TYPE = "text/plain; charset=" + MobileServiceClient.UTF8_ENCODING;
+
+	/**
+	 * The request content, or null if it's streamed and was not read yet
 	 */
 	private byte[] mContent;
 
-	private AndroidHttpClientFactory mAndroidHttpClientFactory;
+	/**
+	 * The entity of the streamed content, or null if the content is not
+	 * streamed
+	 */
+	private HttpEntity mStreamedContent;
 
 	/**
-	 * @param request
-	 *            The request to use
+	 * Indicates if the response content is streamed instead of read when the
+	 * request is executed
 	 */
-	
+	private boolean mStreamingResponse = false;
+
+	/**
+	 * The last streamed response created by the request, closed when the
+	 * request completes
+	 */
+	private ServiceFilterResponseImpl mStreamedResponse;
+
+	/**
+	 * Metrics of the request, or null if they are not measured
+	 */
+	private MobileServiceRequestMetrics mMetrics;
+
+	/**
+	 * The pool that provides the shared AndroidHttpClient
+	 */
+	private AndroidHttpClientPool mAndroidHttpClientPool;
+
+	/**
+	 * The client executing the request, if known
+	 */
+	private MobileServiceClient mClient;
+
 	/**
 	 * Constructor
 	 * @param request The request to use
-	 * @param factory The AndroidHttpClientFactory instance used to create AndroidHttpClient objects
+	 * @param pool The AndroidHttpClientPool that provides the shared AndroidHttpClient
 	 */
-	public ServiceFilterRequestImpl(HttpRequestBase request, AndroidHttpClientFactory factory) {
+	public ServiceFilterRequestImpl(HttpRequestBase request, AndroidHttpClientPool pool) {
 		mRequest = request;
-		mAndroidHttpClientFactory = factory;
+		mAndroidHttpClientPool = pool;
 	}
 
 	@Override
 	public ServiceFilterResponse execute() throws Exception {
-		// Execute request
-		AndroidHttpClient client = mAndroidHttpClientFactory.createAndroidHttpClient();
-		client.getParams().setParameter(HTTP.USER_AGENT, MobileServiceConnection.getUserAgent());
-		
+		if (mMetrics != null) {
+			return executeMeasured();
+		}
+
+		// Execute request using the shared client. The connection goes back to
+		// the pool once the response content is consumed
+		final HttpResponse response = mAndroidHttpClientPool.getClient().execute(mRequest);
+
 		try {
-			final HttpResponse response = client.execute(mRequest);
-			ServiceFilterResponse serviceFilterResponse = new ServiceFilterResponseImpl(response);
-			return serviceFilterResponse;
+			return trackStreamedResponse(new ServiceFilterResponseImpl(response, mStreamingResponse));
+		} catch (Exception e) {
+			abortConnection(response);
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes the connection of a response whose content could not be read,
+	 * instead of returning it to the pool. The request itself is not aborted,
+	 * so it can be executed again
+	 * 
+	 * @param response
+	 *            The response
+	 */
+	private static void abortConnection(HttpResponse response) {
+		HttpEntity entity = response.getEntity();
+
+		if (entity instanceof ConnectionReleaseTrigger) {
+			try {
+				((ConnectionReleaseTrigger) entity).abortConnection();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Keeps a streamed response, so its connection is released even if a
+	 * filter doesn't return it. The response of a previous attempt is closed
+	 * 
+	 * @param response
+	 *            The response
+	 * @return The same response
+	 */
+	private synchronized ServiceFilterResponseImpl trackStreamedResponse(ServiceFilterResponseImpl response) {
+		if (mStreamingResponse) {
+			closeStreamedResponse();
+			mStreamedResponse = response;
+		}
+
+		return response;
+	}
+
+	/**
+	 * Closes the last streamed response created by the request, releasing its
+	 * connection. It does nothing if the response was already closed
+	 */
+	synchronized void closeStreamedResponse() {
+		if (mStreamedResponse == null) {
+			return;
+		}
+
+		try {
+			mStreamedResponse.close();
+		} catch (IOException e) {
+			// The connection is released anyway
 		} finally {
-			client.close();
+			mStreamedResponse = null;
 		}
 	}
 
+	/**
+	 * Indicates if the response content is streamed
+	 */
+	boolean isStreamingResponse() {
+		return mStreamingResponse;
+	}
+
+	/**
+	 * Sets if the response content is streamed. A streamed content is only
+	 * read into memory if the response content is requested, and the response
+	 * must be closed after it's read
+	 * 
+	 * @param streamingResponse
+	 *            True to stream the response content
+	 */
+	void setStreamingResponse(boolean streamingResponse) {
+		mStreamingResponse = streamingResponse;
+	}
+
+	/**
+	 * Executes the request, adding its timings and sizes to the metrics
+	 */
+	private ServiceFilterResponse executeMeasured() throws Exception {
+		if (mRequest instanceof HttpEntityEnclosingRequestBase) {
+			HttpEntity entity = ((HttpEntityEnclosingRequestBase) mRequest).getEntity();
+
+			if (mContent != null) {
+				mMetrics.setRequestBytes(mContent.length);
+			} else if (entity != null) {
+				mMetrics.setRequestBytes(entity.getContentLength());
+			}
+		}
+
+		long startTime = System.nanoTime();
+		final HttpResponse response = mAndroidHttpClientPool.getClient().execute(mRequest);
+		long headersTime = System.nanoTime();
+
+		ServiceFilterResponseImpl filterResponse;
+
+		try {
+			filterResponse = trackStreamedResponse(new ServiceFilterResponseImpl(response, mStreamingResponse));
+		} catch (Exception e) {
+			abortConnection(response);
+			mMetrics.addAttempt(headersTime - startTime, -1, -1, -1);
+			throw e;
+		}
+
+		if (mStreamingResponse) {
+			mMetrics.addAttempt(headersTime - startTime, -1, -1, -1);
+		} else {
+			byte[] content = filterResponse.getRawContent();
+			mMetrics.addAttempt(headersTime - startTime, System.nanoTime() - headersTime, content != null ? content.length : 0,
+					filterResponse.getContentWireLength());
+		}
+
+		return filterResponse;
+	}
+
+	/**
+	 * Sets the metrics where the request timings and sizes are added
+	 */
+	void setMetrics(MobileServiceRequestMetrics metrics) {
+		mMetrics = metrics;
+	}
+
+	/**
+	 * Returns the client executing the request, or null
+	 */
+	MobileServiceClient getClient() {
+		return mClient;
+	}
+
+	/**
+	 * Sets the client executing the request
+	 */
+	void setClient(MobileServiceClient client) {
+		mClient = client;
+	}
+
 	@Override
 	public Header[] getHeaders() {
 		return mRequest.getAllHeaders();
@@ -96,6 +263,20 @@ class ServiceFilterRequestImpl implements ServiceFilterRequest {
 		mRequest.addHeader(name, val);
 	}
 
+	/**
+	 * Adds a header
+	 */
+	void addHeader(Header header) {
+		mRequest.addHeader(header);
+	}
+
+	/**
+	 * Indicates if the request has a header, regardless case
+	 */
+	boolean containsHeader(String name) {
+		return mRequest.containsHeader(name);
+	}
+
 	@Override
 	public void removeHeader(String name) {
 		mRequest.removeHeaders(name);
@@ -106,24 +287,94 @@ class ServiceFilterRequestImpl implements ServiceFilterRequest {
 	public void setContent(byte[] content) throws Exception {
 		((HttpEntityEnclosingRequestBase) mRequest).setEntity(new ByteArrayEntity(content));
 		mContent = content;
+		mStreamedContent = null;
 	}
 	
 	@Override
 	public void setContent(String content) throws UnsupportedEncodingException {
-		((HttpEntityEnclosingRequestBase) mRequest).setEntity(new StringEntity(
-				content, MobileServiceClient.UTF8_ENCODING));
-		mContent = content.getBytes(MobileServiceClient.UTF8_ENCODING);
+		// The entity is created from the encoded content, so the content is
+		// only held once
+		byte[] bytes = content.getBytes(MobileServiceClient.UTF8_ENCODING);
+		ByteArrayEntity entity = new ByteArrayEntity(bytes);
+		entity.setContentType(STRING_CONTENT_TYPE);
+
+		((HttpEntityEnclosingRequestBase) mRequest).setEntity(entity);
+		mContent = bytes;
+		mStreamedContent = null;
+	}
+
+	/**
+	 * Indicates if the request method accepts a content
+	 */
+	boolean canHaveContent() {
+		return mRequest instanceof HttpEntityEnclosingRequestBase;
+	}
+
+	/**
+	 * Sets a content that's streamed to the connection. It's only read into
+	 * memory if the raw content is requested
+	 * 
+	 * @param entity
+	 *            The entity of the content
+	 */
+	void setContent(HttpEntity entity) {
+		((HttpEntityEnclosingRequestBase) mRequest).setEntity(entity);
+		mContent = null;
+		mStreamedContent = entity;
+	}
+
+	/**
+	 * Indicates if the content can be sent again. A streamed content that was
+	 * not read into memory can only be sent once
+	 */
+	boolean isContentRepeatable() {
+		if (!(mRequest instanceof HttpEntityEnclosingRequestBase)) {
+			return true;
+		}
+
+		HttpEntity entity = ((HttpEntityEnclosingRequestBase) mRequest).getEntity();
+
+		return entity == null || entity.isRepeatable();
+	}
+
+	/**
+	 * Compresses the content with gzip when the request is sent, if it's at
+	 * least the given size. The content is left as is if a filter already set
+	 * its Content-Encoding
+	 * 
+	 * @param threshold
+	 *            Minimum size of the content to compress, in bytes
+	 */
+	void compressContent(int threshold) {
+		if (!(mRequest instanceof HttpEntityEnclosingRequestBase)) {
+			return;
+		}
+
+		HttpEntityEnclosingRequestBase request = (HttpEntityEnclosingRequestBase) mRequest;
+		HttpEntity entity = request.getEntity();
+
+		if (entity == null || entity.getContentEncoding() != null || request.containsHeader("Content-Encoding")) {
+			return;
+		}
+
+		// Content of unknown length is always compressed
+		long length = entity.getContentLength();
+
+		if (length < 0 || length >= threshold) {
+			request.setEntity(new GzipRequestEntity(entity));
+		}
 	}
 
 	@Override
 	public String getContent() {
-		if (mContent != null) {
-			String content = null;
+		byte[] content = getRawContent();
+
+		if (content != null) {
 			try {
-				content = new String(mContent, MobileServiceClient.UTF8_ENCODING);
+				return new String(content, MobileServiceClient.UTF8_ENCODING);
 			} catch (UnsupportedEncodingException e) {
+				return null;
 			}
-			return content;
 		} else {
 			return null;
 		}
@@ -131,6 +382,28 @@ class ServiceFilterRequestImpl implements ServiceFilterRequest {
 	
 	@Override
 	public byte[] getRawContent() {
+		if (mContent == null && mStreamedContent != null) {
+			// Read the streamed content the first time it's requested
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			try {
+				mStreamedContent.writeTo(out);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to read the request content", e);
+			}
+
+			mContent = out.toByteArray();
+
+			// A stream can only be read once, so the buffered content is sent
+			// instead
+			if (!mStreamedContent.isRepeatable()) {
+				ByteArrayEntity entity = new ByteArrayEntity(mContent);
+				entity.setContentType(mStreamedContent.getContentType());
+				((HttpEntityEnclosingRequestBase) mRequest).setEntity(entity);
+				mStreamedContent = null;
+			}
+		}
+
 		return mContent;
 	}
 
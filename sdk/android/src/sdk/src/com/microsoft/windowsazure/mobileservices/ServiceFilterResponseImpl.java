@@ -23,7 +23,9 @@ See the Apache Version 2.0 License for specific language governing permissions a
 
 package com.microsoft.windowsazure.mobileservices;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -32,6 +34,7 @@ import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
+import org.apache.http.entity.HttpEntityWrapper;
 
 import android.net.http.AndroidHttpClient;
 
@@ -49,6 +52,33 @@ public class ServiceFilterResponseImpl implements ServiceFilterResponse {
 	 */
 	private byte[] mResponseContent;
 
+	/**
+	 * The entity of a streamed content not read into memory, or null
+	 */
+	private HttpEntity mStreamedEntity;
+
+	/**
+	 * The stream returned for a streamed content, or null if it was not
+	 * requested
+	 */
+	private InputStream mContentStream;
+
+	/**
+	 * Size of the content received, before decompression, or -1 if it was not
+	 * read
+	 */
+	private long mContentWireLength = -1;
+
+	/**
+	 * Size of the buffer used to read content of unknown length
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Maximum content length preallocated from the Content-Length header
+	 */
+	private static final long MAX_PREALLOCATED_CONTENT_LENGTH = 16 * 1024 * 1024;
+
 	/**
 	 * Constructor
 	 * 
@@ -59,25 +89,199 @@ public class ServiceFilterResponseImpl implements ServiceFilterResponse {
 	 */
 	public ServiceFilterResponseImpl(HttpResponse response)
 			throws IllegalStateException, IOException {
+		this(response, false);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param response
+	 *            The request's response
+	 * @param streamed
+	 *            True to read the content only when it's requested. The
+	 *            response must be closed then
+	 * @throws IOException
+	 * @throws IllegalStateException
+	 */
+	ServiceFilterResponseImpl(HttpResponse response, boolean streamed)
+			throws IllegalStateException, IOException {
 		mResponse = response;
 		mResponseContent = null;
 
 		// Get the response's content
 		HttpEntity entity = mResponse.getEntity();
 		if (entity != null) {
-			InputStream instream = AndroidHttpClient.getUngzippedContent(entity);
-			
-			ByteArrayOutputStream out = new ByteArrayOutputStream();
-			byte[] buffer = new byte[1024];
-			int length;
+			if (streamed) {
+				mStreamedEntity = entity;
+			} else {
+				mResponseContent = readEntity(entity);
+			}
+		} else {
+			mContentWireLength = 0;
+		}
+	}
+
+	/**
+	 * Reads the content of an entity
+	 * 
+	 * @param entity
+	 *            The entity to read
+	 * @return The ungzipped content
+	 * @throws IOException
+	 */
+	private byte[] readEntity(HttpEntity entity) throws IOException {
+		CountingEntity countingEntity = null;
+
+		// The received size of encoded content is counted as it's read
+		if (entity.getContentEncoding() != null) {
+			countingEntity = new CountingEntity(entity);
+			entity = countingEntity;
+		}
+
+		InputStream instream = AndroidHttpClient.getUngzippedContent(entity);
+		byte[] content = null;
+
+		try {
+			long contentLength = entity.getContentLength();
+
+			// If the content length is known, read the content directly
+			// into an array of that size
+			if (entity.getContentEncoding() == null && contentLength >= 0 && contentLength <= MAX_PREALLOCATED_CONTENT_LENGTH) {
+				content = readContent(instream, (int) contentLength);
+			} else {
+				ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int length;
 
-			while ((length = instream.read(buffer)) != -1) out.write(buffer, 0, length);
+				while ((length = instream.read(buffer)) != -1) out.write(buffer, 0, length);
+
+				content = out.toByteArray();
+			}
+		} finally {
 			instream.close();
+		}
 
-			mResponseContent = out.toByteArray();;
-		} else {
-			mResponseContent = null;
+		mContentWireLength = countingEntity != null ? countingEntity.mCount : content.length;
+
+		return content;
+	}
+
+	/**
+	 * Returns the size of the content received, before decompression, or -1
+	 * if it was not read
+	 */
+	long getContentWireLength() {
+		return mContentWireLength;
+	}
+
+	/**
+	 * Entity that counts the bytes read from its content
+	 */
+	private static class CountingEntity extends HttpEntityWrapper {
+		long mCount;
+
+		CountingEntity(HttpEntity entity) {
+			super(entity);
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			InputStream content = super.getContent();
+
+			if (content == null) {
+				return null;
+			}
+
+			return new FilterInputStream(content) {
+
+				@Override
+				public int read() throws IOException {
+					int b = super.read();
+
+					if (b != -1) {
+						mCount++;
+					}
+
+					return b;
+				}
+
+				@Override
+				public int read(byte[] buffer, int offset, int length) throws IOException {
+					int count = super.read(buffer, offset, length);
+
+					if (count > 0) {
+						mCount += count;
+					}
+
+					return count;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Returns the ungzipped response content as a stream, or null if the
+	 * response has no content. A streamed content is read from the connection
+	 * 
+	 * @throws IOException
+	 */
+	InputStream getContentStream() throws IOException {
+		if (mResponseContent != null) {
+			return new ByteArrayInputStream(mResponseContent);
+		}
+
+		if (mStreamedEntity != null && mContentStream == null) {
+			mContentStream = AndroidHttpClient.getUngzippedContent(mStreamedEntity);
+		}
+
+		return mContentStream;
+	}
+
+	/**
+	 * Closes a streamed content, so the connection is released
+	 * 
+	 * @throws IOException
+	 */
+	void close() throws IOException {
+		if (mStreamedEntity == null) {
+			return;
+		}
+
+		try {
+			if (mContentStream != null) {
+				mContentStream.close();
+			} else {
+				mStreamedEntity.consumeContent();
+			}
+		} finally {
+			mStreamedEntity = null;
+		}
+	}
+
+	/**
+	 * Reads content of known length
+	 * 
+	 * @param instream
+	 *            The content stream
+	 * @param contentLength
+	 *            The length of the content
+	 * @return The content
+	 * @throws IOException
+	 */
+	private static byte[] readContent(InputStream instream, int contentLength) throws IOException {
+		byte[] content = new byte[contentLength];
+		int offset = 0;
+		int length;
+
+		while (offset < contentLength && (length = instream.read(content, offset, contentLength - offset)) != -1) {
+			offset += length;
+		}
+
+		if (offset < contentLength) {
+			throw new IOException("The response content is shorter than its Content-Length");
 		}
+
+		return content;
 	}
 
 	@Override
@@ -87,10 +291,12 @@ public class ServiceFilterResponseImpl implements ServiceFilterResponse {
 
 	@Override
 	public String getContent() {
-		if (mResponseContent != null) {
+		byte[] content = getRawContent();
+
+		if (content != null) {
 			String responseContent = null;
 			try {
-				responseContent = new String(mResponseContent, MobileServiceClient.UTF8_ENCODING);
+				responseContent = new String(content, MobileServiceClient.UTF8_ENCODING);
 			} catch (UnsupportedEncodingException e) {
 			}
 			return responseContent;
@@ -101,6 +307,21 @@ public class ServiceFilterResponseImpl implements ServiceFilterResponse {
 	
 	@Override
 	public byte[] getRawContent() {
+		if (mStreamedEntity != null && mResponseContent == null) {
+			if (mContentStream != null) {
+				throw new IllegalStateException("The response content is being streamed");
+			}
+
+			// Read the streamed content the first time it's requested
+			try {
+				mResponseContent = readEntity(mStreamedEntity);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to read the response content", e);
+			} finally {
+				mStreamedEntity = null;
+			}
+		}
+
 		return mResponseContent;
 	}
 
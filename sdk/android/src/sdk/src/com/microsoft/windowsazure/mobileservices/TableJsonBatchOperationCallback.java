@@ -0,0 +1,48 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * TableJsonBatchOperationCallback.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.util.List;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Callback used after a batch of JSON TableOperations is executed
+ */
+public interface TableJsonBatchOperationCallback {
+	/**
+	 * Method to call after all the operations of the batch finish. Each list
+	 * has one element per entity, in the order they were sent
+	 * 
+	 * @param jsonObjects
+	 *            The obtained JSON objects, null for the failed operations
+	 * @param exceptions
+	 *            The exceptions representing the errors, null for the
+	 *            successful operations
+	 * @param responses
+	 *            The response objects
+	 */
+	public void onCompleted(List<JsonObject> jsonObjects, List<Exception> exceptions,
+			List<ServiceFilterResponse> responses);
+}
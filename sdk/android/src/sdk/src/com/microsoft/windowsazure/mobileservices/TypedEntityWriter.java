@@ -0,0 +1,584 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * TypedEntityWriter.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+
+import org.apache.http.Header;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Serializes typed entities straight into the content of insert and update
+ * requests, without building a JsonObject tree, and patches the entities
+ * returned by the service back into them.
+ * 
+ * The id and the system properties are handled while the entity is written,
+ * and only their values are kept. It's only used when Gson binds the fields
+ * of the class as they are declared
+ */
+final class TypedEntityWriter<E> {
+
+	/**
+	 * Initial size of the content buffer
+	 */
+	private static final int BUFFER_SIZE = 512;
+
+	/**
+	 * Content of an entity written for a request
+	 */
+	static final class Content {
+		private byte[] mBytes;
+		private String mIdPropertyName;
+		private JsonElement mId;
+		private String mVersion;
+
+		/**
+		 * Returns the UTF-8 encoded JSON content
+		 */
+		byte[] getBytes() {
+			return mBytes;
+		}
+
+		/**
+		 * Returns an object with the id property as it was serialized, which
+		 * is empty if the entity has no id property
+		 */
+		JsonObject getIdJson() {
+			JsonObject json = new JsonObject();
+
+			if (mIdPropertyName != null) {
+				json.add(mIdPropertyName, mId);
+			}
+
+			return json;
+		}
+
+		/**
+		 * Returns the version system property removed from the content, or
+		 * null if there was none
+		 */
+		String getVersion() {
+			return mVersion;
+		}
+	}
+
+	private final Gson mGson;
+
+	private final Class<E> mClazz;
+
+	/**
+	 * The serialized fields, by property name
+	 */
+	private final Map<String, ProjectionTypeAdapter.BoundField> mFields;
+
+	/**
+	 * The id field, or null if the class has no id property
+	 */
+	private final ProjectionTypeAdapter.BoundField mIdField;
+
+	/**
+	 * The property name of the id field, or null
+	 */
+	private final String mIdName;
+
+	/**
+	 * The version field, or null if the class doesn't define it
+	 */
+	private final ProjectionTypeAdapter.BoundField mVersionField;
+
+	/**
+	 * The property name of the version field, or null
+	 */
+	private final String mVersionName;
+
+	private TypedEntityWriter(Gson gson, Class<E> clazz, Map<String, ProjectionTypeAdapter.BoundField> fields) {
+		mGson = gson;
+		mClazz = clazz;
+		mFields = fields;
+
+		String idName = null;
+		String versionName = null;
+
+		for (String name : fields.keySet()) {
+			if (name.equalsIgnoreCase("id")) {
+				idName = name;
+			} else if (name.equalsIgnoreCase(MobileServiceTableBase.VersionSystemPropertyName)) {
+				versionName = name;
+			}
+		}
+
+		mIdName = idName;
+		mIdField = idName != null ? fields.get(idName) : null;
+		mVersionName = versionName;
+		mVersionField = versionName != null ? fields.get(versionName) : null;
+	}
+
+	/**
+	 * Creates the writer of an entity class
+	 * 
+	 * @param gson
+	 *            The Gson instance
+	 * @param clazz
+	 *            The entity class
+	 * @return The writer, or null if the class must be serialized through a
+	 *         JsonObject tree
+	 */
+	static <E> TypedEntityWriter<E> create(Gson gson, Class<E> clazz) {
+		// An entity with several id properties is rejected by the tree path
+		if (EntityMetadata.get(clazz).getIdPropertyCount() > 1) {
+			return null;
+		}
+
+		Map<String, ProjectionTypeAdapter.BoundField> fields = ProjectionTypeAdapter.bindFields(gson, clazz);
+
+		if (fields == null) {
+			return null;
+		}
+
+		return new TypedEntityWriter<E>(gson, clazz, fields);
+	}
+
+	/**
+	 * Writes an entity as the content of a request
+	 * 
+	 * @param element
+	 *            The entity to write
+	 * @param insert
+	 *            True to write it for an insert, which leaves out null and
+	 *            numeric ids. Otherwise the id is written as "id"
+	 * @param removeSystemProperties
+	 *            True to leave out the system properties
+	 * @throws IllegalArgumentException
+	 *             if a value can't be serialized
+	 */
+	Content write(E element, boolean insert, boolean removeSystemProperties) {
+		Content content = new Content();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+
+		try {
+			EntityJsonWriter writer = new EntityJsonWriter(new OutputStreamWriter(out, MobileServiceClient.UTF8_ENCODING), content, insert,
+					removeSystemProperties);
+			mGson.toJson(element, mClazz, writer);
+			writer.flush();
+		} catch (IOException e) {
+			// this should never happen, the content is written in memory
+			throw new IllegalArgumentException(e);
+		}
+
+		content.mBytes = out.toByteArray();
+
+		return content;
+	}
+
+	/**
+	 * Patches an entity with the properties returned by the service
+	 * 
+	 * @param element
+	 *            The entity to patch
+	 * @param newEntity
+	 *            The entity returned by the service
+	 * @param response
+	 *            The response, whose ETag is the new version
+	 * @throws JsonSyntaxException
+	 *             if a property can't be read into its field
+	 */
+	void patch(E element, JsonObject newEntity, ServiceFilterResponse response) {
+		try {
+			for (Map.Entry<String, JsonElement> property : newEntity.entrySet()) {
+				String name = property.getKey();
+				ProjectionTypeAdapter.BoundField field = mFields.get(name);
+
+				if (field == null && name.equalsIgnoreCase("id")) {
+					field = mIdField;
+				}
+
+				if (field != null) {
+					field.set(element, field.mAdapter.fromJsonTree(property.getValue()));
+				}
+			}
+
+			JsonPrimitive version = getETagVersion(response);
+
+			if (version != null) {
+				mVersionField.set(element, mVersionField.mAdapter.fromJsonTree(version));
+			}
+		} catch (IllegalAccessException e) {
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	/**
+	 * Reads the entity written to a content, with the id and the version
+	 * properties as the entity serializes them
+	 * 
+	 * @param content
+	 *            The content the entity was written to
+	 * @return The serialized entity
+	 */
+	JsonObject toJson(Content content) {
+		JsonObject json;
+
+		try {
+			json = new JsonParser().parse(new String(content.getBytes(), MobileServiceClient.UTF8_ENCODING)).getAsJsonObject();
+		} catch (UnsupportedEncodingException e) {
+			// this should never happen, UTF-8 is always supported
+			throw new JsonSyntaxException(e);
+		}
+
+		// Updates write the id as "id"
+		json.remove("id");
+
+		if (mIdName != null && content.mId != null) {
+			json.add(mIdName, content.mId);
+		}
+
+		if (mVersionName != null && content.mVersion != null) {
+			json.addProperty(mVersionName, content.mVersion);
+		}
+
+		return json;
+	}
+
+	/**
+	 * Patches a serialized entity as patch would patch the entity, so the
+	 * result is what the patched entity serializes to. The entity itself is
+	 * not read, so it can be called on the request thread while the entity
+	 * belongs to the caller
+	 * 
+	 * @param json
+	 *            The serialized entity, which is patched
+	 * @param newEntity
+	 *            The entity returned by the service
+	 * @param response
+	 *            The response, whose ETag is the new version
+	 * @return The patched json
+	 * @throws JsonSyntaxException
+	 *             if a property can't be read into its field
+	 */
+	JsonObject snapshot(JsonObject json, JsonObject newEntity, ServiceFilterResponse response) {
+		for (Map.Entry<String, JsonElement> property : newEntity.entrySet()) {
+			String name = property.getKey();
+			ProjectionTypeAdapter.BoundField field = mFields.get(name);
+
+			if (field == null && name.equalsIgnoreCase("id")) {
+				field = mIdField;
+				name = mIdName;
+			}
+
+			if (field != null) {
+				putValue(json, name, field, property.getValue());
+			}
+		}
+
+		JsonPrimitive version = getETagVersion(response);
+
+		if (version != null) {
+			putValue(json, mVersionName, mVersionField, version);
+		}
+
+		return json;
+	}
+
+	/**
+	 * Returns the version in the ETag of a response, or null if there is none
+	 * or the class has no version field
+	 */
+	private JsonPrimitive getETagVersion(ServiceFilterResponse response) {
+		if (mVersionField == null || response == null || response.getHeaders() == null) {
+			return null;
+		}
+
+		for (Header header : response.getHeaders()) {
+			if (header.getName().equalsIgnoreCase("ETag")) {
+				return new JsonPrimitive(MobileServiceTableBase.getValueFromEtag(header.getValue()));
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Sets a property as its field serializes once set to the value
+	 */
+	private static void putValue(JsonObject json, String name, ProjectionTypeAdapter.BoundField field, JsonElement value) {
+		JsonElement serialized = roundTrip(field.mAdapter, value);
+
+		// Primitive fields keep their value for nulls
+		if (!serialized.isJsonNull() || !field.mField.getType().isPrimitive()) {
+			json.add(name, serialized);
+		}
+	}
+
+	private static <T> JsonElement roundTrip(TypeAdapter<T> adapter, JsonElement value) {
+		return adapter.toJsonTree(adapter.fromJsonTree(value));
+	}
+
+	/**
+	 * JsonWriter that handles the id and the system properties of the entity
+	 * as they are written
+	 */
+	private static final class EntityJsonWriter extends JsonWriter {
+		private final Content mContent;
+		private final boolean mInsert;
+		private final boolean mRemoveSystemProperties;
+
+		/**
+		 * Depth of the value being written. The entity is at depth 1
+		 */
+		private int mDepth;
+
+		/**
+		 * Depth inside a removed object or array, or 0 if none is being
+		 * written
+		 */
+		private int mRemovedDepth;
+
+		/**
+		 * Name of the id or system property whose value is expected, or null
+		 */
+		private String mPendingName;
+
+		EntityJsonWriter(OutputStreamWriter out, Content content, boolean insert, boolean removeSystemProperties) {
+			super(out);
+			mContent = content;
+			mInsert = insert;
+			mRemoveSystemProperties = removeSystemProperties;
+		}
+
+		@Override
+		public JsonWriter name(String name) throws IOException {
+			if (mRemovedDepth > 0) {
+				return this;
+			}
+
+			if (mDepth == 1 && (name.equalsIgnoreCase("id")
+					|| (mRemoveSystemProperties && MobileServiceTableBase.SystemPropertyNameToEnum.containsKey(name)))) {
+				mPendingName = name;
+				return this;
+			}
+
+			return super.name(name);
+		}
+
+		@Override
+		public JsonWriter beginObject() throws IOException {
+			if (beginRemovedValue()) {
+				return this;
+			}
+
+			mDepth++;
+			return super.beginObject();
+		}
+
+		@Override
+		public JsonWriter endObject() throws IOException {
+			if (mRemovedDepth > 0) {
+				mRemovedDepth--;
+				return this;
+			}
+
+			mDepth--;
+			return super.endObject();
+		}
+
+		@Override
+		public JsonWriter beginArray() throws IOException {
+			if (beginRemovedValue()) {
+				return this;
+			}
+
+			mDepth++;
+			return super.beginArray();
+		}
+
+		@Override
+		public JsonWriter endArray() throws IOException {
+			if (mRemovedDepth > 0) {
+				mRemovedDepth--;
+				return this;
+			}
+
+			mDepth--;
+			return super.endArray();
+		}
+
+		@Override
+		public JsonWriter nullValue() throws IOException {
+			if (mRemovedDepth > 0) {
+				return this;
+			}
+
+			if (mPendingName != null) {
+				return writePendingValue(JsonNull.INSTANCE);
+			}
+
+			return super.nullValue();
+		}
+
+		@Override
+		public JsonWriter value(String value) throws IOException {
+			if (mRemovedDepth > 0) {
+				return this;
+			}
+
+			if (mPendingName != null) {
+				return writePendingValue(value == null ? JsonNull.INSTANCE : new JsonPrimitive(value));
+			}
+
+			return super.value(value);
+		}
+
+		@Override
+		public JsonWriter value(boolean value) throws IOException {
+			if (mRemovedDepth > 0) {
+				return this;
+			}
+
+			if (mPendingName != null) {
+				return writePendingValue(new JsonPrimitive(value));
+			}
+
+			return super.value(value);
+		}
+
+		@Override
+		public JsonWriter value(double value) throws IOException {
+			if (mRemovedDepth > 0) {
+				return this;
+			}
+
+			if (mPendingName != null) {
+				return writePendingValue(new JsonPrimitive(value));
+			}
+
+			return super.value(value);
+		}
+
+		@Override
+		public JsonWriter value(long value) throws IOException {
+			if (mRemovedDepth > 0) {
+				return this;
+			}
+
+			if (mPendingName != null) {
+				return writePendingValue(new JsonPrimitive(value));
+			}
+
+			return super.value(value);
+		}
+
+		@Override
+		public JsonWriter value(Number value) throws IOException {
+			if (mRemovedDepth > 0) {
+				return this;
+			}
+
+			if (mPendingName != null) {
+				return writePendingValue(value == null ? JsonNull.INSTANCE : new JsonPrimitive(value));
+			}
+
+			return super.value(value);
+		}
+
+		/**
+		 * Starts an object or array that is not written, if it's the value of
+		 * a removed property
+		 * 
+		 * @return True if the value is not written
+		 */
+		private boolean beginRemovedValue() {
+			if (mRemovedDepth > 0) {
+				mRemovedDepth++;
+				return true;
+			}
+
+			if (mPendingName != null) {
+				if (mPendingName.equalsIgnoreCase("id")) {
+					throw new IllegalArgumentException("The id must be numeric or string");
+				}
+
+				mPendingName = null;
+				mRemovedDepth = 1;
+				return true;
+			}
+
+			return false;
+		}
+
+		/**
+		 * Writes the value of the id or system property being written, or
+		 * keeps it if the property is removed
+		 */
+		private JsonWriter writePendingValue(JsonElement value) throws IOException {
+			String name = mPendingName;
+			mPendingName = null;
+
+			if (!name.equalsIgnoreCase("id")) {
+				// A system property, which is removed
+				if (name.equalsIgnoreCase(MobileServiceTableBase.VersionSystemPropertyName) && !value.isJsonNull()) {
+					mContent.mVersion = value.getAsString();
+				}
+
+				return this;
+			}
+
+			mContent.mIdPropertyName = name;
+			mContent.mId = value;
+
+			if (mInsert && (value.isJsonNull() || value.getAsJsonPrimitive().isNumber())) {
+				// Null and numeric ids are not sent on inserts
+				return this;
+			}
+
+			super.name(mInsert ? name : "id");
+
+			if (value.isJsonNull()) {
+				return super.nullValue();
+			}
+
+			JsonPrimitive primitive = value.getAsJsonPrimitive();
+
+			if (primitive.isBoolean()) {
+				return super.value(primitive.getAsBoolean());
+			} else if (primitive.isNumber()) {
+				return super.value(primitive.getAsNumber());
+			} else {
+				return super.value(primitive.getAsString());
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+/*
+ * WriterRequestEntity.java
+ */
+
+package com.microsoft.windowsazure.mobileservices;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * Request entity whose content is written by a RequestContentWriter when the
+ * request is sent
+ */
+class WriterRequestEntity extends AbstractHttpEntity {
+
+	/**
+	 * The writer of the content
+	 */
+	private final RequestContentWriter mWriter;
+
+	/**
+	 * The content length, or -1 if unknown
+	 */
+	private final long mContentLength;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param writer
+	 *            The writer of the content
+	 * @param contentLength
+	 *            The content length, or -1 if unknown. Content of unknown
+	 *            length is sent with chunked transfer encoding
+	 */
+	WriterRequestEntity(RequestContentWriter writer, long contentLength) {
+		if (writer == null) {
+			throw new IllegalArgumentException("writer cannot be null");
+		}
+
+		mWriter = writer;
+		mContentLength = contentLength;
+		setChunked(contentLength < 0);
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return mContentLength;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		// Only used if the entity is consumed instead of written
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeTo(out);
+
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		if (outstream == null) {
+			throw new IllegalArgumentException("Output stream cannot be null");
+		}
+
+		mWriter.writeTo(outstream);
+		outstream.flush();
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+}
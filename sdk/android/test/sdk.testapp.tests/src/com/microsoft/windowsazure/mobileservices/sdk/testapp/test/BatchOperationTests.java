@@ -0,0 +1,307 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+import com.microsoft.windowsazure.mobileservices.TableBatchDeleteCallback;
+import com.microsoft.windowsazure.mobileservices.TableBatchOperationCallback;
+import com.microsoft.windowsazure.mobileservices.TableJsonBatchOperationCallback;
+
+public class BatchOperationTests extends InstrumentationTestCase {
+	String appUrl = "";
+	String appKey = "";
+
+	protected void setUp() throws Exception {
+		appUrl = "http://myapp.com/";
+		appKey = "qwerty";
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	public void testInsertAllShouldReturnResultsInOrderAndLimitConcurrentRequests() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+		final AtomicInteger requestsInProgress = new AtomicInteger();
+		final AtomicInteger maxRequestsInProgress = new AtomicInteger();
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+		// Echo the inserted entity with a new id, slowly enough to overlap
+		// the requests
+		client = client.withFilter(new ServiceFilter() {
+
+			@Override
+			public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+					ServiceFilterResponseCallback responseCallback) {
+				int inProgress = requestsInProgress.incrementAndGet();
+
+				synchronized (maxRequestsInProgress) {
+					if (inProgress > maxRequestsInProgress.get()) {
+						maxRequestsInProgress.set(inProgress);
+					}
+				}
+
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+				}
+
+				JsonObject json = new JsonParser().parse(request.getContent()).getAsJsonObject();
+				json.addProperty("id", json.get("age").getAsInt());
+
+				ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+				response.setContent(json.toString());
+
+				requestsInProgress.decrementAndGet();
+				responseCallback.onResponse(response, null);
+			}
+		});
+
+		final List<PersonTestObject> people = new ArrayList<PersonTestObject>();
+		for (int i = 1; i <= 6; i++) {
+			people.add(new PersonTestObject("John", "Doe", i));
+		}
+
+		client.getTable(PersonTestObject.class).insertAll(people, 2, new TableBatchOperationCallback<PersonTestObject>() {
+
+			@Override
+			public void onCompleted(List<PersonTestObject> entities, List<Exception> exceptions, List<ServiceFilterResponse> responses) {
+				container.setPeopleResult(entities);
+				container.setCustomResult(exceptions);
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+
+		// Asserts
+		List<PersonTestObject> result = container.getPeopleResult();
+		Assert.assertEquals(6, result.size());
+
+		for (int i = 0; i < 6; i++) {
+			Assert.assertSame(people.get(i), result.get(i));
+			Assert.assertEquals(i + 1, result.get(i).getId());
+			Assert.assertNull(((List<?>) container.getCustomResult()).get(i));
+		}
+
+		Assert.assertTrue(maxRequestsInProgress.get() <= 2);
+	}
+
+	public void testUpdateAllShouldReportTheExceptionOfEachItem() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+		// Fail the updates of the entities with an even id
+		client = client.withFilter(new ServiceFilter() {
+
+			@Override
+			public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+					ServiceFilterResponseCallback responseCallback) {
+				JsonObject json = new JsonParser().parse(request.getContent()).getAsJsonObject();
+
+				if (json.get("id").getAsInt() % 2 == 0) {
+					responseCallback.onResponse(null, new MobileServiceException("Update failed"));
+				} else {
+					ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+					response.setContent(json.toString());
+					responseCallback.onResponse(response, null);
+				}
+			}
+		});
+
+		List<JsonObject> elements = new ArrayList<JsonObject>();
+		for (int i = 1; i <= 4; i++) {
+			JsonObject json = new JsonObject();
+			json.addProperty("id", i);
+			json.addProperty("name", "John");
+			elements.add(json);
+		}
+
+		client.getTable("MyTableName").updateAll(elements, new TableJsonBatchOperationCallback() {
+
+			@Override
+			public void onCompleted(List<JsonObject> jsonObjects, List<Exception> exceptions, List<ServiceFilterResponse> responses) {
+				container.setCustomResult(jsonObjects);
+				container.setException(exceptions.get(1));
+				container.setCount(exceptions.size());
+
+				if (exceptions.get(0) != null || exceptions.get(2) != null || exceptions.get(3) == null) {
+					container.setErrorMessage("Unexpected exceptions");
+				}
+
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+
+		// Asserts
+		@SuppressWarnings("unchecked")
+		List<JsonObject> result = (List<JsonObject>) container.getCustomResult();
+		Assert.assertNull(container.getErrorMessage());
+		Assert.assertEquals(4, container.getCount());
+		Assert.assertTrue(container.getException() instanceof MobileServiceException);
+		Assert.assertEquals(1, result.get(0).get("id").getAsInt());
+		Assert.assertNull(result.get(1));
+		Assert.assertEquals(3, result.get(2).get("id").getAsInt());
+		Assert.assertNull(result.get(3));
+	}
+
+	public void testDeleteAllShouldDeleteEachId() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+		final List<String> deletedUrls = new ArrayList<String>();
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+		client = client.withFilter(new ServiceFilter() {
+
+			@Override
+			public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+					ServiceFilterResponseCallback responseCallback) {
+				synchronized (deletedUrls) {
+					deletedUrls.add(request.getUrl());
+				}
+
+				responseCallback.onResponse(new ServiceFilterResponseMock(), null);
+			}
+		});
+
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int i = 1; i <= 10; i++) {
+			ids.add(i);
+		}
+
+		client.getTable("MyTableName").deleteAll(ids, new TableBatchDeleteCallback() {
+
+			@Override
+			public void onCompleted(List<Exception> exceptions, List<ServiceFilterResponse> responses) {
+				for (Exception exception : exceptions) {
+					if (exception != null) {
+						container.setException(exception);
+					}
+				}
+
+				container.setCount(responses.size());
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(10, container.getCount());
+		Assert.assertEquals(10, deletedUrls.size());
+
+		for (int i = 1; i <= 10; i++) {
+			Assert.assertTrue(deletedUrls.contains(appUrl + "tables/MyTableName/" + i));
+		}
+	}
+
+	public void testInsertAllWithEmptyListShouldComplete() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+		client.getTable("MyTableName").insertAll(new ArrayList<JsonObject>(), new TableJsonBatchOperationCallback() {
+
+			@Override
+			public void onCompleted(List<JsonObject> jsonObjects, List<Exception> exceptions, List<ServiceFilterResponse> responses) {
+				container.setCount(jsonObjects.size());
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+
+		// Asserts
+		Assert.assertEquals(0, container.getCount());
+	}
+
+	public void testInsertAllShouldReportAnItemThatCannotBeSerialized() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+		client = client.withFilter(new ServiceFilter() {
+
+			@Override
+			public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+					ServiceFilterResponseCallback responseCallback) {
+				JsonObject json = new JsonParser().parse(request.getContent()).getAsJsonObject();
+				json.addProperty("id", json.get("age").getAsInt());
+
+				ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+				response.setContent(json.toString());
+
+				responseCallback.onResponse(response, null);
+			}
+		});
+
+		final List<PersonTestObject> people = new ArrayList<PersonTestObject>();
+		people.add(new PersonTestObject("John", "Doe", 1));
+		people.add(null);
+		people.add(new PersonTestObject("John", "Doe", 3));
+
+		client.getTable(PersonTestObject.class).insertAll(people, 1, new TableBatchOperationCallback<PersonTestObject>() {
+
+			@Override
+			public void onCompleted(List<PersonTestObject> entities, List<Exception> exceptions, List<ServiceFilterResponse> responses) {
+				container.setPeopleResult(entities);
+				container.setCustomResult(exceptions);
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+
+		// Asserts
+		List<?> exceptions = (List<?>) container.getCustomResult();
+		Assert.assertNull(exceptions.get(0));
+		Assert.assertNotNull(exceptions.get(1));
+		Assert.assertNull(exceptions.get(2));
+		Assert.assertNull(container.getPeopleResult().get(1));
+		Assert.assertEquals(3, container.getPeopleResult().get(2).getId());
+	}
+}
@@ -0,0 +1,175 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.AndroidHttpClientFactoryImpl;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.TableJsonOperationCallback;
+
+public class ConnectionPoolTests extends InstrumentationTestCase {
+
+	LocalHttpServer server;
+
+	protected void setUp() throws Exception {
+		server = new LocalHttpServer(new LocalHttpServer.Handler() {
+
+			@Override
+			public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+				if (request.getMethod().equals("POST")) {
+					return new LocalHttpServer.Response(201, "{\"id\":\"an id\",\"name\":\"John\"}");
+				} else {
+					return new LocalHttpServer.Response(200, "{\"id\":\"an id\",\"name\":\"John\"}");
+				}
+			}
+		});
+		server.start();
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		server.stop();
+		super.tearDown();
+	}
+
+	public void testSequentialTableOperationsShouldReuseTheSameConnection() throws Throwable {
+		final int requestCount = 20;
+
+		final MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		final MobileServiceJsonTable table = client.getTable("MyTableName");
+		final ResultsContainer container = new ResultsContainer();
+
+		for (int i = 0; i < requestCount; i++) {
+			final CountDownLatch latch = new CountDownLatch(1);
+			final boolean insert = i % 2 == 0;
+
+			runTestOnUiThread(new Runnable() {
+
+				@Override
+				public void run() {
+					TableJsonOperationCallback callback = new TableJsonOperationCallback() {
+
+						@Override
+						public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+							if (exception != null) {
+								container.setException(exception);
+							}
+
+							latch.countDown();
+						}
+					};
+
+					if (insert) {
+						JsonObject person = new JsonObject();
+						person.addProperty("name", "John");
+						table.insert(person, callback);
+					} else {
+						table.lookUp("an id", callback);
+					}
+				}
+			});
+
+			latch.await();
+		}
+
+		client.close();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(requestCount, server.getRequestCount());
+		Assert.assertEquals(1, server.getConnectionCount());
+	}
+
+	public void testClientsCreatedWithFiltersShouldShareTheConnectionPool() throws Throwable {
+		final MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		final MobileServiceClient filteredClient = client.withFilter(new EchoFilter());
+
+		Assert.assertSame(client.getAndroidHttpClientFactory(), filteredClient.getAndroidHttpClientFactory());
+
+		client.close();
+	}
+
+	public void testCloseShouldReleaseConnectionsAndAllowNewRequests() throws Throwable {
+		final MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		final MobileServiceJsonTable table = client.getTable("MyTableName");
+		final ResultsContainer container = new ResultsContainer();
+
+		for (int i = 0; i < 2; i++) {
+			final CountDownLatch latch = new CountDownLatch(1);
+
+			runTestOnUiThread(new Runnable() {
+
+				@Override
+				public void run() {
+					table.lookUp("an id", new TableJsonOperationCallback() {
+
+						@Override
+						public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+							if (exception != null) {
+								container.setException(exception);
+							}
+
+							latch.countDown();
+						}
+					});
+				}
+			});
+
+			latch.await();
+			client.close();
+		}
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(2, server.getRequestCount());
+		Assert.assertEquals(2, server.getConnectionCount());
+	}
+
+	public void testFactoryShouldRejectInvalidPoolConfiguration() throws MalformedURLException {
+		try {
+			new AndroidHttpClientFactoryImpl(0, 1, 1000);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// It's ok
+		}
+
+		try {
+			new AndroidHttpClientFactoryImpl(5, 10, 1000);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// It's ok
+		}
+
+		try {
+			new AndroidHttpClientFactoryImpl(5, 5, 0);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// It's ok
+		}
+	}
+}
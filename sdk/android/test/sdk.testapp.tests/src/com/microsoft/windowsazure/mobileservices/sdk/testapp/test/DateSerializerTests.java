@@ -0,0 +1,149 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+
+public class DateSerializerTests extends InstrumentationTestCase {
+
+	Gson gson;
+
+	protected void setUp() throws Exception {
+		gson = MobileServiceClient.createMobileServiceGsonBuilder().create();
+		super.setUp();
+	}
+
+	/**
+	 * Formats a date as the SimpleDateFormat based serializer did
+	 */
+	private static String referenceSerialize(Date date) {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'.'SSS'Z'", Locale.US);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		return dateFormat.format(date);
+	}
+
+	/**
+	 * Parses a date as the SimpleDateFormat based serializer did
+	 */
+	private static Date referenceDeserialize(String value) throws ParseException {
+		String s = value.replace("Z", "+00:00");
+		s = s.substring(0, 26) + s.substring(27);
+
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'.'SSSZ", Locale.US);
+		dateFormat.setTimeZone(TimeZone.getDefault());
+
+		return dateFormat.parse(s);
+	}
+
+	private String serialize(Date date) {
+		return gson.toJsonTree(date).getAsString();
+	}
+
+	private Date deserialize(String value) {
+		return gson.fromJson(new JsonPrimitive(value), Date.class);
+	}
+
+	private static long[] createTimestamps(int count) {
+		Random random = new Random(42);
+		long min = new GregorianCalendar(1, 0, 1).getTimeInMillis();
+		long max = new GregorianCalendar(9999, 11, 31).getTimeInMillis();
+		long[] timestamps = new long[count];
+
+		for (int i = 0; i < count; i++) {
+			// Half the dates are spread over all the years, and half are
+			// recent dates
+			if (i % 2 == 0) {
+				timestamps[i] = min + (long) (random.nextDouble() * (max - min));
+			} else {
+				timestamps[i] = 1300000000000L + (long) (random.nextDouble() * 100000000000L);
+			}
+		}
+
+		return timestamps;
+	}
+
+	public void testSerializationShouldMatchTheReferenceImplementation() throws Throwable {
+		for (long timestamp : createTimestamps(10000)) {
+			Date date = new Date(timestamp);
+			String expected = referenceSerialize(date);
+
+			Assert.assertEquals(expected, serialize(date));
+			Assert.assertEquals(referenceDeserialize(expected), deserialize(expected));
+		}
+	}
+
+	public void testSerializationShouldHandleEdgeDates() throws Throwable {
+		long[] timestamps = new long[] { 0, -1, 1, 951782400000L, 951868799999L, 253402300799999L,
+				new GregorianCalendar(1582, 9, 15).getTimeInMillis(), new GregorianCalendar(1582, 9, 4).getTimeInMillis() };
+
+		for (long timestamp : timestamps) {
+			Date date = new Date(timestamp);
+			String expected = referenceSerialize(date);
+
+			Assert.assertEquals(expected, serialize(date));
+			Assert.assertEquals(date, deserialize(expected));
+		}
+
+		Assert.assertEquals("1970-01-01T00:00:00.000Z", serialize(new Date(0)));
+		Assert.assertEquals("1969-12-31T23:59:59.999Z", serialize(new Date(-1)));
+	}
+
+	public void testDeserializationShouldAcceptOtherIso8601Forms() {
+		Date expected = deserialize("2013-11-01T10:30:00.000Z");
+
+		Assert.assertEquals(expected, deserialize("2013-11-01T10:30:00Z"));
+		Assert.assertEquals(expected, deserialize("2013-11-01T10:30:00"));
+		Assert.assertEquals(expected, deserialize("2013-11-01T12:30:00.000+02:00"));
+		Assert.assertEquals(expected, deserialize("2013-11-01T05:00:00-0530"));
+		Assert.assertEquals(expected, deserialize("2013-11-01T11:30:00+01"));
+
+		Assert.assertEquals(expected.getTime() + 100, deserialize("2013-11-01T10:30:00.1Z").getTime());
+		Assert.assertEquals(expected.getTime() + 123, deserialize("2013-11-01T10:30:00.1234567Z").getTime());
+	}
+
+	public void testDeserializationShouldRejectInvalidDates() {
+		String[] values = new String[] { "", "2013-11-01", "2013-13-01T10:30:00Z", "2013-11-01T10:30:00.Z", "2013-11-01T10:30:00+01:",
+				"2013-11-01T10:30:00Zx", "2013/11/01T10:30:00Z" };
+
+		for (String value : values) {
+			try {
+				deserialize(value);
+				Assert.fail("Accepted " + value);
+			} catch (JsonParseException e) {
+				// It's ok
+			}
+		}
+	}
+}
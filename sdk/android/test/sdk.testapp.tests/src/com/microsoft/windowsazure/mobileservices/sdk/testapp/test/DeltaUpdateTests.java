@@ -0,0 +1,269 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceTable;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.TableOperationCallback;
+import com.microsoft.windowsazure.mobileservices.TableQueryCallback;
+
+public class DeltaUpdateTests extends InstrumentationTestCase {
+
+	private RequestRecorder recorder;
+	private MobileServiceTable<VersionedPerson> table;
+
+	protected void setUp() throws Exception {
+		recorder = new RequestRecorder();
+
+		MobileServiceClient client = new MobileServiceClient("http://myapp.com/", "qwerty", getInstrumentation().getTargetContext())
+				.withFilter(recorder);
+		client.setExecutor(new DirectExecutor());
+		client.setCallbackExecutor(new DirectExecutor());
+
+		table = client.getTable(VersionedPerson.class);
+		super.setUp();
+	}
+
+	/**
+	 * Looks up the entity used in the tests
+	 */
+	private VersionedPerson lookUpPerson() {
+		final ResultsContainer container = new ResultsContainer();
+
+		recorder.mResponseContent = "{\"id\":\"an-id\",\"name\":\"John\",\"city\":\"Seattle\",\"age\":29,\"__version\":\"AAAA\"}";
+
+		table.lookUp("an-id", new TableOperationCallback<VersionedPerson>() {
+
+			@Override
+			public void onCompleted(VersionedPerson entity, Exception exception, ServiceFilterResponse response) {
+				container.setCustomResult(entity);
+			}
+		});
+
+		recorder.mResponseContent = "{\"id\":\"an-id\"}";
+		recorder.mResponseHeaders = new Header[] { new BasicHeader("ETag", "\"BBBB\"") };
+
+		return (VersionedPerson) container.getCustomResult();
+	}
+
+	public void testChangeTrackingShouldBeDisabledByDefault() {
+		VersionedPerson person = lookUpPerson();
+		person.name = "Jane";
+
+		table.update(person, null);
+
+		JsonObject content = new JsonParser().parse(recorder.mContent).getAsJsonObject();
+
+		// Asserts
+		Assert.assertFalse(table.isChangeTrackingEnabled());
+		Assert.assertEquals(4, content.entrySet().size());
+	}
+
+	public void testUpdateShouldSendOnlyTheChangedProperties() {
+		final ResultsContainer container = new ResultsContainer();
+
+		table.setChangeTrackingEnabled(true);
+		VersionedPerson person = lookUpPerson();
+		person.name = "Jane";
+
+		table.update(person, new TableOperationCallback<VersionedPerson>() {
+
+			@Override
+			public void onCompleted(VersionedPerson entity, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+			}
+		});
+
+		JsonObject content = new JsonParser().parse(recorder.mContent).getAsJsonObject();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals("PATCH", recorder.mRequest.getMethod());
+		Assert.assertEquals("\"AAAA\"", RequestRecorder.getHeader(recorder.mRequest, "If-Match"));
+		Assert.assertEquals(2, content.entrySet().size());
+		Assert.assertEquals("an-id", content.get("id").getAsString());
+		Assert.assertEquals("Jane", content.get("name").getAsString());
+		Assert.assertEquals("Jane", person.name);
+		Assert.assertEquals("Seattle", person.city);
+		Assert.assertEquals("BBBB", person.version);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void testUpdateShouldSendOnlyThePropertiesChangedSinceTheQuery() {
+		final ResultsContainer container = new ResultsContainer();
+
+		table.setChangeTrackingEnabled(true);
+		recorder.mResponseContent = "[{\"id\":\"an-id\",\"name\":\"John\",\"city\":\"Seattle\",\"age\":29,\"__version\":\"AAAA\"}]";
+
+		table.execute(new TableQueryCallback<VersionedPerson>() {
+
+			@Override
+			public void onCompleted(List<VersionedPerson> result, int count, Exception exception, ServiceFilterResponse response) {
+				container.setCustomResult(result);
+			}
+		});
+
+		VersionedPerson person = ((List<VersionedPerson>) container.getCustomResult()).get(0);
+		person.age = 30;
+
+		recorder.mResponseContent = "{\"id\":\"an-id\"}";
+		table.update(person, null);
+
+		JsonObject content = new JsonParser().parse(recorder.mContent).getAsJsonObject();
+
+		// Asserts
+		Assert.assertEquals(2, content.entrySet().size());
+		Assert.assertEquals(30, content.get("age").getAsInt());
+	}
+
+	public void testUpdateShouldSendOnlyThePropertiesChangedSinceTheInsert() {
+		table.setChangeTrackingEnabled(true);
+		recorder.mResponseContent = "{\"id\":\"an-id\",\"age\":29}";
+		recorder.mResponseHeaders = new Header[] { new BasicHeader("ETag", "\"AAAA\"") };
+
+		VersionedPerson person = new VersionedPerson();
+		person.name = "John";
+		person.city = "Seattle";
+
+		table.insert(person, null);
+
+		person.city = "Redmond";
+		recorder.mResponseContent = "{\"id\":\"an-id\"}";
+		table.update(person, null);
+
+		JsonObject content = new JsonParser().parse(recorder.mContent).getAsJsonObject();
+
+		// Asserts
+		Assert.assertEquals(2, content.entrySet().size());
+		Assert.assertEquals("an-id", content.get("id").getAsString());
+		Assert.assertEquals("Redmond", content.get("city").getAsString());
+		Assert.assertEquals("\"AAAA\"", RequestRecorder.getHeader(recorder.mRequest, "If-Match"));
+	}
+
+	public void testUpdateShouldSendTheWholeEntityAfterAConflict() {
+		final ResultsContainer container = new ResultsContainer();
+
+		table.setChangeTrackingEnabled(true);
+		VersionedPerson person = lookUpPerson();
+		person.name = "Jane";
+
+		recorder.mStatusCode = 412;
+		recorder.mResponseContent = "{\"id\":\"an-id\",\"name\":\"Jim\",\"city\":\"Seattle\",\"age\":29,\"__version\":\"CCCC\"}";
+
+		table.update(person, new TableOperationCallback<VersionedPerson>() {
+
+			@Override
+			public void onCompleted(VersionedPerson entity, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+			}
+		});
+
+		Assert.assertNotNull(container.getException());
+		Assert.assertEquals("Jim", person.name);
+
+		recorder.mStatusCode = 200;
+		recorder.mResponseContent = "{\"id\":\"an-id\"}";
+		person.name = "Jane";
+		table.update(person, null);
+
+		JsonObject content = new JsonParser().parse(recorder.mContent).getAsJsonObject();
+
+		// Asserts
+		Assert.assertEquals(4, content.entrySet().size());
+		Assert.assertEquals("Jane", content.get("name").getAsString());
+		Assert.assertEquals("\"CCCC\"", RequestRecorder.getHeader(recorder.mRequest, "If-Match"));
+	}
+
+	public void testUpdateShouldSendThePropertiesSetToNull() {
+		table.setChangeTrackingEnabled(true);
+		VersionedPerson person = lookUpPerson();
+		person.city = null;
+
+		table.update(person, null);
+
+		JsonObject content = new JsonParser().parse(recorder.mContent).getAsJsonObject();
+
+		// Asserts
+		Assert.assertEquals(2, content.entrySet().size());
+		Assert.assertTrue(content.get("city").isJsonNull());
+	}
+
+	public void testUpdateShouldCompareWithTheLastReturnedEntity() {
+		table.setChangeTrackingEnabled(true);
+		VersionedPerson person = lookUpPerson();
+		person.name = "Jane";
+		table.update(person, null);
+
+		person.age = 30;
+		table.update(person, null);
+
+		JsonObject content = new JsonParser().parse(recorder.mContent).getAsJsonObject();
+
+		// Asserts
+		Assert.assertEquals(2, content.entrySet().size());
+		Assert.assertEquals(30, content.get("age").getAsInt());
+		Assert.assertEquals("\"BBBB\"", RequestRecorder.getHeader(recorder.mRequest, "If-Match"));
+	}
+
+	public void testUpdateFieldsShouldSendOnlyTheGivenProperties() {
+		VersionedPerson person = lookUpPerson();
+		person.name = "Jane";
+		person.age = 30;
+
+		table.updateFields(person, Arrays.asList("age"), null);
+
+		JsonObject content = new JsonParser().parse(recorder.mContent).getAsJsonObject();
+
+		// Asserts
+		Assert.assertEquals(2, content.entrySet().size());
+		Assert.assertEquals(30, content.get("age").getAsInt());
+		Assert.assertEquals("\"AAAA\"", RequestRecorder.getHeader(recorder.mRequest, "If-Match"));
+	}
+
+	public void testUpdateFieldsShouldRejectAnUnknownProperty() {
+		final ResultsContainer container = new ResultsContainer();
+		VersionedPerson person = lookUpPerson();
+		recorder.mRequest = null;
+
+		table.updateFields(person, Arrays.asList("unknown"), new TableOperationCallback<VersionedPerson>() {
+
+			@Override
+			public void onCompleted(VersionedPerson entity, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+			}
+		});
+
+		// Asserts
+		Assert.assertTrue(container.getException() instanceof IllegalArgumentException);
+		Assert.assertNull(recorder.mRequest);
+	}
+}
@@ -0,0 +1,104 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.lang.reflect.Type;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+
+public class GsonCacheTests extends InstrumentationTestCase {
+
+	MobileServiceClient client;
+
+	protected void setUp() throws Exception {
+		client = new MobileServiceClient("http://myapp.com/", "qwerty", getInstrumentation().getTargetContext());
+		super.setUp();
+	}
+
+	public void testGsonShouldBeReusedBetweenOperations() {
+		Assert.assertSame(client.getGson(), client.getGson());
+	}
+
+	public void testClientsCreatedWithFiltersShouldShareTheGson() {
+		MobileServiceClient filteredClient = client.withFilter(new EchoFilter());
+
+		Assert.assertSame(client.getGson(), filteredClient.getGson());
+	}
+
+	public void testRegisterSerializerShouldRebuildTheGson() {
+		Gson gson = client.getGson();
+
+		client.registerSerializer(Address.class, new JsonSerializer<Address>() {
+
+			@Override
+			public JsonElement serialize(Address address, Type type, JsonSerializationContext context) {
+				return new JsonPrimitive("custom");
+			}
+		});
+
+		Assert.assertNotSame(gson, client.getGson());
+		Assert.assertEquals("\"custom\"", client.getGson().toJson(new Address("street", 1, "country")));
+	}
+
+	public void testGetGsonBuilderShouldRebuildTheGson() {
+		Gson gson = client.getGson();
+
+		client.getGsonBuilder().setPrettyPrinting();
+
+		Assert.assertNotSame(gson, client.getGson());
+	}
+
+	public void testSetGsonBuilderShouldRebuildTheGson() {
+		Gson gson = client.getGson();
+
+		client.setGsonBuilder(MobileServiceClient.createMobileServiceGsonBuilder());
+
+		Assert.assertNotSame(gson, client.getGson());
+	}
+
+	public void testInvalidateGsonShouldApplyTheChangesOfAKeptBuilder() {
+		GsonBuilder builder = client.getGsonBuilder();
+		Gson gson = client.getGson();
+
+		builder.registerTypeAdapter(Address.class, new JsonSerializer<Address>() {
+
+			@Override
+			public JsonElement serialize(Address address, Type type, JsonSerializationContext context) {
+				return new JsonPrimitive("custom");
+			}
+		});
+
+		Assert.assertSame(gson, client.getGson());
+
+		client.invalidateGson();
+
+		Assert.assertNotSame(gson, client.getGson());
+		Assert.assertEquals("\"custom\"", client.getGson().toJson(new Address("street", 1, "country")));
+	}
+}
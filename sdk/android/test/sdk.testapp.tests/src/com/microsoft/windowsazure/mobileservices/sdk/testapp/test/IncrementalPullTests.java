@@ -0,0 +1,327 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.Assert;
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.IncrementalPullSink;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceJsonSyncTable;
+import com.microsoft.windowsazure.mobileservices.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+import com.microsoft.windowsazure.mobileservices.TableJsonOperationCallback;
+import com.microsoft.windowsazure.mobileservices.TableSyncCallback;
+
+public class IncrementalPullTests extends InstrumentationTestCase {
+	String appUrl = "";
+	String appKey = "";
+	String tableName = "";
+
+	protected void setUp() throws Exception {
+		appUrl = "http://myapp.com/";
+		appKey = "qwerty";
+
+		// The watermarks are persisted, so each test uses its own table
+		tableName = "PullTable" + System.nanoTime();
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		// Remove the rows and watermarks of the test table
+		final CountDownLatch latch = new CountDownLatch(1);
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+		client.getSyncTable(tableName).purge(new TableSyncCallback() {
+
+			@Override
+			public void onCompleted(int count, Exception exception) {
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+		super.tearDown();
+	}
+
+	/**
+	 * In-memory table that honors the __updatedAt filter, the ordering and
+	 * the paging of the incremental pulls
+	 */
+	private static class UpdatedAtBackend implements ServiceFilter {
+		private static final Pattern WATERMARK_FILTER = Pattern.compile("__updatedAt ge '([^']+)'");
+
+		Map<String, JsonObject> mRows = new LinkedHashMap<String, JsonObject>();
+		List<String> mUrls = new ArrayList<String>();
+
+		synchronized void putRow(String id, String updatedAt) {
+			JsonObject row = new JsonObject();
+			row.addProperty("id", id);
+			row.addProperty("name", "Row " + id);
+			row.addProperty("__updatedAt", updatedAt);
+			mRows.put(id, row);
+		}
+
+		@Override
+		public synchronized void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+				ServiceFilterResponseCallback responseCallback) {
+			mUrls.add(request.getUrl());
+
+			Uri uri = Uri.parse(request.getUrl());
+			int top = Integer.parseInt(uri.getQueryParameter("$top"));
+			String skipValue = uri.getQueryParameter("$skip");
+			int skip = skipValue != null ? Integer.parseInt(skipValue) : 0;
+			String filter = getFilter(request.getUrl());
+			String watermark = null;
+
+			if (filter != null) {
+				Matcher matcher = WATERMARK_FILTER.matcher(filter);
+
+				if (matcher.find()) {
+					watermark = matcher.group(1);
+				}
+			}
+
+			// ISO-8601 dates in UTC sort as strings
+			List<JsonObject> matches = new ArrayList<JsonObject>();
+			for (JsonObject row : mRows.values()) {
+				if (watermark == null || row.get("__updatedAt").getAsString().compareTo(watermark) >= 0) {
+					matches.add(row);
+				}
+			}
+
+			Collections.sort(matches, new Comparator<JsonObject>() {
+
+				@Override
+				public int compare(JsonObject lhs, JsonObject rhs) {
+					int result = lhs.get("__updatedAt").getAsString().compareTo(rhs.get("__updatedAt").getAsString());
+					return result != 0 ? result : lhs.get("id").getAsString().compareTo(rhs.get("id").getAsString());
+				}
+			});
+
+			JsonArray rows = new JsonArray();
+			for (int i = skip; i < matches.size() && rows.size() < top; i++) {
+				rows.add(matches.get(i));
+			}
+
+			ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+			response.setContent(rows.toString());
+			responseCallback.onResponse(response, null);
+		}
+	}
+
+	/**
+	 * Sink that records the ids of the merged rows
+	 */
+	private static class RecordingSink implements IncrementalPullSink {
+		List<String> mIds = new ArrayList<String>();
+		boolean mFail = false;
+
+		@Override
+		public void merge(JsonArray rows) throws Exception {
+			if (mFail) {
+				throw new Exception("The rows can't be merged");
+			}
+
+			for (JsonElement row : rows) {
+				mIds.add(row.getAsJsonObject().get("id").getAsString());
+			}
+		}
+	}
+
+	private static String getFilter(String url) {
+		String filter = Uri.parse(url).getQueryParameter("$filter");
+		return filter != null ? filter.replace('+', ' ').trim() : null;
+	}
+
+	private static String updatedAt(int second) {
+		return String.format("2013-11-01T10:%02d:%02d.000Z", second / 60, second % 60);
+	}
+
+	private Object[] pullIncremental(MobileServiceJsonTable table, String queryId, IncrementalPullSink sink) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Object[] result = new Object[2];
+
+		table.pullIncremental(queryId, table.where(), sink, new TableSyncCallback() {
+
+			@Override
+			public void onCompleted(int count, Exception exception) {
+				result[0] = count;
+				result[1] = exception;
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+		return result;
+	}
+
+	public void testSecondPullShouldOnlyRetrieveTheChangedRows() throws Throwable {
+		UpdatedAtBackend backend = new UpdatedAtBackend();
+		for (int i = 1; i <= 10; i++) {
+			backend.putRow("id" + i, updatedAt(i));
+		}
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(backend);
+		MobileServiceJsonTable table = client.getTable(tableName);
+
+		RecordingSink firstSink = new RecordingSink();
+		Object[] first = pullIncremental(table, "all", firstSink);
+
+		backend.putRow("id3", updatedAt(20));
+		backend.putRow("id11", updatedAt(21));
+
+		RecordingSink secondSink = new RecordingSink();
+		Object[] second = pullIncremental(table, "all", secondSink);
+
+		// Asserts
+		Assert.assertNull(first[1]);
+		Assert.assertEquals(10, first[0]);
+		Assert.assertEquals(10, firstSink.mIds.size());
+		Assert.assertTrue(Uri.parse(backend.mUrls.get(0)).getQueryParameter("__systemproperties").contains("__updatedAt"));
+		Assert.assertNull(getFilter(backend.mUrls.get(0)));
+
+		Assert.assertNull(second[1]);
+		Assert.assertTrue(getFilter(backend.mUrls.get(1)).contains("__updatedAt ge '" + updatedAt(10) + "'"));
+
+		// The last row of the first pull has the watermark value
+		Assert.assertEquals(3, second[0]);
+		Assert.assertEquals("id10", secondSink.mIds.get(0));
+		Assert.assertEquals("id3", secondSink.mIds.get(1));
+		Assert.assertEquals("id11", secondSink.mIds.get(2));
+	}
+
+	public void testPullShouldNotLoseRowsWithTheSameUpdatedAtAcrossPages() throws Throwable {
+		int rowCount = MobileServiceJsonSyncTable.PULL_PAGE_SIZE * 2 + 10;
+
+		UpdatedAtBackend backend = new UpdatedAtBackend();
+		for (int i = 0; i < rowCount; i++) {
+			// Groups of 30 rows share the same __updatedAt value
+			backend.putRow(String.format("id%03d", i), updatedAt(i / 30));
+		}
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(backend);
+		MobileServiceJsonTable table = client.getTable(tableName);
+
+		RecordingSink sink = new RecordingSink();
+		Object[] result = pullIncremental(table, "all", sink);
+
+		Set<String> uniqueIds = new HashSet<String>(sink.mIds);
+
+		// Asserts
+		Assert.assertNull(result[1]);
+		Assert.assertEquals(rowCount, uniqueIds.size());
+		Assert.assertEquals(rowCount, sink.mIds.size());
+		Assert.assertEquals(3, backend.mUrls.size());
+	}
+
+	public void testFailedMergeShouldNotMoveTheWatermark() throws Throwable {
+		UpdatedAtBackend backend = new UpdatedAtBackend();
+		for (int i = 1; i <= 5; i++) {
+			backend.putRow("id" + i, updatedAt(i));
+		}
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(backend);
+		MobileServiceJsonTable table = client.getTable(tableName);
+
+		RecordingSink failingSink = new RecordingSink();
+		failingSink.mFail = true;
+		Object[] failed = pullIncremental(table, "all", failingSink);
+
+		RecordingSink sink = new RecordingSink();
+		Object[] result = pullIncremental(table, "all", sink);
+
+		// Asserts
+		Assert.assertNotNull(failed[1]);
+		Assert.assertEquals(0, failed[0]);
+		Assert.assertNull(result[1]);
+		Assert.assertEquals(5, sink.mIds.size());
+		Assert.assertNull(getFilter(backend.mUrls.get(1)));
+	}
+
+	public void testSyncTablePullShouldStoreTheChangedRows() throws Throwable {
+		UpdatedAtBackend backend = new UpdatedAtBackend();
+		backend.putRow("id1", updatedAt(1));
+		backend.putRow("id2", updatedAt(2));
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(backend);
+		MobileServiceJsonSyncTable table = client.getSyncTable(tableName);
+
+		syncPull(table);
+		backend.putRow("id1", updatedAt(5));
+		backend.mRows.get("id1").addProperty("name", "Changed");
+		syncPull(table);
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+
+		table.lookUp("id1", new TableJsonOperationCallback() {
+
+			@Override
+			public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+				container.setResponseValue(jsonObject != null ? jsonObject.get("name").getAsString() : null);
+				latch.countDown();
+			}
+		});
+		latch.await();
+
+		// Asserts
+		Assert.assertEquals("Changed", container.getResponseValue());
+		Assert.assertEquals(2, backend.mUrls.size());
+		Assert.assertTrue(getFilter(backend.mUrls.get(1)).contains("__updatedAt ge '" + updatedAt(2) + "'"));
+	}
+
+	private void syncPull(MobileServiceJsonSyncTable table) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Exception[] error = new Exception[1];
+
+		table.pull("all", table.where(), new TableSyncCallback() {
+
+			@Override
+			public void onCompleted(int count, Exception exception) {
+				error[0] = exception;
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+		Assert.assertNull(error[0]);
+	}
+}
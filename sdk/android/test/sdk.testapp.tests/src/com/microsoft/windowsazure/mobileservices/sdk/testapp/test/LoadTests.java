@@ -0,0 +1,241 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.AndroidHttpClientFactoryImpl;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.MobileServicePreconditionFailedExceptionBase;
+import com.microsoft.windowsazure.mobileservices.MobileServiceUser;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+import com.microsoft.windowsazure.mobileservices.TableJsonOperationCallback;
+import com.microsoft.windowsazure.mobileservices.UserAuthenticationCallback;
+
+public class LoadTests extends InstrumentationTestCase {
+
+	private static final String TAG = "LoadTests";
+
+	MockMobileServiceBackend backend;
+	MobileServiceClient client;
+
+	protected void setUp() throws Exception {
+		backend = new MockMobileServiceBackend();
+		backend.start();
+
+		client = new MobileServiceClient(backend.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		// Run the callbacks on the thread that processed the response, so
+		// the workers don't depend on the main thread
+		client.setCallbackExecutor(new DirectExecutor());
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		client.close();
+		backend.stop();
+		super.tearDown();
+	}
+
+	private static JsonObject createPerson(String id, String name) {
+		JsonObject person = new JsonObject();
+		person.addProperty("id", id);
+		person.addProperty("name", name);
+
+		return person;
+	}
+
+	public void testTableWorkloadUnderConcurrentLoad() throws Exception {
+		final int concurrency = 8;
+		final int operationsPerWorker = 25;
+
+		backend.setLatency(5);
+
+		MobileServiceLoadDriver.Result result = new MobileServiceLoadDriver(client, concurrency, operationsPerWorker)
+				.run(new MobileServiceLoadDriver.Workload() {
+
+					@Override
+					public void start(MobileServiceClient client, int worker, int iteration, final MobileServiceLoadDriver.Completion completion) {
+						final MobileServiceJsonTable table = client.getTable("People");
+
+						// Every operation inserts a person and reads it back
+						table.insert(createPerson(worker + "-" + iteration, "John"), new TableJsonOperationCallback() {
+
+							@Override
+							public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+								if (exception != null) {
+									completion.onCompleted(exception);
+									return;
+								}
+
+								table.lookUp(jsonObject.get("id").getAsString(), new TableJsonOperationCallback() {
+
+									@Override
+									public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+										completion.onCompleted(exception);
+									}
+								});
+							}
+						});
+					}
+				});
+
+		Log.i(TAG, result.toString() + "connections=" + backend.getConnectionCount());
+
+		// Asserts
+		Assert.assertNull(result.getFirstError());
+		Assert.assertEquals(concurrency * operationsPerWorker, result.getOperationCount());
+		Assert.assertEquals(concurrency * operationsPerWorker * 2, backend.getRequestCount());
+		Assert.assertTrue(backend.getConnectionCount() <= AndroidHttpClientFactoryImpl.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+		Assert.assertTrue(result.getHistogram().getPercentile("POST tables/People", 50) >= 5);
+		Assert.assertTrue(result.getThroughput() > 0);
+	}
+
+	public void testInjectedErrorsShouldBeReported() throws Exception {
+		backend.setErrorRate(0.25);
+
+		MobileServiceLoadDriver.Result result = new MobileServiceLoadDriver(client, 4, 25).run(new MobileServiceLoadDriver.Workload() {
+
+			@Override
+			public void start(MobileServiceClient client, int worker, int iteration, final MobileServiceLoadDriver.Completion completion) {
+				client.invokeApi("status", null, "GET", null, null, new ServiceFilterResponseCallback() {
+
+					@Override
+					public void onResponse(ServiceFilterResponse response, Exception exception) {
+						completion.onCompleted(exception);
+					}
+				});
+			}
+		});
+
+		Log.i(TAG, result.toString());
+
+		// Asserts
+		Assert.assertEquals(100, result.getOperationCount());
+		Assert.assertTrue(result.getErrorCount() > 0);
+		Assert.assertEquals(backend.getErrorCount(), result.getErrorCount());
+	}
+
+	public void testCompressedResponsesShouldBeRead() throws Throwable {
+		final ResultsContainer container = new ResultsContainer();
+		final CountDownLatch latch = new CountDownLatch(1);
+		final MobileServiceJsonTable table = client.getTable("People");
+
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			name.append("John ");
+		}
+
+		final JsonObject person = createPerson("1", name.toString());
+
+		backend.setGzipEnabled(true);
+
+		table.insert(person, new TableJsonOperationCallback() {
+
+			@Override
+			public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+
+				if (jsonObject != null) {
+					container.setCustomResult(jsonObject);
+				}
+
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(person.get("name"), ((JsonObject) container.getCustomResult()).get("name"));
+	}
+
+	public void testStaleVersionShouldFailWithPreconditionFailed() throws Throwable {
+		final ResultsContainer container = new ResultsContainer();
+		final MobileServiceJsonTable table = client.getTable("People");
+
+		for (int i = 0; i < 2; i++) {
+			final CountDownLatch latch = new CountDownLatch(1);
+			JsonObject person = createPerson("1", "John " + i);
+
+			if (i == 0) {
+				table.insert(person, new TableJsonOperationCallback() {
+
+					@Override
+					public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+						container.setException(exception);
+						latch.countDown();
+					}
+				});
+			} else {
+				person.addProperty("__version", "stale");
+
+				table.update(person, new TableJsonOperationCallback() {
+
+					@Override
+					public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+						container.setException(exception);
+						latch.countDown();
+					}
+				});
+			}
+
+			latch.await();
+		}
+
+		// Asserts
+		Assert.assertTrue(container.getException() instanceof MobileServicePreconditionFailedExceptionBase);
+		Assert.assertEquals("John 0", backend.getItem("People", "1").get("name").getAsString());
+	}
+
+	public void testLoginWithTokenShouldReturnTheUser() throws Throwable {
+		final ResultsContainer container = new ResultsContainer();
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		runTestOnUiThread(new Runnable() {
+
+			@Override
+			public void run() {
+				client.login("facebook", "{\"access_token\":\"token\"}", new UserAuthenticationCallback() {
+
+					@Override
+					public void onCompleted(MobileServiceUser user, Exception exception, ServiceFilterResponse response) {
+						container.setException(exception);
+						container.setUser(user);
+						latch.countDown();
+					}
+				});
+			}
+		});
+
+		latch.await();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertTrue(container.getUser().getUserId().startsWith("facebook:"));
+	}
+}
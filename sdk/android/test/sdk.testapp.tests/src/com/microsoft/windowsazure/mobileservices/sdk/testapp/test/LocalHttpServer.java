@@ -0,0 +1,386 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal HTTP/1.1 server listening on the loopback interface, used in tests
+ * that need real sockets. Connections are kept alive, and every request is
+ * answered by the configured handler
+ */
+public class LocalHttpServer {
+
+	/**
+	 * Request received by the server
+	 */
+	public static class Request {
+		private String mMethod;
+		private String mPath;
+		private Map<String, String> mHeaders = new LinkedHashMap<String, String>();
+		private byte[] mBody;
+
+		public String getMethod() {
+			return mMethod;
+		}
+
+		public String getPath() {
+			return mPath;
+		}
+
+		/**
+		 * Returns a header value. Header names are case insensitive
+		 */
+		public String getHeader(String name) {
+			return mHeaders.get(name.toLowerCase(Locale.US));
+		}
+
+		public byte[] getBody() {
+			return mBody;
+		}
+	}
+
+	/**
+	 * Response sent by the server
+	 */
+	public static class Response {
+		private int mStatus = 200;
+		private Map<String, String> mHeaders = new LinkedHashMap<String, String>();
+		private byte[] mBody = new byte[0];
+		private int mSentBodyLength = -1;
+
+		public Response() {
+			mHeaders.put("Content-Type", "application/json");
+		}
+
+		public Response(int status, String body) {
+			this();
+			setStatus(status);
+			setBody(body);
+		}
+
+		public void setStatus(int status) {
+			mStatus = status;
+		}
+
+		public void setHeader(String name, String value) {
+			mHeaders.put(name, value);
+		}
+
+		public void setBody(String body) {
+			try {
+				mBody = body == null ? new byte[0] : body.getBytes("UTF-8");
+			} catch (IOException e) {
+				// this should never happen
+			}
+		}
+
+		public void setBody(byte[] body) {
+			mBody = body == null ? new byte[0] : body;
+		}
+
+		public byte[] getBody() {
+			return mBody;
+		}
+
+		/**
+		 * Sends only the first bytes of the body and closes the connection,
+		 * as if it was reset while the response was being read
+		 */
+		public void setSentBodyLength(int length) {
+			mSentBodyLength = length;
+		}
+	}
+
+	/**
+	 * Creates the responses of the server
+	 */
+	public interface Handler {
+		Response handle(Request request);
+	}
+
+	private ServerSocket mServerSocket;
+	private Handler mHandler;
+	private Thread mAcceptThread;
+	private List<Socket> mSockets = new ArrayList<Socket>();
+	private AtomicInteger mConnectionCount = new AtomicInteger();
+	private AtomicInteger mRequestCount = new AtomicInteger();
+	private volatile boolean mStopped;
+
+	public LocalHttpServer(Handler handler) {
+		mHandler = handler;
+	}
+
+	/**
+	 * Starts listening on an ephemeral loopback port
+	 */
+	public void start() throws IOException {
+		mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+		mAcceptThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while (!mStopped) {
+					try {
+						final Socket socket = mServerSocket.accept();
+						mConnectionCount.incrementAndGet();
+
+						synchronized (mSockets) {
+							mSockets.add(socket);
+						}
+
+						Thread connectionThread = new Thread(new Runnable() {
+
+							@Override
+							public void run() {
+								serve(socket);
+							}
+						});
+						connectionThread.setDaemon(true);
+						connectionThread.start();
+					} catch (IOException e) {
+						// The server socket was closed
+					}
+				}
+			}
+		});
+		mAcceptThread.setDaemon(true);
+		mAcceptThread.start();
+	}
+
+	/**
+	 * Stops the server and closes every open connection
+	 */
+	public void stop() {
+		mStopped = true;
+
+		try {
+			mServerSocket.close();
+		} catch (IOException e) {
+		}
+
+		synchronized (mSockets) {
+			for (Socket socket : mSockets) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+				}
+			}
+
+			mSockets.clear();
+		}
+	}
+
+	/**
+	 * Returns the base URL of the server
+	 */
+	public String getUrl() {
+		return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/";
+	}
+
+	/**
+	 * Returns the number of TCP connections accepted so far
+	 */
+	public int getConnectionCount() {
+		return mConnectionCount.get();
+	}
+
+	/**
+	 * Returns the number of requests served so far
+	 */
+	public int getRequestCount() {
+		return mRequestCount.get();
+	}
+
+	private void serve(Socket socket) {
+		try {
+			InputStream in = socket.getInputStream();
+			OutputStream out = socket.getOutputStream();
+
+			while (!mStopped) {
+				Request request = readRequest(in);
+
+				if (request == null) {
+					break;
+				}
+
+				mRequestCount.incrementAndGet();
+
+				if (!writeResponse(out, mHandler.handle(request))) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			// The connection was closed
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private static Request readRequest(InputStream in) throws IOException {
+		String requestLine = readLine(in);
+
+		if (requestLine == null || requestLine.length() == 0) {
+			return null;
+		}
+
+		String[] parts = requestLine.split(" ");
+		Request request = new Request();
+		request.mMethod = parts[0];
+		request.mPath = parts.length > 1 ? parts[1] : "/";
+
+		String line;
+		while ((line = readLine(in)) != null && line.length() > 0) {
+			int separator = line.indexOf(':');
+
+			if (separator > 0) {
+				request.mHeaders.put(line.substring(0, separator).trim().toLowerCase(Locale.US), line.substring(separator + 1).trim());
+			}
+		}
+
+		String transferEncoding = request.getHeader("Transfer-Encoding");
+
+		if (transferEncoding != null && transferEncoding.equalsIgnoreCase("chunked")) {
+			request.mBody = readChunkedBody(in);
+			return request.mBody != null ? request : null;
+		}
+
+		String contentLength = request.getHeader("Content-Length");
+		int length = contentLength == null ? 0 : Integer.parseInt(contentLength);
+		byte[] body = readBytes(in, length);
+
+		if (body == null) {
+			return null;
+		}
+
+		request.mBody = body;
+
+		return request;
+	}
+
+	private static byte[] readChunkedBody(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		String line;
+
+		while ((line = readLine(in)) != null) {
+			int extension = line.indexOf(';');
+			int length = Integer.parseInt((extension >= 0 ? line.substring(0, extension) : line).trim(), 16);
+
+			if (length == 0) {
+				// Skip the trailers
+				while ((line = readLine(in)) != null && line.length() > 0) {
+				}
+
+				return body.toByteArray();
+			}
+
+			byte[] chunk = readBytes(in, length);
+
+			if (chunk == null) {
+				return null;
+			}
+
+			body.write(chunk);
+			readLine(in);
+		}
+
+		return null;
+	}
+
+	private static byte[] readBytes(InputStream in, int length) throws IOException {
+		byte[] bytes = new byte[length];
+		int read = 0;
+
+		while (read < length) {
+			int count = in.read(bytes, read, length - read);
+
+			if (count == -1) {
+				return null;
+			}
+
+			read += count;
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Writes a response, and returns false if the connection must be closed
+	 */
+	private static boolean writeResponse(OutputStream out, Response response) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("HTTP/1.1 ").append(response.mStatus).append(" Status\r\n");
+
+		for (Map.Entry<String, String> header : response.mHeaders.entrySet()) {
+			sb.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+		}
+
+		sb.append("Content-Length: ").append(response.mBody.length).append("\r\n");
+		sb.append("Connection: keep-alive\r\n\r\n");
+
+		out.write(sb.toString().getBytes("US-ASCII"));
+
+		if (response.mSentBodyLength >= 0 && response.mSentBodyLength < response.mBody.length) {
+			out.write(response.mBody, 0, response.mSentBodyLength);
+			out.flush();
+			return false;
+		}
+
+		out.write(response.mBody);
+		out.flush();
+
+		return true;
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int c;
+
+		while ((c = in.read()) != -1) {
+			if (c == '\n') {
+				break;
+			} else if (c != '\r') {
+				line.write(c);
+			}
+		}
+
+		if (c == -1 && line.size() == 0) {
+			return null;
+		}
+
+		return line.toString("US-ASCII");
+	}
+}
@@ -23,6 +23,10 @@ import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
 
@@ -39,6 +43,7 @@ import com.google.gson.JsonObject;
 import com.microsoft.windowsazure.mobileservices.ApiJsonOperationCallback;
 import com.microsoft.windowsazure.mobileservices.MobileServiceAuthenticationProvider;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceJsonTable;
 import com.microsoft.windowsazure.mobileservices.MobileServiceTable;
 import com.microsoft.windowsazure.mobileservices.MobileServiceUser;
@@ -819,4 +824,114 @@ public class MobileServiceClientTests extends InstrumentationTestCase {
 		latch.await();
 	}
 
+	public void testOperationsShouldRunOnTheConfiguredExecutors() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+		final AtomicInteger executedRequests = new AtomicInteger();
+		final AtomicInteger executedCallbacks = new AtomicInteger();
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+		client = client.withFilter(new ServiceFilter() {
+
+			@Override
+			public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+					ServiceFilterResponseCallback responseCallback) {
+				ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+				response.setContent("{\"id\":1,\"name\":\"John\"}");
+
+				responseCallback.onResponse(response, null);
+			}
+		});
+
+		final Executor requestExecutor = client.getExecutor();
+		client.setExecutor(new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				executedRequests.incrementAndGet();
+				requestExecutor.execute(command);
+			}
+		});
+
+		client.setCallbackExecutor(new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				executedCallbacks.incrementAndGet();
+				command.run();
+			}
+		});
+
+		client.getTable("dummy").lookUp(1, new TableJsonOperationCallback() {
+
+			@Override
+			public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+				container.setResponseValue(jsonObject == null ? null : jsonObject.get("name").getAsString());
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals("John", container.getResponseValue());
+		Assert.assertEquals(1, executedRequests.get());
+		Assert.assertEquals(1, executedCallbacks.get());
+	}
+
+	public void testRejectedOperationShouldReportException() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+		client.setExecutor(new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException();
+			}
+		});
+
+		client.setCallbackExecutor(new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+
+		client.getTable("dummy").lookUp(1, new TableJsonOperationCallback() {
+
+			@Override
+			public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+
+		// Asserts
+		Assert.assertTrue(container.getException() instanceof MobileServiceException);
+	}
+
+	public void testCreateRequestExecutorShouldBeBounded() {
+		ThreadPoolExecutor executor = MobileServiceClient.createRequestExecutor(2, 5, new ThreadPoolExecutor.AbortPolicy());
+
+		Assert.assertEquals(2, executor.getMaximumPoolSize());
+		Assert.assertEquals(5, executor.getQueue().remainingCapacity());
+
+		executor.shutdown();
+
+		try {
+			MobileServiceClient.createRequestExecutor(0, 5, new ThreadPoolExecutor.AbortPolicy());
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// It's ok
+		}
+	}
 }
@@ -0,0 +1,235 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.os.Debug;
+
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceMetricsHistogram;
+
+/**
+ * Runs a workload on several concurrent workers sharing a client, and
+ * reports the throughput, the latency percentiles of every endpoint, the
+ * allocated memory and the errors. Every worker runs its operations one
+ * after the other, waiting for each one to complete
+ */
+public class MobileServiceLoadDriver {
+
+	/**
+	 * An operation of the workload
+	 */
+	public interface Workload {
+		/**
+		 * Starts the operation. The completion must be invoked once when it
+		 * finishes
+		 * 
+		 * @param client
+		 *            The client to use
+		 * @param worker
+		 *            The index of the worker running the operation
+		 * @param iteration
+		 *            The index of the operation in the worker
+		 * @param completion
+		 *            The completion to invoke
+		 */
+		void start(MobileServiceClient client, int worker, int iteration, Completion completion);
+	}
+
+	/**
+	 * Completion of an operation
+	 */
+	public interface Completion {
+		void onCompleted(Exception exception);
+	}
+
+	/**
+	 * Results of a run
+	 */
+	public static class Result {
+		private int mOperationCount;
+		private int mErrorCount;
+		private long mElapsedTime;
+		private long mAllocatedBytes;
+		private Exception mFirstError;
+		private MobileServiceMetricsHistogram mHistogram;
+
+		public int getOperationCount() {
+			return mOperationCount;
+		}
+
+		public int getErrorCount() {
+			return mErrorCount;
+		}
+
+		public Exception getFirstError() {
+			return mFirstError;
+		}
+
+		/**
+		 * Returns the duration of the run, in nanoseconds
+		 */
+		public long getElapsedTime() {
+			return mElapsedTime;
+		}
+
+		/**
+		 * Returns the operations completed per second
+		 */
+		public double getThroughput() {
+			return mElapsedTime == 0 ? 0 : mOperationCount * 1000000000.0 / mElapsedTime;
+		}
+
+		/**
+		 * Returns the bytes allocated during the run by the process, or 0 if
+		 * allocations are not counted on the device
+		 */
+		public long getAllocatedBytes() {
+			return mAllocatedBytes;
+		}
+
+		/**
+		 * Returns the bytes allocated per second
+		 */
+		public double getAllocationRate() {
+			return mElapsedTime == 0 ? 0 : mAllocatedBytes * 1000000000.0 / mElapsedTime;
+		}
+
+		/**
+		 * Returns the latency histogram of the requests, by endpoint
+		 */
+		public MobileServiceMetricsHistogram getHistogram() {
+			return mHistogram;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.US, "operations=%d errors=%d elapsed=%.1fms throughput=%.1fops/s allocated=%dB (%.1fKB/s)%n%s",
+					mOperationCount, mErrorCount, mElapsedTime / 1000000.0, getThroughput(), mAllocatedBytes, getAllocationRate() / 1024,
+					mHistogram.dump());
+		}
+	}
+
+	private final MobileServiceClient mClient;
+	private final int mConcurrency;
+	private final int mOperationsPerWorker;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param client
+	 *            The client shared by the workers. Its request metrics
+	 *            listener is replaced during the run
+	 * @param concurrency
+	 *            The number of concurrent workers
+	 * @param operationsPerWorker
+	 *            The number of operations run by every worker
+	 */
+	public MobileServiceLoadDriver(MobileServiceClient client, int concurrency, int operationsPerWorker) {
+		if (concurrency < 1 || operationsPerWorker < 1) {
+			throw new IllegalArgumentException("concurrency and operationsPerWorker must be greater than zero");
+		}
+
+		mClient = client;
+		mConcurrency = concurrency;
+		mOperationsPerWorker = operationsPerWorker;
+	}
+
+	/**
+	 * Runs the workload and waits for every worker to finish
+	 */
+	public Result run(final Workload workload) throws InterruptedException {
+		final MobileServiceMetricsHistogram histogram = new MobileServiceMetricsHistogram();
+		final AtomicInteger operationCount = new AtomicInteger();
+		final AtomicInteger errorCount = new AtomicInteger();
+		final AtomicReference<Exception> firstError = new AtomicReference<Exception>();
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final CountDownLatch doneLatch = new CountDownLatch(mConcurrency);
+
+		mClient.setRequestMetricsListener(histogram);
+
+		for (int i = 0; i < mConcurrency; i++) {
+			final int worker = i;
+
+			Thread thread = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						startLatch.await();
+
+						for (int iteration = 0; iteration < mOperationsPerWorker; iteration++) {
+							final CountDownLatch operationLatch = new CountDownLatch(1);
+
+							workload.start(mClient, worker, iteration, new Completion() {
+
+								@Override
+								public void onCompleted(Exception exception) {
+									if (exception != null) {
+										errorCount.incrementAndGet();
+										firstError.compareAndSet(null, exception);
+									}
+
+									operationCount.incrementAndGet();
+									operationLatch.countDown();
+								}
+							});
+
+							operationLatch.await();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						doneLatch.countDown();
+					}
+				}
+			}, "LoadWorker-" + worker);
+
+			thread.start();
+		}
+
+		Debug.startAllocCounting();
+		Debug.resetGlobalAllocSize();
+
+		long start = System.nanoTime();
+		startLatch.countDown();
+		doneLatch.await();
+		long elapsedTime = System.nanoTime() - start;
+
+		int allocatedBytes = Debug.getGlobalAllocSize();
+		Debug.stopAllocCounting();
+
+		mClient.setRequestMetricsListener(null);
+
+		Result result = new Result();
+		result.mOperationCount = operationCount.get();
+		result.mErrorCount = errorCount.get();
+		result.mFirstError = firstError.get();
+		result.mElapsedTime = elapsedTime;
+		result.mAllocatedBytes = allocatedBytes;
+		result.mHistogram = histogram;
+
+		return result;
+	}
+}
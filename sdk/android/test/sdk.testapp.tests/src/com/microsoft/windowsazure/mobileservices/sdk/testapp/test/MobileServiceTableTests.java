@@ -1836,6 +1836,77 @@ public class MobileServiceTableTests extends InstrumentationTestCase {
 		assertEquals(15, container.getCount());
 	}
 
+	public void testInlineCountSelectShouldRenameIdPropertyOfEachResult() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		// Container to store callback's results and do the asserts.
+		final ResultsContainer container = new ResultsContainer();
+
+		final String tableName = "MyTableName";
+
+		runTestOnUiThread(new Runnable() {
+
+			@Override
+			public void run() {
+				MobileServiceClient client = null;
+				try {
+					client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+				} catch (MalformedURLException e) {
+					e.printStackTrace();
+				}
+
+				client = client.withFilter(new ServiceFilter() {
+
+					@Override
+					public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+							ServiceFilterResponseCallback responseCallback) {
+						// Count before results, and properties that are not
+						// part of the envelope
+						String responseContent = "{\"count\":2,\"extra\":{\"id\":99},\"results\":[";
+						responseContent += "{\"id\":1,\"name\":\"Mike\",\"other\":{\"id\":98}},";
+						responseContent += "{\"name\":\"John\",\"id\":2}";
+						responseContent += "]}";
+
+						// Create a mock response and set the mocked JSon
+						// content
+						ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+						response.setContent(responseContent);
+
+						responseCallback.onResponse(response, null);
+					}
+				});
+
+				client.getTable(tableName, IdPropertyWithDifferentIdPropertyCasing.class).execute(
+						new TableQueryCallback<IdPropertyWithDifferentIdPropertyCasing>() {
+
+							@Override
+							public void onCompleted(List<IdPropertyWithDifferentIdPropertyCasing> result, int count, Exception exception,
+									ServiceFilterResponse response) {
+								container.setException(exception);
+								container.setCustomResult(result);
+								container.setCount(count);
+								latch.countDown();
+							}
+						});
+			}
+		});
+
+		latch.await();
+
+		// Asserts
+		assertNull(container.getException());
+
+		@SuppressWarnings("unchecked")
+		List<IdPropertyWithDifferentIdPropertyCasing> p = (List<IdPropertyWithDifferentIdPropertyCasing>) container.getCustomResult();
+		assertNotNull("A list of results is expected", p);
+		assertEquals(2, p.size());
+		assertEquals(1, p.get(0).getId());
+		assertEquals("Mike", p.get(0).getName());
+		assertEquals(2, p.get(1).getId());
+		assertEquals("John", p.get(1).getName());
+		assertEquals(2, container.getCount());
+	}
+
 	public void testLookupShouldReturnAPerson() throws Throwable {
 		final CountDownLatch latch = new CountDownLatch(1);
 
@@ -0,0 +1,468 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Local stand-in for a Mobile Service, served over real sockets by a
+ * LocalHttpServer. It keeps tables in memory and answers the /tables,
+ * /api, /login and /push/registrations routes used by the SDK.
+ * 
+ * The latency of every response, the ratio of failed requests and the
+ * compression of the responses can be configured. Table items get a
+ * version sent as their ETag, and If-Match and If-None-Match are honored
+ */
+public class MockMobileServiceBackend {
+
+	private static final String VERSION_PROPERTY = "__version";
+
+	private LocalHttpServer mServer;
+
+	private final Map<String, Map<String, JsonObject>> mTables = new HashMap<String, Map<String, JsonObject>>();
+
+	private final Map<String, String> mRegistrations = new LinkedHashMap<String, String>();
+
+	private final AtomicInteger mVersion = new AtomicInteger();
+
+	private final AtomicInteger mErrorCount = new AtomicInteger();
+
+	private volatile long mLatency;
+
+	private volatile double mErrorRate;
+
+	private Random mRandom = new Random(0);
+
+	private volatile boolean mGzipEnabled;
+
+	public MockMobileServiceBackend() {
+		mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+
+			@Override
+			public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+				return MockMobileServiceBackend.this.handle(request);
+			}
+		});
+	}
+
+	public void start() throws IOException {
+		mServer.start();
+	}
+
+	public void stop() {
+		mServer.stop();
+	}
+
+	/**
+	 * Returns the base URL of the backend
+	 */
+	public String getUrl() {
+		return mServer.getUrl();
+	}
+
+	/**
+	 * Returns the number of TCP connections accepted so far
+	 */
+	public int getConnectionCount() {
+		return mServer.getConnectionCount();
+	}
+
+	/**
+	 * Returns the number of requests served so far
+	 */
+	public int getRequestCount() {
+		return mServer.getRequestCount();
+	}
+
+	/**
+	 * Returns the number of injected errors so far
+	 */
+	public int getErrorCount() {
+		return mErrorCount.get();
+	}
+
+	/**
+	 * Sets the time every response is delayed, in milliseconds
+	 */
+	public void setLatency(long latency) {
+		mLatency = latency;
+	}
+
+	/**
+	 * Sets the ratio, between 0 and 1, of requests answered with a 500 error
+	 */
+	public void setErrorRate(double errorRate) {
+		mErrorRate = errorRate;
+	}
+
+	/**
+	 * Sets the seed of the random numbers that choose the failed requests
+	 */
+	public synchronized void setSeed(long seed) {
+		mRandom = new Random(seed);
+	}
+
+	/**
+	 * Enables the gzip compression of the responses to requests that accept
+	 * it
+	 */
+	public void setGzipEnabled(boolean gzipEnabled) {
+		mGzipEnabled = gzipEnabled;
+	}
+
+	/**
+	 * Returns a copy of a table item, or null if it doesn't exist
+	 */
+	public JsonObject getItem(String table, String id) {
+		synchronized (mTables) {
+			JsonObject item = getTable(table).get(id);
+			return item == null ? null : copy(item);
+		}
+	}
+
+	private synchronized boolean shouldFail() {
+		return mErrorRate > 0 && mRandom.nextDouble() < mErrorRate;
+	}
+
+	private LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+		if (mLatency > 0) {
+			try {
+				Thread.sleep(mLatency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		LocalHttpServer.Response response;
+
+		if (shouldFail()) {
+			mErrorCount.incrementAndGet();
+			response = new LocalHttpServer.Response(500, "{\"error\":\"Injected error\"}");
+		} else {
+			response = route(request);
+		}
+
+		if (mGzipEnabled) {
+			compress(request, response);
+		}
+
+		return response;
+	}
+
+	private LocalHttpServer.Response route(LocalHttpServer.Request request) {
+		String path = request.getPath();
+		Map<String, String> parameters = new HashMap<String, String>();
+		int queryStart = path.indexOf('?');
+
+		if (queryStart >= 0) {
+			for (String parameter : path.substring(queryStart + 1).split("&")) {
+				int separator = parameter.indexOf('=');
+
+				if (separator > 0) {
+					parameters.put(decode(parameter.substring(0, separator)), decode(parameter.substring(separator + 1)));
+				}
+			}
+
+			path = path.substring(0, queryStart);
+		}
+
+		List<String> segments = new ArrayList<String>();
+
+		for (String segment : path.split("/")) {
+			if (segment.length() > 0) {
+				segments.add(decode(segment));
+			}
+		}
+
+		if (segments.size() >= 2 && segments.get(0).equals("tables")) {
+			return handleTable(request, segments.get(1), segments.size() > 2 ? segments.get(2) : null, parameters);
+		} else if (segments.size() >= 2 && segments.get(0).equals("api")) {
+			return handleApi(request, segments.get(1));
+		} else if (segments.size() >= 2 && segments.get(0).equals("login")) {
+			return handleLogin(request, segments.get(1));
+		} else if (segments.size() >= 2 && segments.get(0).equals("push")) {
+			return handlePush(request, segments.get(1), segments.size() > 2 ? segments.get(2) : null);
+		}
+
+		return new LocalHttpServer.Response(404, "{\"error\":\"Not found\"}");
+	}
+
+	private LocalHttpServer.Response handleTable(LocalHttpServer.Request request, String tableName, String id,
+			Map<String, String> parameters) {
+		String method = request.getMethod();
+
+		synchronized (mTables) {
+			Map<String, JsonObject> table = getTable(tableName);
+
+			if (id == null) {
+				if (method.equals("GET")) {
+					int top = parameters.containsKey("$top") ? Integer.parseInt(parameters.get("$top")) : Integer.MAX_VALUE;
+					int skip = parameters.containsKey("$skip") ? Integer.parseInt(parameters.get("$skip")) : 0;
+					JsonArray items = new JsonArray();
+					int index = 0;
+
+					for (JsonObject item : table.values()) {
+						if (index++ >= skip && items.size() < top) {
+							items.add(item);
+						}
+					}
+
+					return new LocalHttpServer.Response(200, items.toString());
+				} else if (method.equals("POST")) {
+					JsonObject item = parse(request);
+
+					if (!item.has("id") || item.get("id").isJsonNull()) {
+						item.addProperty("id", UUID.randomUUID().toString());
+					}
+
+					String itemId = item.get("id").getAsString();
+
+					if (table.containsKey(itemId)) {
+						return new LocalHttpServer.Response(409, table.get(itemId).toString());
+					}
+
+					return createItemResponse(201, newVersion(table, itemId, item));
+				}
+			} else {
+				JsonObject item = table.get(id);
+
+				if (item == null) {
+					return new LocalHttpServer.Response(404, "{\"error\":\"The item doesn't exist\"}");
+				}
+
+				String etag = "\"" + item.get(VERSION_PROPERTY).getAsString() + "\"";
+				String ifMatch = request.getHeader("If-Match");
+
+				if (method.equals("GET")) {
+					if (etag.equals(request.getHeader("If-None-Match"))) {
+						LocalHttpServer.Response response = new LocalHttpServer.Response(304, null);
+						response.setHeader("ETag", etag);
+						return response;
+					}
+
+					return createItemResponse(200, item);
+				} else if (ifMatch != null && !ifMatch.equals(etag)) {
+					return createItemResponse(412, item);
+				} else if (method.equals("PATCH")) {
+					JsonObject patched = copy(item);
+
+					for (Map.Entry<String, JsonElement> property : parse(request).entrySet()) {
+						patched.add(property.getKey(), property.getValue());
+					}
+
+					return createItemResponse(200, newVersion(table, id, patched));
+				} else if (method.equals("DELETE")) {
+					table.remove(id);
+					return new LocalHttpServer.Response(200, null);
+				}
+			}
+		}
+
+		return new LocalHttpServer.Response(405, "{\"error\":\"Method not allowed\"}");
+	}
+
+	private LocalHttpServer.Response handleApi(LocalHttpServer.Request request, String apiName) {
+		LocalHttpServer.Response response = new LocalHttpServer.Response();
+
+		byte[] content = getContent(request);
+
+		if (content.length > 0) {
+			// The content is echoed
+			String contentType = request.getHeader("Content-Type");
+
+			if (contentType != null) {
+				response.setHeader("Content-Type", contentType);
+			}
+
+			response.setBody(content);
+		} else {
+			JsonObject result = new JsonObject();
+			result.addProperty("api", apiName);
+			result.addProperty("method", request.getMethod());
+			response.setBody(result.toString());
+		}
+
+		return response;
+	}
+
+	private LocalHttpServer.Response handleLogin(LocalHttpServer.Request request, String provider) {
+		if (!request.getMethod().equals("POST")) {
+			return new LocalHttpServer.Response(405, "{\"error\":\"Method not allowed\"}");
+		}
+
+		JsonObject user = new JsonObject();
+		user.addProperty("userId", provider + ":" + UUID.randomUUID().toString());
+
+		JsonObject result = new JsonObject();
+		result.add("user", user);
+		result.addProperty("authenticationToken", UUID.randomUUID().toString());
+
+		return new LocalHttpServer.Response(200, result.toString());
+	}
+
+	private LocalHttpServer.Response handlePush(LocalHttpServer.Request request, String resource, String id) {
+		String method = request.getMethod();
+
+		synchronized (mRegistrations) {
+			if (resource.equals("registrationids") && method.equals("POST")) {
+				LocalHttpServer.Response response = new LocalHttpServer.Response(201, null);
+				response.setHeader("Location", getUrl() + "push/registrations/" + UUID.randomUUID().toString());
+				return response;
+			} else if (resource.equals("registrations") && id == null && method.equals("GET")) {
+				StringBuilder registrations = new StringBuilder("[");
+
+				for (String registration : mRegistrations.values()) {
+					if (registrations.length() > 1) {
+						registrations.append(',');
+					}
+
+					registrations.append(registration);
+				}
+
+				return new LocalHttpServer.Response(200, registrations.append(']').toString());
+			} else if (resource.equals("registrations") && id != null && method.equals("PUT")) {
+				mRegistrations.put(id, toString(getContent(request)));
+				return new LocalHttpServer.Response(204, null);
+			} else if (resource.equals("registrations") && id != null && method.equals("DELETE")) {
+				mRegistrations.remove(id);
+				return new LocalHttpServer.Response(204, null);
+			}
+		}
+
+		return new LocalHttpServer.Response(404, "{\"error\":\"Not found\"}");
+	}
+
+	private Map<String, JsonObject> getTable(String tableName) {
+		Map<String, JsonObject> table = mTables.get(tableName);
+
+		if (table == null) {
+			table = new LinkedHashMap<String, JsonObject>();
+			mTables.put(tableName, table);
+		}
+
+		return table;
+	}
+
+	private JsonObject newVersion(Map<String, JsonObject> table, String id, JsonObject item) {
+		item.addProperty(VERSION_PROPERTY, "v" + mVersion.incrementAndGet());
+		table.put(id, item);
+
+		return item;
+	}
+
+	private static LocalHttpServer.Response createItemResponse(int status, JsonObject item) {
+		LocalHttpServer.Response response = new LocalHttpServer.Response(status, item.toString());
+		response.setHeader("ETag", "\"" + item.get(VERSION_PROPERTY).getAsString() + "\"");
+
+		return response;
+	}
+
+	private static void compress(LocalHttpServer.Request request, LocalHttpServer.Response response) {
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		byte[] body = response.getBody();
+
+		if (acceptEncoding == null || !acceptEncoding.contains("gzip") || body.length == 0) {
+			return;
+		}
+
+		try {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+			gzip.write(body);
+			gzip.close();
+
+			response.setHeader("Content-Encoding", "gzip");
+			response.setBody(compressed.toByteArray());
+		} catch (IOException e) {
+			// The response is sent uncompressed
+		}
+	}
+
+	private static JsonObject parse(LocalHttpServer.Request request) {
+		return new JsonParser().parse(toString(getContent(request))).getAsJsonObject();
+	}
+
+	/**
+	 * Returns the request content, decompressed if it was sent compressed
+	 */
+	private static byte[] getContent(LocalHttpServer.Request request) {
+		String contentEncoding = request.getHeader("Content-Encoding");
+
+		if (contentEncoding == null || !contentEncoding.equalsIgnoreCase("gzip")) {
+			return request.getBody();
+		}
+
+		try {
+			GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(request.getBody()));
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int length;
+
+			while ((length = gzip.read(buffer)) != -1) {
+				content.write(buffer, 0, length);
+			}
+
+			return content.toByteArray();
+		} catch (IOException e) {
+			return request.getBody();
+		}
+	}
+
+	private static JsonObject copy(JsonObject item) {
+		return new JsonParser().parse(item.toString()).getAsJsonObject();
+	}
+
+	private static String toString(byte[] content) {
+		try {
+			return new String(content, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// this should never happen
+			return null;
+		}
+	}
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// this should never happen
+			return value;
+		}
+	}
+}
@@ -0,0 +1,254 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceQuery;
+import com.microsoft.windowsazure.mobileservices.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+import com.microsoft.windowsazure.mobileservices.TableQueryCallback;
+
+public class ProjectionTests extends InstrumentationTestCase {
+
+	String appUrl = "";
+	String appKey = "";
+
+	protected void setUp() throws Exception {
+		appUrl = "http://myapp.com/";
+		appKey = "qwerty";
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	/**
+	 * Entity whose fields are all references, so a default instance
+	 * serializes to an empty object unless nulls are serialized
+	 */
+	static class NamedItem {
+		String id;
+
+		String name;
+	}
+
+	/**
+	 * Returns the same content to every request
+	 */
+	private static class ContentFilter implements ServiceFilter {
+		private String mContent;
+
+		ContentFilter(String content) {
+			mContent = content;
+		}
+
+		@Override
+		public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+				ServiceFilterResponseCallback responseCallback) {
+			ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+			response.setContent(mContent);
+			responseCallback.onResponse(response, null);
+		}
+	}
+
+	private static <E> List<E> execute(MobileServiceQuery<TableQueryCallback<E>> query, final ResultsContainer container)
+			throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Object[] results = new Object[1];
+
+		query.execute(new TableQueryCallback<E>() {
+
+			@Override
+			public void onCompleted(List<E> result, int count, Exception exception, ServiceFilterResponse response) {
+				results[0] = result;
+				container.setException(exception);
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+
+		@SuppressWarnings("unchecked")
+		List<E> typedResults = (List<E>) results[0];
+		return typedResults;
+	}
+
+	public void testProjectionShouldOnlyBindTheSelectedFields() throws Throwable {
+		String content = "[{\"id\":\"1\",\"firstName\":\"John\",\"lastName\":\"Doe\",\"age\":30,\"address\":{\"street\":\"Main\",\"numbers\":[1,2]}},"
+				+ "{\"id\":\"2\",\"firstName\":null,\"lastName\":\"Roe\",\"age\":null}]";
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext())
+				.withFilter(new ContentFilter(content));
+		ResultsContainer container = new ResultsContainer();
+
+		List<PersonTestObjectWithStringId> people = execute(
+				client.getTable(PersonTestObjectWithStringId.class).select("firstName"), container);
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(2, people.size());
+		Assert.assertEquals("1", people.get(0).getId());
+		Assert.assertEquals("John", people.get(0).getFirstName());
+		Assert.assertNull(people.get(0).getLastName());
+		Assert.assertEquals(0, people.get(0).getAge());
+		Assert.assertEquals("2", people.get(1).getId());
+		Assert.assertNull(people.get(1).getFirstName());
+	}
+
+	public void testProjectionShouldBindTheSelectedFieldsOfInlineCountResults() throws Throwable {
+		String content = "{\"results\":[{\"id\":\"1\",\"firstName\":\"John\",\"lastName\":\"Doe\",\"age\":30}],\"count\":5}";
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext())
+				.withFilter(new ContentFilter(content));
+		ResultsContainer container = new ResultsContainer();
+
+		List<PersonTestObjectWithStringId> people = execute(
+				client.getTable(PersonTestObjectWithStringId.class).select("lastName", "age").includeInlineCount(), container);
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(1, people.size());
+		Assert.assertNull(people.get(0).getFirstName());
+		Assert.assertEquals("Doe", people.get(0).getLastName());
+		Assert.assertEquals(30, people.get(0).getAge());
+	}
+
+	public void testProjectionShouldStillBindTheSystemProperties() throws Throwable {
+		String content = "[{\"id\":\"an id\",\"__createdAt\":\"2000-01-01T07:59:59.000Z\",\"__version\":\"AAAAAAAAH2o=\",\"text\":\"hello\"}]";
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext())
+				.withFilter(new ContentFilter(content));
+		ResultsContainer container = new ResultsContainer();
+
+		List<AllSystemPropertiesType> items = execute(client.getTable(AllSystemPropertiesType.class).select("Id"), container);
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(1, items.size());
+		Assert.assertEquals("an id", items.get(0).Id);
+		Assert.assertEquals("AAAAAAAAH2o=", items.get(0).Version);
+		Assert.assertNotNull(items.get(0).CreatedAt);
+		Assert.assertNull(items.get(0).UpdatedAt);
+	}
+
+	public void testProjectionShouldUseTheRegisteredDeserializer() throws Throwable {
+		String content = "[{\"id\":\"1\",\"firstName\":\"John\",\"lastName\":\"Doe\",\"age\":30}]";
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext())
+				.withFilter(new ContentFilter(content));
+		client.registerDeserializer(PersonTestObjectWithStringId.class, new JsonDeserializer<PersonTestObjectWithStringId>() {
+
+			@Override
+			public PersonTestObjectWithStringId deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
+					throws JsonParseException {
+				return new PersonTestObjectWithStringId("Custom", "Person", 1);
+			}
+		});
+		ResultsContainer container = new ResultsContainer();
+
+		List<PersonTestObjectWithStringId> people = execute(
+				client.getTable(PersonTestObjectWithStringId.class).select("firstName"), container);
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(1, people.size());
+		Assert.assertEquals("Custom", people.get(0).getFirstName());
+		Assert.assertEquals("Person", people.get(0).getLastName());
+	}
+
+	public void testProjectionShouldFailWithInvalidValues() throws Throwable {
+		String content = "[{\"id\":\"1\",\"firstName\":\"John\",\"age\":\"thirty\"}]";
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext())
+				.withFilter(new ContentFilter(content));
+		ResultsContainer container = new ResultsContainer();
+
+		execute(client.getTable(PersonTestObjectWithStringId.class).select("age"), container);
+
+		// Asserts
+		Assert.assertNotNull(container.getException());
+	}
+
+	public void testProjectionShouldUseTheNamingPolicyOfTheGsonBuilder() throws Throwable {
+		String content = "[{\"Id\":\"1\",\"Name\":\"John\"}]";
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext())
+				.withFilter(new ContentFilter(content));
+		client.setGsonBuilder(new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE));
+		ResultsContainer container = new ResultsContainer();
+
+		List<NamedItem> items = execute(client.getTable(NamedItem.class).select("Name"), container);
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(1, items.size());
+		Assert.assertEquals("1", items.get(0).id);
+		Assert.assertEquals("John", items.get(0).name);
+	}
+
+	public void testProjectionShouldUseTheNamingPolicySetThroughGetGsonBuilder() throws Throwable {
+		String content = "[{\"Id\":\"1\",\"Name\":\"John\"}]";
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext())
+				.withFilter(new ContentFilter(content));
+		client.getGsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE);
+		ResultsContainer container = new ResultsContainer();
+
+		List<NamedItem> items = execute(client.getTable(NamedItem.class).select("Name"), container);
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(1, items.size());
+		Assert.assertEquals("1", items.get(0).id);
+		Assert.assertEquals("John", items.get(0).name);
+	}
+
+	public void testPlainFieldBindingShouldBeDisabledWhenTheGsonBuilderIsHandedOut() throws Throwable {
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+		Assert.assertTrue(client.isPlainFieldBindingEnabled());
+
+		client.getGsonBuilder();
+		Assert.assertFalse(client.isPlainFieldBindingEnabled());
+
+		client.setPlainFieldBindingEnabled(true);
+		Assert.assertTrue(client.isPlainFieldBindingEnabled());
+
+		client.setGsonBuilder(MobileServiceClient.createMobileServiceGsonBuilder());
+		Assert.assertFalse(client.isPlainFieldBindingEnabled());
+	}
+}
@@ -0,0 +1,347 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceQueryPager;
+import com.microsoft.windowsazure.mobileservices.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+import com.microsoft.windowsazure.mobileservices.TableJsonQueryCallback;
+import com.microsoft.windowsazure.mobileservices.TableQueryCallback;
+
+public class QueryPagerTests extends InstrumentationTestCase {
+	String appUrl = "";
+	String appKey = "";
+
+	protected void setUp() throws Exception {
+		appUrl = "http://myapp.com/";
+		appKey = "qwerty";
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	/**
+	 * Serves the rows with ids 1 to rowCount, honoring $top, $skip and an
+	 * "id gt" filter. Returns at most maxRows rows per request, like the
+	 * service does
+	 */
+	private static class PagingFilter implements ServiceFilter {
+		private int mRowCount;
+		private int mMaxRows;
+		private List<String> mUrls = new ArrayList<String>();
+		private CountDownLatch mSecondRequestLatch = new CountDownLatch(2);
+
+		PagingFilter(int rowCount) {
+			this(rowCount, Integer.MAX_VALUE);
+		}
+
+		PagingFilter(int rowCount, int maxRows) {
+			mRowCount = rowCount;
+			mMaxRows = maxRows;
+		}
+
+		@Override
+		public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+				ServiceFilterResponseCallback responseCallback) {
+			synchronized (mUrls) {
+				mUrls.add(request.getUrl());
+			}
+
+			Uri uri = Uri.parse(request.getUrl());
+			int top = Math.min(Integer.parseInt(uri.getQueryParameter("$top")), mMaxRows);
+			String skipValue = uri.getQueryParameter("$skip");
+			int skip = skipValue != null ? Integer.parseInt(skipValue) : 0;
+			String filter = getFilter(request.getUrl());
+			int firstId = 1;
+
+			if (filter != null && filter.startsWith("id gt ")) {
+				firstId = Integer.parseInt(filter.substring("id gt ".length()).trim()) + 1;
+			}
+
+			JsonArray rows = new JsonArray();
+			for (int id = firstId + skip; id <= mRowCount && rows.size() < top; id++) {
+				JsonObject row = new JsonObject();
+				row.addProperty("id", id);
+				row.addProperty("firstName", "John");
+				row.addProperty("lastName", "Doe");
+				row.addProperty("age", id);
+				rows.add(row);
+			}
+
+			ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+
+			if ("allpages".equals(uri.getQueryParameter("$inlinecount"))) {
+				JsonObject content = new JsonObject();
+				content.add("results", rows);
+				content.addProperty("count", mRowCount);
+				response.setContent(content.toString());
+			} else {
+				response.setContent(rows.toString());
+			}
+
+			mSecondRequestLatch.countDown();
+			responseCallback.onResponse(response, null);
+		}
+
+		List<String> getUrls() {
+			synchronized (mUrls) {
+				return new ArrayList<String>(mUrls);
+			}
+		}
+
+		boolean awaitSecondRequest() throws InterruptedException {
+			return mSecondRequestLatch.await(5, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Returns the decoded $filter of a query URL, or null
+	 */
+	private static String getFilter(String url) {
+		String filter = Uri.parse(url).getQueryParameter("$filter");
+		return filter != null ? filter.replace('+', ' ').trim() : null;
+	}
+
+	/**
+	 * Reads every page of a pager, recording the ids of the rows
+	 */
+	private static class PeopleCollector implements TableQueryCallback<PersonTestObject> {
+		private MobileServiceQueryPager<TableQueryCallback<PersonTestObject>> mPager;
+		private CountDownLatch mLatch;
+		List<Integer> mIds = new ArrayList<Integer>();
+		List<Integer> mPageSizes = new ArrayList<Integer>();
+		Exception mException;
+
+		PeopleCollector(MobileServiceQueryPager<TableQueryCallback<PersonTestObject>> pager, CountDownLatch latch) {
+			mPager = pager;
+			mLatch = latch;
+		}
+
+		@Override
+		public void onCompleted(List<PersonTestObject> result, int count, Exception exception, ServiceFilterResponse response) {
+			if (exception != null) {
+				mException = exception;
+				mLatch.countDown();
+				return;
+			}
+
+			mPageSizes.add(result.size());
+			for (PersonTestObject person : result) {
+				mIds.add(person.getId());
+			}
+
+			if (mPager.hasMorePages()) {
+				mPager.nextPage(this);
+			} else {
+				mLatch.countDown();
+			}
+		}
+	}
+
+	public void testPagerShouldDeliverAllThePagesInOrder() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		PagingFilter filter = new PagingFilter(25);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(filter);
+
+		MobileServiceQueryPager<TableQueryCallback<PersonTestObject>> pager = client.getTable(PersonTestObject.class).where().pages(10);
+		PeopleCollector collector = new PeopleCollector(pager, latch);
+
+		pager.nextPage(collector);
+		latch.await();
+
+		// Asserts
+		Assert.assertNull(collector.mException);
+		Assert.assertEquals(3, collector.mPageSizes.size());
+		Assert.assertEquals(10, collector.mPageSizes.get(0).intValue());
+		Assert.assertEquals(10, collector.mPageSizes.get(1).intValue());
+		Assert.assertEquals(5, collector.mPageSizes.get(2).intValue());
+
+		for (int i = 0; i < 25; i++) {
+			Assert.assertEquals(i + 1, collector.mIds.get(i).intValue());
+		}
+
+		Assert.assertFalse(pager.hasMorePages());
+		Assert.assertEquals(3, filter.getUrls().size());
+	}
+
+	public void testPagerShouldPrefetchTheNextPage() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+		final PagingFilter filter = new PagingFilter(25);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(filter);
+
+		MobileServiceQueryPager<TableJsonQueryCallback> pager = client.getTable("Person").where().pages(10).prefetchDepth(1);
+
+		pager.nextPage(new TableJsonQueryCallback() {
+
+			@Override
+			public void onCompleted(JsonElement result, int count, Exception exception, ServiceFilterResponse response) {
+				container.setJsonResult(result);
+				container.setException(exception);
+
+				try {
+					// The second page is requested before the caller asks
+					// for it
+					container.setOperationSucceded(filter.awaitSecondRequest());
+				} catch (InterruptedException e) {
+					container.setException(e);
+				}
+
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(10, container.getJsonResult().getAsJsonArray().size());
+		Assert.assertTrue(container.getOperationSucceded());
+		Assert.assertTrue(filter.getUrls().get(1).contains("$skip=10"));
+	}
+
+	public void testKeysetPagerShouldFilterByTheLastValueOfThePreviousPage() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		PagingFilter filter = new PagingFilter(25);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(filter);
+
+		MobileServiceQueryPager<TableQueryCallback<PersonTestObject>> pager = client.getTable(PersonTestObject.class).where().pages(10)
+				.keyset("id", QueryOrder.Ascending);
+		PeopleCollector collector = new PeopleCollector(pager, latch);
+
+		pager.nextPage(collector);
+		latch.await();
+
+		// Asserts
+		Assert.assertNull(collector.mException);
+		Assert.assertEquals(25, collector.mIds.size());
+
+		for (int i = 0; i < 25; i++) {
+			Assert.assertEquals(i + 1, collector.mIds.get(i).intValue());
+		}
+
+		List<String> urls = filter.getUrls();
+		Assert.assertEquals(3, urls.size());
+		Assert.assertNull(getFilter(urls.get(0)));
+		Assert.assertEquals("id gt 10", getFilter(urls.get(1)));
+		Assert.assertEquals("id gt 20", getFilter(urls.get(2)));
+		Assert.assertNull(Uri.parse(urls.get(1)).getQueryParameter("$skip"));
+	}
+
+	public void testPagerShouldNotReadMoreRowsThanTheQueryTop() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		PagingFilter filter = new PagingFilter(25);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(filter);
+
+		MobileServiceQueryPager<TableQueryCallback<PersonTestObject>> pager = client.getTable(PersonTestObject.class).top(15).skip(2)
+				.pages(10);
+		PeopleCollector collector = new PeopleCollector(pager, latch);
+
+		pager.nextPage(collector);
+		latch.await();
+
+		// Asserts
+		Assert.assertNull(collector.mException);
+		Assert.assertEquals(15, collector.mIds.size());
+		Assert.assertEquals(3, collector.mIds.get(0).intValue());
+		Assert.assertEquals(17, collector.mIds.get(14).intValue());
+		Assert.assertFalse(pager.hasMorePages());
+		Assert.assertEquals(2, filter.getUrls().size());
+	}
+
+	public void testPagerShouldNotEndOnAPageCutShortWhenTheTotalCountHasMoreRows() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		PagingFilter filter = new PagingFilter(25, 4);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(filter);
+
+		MobileServiceQueryPager<TableQueryCallback<PersonTestObject>> pager = client.getTable(PersonTestObject.class).includeInlineCount()
+				.pages(10);
+		PeopleCollector collector = new PeopleCollector(pager, latch);
+
+		pager.nextPage(collector);
+		latch.await();
+
+		// Asserts
+		Assert.assertNull(collector.mException);
+		Assert.assertEquals(3, collector.mPageSizes.size());
+		Assert.assertEquals(4, collector.mPageSizes.get(0).intValue());
+		Assert.assertFalse(pager.hasMorePages());
+		Assert.assertEquals(3, filter.getUrls().size());
+	}
+
+	public void testPagerConfigurationShouldNotChangeAfterPagingStarted() throws Throwable {
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext())
+				.withFilter(new PagingFilter(5));
+
+		MobileServiceQueryPager<TableJsonQueryCallback> pager = client.getTable("Person").where().pages(10);
+
+		pager.nextPage(new TableJsonQueryCallback() {
+
+			@Override
+			public void onCompleted(JsonElement result, int count, Exception exception, ServiceFilterResponse response) {
+			}
+		});
+
+		try {
+			pager.prefetchDepth(2);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// It's ok
+		}
+
+		try {
+			client.getTable("Person").where().pages(0);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// It's ok
+		}
+
+		try {
+			client.getTable("Person").where().pages(MobileServiceQueryPager.MAX_PAGE_SIZE + 1);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// It's ok
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import static com.microsoft.windowsazure.mobileservices.MobileServiceQueryOperations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.JsonElement;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.MobileServiceQuery;
+import com.microsoft.windowsazure.mobileservices.MobileServiceQueryTemplate;
+import com.microsoft.windowsazure.mobileservices.MobileServiceTable;
+import com.microsoft.windowsazure.mobileservices.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+import com.microsoft.windowsazure.mobileservices.TableJsonQueryCallback;
+import com.microsoft.windowsazure.mobileservices.TableQueryCallback;
+
+public class QueryTemplateTests extends InstrumentationTestCase {
+
+	String appUrl = "";
+	String appKey = "";
+
+	protected void setUp() throws Exception {
+		appUrl = "http://myapp.com/";
+		appKey = "qwerty";
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	/**
+	 * Records the request URLs and returns an empty array
+	 */
+	private static class UrlRecorder implements ServiceFilter {
+		List<String> mUrls = new ArrayList<String>();
+
+		@Override
+		public synchronized void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+				ServiceFilterResponseCallback responseCallback) {
+			mUrls.add(request.getUrl());
+
+			ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+			response.setContent("[]");
+			responseCallback.onResponse(response, null);
+		}
+	}
+
+	private static String getFilter(String url) {
+		String filter = Uri.parse(url).getQueryParameter("$filter");
+		return filter != null ? filter.replace('+', ' ').trim() : null;
+	}
+
+	private Exception execute(MobileServiceQueryTemplate<TableJsonQueryCallback> template) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Exception[] error = new Exception[1];
+
+		template.execute(new TableJsonQueryCallback() {
+
+			@Override
+			public void onCompleted(JsonElement result, int count, Exception exception, ServiceFilterResponse response) {
+				error[0] = exception;
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+		return error[0];
+	}
+
+	public void testCompiledQueryShouldHaveTheSameUrlAsTheQuery() throws Throwable {
+		UrlRecorder recorder = new UrlRecorder();
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(recorder);
+		MobileServiceJsonTable table = client.getTable("Items");
+
+		MobileServiceQuery<TableJsonQueryCallback> query = table.where().field("age").gt(5).and().startsWith("name", "J")
+				.orderBy("age", QueryOrder.Descending).top(10).skip(5);
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		query.execute(new TableJsonQueryCallback() {
+
+			@Override
+			public void onCompleted(JsonElement result, int count, Exception exception, ServiceFilterResponse response) {
+				latch.countDown();
+			}
+		});
+		latch.await();
+
+		Exception exception = execute(query.compile());
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals(2, recorder.mUrls.size());
+		Assert.assertEquals(recorder.mUrls.get(0), recorder.mUrls.get(1));
+		Assert.assertEquals("age gt (5) and startswith(name,'J')", getFilter(recorder.mUrls.get(0)));
+	}
+
+	public void testParametersShouldBeBoundToEachExecution() throws Throwable {
+		UrlRecorder recorder = new UrlRecorder();
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(recorder);
+		MobileServiceJsonTable table = client.getTable("Items");
+
+		MobileServiceQueryTemplate<TableJsonQueryCallback> itemsForUser = table.where().field("userId").eq().param("user").and()
+				.field("complete").eq().param("complete").or(field("sharedWith").eq().param("user")).compile();
+
+		execute(itemsForUser.bind("user", "O'Brien").bind("complete", false));
+		execute(itemsForUser.bind("user", 42).bind("complete", true));
+
+		// Asserts
+		Assert.assertEquals("userId eq 'O''Brien' and complete eq false or (sharedWith eq 'O''Brien')", getFilter(recorder.mUrls.get(0)));
+		Assert.assertEquals("userId eq 42 and complete eq true or (sharedWith eq 42)", getFilter(recorder.mUrls.get(1)));
+	}
+
+	public void testUnboundParameterShouldFail() throws Throwable {
+		UrlRecorder recorder = new UrlRecorder();
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(recorder);
+		MobileServiceJsonTable table = client.getTable("Items");
+
+		MobileServiceQuery<TableJsonQueryCallback> query = table.where().field("userId").eq().param("user");
+		Exception exception = execute(query.compile());
+
+		// Asserts
+		Assert.assertTrue(exception instanceof IllegalStateException);
+		Assert.assertEquals(0, recorder.mUrls.size());
+		Assert.assertEquals("userId eq @user", query.toString());
+
+		try {
+			query.compile().bind("other", 1);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// It's ok
+		}
+
+		try {
+			query.pages(10);
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			// It's ok
+		}
+	}
+
+	public void testTypedTemplateShouldExecute() throws Throwable {
+		UrlRecorder recorder = new UrlRecorder();
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(recorder);
+		MobileServiceTable<PersonTestObject> table = client.getTable(PersonTestObject.class);
+
+		MobileServiceQueryTemplate<TableQueryCallback<PersonTestObject>> template = table.where().field("age").ge().param("age").compile();
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+
+		template.bind("age", 21).execute(new TableQueryCallback<PersonTestObject>() {
+
+			@Override
+			public void onCompleted(List<PersonTestObject> result, int count, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+				latch.countDown();
+			}
+		});
+		latch.await();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals("age ge 21", getFilter(recorder.mUrls.get(0)));
+	}
+}
@@ -0,0 +1,184 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+import com.microsoft.windowsazure.mobileservices.TableJsonOperationCallback;
+
+public class RequestCoalescingTests extends InstrumentationTestCase {
+
+	LocalHttpServer server;
+
+	protected void setUp() throws Exception {
+		// Answer slowly, so concurrent requests overlap
+		server = new LocalHttpServer(new LocalHttpServer.Handler() {
+
+			@Override
+			public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+				try {
+					Thread.sleep(500);
+				} catch (InterruptedException e) {
+				}
+
+				return new LocalHttpServer.Response(200, "{\"id\":\"" + request.getPath().substring(request.getPath().lastIndexOf('/') + 1)
+						+ "\",\"name\":\"John\"}");
+			}
+		});
+		server.start();
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		server.stop();
+		super.tearDown();
+	}
+
+	private void lookUpConcurrently(final MobileServiceJsonTable table, final String[] ids, final ResultsContainer container,
+			final AtomicInteger successCount) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(ids.length);
+
+		runTestOnUiThread(new Runnable() {
+
+			@Override
+			public void run() {
+				for (final String id : ids) {
+					table.lookUp(id, new TableJsonOperationCallback() {
+
+						@Override
+						public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+							if (exception != null) {
+								container.setException(exception);
+							} else if (jsonObject.get("id").getAsString().equals(id)) {
+								successCount.incrementAndGet();
+							}
+
+							latch.countDown();
+						}
+					});
+				}
+			}
+		});
+
+		latch.await(10, TimeUnit.SECONDS);
+	}
+
+	public void testIdenticalConcurrentLookUpsShouldShareOneRequest() throws Throwable {
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		client.setRequestCoalescingEnabled(true);
+		ResultsContainer container = new ResultsContainer();
+		AtomicInteger successCount = new AtomicInteger();
+
+		lookUpConcurrently(client.getTable("MyTableName"), new String[] { "1", "1", "1", "1", "1" }, container, successCount);
+
+		client.close();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(5, successCount.get());
+		Assert.assertEquals(1, server.getRequestCount());
+		Assert.assertEquals(4, client.getCoalescedRequestCount());
+	}
+
+	public void testDifferentLookUpsShouldNotBeCoalesced() throws Throwable {
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		client.setRequestCoalescingEnabled(true);
+		ResultsContainer container = new ResultsContainer();
+		AtomicInteger successCount = new AtomicInteger();
+
+		lookUpConcurrently(client.getTable("MyTableName"), new String[] { "1", "2", "1", "2" }, container, successCount);
+
+		client.close();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(4, successCount.get());
+		Assert.assertEquals(2, server.getRequestCount());
+		Assert.assertEquals(2, client.getCoalescedRequestCount());
+	}
+
+	public void testLookUpsShouldNotBeCoalescedByDefault() throws Throwable {
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		Assert.assertFalse(client.isRequestCoalescingEnabled());
+		ResultsContainer container = new ResultsContainer();
+		AtomicInteger successCount = new AtomicInteger();
+
+		lookUpConcurrently(client.getTable("MyTableName"), new String[] { "1", "1", "1" }, container, successCount);
+
+		client.close();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(3, successCount.get());
+		Assert.assertEquals(3, server.getRequestCount());
+		Assert.assertEquals(0, client.getCoalescedRequestCount());
+	}
+
+	public void testAFailingCallbackShouldNotKeepTheOthersFromTheSharedResponse() throws Throwable {
+		final AtomicBoolean failed = new AtomicBoolean(false);
+
+		// The first callback invoked throws after handling the response
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext())
+				.withFilter(new ServiceFilter() {
+
+					@Override
+					public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+							final ServiceFilterResponseCallback responseCallback) {
+						nextServiceFilterCallback.onNext(request, new ServiceFilterResponseCallback() {
+
+							@Override
+							public void onResponse(ServiceFilterResponse response, Exception exception) {
+								responseCallback.onResponse(response, exception);
+
+								if (failed.compareAndSet(false, true)) {
+									throw new IllegalStateException();
+								}
+							}
+						});
+					}
+				});
+		client.setRequestCoalescingEnabled(true);
+		ResultsContainer container = new ResultsContainer();
+		AtomicInteger successCount = new AtomicInteger();
+
+		lookUpConcurrently(client.getTable("MyTableName"), new String[] { "1", "1", "1" }, container, successCount);
+
+		client.close();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(3, successCount.get());
+		Assert.assertEquals(1, server.getRequestCount());
+	}
+}
@@ -0,0 +1,215 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+import com.microsoft.windowsazure.mobileservices.TableJsonOperationCallback;
+
+public class RequestCompressionTests extends InstrumentationTestCase {
+
+	LocalHttpServer server;
+	List<LocalHttpServer.Request> requests;
+
+	protected void setUp() throws Exception {
+		requests = new ArrayList<LocalHttpServer.Request>();
+		server = new LocalHttpServer(new LocalHttpServer.Handler() {
+
+			@Override
+			public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+				synchronized (requests) {
+					requests.add(request);
+				}
+
+				return new LocalHttpServer.Response(200, "{\"id\":\"an id\"}");
+			}
+		});
+		server.start();
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		server.stop();
+		super.tearDown();
+	}
+
+	private static byte[] createContent(int length) {
+		StringBuilder sb = new StringBuilder("[");
+
+		while (sb.length() < length - 20) {
+			sb.append("{\"name\":\"John\"},");
+		}
+
+		sb.append("{\"name\":\"Doe\"}]");
+
+		return sb.toString().getBytes();
+	}
+
+	private static byte[] gunzip(byte[] content) throws IOException {
+		GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(content));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int length;
+
+		while ((length = in.read(buffer)) != -1) {
+			out.write(buffer, 0, length);
+		}
+
+		return out.toByteArray();
+	}
+
+	private Exception invokeApi(final MobileServiceClient client, final byte[] content) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+
+		runTestOnUiThread(new Runnable() {
+
+			@Override
+			public void run() {
+				client.invokeApi("upload", content, "POST", null, null, new ServiceFilterResponseCallback() {
+
+					@Override
+					public void onResponse(ServiceFilterResponse response, Exception exception) {
+						container.setException(exception);
+						latch.countDown();
+					}
+				});
+			}
+		});
+
+		latch.await();
+
+		return container.getException();
+	}
+
+	public void testContentAboveTheThresholdShouldBeCompressed() throws Throwable {
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		client.setRequestCompressionThreshold(1024);
+
+		byte[] content = createContent(64 * 1024);
+		Exception exception = invokeApi(client, content);
+		client.close();
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals(1, requests.size());
+
+		LocalHttpServer.Request request = requests.get(0);
+		Assert.assertEquals("gzip", request.getHeader("Content-Encoding"));
+		Assert.assertTrue(request.getBody().length < content.length);
+		Assert.assertEquals(new String(content), new String(gunzip(request.getBody())));
+	}
+
+	public void testContentBelowTheThresholdShouldNotBeCompressed() throws Throwable {
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		client.setRequestCompressionThreshold(1024);
+
+		byte[] content = createContent(512);
+		Exception exception = invokeApi(client, content);
+		client.close();
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals(1, requests.size());
+		Assert.assertNull(requests.get(0).getHeader("Content-Encoding"));
+		Assert.assertEquals(new String(content), new String(requests.get(0).getBody()));
+	}
+
+	public void testCompressionShouldBeDisabledByDefault() throws Throwable {
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+
+		byte[] content = createContent(64 * 1024);
+		Exception exception = invokeApi(client, content);
+		client.close();
+
+		// Asserts
+		Assert.assertEquals(-1, client.getRequestCompressionThreshold());
+		Assert.assertNull(exception);
+		Assert.assertNull(requests.get(0).getHeader("Content-Encoding"));
+		Assert.assertEquals(content.length, requests.get(0).getBody().length);
+	}
+
+	public void testWithRequestCompressionShouldOnlyCompressTheDerivedClientRequests() throws Throwable {
+		final MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		final MobileServiceClient compressingClient = client.withRequestCompression(0);
+		final ResultsContainer container = new ResultsContainer();
+
+		for (final MobileServiceClient c : new MobileServiceClient[] { compressingClient, client }) {
+			final CountDownLatch latch = new CountDownLatch(1);
+
+			runTestOnUiThread(new Runnable() {
+
+				@Override
+				public void run() {
+					JsonObject item = new JsonObject();
+					item.addProperty("name", "John");
+
+					c.getTable("MyTableName").insert(item, new TableJsonOperationCallback() {
+
+						@Override
+						public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+							if (exception != null) {
+								container.setException(exception);
+							}
+
+							latch.countDown();
+						}
+					});
+				}
+			});
+
+			latch.await();
+		}
+
+		client.close();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(2, requests.size());
+		Assert.assertEquals("gzip", requests.get(0).getHeader("Content-Encoding"));
+		Assert.assertEquals("{\"name\":\"John\"}", new String(gunzip(requests.get(0).getBody()), "UTF-8"));
+		Assert.assertNull(requests.get(1).getHeader("Content-Encoding"));
+		Assert.assertEquals("{\"name\":\"John\"}", new String(requests.get(1).getBody(), "UTF-8"));
+	}
+
+	public void testInvalidThresholdShouldThrow() throws Throwable {
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+
+		try {
+			client.setRequestCompressionThreshold(-2);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// It's ok
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import org.apache.http.Header;
+
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.MobileServiceApplication;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+import com.microsoft.windowsazure.mobileservices.TableJsonOperationCallback;
+
+public class RequestHeadersTests extends InstrumentationTestCase {
+
+	/**
+	 * Keeps the headers of the last request and returns a response without
+	 * going to the network
+	 */
+	private static class HeaderRecorder implements ServiceFilter {
+		Header[] mHeaders;
+
+		@Override
+		public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+				ServiceFilterResponseCallback responseCallback) {
+			mHeaders = request.getHeaders();
+
+			ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+			response.setContent("{\"id\":\"an id\"}");
+			responseCallback.onResponse(response, null);
+		}
+	}
+
+	private MobileServiceClient createClient(HeaderRecorder recorder) throws Exception {
+		MobileServiceClient client = new MobileServiceClient("http://myapp.com/", "qwerty", getInstrumentation().getTargetContext())
+				.withFilter(recorder);
+		client.setExecutor(new DirectExecutor());
+		client.setCallbackExecutor(new DirectExecutor());
+
+		return client;
+	}
+
+	private static void lookUp(MobileServiceJsonTable table) {
+		table.lookUp("an id", new TableJsonOperationCallback() {
+
+			@Override
+			public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+				Assert.assertNull(exception);
+			}
+		});
+	}
+
+	private static List<String> getValues(Header[] headers, String name) {
+		List<String> values = new ArrayList<String>();
+
+		for (Header header : headers) {
+			if (header.getName().equalsIgnoreCase(name)) {
+				values.add(header.getValue());
+			}
+		}
+
+		return values;
+	}
+
+	public void testRequestsShouldHaveTheClientHeaders() throws Exception {
+		HeaderRecorder recorder = new HeaderRecorder();
+		MobileServiceClient client = createClient(recorder);
+
+		lookUp(client.getTable("MyTableName"));
+
+		// Asserts
+		Assert.assertEquals(1, getValues(recorder.mHeaders, "User-Agent").size());
+		Assert.assertTrue(getValues(recorder.mHeaders, "User-Agent").get(0).startsWith("ZUMO/1.0"));
+		Assert.assertEquals("qwerty", getValues(recorder.mHeaders, "X-ZUMO-APPLICATION").get(0));
+		Assert.assertEquals(MobileServiceApplication.getInstallationId(getInstrumentation().getTargetContext()),
+				getValues(recorder.mHeaders, "X-ZUMO-INSTALLATION-ID").get(0));
+		Assert.assertEquals("application/json", getValues(recorder.mHeaders, "Accept").get(0));
+		Assert.assertEquals("gzip", getValues(recorder.mHeaders, "Accept-Encoding").get(0));
+	}
+
+	public void testHeadersShouldBeSentOncePerRequest() throws Exception {
+		HeaderRecorder recorder = new HeaderRecorder();
+		MobileServiceClient client = createClient(recorder);
+		MobileServiceJsonTable table = client.getTable("MyTableName");
+
+		lookUp(table);
+		lookUp(table);
+
+		// Asserts
+		Assert.assertEquals(1, getValues(recorder.mHeaders, "X-ZUMO-INSTALLATION-ID").size());
+		Assert.assertEquals(1, getValues(recorder.mHeaders, "Accept").size());
+	}
+
+	public void testInstallationIdShouldBeTheSameForEveryCall() {
+		String installationId = MobileServiceApplication.getInstallationId(getInstrumentation().getTargetContext());
+
+		// Asserts
+		Assert.assertNotNull(installationId);
+		Assert.assertSame(installationId, MobileServiceApplication.getInstallationId(getInstrumentation().getTargetContext()));
+	}
+
+	public void testAcceptHeaderShouldBeMatchedRegardlessCase() throws Throwable {
+		final List<String> accepts = new ArrayList<String>();
+		MobileServiceClient client = new MobileServiceClient("http://myapp.com/", "qwerty", getInstrumentation().getTargetContext())
+				.withFilter(new ServiceFilter() {
+
+					@Override
+					public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+							ServiceFilterResponseCallback responseCallback) {
+						accepts.addAll(getValues(request.getHeaders(), "Accept"));
+
+						ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+						response.setContent("{}");
+						responseCallback.onResponse(response, null);
+					}
+				});
+		client.setExecutor(new DirectExecutor());
+		client.setCallbackExecutor(new DirectExecutor());
+
+		List<android.util.Pair<String, String>> headers = new ArrayList<android.util.Pair<String, String>>();
+		headers.add(new android.util.Pair<String, String>("accept", "text/csv"));
+
+		client.invokeApi("export", null, "GET", headers, null, new ServiceFilterResponseCallback() {
+
+			@Override
+			public void onResponse(ServiceFilterResponse response, Exception exception) {
+				Assert.assertNull(exception);
+			}
+		});
+
+		// Asserts
+		Assert.assertEquals(1, accepts.size());
+		Assert.assertEquals("text/csv", accepts.get(0));
+	}
+}
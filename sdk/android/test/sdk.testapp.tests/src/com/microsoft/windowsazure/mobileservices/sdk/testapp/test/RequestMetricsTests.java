@@ -0,0 +1,246 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.MobileServiceMetricsHistogram;
+import com.microsoft.windowsazure.mobileservices.MobileServiceRequestMetrics;
+import com.microsoft.windowsazure.mobileservices.MobileServiceRequestMetricsListener;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+import com.microsoft.windowsazure.mobileservices.TableJsonOperationCallback;
+
+public class RequestMetricsTests extends InstrumentationTestCase {
+
+	LocalHttpServer server;
+	LocalHttpServer.Response nextResponse;
+
+	protected void setUp() throws Exception {
+		server = new LocalHttpServer(new LocalHttpServer.Handler() {
+
+			@Override
+			public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+				return nextResponse;
+			}
+		});
+		server.start();
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		server.stop();
+		super.tearDown();
+	}
+
+	/**
+	 * Keeps the reported metrics
+	 */
+	private static class MetricsRecorder implements MobileServiceRequestMetricsListener {
+		List<MobileServiceRequestMetrics> mMetrics = new ArrayList<MobileServiceRequestMetrics>();
+
+		@Override
+		public synchronized void onRequestCompleted(MobileServiceRequestMetrics metrics) {
+			mMetrics.add(metrics);
+		}
+	}
+
+	private Exception lookUp(final MobileServiceJsonTable table) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+
+		runTestOnUiThread(new Runnable() {
+
+			@Override
+			public void run() {
+				table.lookUp("an id", new TableJsonOperationCallback() {
+
+					@Override
+					public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+						container.setException(exception);
+						latch.countDown();
+					}
+				});
+			}
+		});
+
+		latch.await();
+
+		return container.getException();
+	}
+
+	private Exception invokeApi(final MobileServiceClient client) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+
+		runTestOnUiThread(new Runnable() {
+
+			@Override
+			public void run() {
+				client.invokeApi("export", "{}".getBytes(), "POST", null, null, new ServiceFilterResponseCallback() {
+
+					@Override
+					public void onResponse(ServiceFilterResponse response, Exception exception) {
+						container.setException(exception);
+						latch.countDown();
+					}
+				});
+			}
+		});
+
+		latch.await();
+
+		return container.getException();
+	}
+
+	private static byte[] gzip(String content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(content.getBytes("UTF-8"));
+		gzip.close();
+
+		return out.toByteArray();
+	}
+
+	public void testTableRequestShouldReportMetrics() throws Throwable {
+		String content = "{\"id\":\"an id\",\"name\":\"John\"}";
+		nextResponse = new LocalHttpServer.Response(200, content);
+
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		MetricsRecorder recorder = new MetricsRecorder();
+		client.setRequestMetricsListener(recorder);
+
+		Exception exception = lookUp(client.getTable("MyTableName"));
+		client.close();
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals(1, recorder.mMetrics.size());
+
+		MobileServiceRequestMetrics metrics = recorder.mMetrics.get(0);
+		Assert.assertEquals("GET", metrics.getMethod());
+		Assert.assertEquals("tables/MyTableName", metrics.getEndpoint());
+		Assert.assertEquals(200, metrics.getStatusCode());
+		Assert.assertTrue(metrics.isSuccessful());
+		Assert.assertEquals(1, metrics.getAttemptCount());
+		Assert.assertEquals(content.length(), metrics.getResponseBytes());
+		Assert.assertEquals(content.length(), metrics.getResponseWireBytes());
+		Assert.assertTrue(metrics.getQueueTime() >= 0);
+		Assert.assertTrue(metrics.getTimeToHeaders() > 0);
+		Assert.assertTrue(metrics.getParseTime() >= 0);
+		Assert.assertTrue(metrics.getTotalTime() >= metrics.getTimeToHeaders() + metrics.getBodyTime() + metrics.getParseTime());
+	}
+
+	public void testGzippedResponseShouldReportTheCompressionRatio() throws Throwable {
+		StringBuilder content = new StringBuilder();
+
+		for (int i = 0; i < 1000; i++) {
+			content.append("{\"name\":\"John\"}");
+		}
+
+		nextResponse = new LocalHttpServer.Response();
+		nextResponse.setHeader("Content-Encoding", "gzip");
+		nextResponse.setBody(gzip(content.toString()));
+
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		MetricsRecorder recorder = new MetricsRecorder();
+		client.setRequestMetricsListener(recorder);
+
+		Exception exception = invokeApi(client);
+		client.close();
+
+		// Asserts
+		Assert.assertNull(exception);
+
+		MobileServiceRequestMetrics metrics = recorder.mMetrics.get(0);
+		Assert.assertEquals("api/export", metrics.getEndpoint());
+		Assert.assertEquals(2, metrics.getRequestBytes());
+		Assert.assertEquals(content.length(), metrics.getResponseBytes());
+		Assert.assertEquals(gzip(content.toString()).length, metrics.getResponseWireBytes());
+		Assert.assertTrue(metrics.getResponseCompressionRatio() > 1);
+	}
+
+	public void testFailedRequestShouldReportMetrics() throws Throwable {
+		nextResponse = new LocalHttpServer.Response(500, "{\"error\":\"failed\"}");
+
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		MetricsRecorder recorder = new MetricsRecorder();
+		client.setRequestMetricsListener(recorder);
+
+		Exception exception = lookUp(client.getTable("MyTableName"));
+		client.close();
+
+		// Asserts
+		Assert.assertNotNull(exception);
+		Assert.assertEquals(500, recorder.mMetrics.get(0).getStatusCode());
+		Assert.assertFalse(recorder.mMetrics.get(0).isSuccessful());
+	}
+
+	public void testHistogramShouldAggregateTheRequestsPerEndpoint() throws Throwable {
+		nextResponse = new LocalHttpServer.Response(200, "{\"id\":\"an id\"}");
+
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		MobileServiceMetricsHistogram histogram = new MobileServiceMetricsHistogram();
+		client.setRequestMetricsListener(histogram);
+
+		for (int i = 0; i < 20; i++) {
+			lookUp(client.getTable("MyTableName"));
+		}
+
+		invokeApi(client);
+		client.close();
+
+		// Asserts
+		Assert.assertEquals(2, histogram.getEndpoints().size());
+		Assert.assertEquals(20, histogram.getCount("GET tables/MyTableName"));
+		Assert.assertEquals(1, histogram.getCount("POST api/export"));
+
+		double p50 = histogram.getPercentile("GET tables/MyTableName", 50);
+		double p95 = histogram.getPercentile("GET tables/MyTableName", 95);
+		double p99 = histogram.getPercentile("GET tables/MyTableName", 99);
+		Assert.assertTrue(p50 > 0);
+		Assert.assertTrue(p50 <= p95);
+		Assert.assertTrue(p95 <= p99);
+		Assert.assertTrue(histogram.dump().contains("GET tables/MyTableName count=20"));
+
+		histogram.reset();
+		Assert.assertEquals(0, histogram.getEndpoints().size());
+	}
+
+	public void testDerivedClientsShouldShareTheListener() throws Throwable {
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		MetricsRecorder recorder = new MetricsRecorder();
+		client.setRequestMetricsListener(recorder);
+
+		// Asserts
+		Assert.assertSame(recorder, client.withFilter(new EchoFilter()).getRequestMetricsListener());
+	}
+}
@@ -0,0 +1,72 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import org.apache.http.Header;
+
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+
+/**
+ * Keeps the last request and answers it with the configured response
+ */
+class RequestRecorder implements ServiceFilter {
+	ServiceFilterRequest mRequest;
+	String mContent;
+	int mStatusCode = 200;
+	String mResponseContent;
+	Header[] mResponseHeaders = new Header[0];
+
+	/**
+	 * Returns the value of a request header, or null if it isn't set
+	 */
+	static String getHeader(ServiceFilterRequest request, String name) {
+		for (Header header : request.getHeaders()) {
+			if (header.getName().equalsIgnoreCase(name)) {
+				return header.getValue();
+			}
+		}
+
+		return null;
+	}
+
+	@Override
+	public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+			ServiceFilterResponseCallback responseCallback) {
+		mRequest = request;
+		mContent = request.getContent();
+
+		ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+		response.setStatus(new StatusLineMock(mStatusCode));
+		response.setContent(mResponseContent);
+		response.setHeaders(mResponseHeaders);
+
+		if (mStatusCode < 300) {
+			responseCallback.onResponse(response, null);
+		} else {
+			// Errors are wrapped as MobileServiceConnection does
+			responseCallback.onResponse(response, new MobileServiceException("Error while processing request.", new MobileServiceException(
+					"Error " + mStatusCode)));
+		}
+	}
+}
@@ -0,0 +1,208 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.MobileServiceResponseCache;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.TableJsonOperationCallback;
+
+public class ResponseCacheTests extends InstrumentationTestCase {
+
+	LocalHttpServer server;
+	List<String> ifNoneMatchHeaders;
+
+	protected void setUp() throws Exception {
+		ifNoneMatchHeaders = Collections.synchronizedList(new ArrayList<String>());
+
+		// Answer 304 when the client sends the current ETag of the row
+		server = new LocalHttpServer(new LocalHttpServer.Handler() {
+
+			@Override
+			public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+				if (request.getMethod().equals("GET")) {
+					String ifNoneMatch = request.getHeader("If-None-Match");
+					ifNoneMatchHeaders.add(ifNoneMatch);
+
+					if ("\"AAAAAAAAB9E=\"".equals(ifNoneMatch)) {
+						LocalHttpServer.Response response = new LocalHttpServer.Response(304, null);
+						response.setHeader("ETag", "\"AAAAAAAAB9E=\"");
+						return response;
+					}
+				}
+
+				LocalHttpServer.Response response = new LocalHttpServer.Response(200, "{\"id\":\"an id\",\"name\":\"John\",\"__version\":\"AAAAAAAAB9E=\"}");
+				response.setHeader("ETag", "\"AAAAAAAAB9E=\"");
+				return response;
+			}
+		});
+		server.start();
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		server.stop();
+		super.tearDown();
+	}
+
+	private JsonObject lookUp(final MobileServiceJsonTable table, final ResultsContainer container) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		runTestOnUiThread(new Runnable() {
+
+			@Override
+			public void run() {
+				table.lookUp("an id", new TableJsonOperationCallback() {
+
+					@Override
+					public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+						container.setJsonResult(jsonObject);
+						container.setException(exception);
+						latch.countDown();
+					}
+				});
+			}
+		});
+
+		latch.await();
+
+		return container.getJsonResult() != null ? container.getJsonResult().getAsJsonObject() : null;
+	}
+
+	public void testLookUpShouldBeServedFromCacheWhenNotModified() throws Throwable {
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		MobileServiceResponseCache cache = new MobileServiceResponseCache(64 * 1024);
+		client.setResponseCache(cache);
+
+		MobileServiceJsonTable table = client.getTable("MyTableName");
+		ResultsContainer container = new ResultsContainer();
+
+		JsonObject first = lookUp(table, container);
+		JsonObject second = lookUp(table, container);
+
+		client.close();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals("John", first.get("name").getAsString());
+		Assert.assertEquals("John", second.get("name").getAsString());
+		Assert.assertEquals("AAAAAAAAB9E=", second.get("__version").getAsString());
+		Assert.assertNull(ifNoneMatchHeaders.get(0));
+		Assert.assertEquals("\"AAAAAAAAB9E=\"", ifNoneMatchHeaders.get(1));
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(1, cache.getMissCount());
+	}
+
+	public void testUpdateShouldInvalidateTheCachedRow() throws Throwable {
+		final MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		client.setResponseCache(new MobileServiceResponseCache(64 * 1024));
+
+		final MobileServiceJsonTable table = client.getTable("MyTableName");
+		final ResultsContainer container = new ResultsContainer();
+
+		lookUp(table, container);
+
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		runTestOnUiThread(new Runnable() {
+
+			@Override
+			public void run() {
+				JsonObject person = new JsonObject();
+				person.addProperty("id", "an id");
+				person.addProperty("name", "John");
+
+				table.update(person, new TableJsonOperationCallback() {
+
+					@Override
+					public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+						container.setException(exception);
+						latch.countDown();
+					}
+				});
+			}
+		});
+
+		latch.await();
+
+		lookUp(table, container);
+
+		client.close();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(2, ifNoneMatchHeaders.size());
+		Assert.assertNull(ifNoneMatchHeaders.get(1));
+	}
+
+	public void testDiskCacheShouldSurviveANewCacheInstance() throws Throwable {
+		File directory = new File(getInstrumentation().getTargetContext().getCacheDir(), "response-cache-tests");
+
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		MobileServiceResponseCache cache = new MobileServiceResponseCache(64 * 1024, directory, 64 * 1024);
+		cache.clear();
+		client.setResponseCache(cache);
+
+		ResultsContainer container = new ResultsContainer();
+		lookUp(client.getTable("MyTableName"), container);
+
+		// A cache without memory tier only finds the response on disk
+		MobileServiceResponseCache diskCache = new MobileServiceResponseCache(0, directory, 64 * 1024);
+		client.setResponseCache(diskCache);
+
+		JsonObject result = lookUp(client.getTable("MyTableName"), container);
+
+		diskCache.clear();
+		client.close();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals("John", result.get("name").getAsString());
+		Assert.assertEquals("\"AAAAAAAAB9E=\"", ifNoneMatchHeaders.get(1));
+		Assert.assertEquals(1, diskCache.getHitCount());
+	}
+
+	public void testMemoryCacheShouldStayWithinItsSize() throws Throwable {
+		MobileServiceResponseCache cache = new MobileServiceResponseCache(100);
+
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		client.setResponseCache(cache);
+
+		ResultsContainer container = new ResultsContainer();
+		lookUp(client.getTable("MyTableName"), container);
+
+		client.close();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertTrue(cache.getMemorySize() <= 100);
+	}
+}
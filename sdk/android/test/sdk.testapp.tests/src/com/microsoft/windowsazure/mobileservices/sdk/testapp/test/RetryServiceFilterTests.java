@@ -0,0 +1,303 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.RetryServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+import com.microsoft.windowsazure.mobileservices.TableJsonOperationCallback;
+
+public class RetryServiceFilterTests extends InstrumentationTestCase {
+	String appUrl = "";
+	String appKey = "";
+
+	protected void setUp() throws Exception {
+		appUrl = "http://myapp.com/";
+		appKey = "qwerty";
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+	}
+
+	/**
+	 * Fails the first requests with a status code, then succeeds
+	 */
+	private static class FailingFilter implements ServiceFilter {
+		private int mFailures;
+		private int mStatusCode;
+		private String mRetryAfter;
+		AtomicInteger mRequestCount = new AtomicInteger();
+
+		FailingFilter(int failures, int statusCode, String retryAfter) {
+			mFailures = failures;
+			mStatusCode = statusCode;
+			mRetryAfter = retryAfter;
+		}
+
+		@Override
+		public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+				ServiceFilterResponseCallback responseCallback) {
+			ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+
+			if (mRequestCount.incrementAndGet() <= mFailures) {
+				response.setStatus(new StatusLineMock(mStatusCode));
+				response.setContent("{\"error\":\"failure\"}");
+
+				if (mRetryAfter != null) {
+					response.setHeaders(new Header[] { new BasicHeader("Retry-After", mRetryAfter) });
+				}
+
+				responseCallback.onResponse(response, new MobileServiceException("Error while processing request."));
+			} else {
+				response.setContent("{\"id\":\"an id\",\"name\":\"John\"}");
+				responseCallback.onResponse(response, null);
+			}
+		}
+	}
+
+	private Exception lookUp(MobileServiceClient client) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+
+		client.getTable("MyTableName").lookUp("an id", new TableJsonOperationCallback() {
+
+			@Override
+			public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+
+		return container.getException();
+	}
+
+	public void testGetShouldBeRetriedUntilItSucceeds() throws Throwable {
+		FailingFilter failingFilter = new FailingFilter(2, 503, null);
+		RetryServiceFilter retryFilter = new RetryServiceFilter(3, 10, 100);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+		client = client.withFilter(failingFilter).withFilter(retryFilter);
+
+		Exception exception = lookUp(client);
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals(3, failingFilter.mRequestCount.get());
+		Assert.assertEquals(2, retryFilter.getRetryCount());
+	}
+
+	public void testGetShouldFailAfterTheMaximumRetries() throws Throwable {
+		FailingFilter failingFilter = new FailingFilter(10, 500, null);
+		RetryServiceFilter retryFilter = new RetryServiceFilter(2, 10, 100);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+		client = client.withFilter(failingFilter).withFilter(retryFilter);
+
+		Exception exception = lookUp(client);
+
+		// Asserts
+		Assert.assertNotNull(exception);
+		Assert.assertEquals(3, failingFilter.mRequestCount.get());
+	}
+
+	public void testInsertShouldNotBeRetried() throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+		FailingFilter failingFilter = new FailingFilter(1, 503, null);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+		client = client.withFilter(failingFilter).withFilter(new RetryServiceFilter(3, 10, 100));
+
+		JsonObject person = new JsonObject();
+		person.addProperty("name", "John");
+
+		client.getTable("MyTableName").insert(person, new TableJsonOperationCallback() {
+
+			@Override
+			public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+
+		// Asserts
+		Assert.assertNotNull(container.getException());
+		Assert.assertEquals(1, failingFilter.mRequestCount.get());
+	}
+
+	public void testClientErrorsShouldNotBeRetried() throws Throwable {
+		FailingFilter failingFilter = new FailingFilter(1, 404, null);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+		client = client.withFilter(failingFilter).withFilter(new RetryServiceFilter(3, 10, 100));
+
+		Exception exception = lookUp(client);
+
+		// Asserts
+		Assert.assertNotNull(exception);
+		Assert.assertEquals(1, failingFilter.mRequestCount.get());
+	}
+
+	public void testRetryAfterShouldBeHonored() throws Throwable {
+		FailingFilter failingFilter = new FailingFilter(1, 503, "1");
+		RetryServiceFilter retryFilter = new RetryServiceFilter(3, 10, 5000);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+		client = client.withFilter(failingFilter).withFilter(retryFilter);
+
+		long start = System.currentTimeMillis();
+		Exception exception = lookUp(client);
+		long elapsed = System.currentTimeMillis() - start;
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals(2, failingFilter.mRequestCount.get());
+		Assert.assertTrue(elapsed >= 1000);
+	}
+
+	public void testRetryAfterLongerThanTheMaximumDelayShouldNotBeRetried() throws Throwable {
+		FailingFilter failingFilter = new FailingFilter(1, 503, "120");
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+		client = client.withFilter(failingFilter).withFilter(new RetryServiceFilter(3, 10, 5000));
+
+		Exception exception = lookUp(client);
+
+		// Asserts
+		Assert.assertNotNull(exception);
+		Assert.assertEquals(1, failingFilter.mRequestCount.get());
+	}
+
+	public void testRetryBudgetShouldLimitTheRetries() throws Throwable {
+		FailingFilter failingFilter = new FailingFilter(100, 503, null);
+		RetryServiceFilter retryFilter = new RetryServiceFilter(3, 10, 100).setRetryBudget(2, 0);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+		client = client.withFilter(failingFilter).withFilter(retryFilter);
+
+		lookUp(client);
+		lookUp(client);
+
+		// Asserts
+		Assert.assertEquals(2, retryFilter.getRetryCount());
+		Assert.assertEquals(4, failingFilter.mRequestCount.get());
+	}
+
+	public void testRetryBudgetShouldBeSharedByTheClient() throws Throwable {
+		FailingFilter failingFilter = new FailingFilter(100, 503, null);
+		RetryServiceFilter firstRetryFilter = new RetryServiceFilter(3, 10, 100).setRetryBudget(2, 0);
+		RetryServiceFilter secondRetryFilter = new RetryServiceFilter(3, 10, 100).setRetryBudget(2, 0);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+		client = client.withFilter(failingFilter);
+
+		lookUp(client.withFilter(firstRetryFilter));
+		lookUp(client.withFilter(secondRetryFilter));
+
+		// Asserts
+		Assert.assertEquals(2, firstRetryFilter.getRetryCount());
+		Assert.assertEquals(0, secondRetryFilter.getRetryCount());
+		Assert.assertEquals(4, failingFilter.mRequestCount.get());
+	}
+
+	public void testRetriesShouldRunOnTheExecutorOfTheClient() throws Throwable {
+		final AtomicInteger executionCount = new AtomicInteger();
+		FailingFilter failingFilter = new FailingFilter(2, 503, null);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+		client = client.withFilter(failingFilter).withFilter(new RetryServiceFilter(3, 10, 100));
+		client.setExecutor(new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				executionCount.incrementAndGet();
+				new Thread(command).start();
+			}
+		});
+
+		Exception exception = lookUp(client);
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals(3, failingFilter.mRequestCount.get());
+		// The request and its two retries
+		Assert.assertEquals(3, executionCount.get());
+	}
+
+	public void testGetShouldBeRetriedWhenTheConnectionIsResetWhileReadingTheContent() throws Throwable {
+		final AtomicInteger requestCount = new AtomicInteger();
+
+		LocalHttpServer server = new LocalHttpServer(new LocalHttpServer.Handler() {
+
+			@Override
+			public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+				LocalHttpServer.Response response = new LocalHttpServer.Response(200, "{\"id\":\"an id\",\"name\":\"John\"}");
+
+				if (requestCount.incrementAndGet() == 1) {
+					response.setSentBodyLength(5);
+				}
+
+				return response;
+			}
+		});
+		server.start();
+
+		try {
+			RetryServiceFilter retryFilter = new RetryServiceFilter(3, 10, 100);
+
+			MobileServiceClient client = new MobileServiceClient(server.getUrl(), appKey, getInstrumentation().getTargetContext());
+			client = client.withFilter(retryFilter);
+
+			Exception exception = lookUp(client);
+
+			// Asserts
+			Assert.assertNull(exception);
+			Assert.assertEquals(2, requestCount.get());
+			Assert.assertEquals(1, retryFilter.getRetryCount());
+
+			client.close();
+		} finally {
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.RequestContentWriter;
+import com.microsoft.windowsazure.mobileservices.RetryServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+
+public class StreamingRequestTests extends InstrumentationTestCase {
+
+	LocalHttpServer server;
+	List<LocalHttpServer.Request> requests;
+	volatile int statusCode;
+
+	protected void setUp() throws Exception {
+		requests = new ArrayList<LocalHttpServer.Request>();
+		statusCode = 200;
+		server = new LocalHttpServer(new LocalHttpServer.Handler() {
+
+			@Override
+			public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+				synchronized (requests) {
+					requests.add(request);
+				}
+
+				return new LocalHttpServer.Response(statusCode, "{}");
+			}
+		});
+		server.start();
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		server.stop();
+		super.tearDown();
+	}
+
+	/**
+	 * Writes the same line a number of times
+	 */
+	private static class LineWriter implements RequestContentWriter {
+		private int mLines;
+		int mCalls;
+
+		LineWriter(int lines) {
+			mLines = lines;
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			mCalls++;
+
+			for (int i = 0; i < mLines; i++) {
+				out.write("{\"name\":\"John\"}\n".getBytes("UTF-8"));
+			}
+		}
+	}
+
+	private static String lines(int count) {
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < count; i++) {
+			sb.append("{\"name\":\"John\"}\n");
+		}
+
+		return sb.toString();
+	}
+
+	private interface Invocation {
+		void invoke(ServiceFilterResponseCallback callback);
+	}
+
+	private Exception invoke(final Invocation invocation) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+
+		runTestOnUiThread(new Runnable() {
+
+			@Override
+			public void run() {
+				invocation.invoke(new ServiceFilterResponseCallback() {
+
+					@Override
+					public void onResponse(ServiceFilterResponse response, Exception exception) {
+						container.setException(exception);
+						latch.countDown();
+					}
+				});
+			}
+		});
+
+		latch.await();
+
+		return container.getException();
+	}
+
+	public void testStreamWithKnownLengthShouldBeSent() throws Throwable {
+		final MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		final byte[] content = lines(1000).getBytes("UTF-8");
+
+		Exception exception = invoke(new Invocation() {
+
+			@Override
+			public void invoke(ServiceFilterResponseCallback callback) {
+				InputStream stream = new ByteArrayInputStream(content);
+				client.invokeApi("upload", stream, content.length, "POST", null, null, callback);
+			}
+		});
+		client.close();
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals(1, requests.size());
+		Assert.assertEquals(String.valueOf(content.length), requests.get(0).getHeader("Content-Length"));
+		Assert.assertEquals(new String(content, "UTF-8"), new String(requests.get(0).getBody(), "UTF-8"));
+	}
+
+	public void testWriterWithUnknownLengthShouldBeChunked() throws Throwable {
+		final MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		final LineWriter writer = new LineWriter(1000);
+
+		Exception exception = invoke(new Invocation() {
+
+			@Override
+			public void invoke(ServiceFilterResponseCallback callback) {
+				client.invokeApi("upload", writer, -1, "PUT", null, null, callback);
+			}
+		});
+		client.close();
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals(1, writer.mCalls);
+		Assert.assertEquals("chunked", requests.get(0).getHeader("Transfer-Encoding"));
+		Assert.assertEquals(lines(1000), new String(requests.get(0).getBody(), "UTF-8"));
+	}
+
+	public void testFilterShouldReadTheStreamedContent() throws Throwable {
+		final List<String> filteredContents = new ArrayList<String>();
+		final MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext())
+				.withFilter(new ServiceFilter() {
+
+					@Override
+					public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+							ServiceFilterResponseCallback responseCallback) {
+						filteredContents.add(request.getContent());
+						nextServiceFilterCallback.onNext(request, responseCallback);
+					}
+				});
+		final byte[] content = lines(10).getBytes("UTF-8");
+
+		Exception exception = invoke(new Invocation() {
+
+			@Override
+			public void invoke(ServiceFilterResponseCallback callback) {
+				client.invokeApi("upload", new ByteArrayInputStream(content), -1, "POST", null, null, callback);
+			}
+		});
+		client.close();
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals(lines(10), filteredContents.get(0));
+		Assert.assertEquals(lines(10), new String(requests.get(0).getBody(), "UTF-8"));
+	}
+
+	public void testStreamedContentShouldBeCompressed() throws Throwable {
+		final MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext())
+				.withRequestCompression(1024);
+		final LineWriter writer = new LineWriter(1000);
+
+		Exception exception = invoke(new Invocation() {
+
+			@Override
+			public void invoke(ServiceFilterResponseCallback callback) {
+				client.invokeApi("upload", writer, lines(1000).length(), "POST", null, null, callback);
+			}
+		});
+		client.close();
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals("gzip", requests.get(0).getHeader("Content-Encoding"));
+		Assert.assertTrue(requests.get(0).getBody().length < lines(1000).length());
+	}
+
+	public void testStreamWithMethodWithoutContentShouldFail() throws Throwable {
+		final MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+
+		Exception exception = invoke(new Invocation() {
+
+			@Override
+			public void invoke(ServiceFilterResponseCallback callback) {
+				client.invokeApi("upload", new LineWriter(1), -1, "DELETE", null, null, callback);
+			}
+		});
+		client.close();
+
+		// Asserts
+		Assert.assertTrue(exception instanceof IllegalArgumentException);
+		Assert.assertEquals(0, requests.size());
+	}
+
+	public void testStreamShouldNotBeRetried() throws Throwable {
+		statusCode = 503;
+		final RetryServiceFilter retryFilter = new RetryServiceFilter(2, 10, 100);
+		final MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext())
+				.withFilter(retryFilter);
+		final byte[] content = lines(10).getBytes("UTF-8");
+
+		Exception exception = invoke(new Invocation() {
+
+			@Override
+			public void invoke(ServiceFilterResponseCallback callback) {
+				client.invokeApi("upload", new ByteArrayInputStream(content), content.length, "PUT", null, null, callback);
+			}
+		});
+		client.close();
+
+		// Asserts
+		Assert.assertNotNull(exception);
+		Assert.assertEquals(1, requests.size());
+		Assert.assertEquals(0, retryFilter.getRetryCount());
+	}
+
+	public void testWriterShouldBeRetried() throws Throwable {
+		statusCode = 503;
+		final RetryServiceFilter retryFilter = new RetryServiceFilter(2, 10, 100);
+		final MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext())
+				.withFilter(retryFilter);
+		final LineWriter writer = new LineWriter(10);
+
+		Exception exception = invoke(new Invocation() {
+
+			@Override
+			public void invoke(ServiceFilterResponseCallback callback) {
+				client.invokeApi("upload", writer, -1, "PUT", null, null, callback);
+			}
+		});
+		client.close();
+
+		// Asserts
+		Assert.assertNotNull(exception);
+		Assert.assertEquals(3, requests.size());
+		Assert.assertEquals(3, writer.mCalls);
+		Assert.assertEquals(lines(10), new String(requests.get(2).getBody(), "UTF-8"));
+	}
+}
@@ -0,0 +1,279 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import com.microsoft.windowsazure.mobileservices.AndroidHttpClientFactoryImpl;
+import com.microsoft.windowsazure.mobileservices.ApiResponseStreamReader;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+
+public class StreamingResponseTests extends InstrumentationTestCase {
+
+	LocalHttpServer server;
+	LocalHttpServer.Response nextResponse;
+
+	protected void setUp() throws Exception {
+		server = new LocalHttpServer(new LocalHttpServer.Handler() {
+
+			@Override
+			public LocalHttpServer.Response handle(LocalHttpServer.Request request) {
+				return nextResponse;
+			}
+		});
+		server.start();
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		server.stop();
+		super.tearDown();
+	}
+
+	/**
+	 * Reads up to a number of bytes of the content
+	 */
+	private static class ContentReader implements ApiResponseStreamReader {
+		private int mLimit;
+		ByteArrayOutputStream mContent = new ByteArrayOutputStream();
+		boolean mCalled;
+
+		ContentReader(int limit) {
+			mLimit = limit;
+		}
+
+		@Override
+		public void read(InputStream content, ServiceFilterResponse response) throws Exception {
+			mCalled = true;
+			byte[] buffer = new byte[1024];
+			int length;
+
+			while (mContent.size() < mLimit && (length = content.read(buffer, 0, Math.min(buffer.length, mLimit - mContent.size()))) != -1) {
+				mContent.write(buffer, 0, length);
+			}
+		}
+	}
+
+	private static String createContent(int length) {
+		StringBuilder sb = new StringBuilder(length);
+
+		while (sb.length() < length) {
+			sb.append((char) ('a' + sb.length() % 26));
+		}
+
+		return sb.toString();
+	}
+
+	private static byte[] gzip(String content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(content.getBytes("UTF-8"));
+		gzip.close();
+
+		return out.toByteArray();
+	}
+
+	private Exception invokeApi(final MobileServiceClient client, final ApiResponseStreamReader reader) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+
+		runTestOnUiThread(new Runnable() {
+
+			@Override
+			public void run() {
+				client.invokeApi("export", null, "GET", null, null, reader, new ServiceFilterResponseCallback() {
+
+					@Override
+					public void onResponse(ServiceFilterResponse response, Exception exception) {
+						container.setException(exception);
+						latch.countDown();
+					}
+				});
+			}
+		});
+
+		latch.await();
+
+		return container.getException();
+	}
+
+	public void testResponseContentShouldBeStreamedToTheReader() throws Throwable {
+		String content = createContent(1024 * 1024);
+		nextResponse = new LocalHttpServer.Response(200, content);
+
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		ContentReader reader = new ContentReader(Integer.MAX_VALUE);
+		Exception exception = invokeApi(client, reader);
+		client.close();
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals(content, reader.mContent.toString("UTF-8"));
+	}
+
+	public void testGzippedResponseShouldBeUngzipped() throws Throwable {
+		String content = createContent(64 * 1024);
+		nextResponse = new LocalHttpServer.Response();
+		nextResponse.setHeader("Content-Encoding", "gzip");
+		nextResponse.setBody(gzip(content));
+
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		ContentReader reader = new ContentReader(Integer.MAX_VALUE);
+		Exception exception = invokeApi(client, reader);
+		client.close();
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals(content, reader.mContent.toString("UTF-8"));
+	}
+
+	public void testPartiallyReadResponseShouldReleaseTheConnection() throws Throwable {
+		nextResponse = new LocalHttpServer.Response(200, createContent(256 * 1024));
+
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		ContentReader firstReader = new ContentReader(10);
+		ContentReader secondReader = new ContentReader(10);
+		Exception firstException = invokeApi(client, firstReader);
+		Exception secondException = invokeApi(client, secondReader);
+		client.close();
+
+		// Asserts
+		Assert.assertNull(firstException);
+		Assert.assertNull(secondException);
+		Assert.assertEquals("abcdefghij", secondReader.mContent.toString("UTF-8"));
+		Assert.assertEquals(2, server.getRequestCount());
+		Assert.assertEquals(1, server.getConnectionCount());
+	}
+
+	public void testErrorResponseShouldNotBeStreamed() throws Throwable {
+		nextResponse = new LocalHttpServer.Response(500, "{\"error\":\"failed\"}");
+
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		ContentReader reader = new ContentReader(Integer.MAX_VALUE);
+		Exception exception = invokeApi(client, reader);
+		client.close();
+
+		// Asserts
+		Assert.assertNotNull(exception);
+		Assert.assertFalse(reader.mCalled);
+	}
+
+	public void testFilterReadingTheContentShouldNotBreakTheReader() throws Throwable {
+		String content = createContent(1024);
+		nextResponse = new LocalHttpServer.Response(200, content);
+		final List<String> filteredContents = new ArrayList<String>();
+
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext())
+				.withFilter(new ServiceFilter() {
+
+					@Override
+					public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+							final ServiceFilterResponseCallback responseCallback) {
+						nextServiceFilterCallback.onNext(request, new ServiceFilterResponseCallback() {
+
+							@Override
+							public void onResponse(ServiceFilterResponse response, Exception exception) {
+								filteredContents.add(response.getContent());
+								responseCallback.onResponse(response, exception);
+							}
+						});
+					}
+				});
+		ContentReader reader = new ContentReader(Integer.MAX_VALUE);
+		Exception exception = invokeApi(client, reader);
+		client.close();
+
+		// Asserts
+		Assert.assertNull(exception);
+		Assert.assertEquals(content, filteredContents.get(0));
+		Assert.assertEquals(content, reader.mContent.toString("UTF-8"));
+	}
+
+	public void testResponseReplacedByAFilterShouldReleaseTheConnection() throws Throwable {
+		nextResponse = new LocalHttpServer.Response(200, createContent(256 * 1024));
+
+		MobileServiceClient client = new MobileServiceClient(server.getUrl(), "qwerty", getInstrumentation().getTargetContext());
+		client.setAndroidHttpClientFactory(new AndroidHttpClientFactoryImpl(1, 1, 1000));
+
+		// The filter drops the streamed response and returns its own
+		final MobileServiceClient filteredClient = client.withFilter(new ServiceFilter() {
+
+			@Override
+			public void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+					final ServiceFilterResponseCallback responseCallback) {
+				nextServiceFilterCallback.onNext(request, new ServiceFilterResponseCallback() {
+
+					@Override
+					public void onResponse(ServiceFilterResponse response, Exception exception) {
+						ServiceFilterResponseMock replacement = new ServiceFilterResponseMock();
+						replacement.setContent("{}");
+						responseCallback.onResponse(replacement, null);
+					}
+				});
+			}
+		});
+
+		for (int i = 0; i < 3; i++) {
+			final CountDownLatch latch = new CountDownLatch(1);
+			final ResultsContainer container = new ResultsContainer();
+			final ContentReader reader = new ContentReader(Integer.MAX_VALUE);
+
+			runTestOnUiThread(new Runnable() {
+
+				@Override
+				public void run() {
+					filteredClient.invokeApi("export", null, "GET", null, null, reader, new ServiceFilterResponseCallback() {
+
+						@Override
+						public void onResponse(ServiceFilterResponse response, Exception exception) {
+							container.setException(exception);
+							latch.countDown();
+						}
+					});
+				}
+			});
+
+			// Asserts
+			Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+			Assert.assertNull(container.getException());
+			Assert.assertEquals("{}", reader.mContent.toString("UTF-8"));
+		}
+
+		client.close();
+
+		// Asserts
+		Assert.assertEquals(3, server.getRequestCount());
+	}
+}
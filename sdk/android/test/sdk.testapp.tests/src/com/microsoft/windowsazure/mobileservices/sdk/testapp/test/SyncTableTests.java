@@ -0,0 +1,402 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+
+import org.apache.http.Header;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.MobileServiceJsonSyncTable;
+import com.microsoft.windowsazure.mobileservices.MobileServicePreconditionFailedExceptionBase;
+import com.microsoft.windowsazure.mobileservices.MobileServiceSyncTable;
+import com.microsoft.windowsazure.mobileservices.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponseCallback;
+import com.microsoft.windowsazure.mobileservices.TableDeleteCallback;
+import com.microsoft.windowsazure.mobileservices.TableJsonOperationCallback;
+import com.microsoft.windowsazure.mobileservices.TableJsonQueryCallback;
+import com.microsoft.windowsazure.mobileservices.TableOperationCallback;
+import com.microsoft.windowsazure.mobileservices.TableSyncCallback;
+
+public class SyncTableTests extends InstrumentationTestCase {
+	String appUrl = "";
+	String appKey = "";
+	String tableName = "";
+
+	protected void setUp() throws Exception {
+		appUrl = "http://myapp.com/";
+		appKey = "qwerty";
+
+		// The local store is shared, so each test uses its own table
+		tableName = "SyncTable" + System.nanoTime();
+		super.setUp();
+	}
+
+	protected void tearDown() throws Exception {
+		// Remove the rows, operations and watermarks of the test table
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+		purge(client.getSyncTable(tableName));
+		super.tearDown();
+	}
+
+	/**
+	 * In-memory table that checks the row versions
+	 */
+	private static class TableBackend implements ServiceFilter {
+		Map<String, JsonObject> mRows = new LinkedHashMap<String, JsonObject>();
+		List<String> mRequests = new ArrayList<String>();
+		int mVersion = 0;
+
+		@Override
+		public synchronized void handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback,
+				ServiceFilterResponseCallback responseCallback) {
+			List<String> segments = Uri.parse(request.getUrl()).getPathSegments();
+			String id = segments.size() > 2 ? segments.get(2) : null;
+			String method = request.getMethod();
+			ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+			mRequests.add(method + (id != null ? " " + id : ""));
+
+			if (method.equals("GET")) {
+				JsonArray rows = new JsonArray();
+				for (JsonObject row : mRows.values()) {
+					rows.add(row);
+				}
+
+				response.setContent(rows.toString());
+			} else if (method.equals("POST")) {
+				JsonObject row = new JsonParser().parse(request.getContent()).getAsJsonObject();
+				row.addProperty("__version", "v" + (++mVersion));
+				mRows.put(row.get("id").getAsString(), row);
+				response.setContent(row.toString());
+			} else if (method.equals("PATCH")) {
+				JsonObject row = mRows.get(id);
+				String ifMatch = getHeader(request, "If-Match");
+
+				if (ifMatch != null && !ifMatch.equals("\"" + row.get("__version").getAsString() + "\"")) {
+					response.setStatus(new StatusLineMock(412));
+					response.setContent(row.toString());
+					responseCallback.onResponse(response, new MobileServiceException("Precondition failed"));
+					return;
+				}
+
+				JsonObject changes = new JsonParser().parse(request.getContent()).getAsJsonObject();
+				for (Map.Entry<String, JsonElement> property : changes.entrySet()) {
+					row.add(property.getKey(), property.getValue());
+				}
+
+				row.addProperty("__version", "v" + (++mVersion));
+				response.setContent(row.toString());
+			} else if (method.equals("DELETE")) {
+				mRows.remove(id);
+			}
+
+			responseCallback.onResponse(response, null);
+		}
+
+		private static String getHeader(ServiceFilterRequest request, String name) {
+			for (Header header : request.getHeaders()) {
+				if (header.getName().equalsIgnoreCase(name)) {
+					return header.getValue();
+				}
+			}
+
+			return null;
+		}
+	}
+
+	private Object[] insert(MobileServiceJsonSyncTable table, JsonObject item) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Object[] result = new Object[2];
+
+		table.insert(item, new TableJsonOperationCallback() {
+
+			@Override
+			public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+				result[0] = jsonObject;
+				result[1] = exception;
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+		return result;
+	}
+
+	private Object[] update(MobileServiceJsonSyncTable table, JsonObject item) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Object[] result = new Object[2];
+
+		table.update(item, new TableJsonOperationCallback() {
+
+			@Override
+			public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+				result[0] = jsonObject;
+				result[1] = exception;
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+		return result;
+	}
+
+	private JsonObject lookUp(MobileServiceJsonSyncTable table, String id) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final JsonObject[] result = new JsonObject[1];
+
+		table.lookUp(id, new TableJsonOperationCallback() {
+
+			@Override
+			public void onCompleted(JsonObject jsonObject, Exception exception, ServiceFilterResponse response) {
+				result[0] = jsonObject;
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+		return result[0];
+	}
+
+	private Object[] sync(MobileServiceJsonSyncTable table, boolean pull) throws Throwable {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Object[] result = new Object[2];
+
+		TableSyncCallback callback = new TableSyncCallback() {
+
+			@Override
+			public void onCompleted(int count, Exception exception) {
+				result[0] = count;
+				result[1] = exception;
+				latch.countDown();
+			}
+		};
+
+		if (pull) {
+			table.pull(callback);
+		} else {
+			table.push(callback);
+		}
+
+		latch.await();
+		return result;
+	}
+
+	private static Object[] purge(MobileServiceJsonSyncTable table) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Object[] result = new Object[2];
+
+		table.purge(new TableSyncCallback() {
+
+			@Override
+			public void onCompleted(int count, Exception exception) {
+				result[0] = count;
+				result[1] = exception;
+				latch.countDown();
+			}
+		});
+
+		latch.await();
+		return result;
+	}
+
+	private static JsonObject createPerson(String id, String name) {
+		JsonObject person = new JsonObject();
+
+		if (id != null) {
+			person.addProperty("id", id);
+		}
+
+		person.addProperty("name", name);
+		return person;
+	}
+
+	public void testInsertAndUpdateShouldBePushedAsOneInsert() throws Throwable {
+		TableBackend backend = new TableBackend();
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(backend);
+		MobileServiceJsonSyncTable table = client.getSyncTable(tableName);
+
+		Object[] inserted = insert(table, createPerson(null, "John"));
+		Assert.assertNull(inserted[1]);
+		String id = ((JsonObject) inserted[0]).get("id").getAsString();
+
+		update(table, createPerson(id, "Jane"));
+
+		// Asserts
+		Assert.assertEquals("Jane", lookUp(table, id).get("name").getAsString());
+		Assert.assertEquals(0, backend.mRequests.size());
+
+		Object[] pushed = sync(table, false);
+
+		Assert.assertNull(pushed[1]);
+		Assert.assertEquals(1, pushed[0]);
+		Assert.assertEquals(1, backend.mRequests.size());
+		Assert.assertEquals("POST", backend.mRequests.get(0));
+		Assert.assertEquals("Jane", backend.mRows.get(id).get("name").getAsString());
+		Assert.assertEquals("v1", lookUp(table, id).get("__version").getAsString());
+		Assert.assertEquals(0, table.getPendingOperationCount());
+	}
+
+	public void testInsertAndDeleteShouldCancelEachOther() throws Throwable {
+		TableBackend backend = new TableBackend();
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(backend);
+		MobileServiceJsonSyncTable table = client.getSyncTable(tableName);
+
+		insert(table, createPerson("an id", "John"));
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		table.delete("an id", new TableDeleteCallback() {
+
+			@Override
+			public void onCompleted(Exception exception, ServiceFilterResponse response) {
+				latch.countDown();
+			}
+		});
+		latch.await();
+
+		Object[] pushed = sync(table, false);
+
+		// Asserts
+		Assert.assertNull(pushed[1]);
+		Assert.assertEquals(0, pushed[0]);
+		Assert.assertEquals(0, backend.mRequests.size());
+		Assert.assertNull(lookUp(table, "an id"));
+	}
+
+	public void testPullShouldStoreTheServerRowsLocally() throws Throwable {
+		TableBackend backend = new TableBackend();
+		for (int i = 1; i <= 3; i++) {
+			JsonObject row = createPerson("id" + i, "Person " + i);
+			row.addProperty("__version", "v0");
+			backend.mRows.put("id" + i, row);
+		}
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(backend);
+		MobileServiceJsonSyncTable table = client.getSyncTable(tableName);
+
+		Object[] pulled = sync(table, true);
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+
+		table.read(new TableJsonQueryCallback() {
+
+			@Override
+			public void onCompleted(JsonElement result, int count, Exception exception, ServiceFilterResponse response) {
+				container.setJsonResult(result);
+				container.setException(exception);
+				latch.countDown();
+			}
+		});
+		latch.await();
+
+		// Asserts
+		Assert.assertNull(pulled[1]);
+		Assert.assertEquals(3, pulled[0]);
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(3, container.getJsonResult().getAsJsonArray().size());
+		Assert.assertEquals("Person 2", lookUp(table, "id2").get("name").getAsString());
+	}
+
+	public void testPushShouldStopOnConflictAndKeepTheOperation() throws Throwable {
+		TableBackend backend = new TableBackend();
+		JsonObject row = createPerson("an id", "John");
+		row.addProperty("__version", "v0");
+		backend.mRows.put("an id", row);
+
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(backend);
+		MobileServiceJsonSyncTable table = client.getSyncTable(tableName);
+
+		sync(table, true);
+
+		// Someone else changes the row on the server
+		backend.mRows.get("an id").addProperty("__version", "v9");
+
+		update(table, createPerson("an id", "Jane"));
+
+		Object[] pushed = sync(table, false);
+
+		// Asserts
+		Assert.assertEquals(0, pushed[0]);
+		Assert.assertTrue(pushed[1] instanceof MobileServicePreconditionFailedExceptionBase);
+		Assert.assertEquals(1, table.getPendingOperationCount());
+		Assert.assertEquals("Jane", lookUp(table, "an id").get("name").getAsString());
+	}
+
+	public void testPurgeShouldDeleteTheLocalRowsAndOperations() throws Throwable {
+		TableBackend backend = new TableBackend();
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(backend);
+		MobileServiceJsonSyncTable table = client.getSyncTable(tableName);
+
+		insert(table, createPerson("1", "John"));
+		insert(table, createPerson("2", "Jane"));
+
+		Object[] result = purge(table);
+
+		// Asserts
+		Assert.assertNull(result[1]);
+		Assert.assertEquals(2, result[0]);
+		Assert.assertNull(lookUp(table, "1"));
+		Assert.assertEquals(0, table.getPendingOperationCount());
+		Assert.assertTrue(backend.mRequests.isEmpty());
+	}
+
+	public void testTypedInsertShouldGenerateAStringId() throws Throwable {
+		TableBackend backend = new TableBackend();
+		MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext()).withFilter(backend);
+		MobileServiceSyncTable<PersonTestObjectWithStringId> table = client.getSyncTable(tableName, PersonTestObjectWithStringId.class);
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ResultsContainer container = new ResultsContainer();
+		final PersonTestObjectWithStringId person = new PersonTestObjectWithStringId("John", "Doe", 29);
+
+		table.insert(person, new TableOperationCallback<PersonTestObjectWithStringId>() {
+
+			@Override
+			public void onCompleted(PersonTestObjectWithStringId entity, Exception exception, ServiceFilterResponse response) {
+				container.setPersonWithStringId(entity);
+				container.setException(exception);
+				latch.countDown();
+			}
+		});
+		latch.await();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertSame(person, container.getPersonWithStringId());
+		Assert.assertNotNull(person.getId());
+		Assert.assertEquals(1, table.getPendingOperationCount());
+	}
+}
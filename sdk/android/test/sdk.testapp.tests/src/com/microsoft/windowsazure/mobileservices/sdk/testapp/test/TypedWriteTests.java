@@ -0,0 +1,213 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+
+import junit.framework.Assert;
+import android.test.InstrumentationTestCase;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.annotations.SerializedName;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServicePreconditionFailedException;
+import com.microsoft.windowsazure.mobileservices.MobileServiceTable;
+import com.microsoft.windowsazure.mobileservices.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.TableOperationCallback;
+
+public class TypedWriteTests extends InstrumentationTestCase {
+
+	private RequestRecorder recorder;
+	private MobileServiceClient client;
+	private MobileServiceTable<VersionedPerson> table;
+
+	/**
+	 * Entity that Gson can't serialize, as two fields have the same name
+	 */
+	static class DuplicateNameEntity {
+		String id;
+
+		String name;
+
+		@SerializedName("name")
+		String otherName;
+	}
+
+	protected void setUp() throws Exception {
+		recorder = new RequestRecorder();
+
+		client = new MobileServiceClient("http://myapp.com/", "qwerty", getInstrumentation().getTargetContext())
+				.withFilter(recorder);
+		client.setExecutor(new DirectExecutor());
+		client.setCallbackExecutor(new DirectExecutor());
+
+		table = client.getTable(VersionedPerson.class);
+		super.setUp();
+	}
+
+	public void testInsertShouldSendTheEntityWithoutSystemProperties() {
+		final ResultsContainer container = new ResultsContainer();
+		final VersionedPerson person = new VersionedPerson();
+		person.name = "John";
+		person.age = 29;
+		person.version = "old";
+		person.createdAt = "2013-11-01T10:30:00.000Z";
+
+		recorder.mResponseContent = "{\"id\":\"an-id\",\"name\":\"John\",\"age\":29,\"__createdAt\":\"2014-01-01T00:00:00.000Z\"}";
+		recorder.mResponseHeaders = new Header[] { new BasicHeader("ETag", "\"AAAA\"") };
+
+		table.insert(person, new TableOperationCallback<VersionedPerson>() {
+
+			@Override
+			public void onCompleted(VersionedPerson entity, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+				container.setCustomResult(entity);
+			}
+		});
+
+		JsonObject content = new JsonParser().parse(recorder.mContent).getAsJsonObject();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals(3, content.entrySet().size());
+		Assert.assertEquals("John", content.get("name").getAsString());
+		Assert.assertTrue(content.get("city").isJsonNull());
+		Assert.assertEquals(29, content.get("age").getAsInt());
+		Assert.assertSame(person, container.getCustomResult());
+		Assert.assertEquals("an-id", person.id);
+		Assert.assertEquals("AAAA", person.version);
+		Assert.assertEquals("2014-01-01T00:00:00.000Z", person.createdAt);
+	}
+
+	public void testInsertShouldKeepTheFieldsNotReturned() {
+		final VersionedPerson person = new VersionedPerson();
+		person.name = "John";
+		person.note = "a note";
+
+		recorder.mResponseContent = "{\"id\":\"an-id\"}";
+
+		table.insert(person, null);
+
+		// Asserts
+		Assert.assertEquals("an-id", person.id);
+		Assert.assertEquals("John", person.name);
+		Assert.assertEquals("a note", person.note);
+	}
+
+	public void testInsertShouldRejectAnInvalidId() {
+		final ResultsContainer container = new ResultsContainer();
+		final VersionedPerson person = new VersionedPerson();
+		person.id = "invalid\"id";
+
+		table.insert(person, new TableOperationCallback<VersionedPerson>() {
+
+			@Override
+			public void onCompleted(VersionedPerson entity, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+			}
+		});
+
+		// Asserts
+		Assert.assertTrue(container.getException() instanceof IllegalArgumentException);
+		Assert.assertNull(recorder.mRequest);
+	}
+
+	public void testWritesShouldReportTheErrorsOfGsonToTheCallback() {
+		final ResultsContainer container = new ResultsContainer();
+		MobileServiceTable<DuplicateNameEntity> duplicateNameTable = client.getTable(DuplicateNameEntity.class);
+		DuplicateNameEntity entity = new DuplicateNameEntity();
+		entity.id = "an-id";
+
+		TableOperationCallback<DuplicateNameEntity> callback = new TableOperationCallback<DuplicateNameEntity>() {
+
+			@Override
+			public void onCompleted(DuplicateNameEntity entity, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+			}
+		};
+
+		duplicateNameTable.insert(entity, callback);
+
+		// Asserts
+		Assert.assertTrue(container.getException() instanceof IllegalArgumentException);
+
+		container.setException(null);
+		duplicateNameTable.update(entity, callback);
+
+		Assert.assertTrue(container.getException() instanceof IllegalArgumentException);
+		Assert.assertNull(recorder.mRequest);
+	}
+
+	public void testUpdateShouldSendTheVersionAsIfMatch() {
+		final ResultsContainer container = new ResultsContainer();
+		final VersionedPerson person = new VersionedPerson();
+		person.id = "an-id";
+		person.name = "John";
+		person.version = "AAAA";
+
+		recorder.mResponseContent = "{\"id\":\"an-id\",\"name\":\"John\"}";
+		recorder.mResponseHeaders = new Header[] { new BasicHeader("ETag", "\"BBBB\"") };
+
+		table.update(person, new TableOperationCallback<VersionedPerson>() {
+
+			@Override
+			public void onCompleted(VersionedPerson entity, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+			}
+		});
+
+		JsonObject content = new JsonParser().parse(recorder.mContent).getAsJsonObject();
+
+		// Asserts
+		Assert.assertNull(container.getException());
+		Assert.assertEquals("PATCH", recorder.mRequest.getMethod());
+		Assert.assertTrue(recorder.mRequest.getUrl().contains("/tables/VersionedPerson/an-id"));
+		Assert.assertEquals("\"AAAA\"", RequestRecorder.getHeader(recorder.mRequest, "If-Match"));
+		Assert.assertEquals("an-id", content.get("id").getAsString());
+		Assert.assertFalse(content.has("__version"));
+		Assert.assertEquals("BBBB", person.version);
+	}
+
+	public void testUpdateConflictShouldReturnTheServerEntity() {
+		final ResultsContainer container = new ResultsContainer();
+		final VersionedPerson person = new VersionedPerson();
+		person.id = "an-id";
+		person.name = "John";
+		person.version = "AAAA";
+
+		recorder.mStatusCode = 412;
+		recorder.mResponseContent = "{\"id\":\"an-id\",\"name\":\"Jane\",\"__version\":\"CCCC\"}";
+
+		table.update(person, new TableOperationCallback<VersionedPerson>() {
+
+			@Override
+			public void onCompleted(VersionedPerson entity, Exception exception, ServiceFilterResponse response) {
+				container.setException(exception);
+			}
+		});
+
+		// Asserts
+		Assert.assertTrue(container.getException() instanceof MobileServicePreconditionFailedException);
+		Assert.assertEquals("Jane", ((VersionedPerson) ((MobileServicePreconditionFailedException) container.getException()).getItem()).name);
+	}
+}